@@ -0,0 +1,101 @@
+import java.util.function.IntSupplier;
+
+/**
+ * The AvailabilityIndex class tells which of several parking lots has the most free capacity for a vehicle type.
+ * For every vehicle type it keeps a tournament tree over the lots: each leaf holds the free capacity of a lot and
+ * each inner node the lot with the most free capacity below it, so the best lot is read at the root and a change
+ * of one lot replays only the matches on its path, log2(lots) of them.
+ * Each vehicle type has its own tree and lock, so arrivals of different types do not wait for each other. The lots
+ * report their free capacity after every checkin and checkout; a lot may have filled up since it was picked, the
+ * caller then reports it and asks again. The free capacity is read while the lock of the type is held, so two gates
+ * reporting the same lot store their readings in the order they took them and a stale reading never lands last.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class AvailabilityIndex {
+
+    private static final int TYPE_COUNT = 4;
+
+    private final int lots;
+    private final int leaves; // Number of lots rounded up to a power of two
+
+    // Per vehicle type: free capacity per lot, and the winning lot per tree node (root at 1, leaves from `leaves`)
+    private final int[][] free = new int[TYPE_COUNT][];
+    private final int[][] winners = new int[TYPE_COUNT][];
+
+    public AvailabilityIndex(int lots) {
+        this.lots = lots;
+        this.leaves = Integer.highestOneBit(Math.max(1, lots - 1)) << 1;
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            free[type] = new int[lots];
+            winners[type] = new int[2 * leaves];
+            for (int node = 0; node < leaves; node++) {
+                // padding leaves hold no lot
+                winners[type][leaves + node] = node < lots ? node : -1;
+            }
+            for (int node = leaves - 1; node >= 1; node--) {
+                winners[type][node] = winners[type][2 * node];
+            }
+        }
+    }
+
+    /**
+     * Records the free capacity of a lot for a vehicle type.
+     *
+     * @param lot The lot, counted from 0.
+     * @param typeCode The VehicleTypeCodec code of the vehicle type.
+     * @param freeQty Reads the free capacity of the lot for the type, called holding the lock of the type.
+     */
+    public void update(int lot, byte typeCode, IntSupplier freeQty) {
+        int[] typeFree = free[typeCode];
+        int[] typeWinners = winners[typeCode];
+        synchronized (typeWinners) {
+            int qty = freeQty.getAsInt();
+            if (typeFree[lot] == qty) {
+                return;
+            }
+            typeFree[lot] = qty;
+            for (int node = (leaves + lot) >>> 1; node >= 1; node >>>= 1) {
+                typeWinners[node] = better(typeFree, typeWinners[2 * node], typeWinners[2 * node + 1]);
+            }
+        }
+    }
+
+    /**
+     * Returns the lot with the most free capacity for a vehicle type, the first one on a tie.
+     *
+     * @param typeCode The VehicleTypeCodec code of the vehicle type.
+     * @return The lot, or -1 if no lot has free capacity for the type.
+     */
+    public int best(byte typeCode) {
+        int[] typeWinners = winners[typeCode];
+        synchronized (typeWinners) {
+            int lot = typeWinners[1];
+            return lot >= 0 && free[typeCode][lot] > 0 ? lot : -1;
+        }
+    }
+
+    /**
+     * Returns the free capacity last recorded for a lot.
+     */
+    public int getFree(int lot, byte typeCode) {
+        synchronized (winners[typeCode]) {
+            return free[typeCode][lot];
+        }
+    }
+
+    public int getLots() {
+        return lots;
+    }
+
+    private static int better(int[] typeFree, int left, int right) {
+        if (right < 0) {
+            return left;
+        }
+        if (left < 0) {
+            return right;
+        }
+        return typeFree[right] > typeFree[left] ? right : left;
+    }
+}
@@ -0,0 +1,222 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * The BatchRunner class replays a file of gate commands against a ParkingService without any prompt, so a day of
+ * traffic can be reconciled in seconds. Each line holds one command, blank lines and lines starting with # are skipped:
+ *   init length width
+ *   checkin type regnId yyyy-MM-dd HH:mm [model [colour]]
+ *   move regnId keys        (keys is a run of w/s/a/d, one move each)
+ *   park regnId             (parks the vehicle automatically)
+ *   drive regnId            (drives the vehicle to the exit door)
+ *   checkout regnId yyyy-MM-dd HH:mm
+ * Only the failed commands are reported, or every command with -v, through a buffered writer; a summary of the
+ * outcomes per command and the throughput are printed at the end.
+ * Run it with: java BatchRunner [-v] file, or java ParkingLotEngine --batch [-v] file.
+ * The replay runs on a parking lot kept in memory, the stored lot and fee log are not touched.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class BatchRunner {
+
+    public static final String ARG_VERBOSE = "-v";
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    // Command keywords, in the order of the summary
+    private static final String[] COMMANDS = {"init", "checkin", "move", "park", "drive", "checkout"};
+    private static final int INIT = 0;
+    private static final int CHECKIN = 1;
+    private static final int MOVE = 2;
+    private static final int PARK = 3;
+    private static final int DRIVE = 4;
+    private static final int CHECKOUT = 5;
+
+    private static final ParkingResult.Status[] STATUSES = ParkingResult.Status.values();
+
+    private final ParkingService service;
+    private final PrintWriter out;
+    private final boolean verbose;
+
+    // Outcomes per command and status, and the lines that could not be run
+    private final long[][] outcomes = new long[COMMANDS.length][STATUSES.length];
+    private long malformed = 0;
+    private long commands = 0;
+    private long revenueCents = 0;
+
+    public BatchRunner(ParkingService service, PrintWriter out, boolean verbose) {
+        this.service = service;
+        this.out = out;
+        this.verbose = verbose;
+    }
+
+    /**
+     * The main entry point of the batch mode.
+     *
+     * @param args optional -v to report every command, then the command file
+     */
+    public static void main(String[] args) throws IOException {
+        boolean verbose = args.length > 1 && ARG_VERBOSE.equals(args[0]);
+        if (args.length != (verbose ? 2 : 1)) {
+            System.out.println("Usage: java BatchRunner [-v] file");
+            return;
+        }
+        Path file = Path.of(args[verbose ? 1 : 0]);
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE), false);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            BatchRunner runner = new BatchRunner(new ParkingLotService(), out, verbose);
+            long start = System.nanoTime();
+            runner.run(reader);
+            runner.printSummary(file.toString(), System.nanoTime() - start);
+        } finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Runs every command read until the end of the input.
+     */
+    public void run(BufferedReader reader) throws IOException {
+        String line;
+        long lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            line = line.trim();
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            runLine(lineNo, line);
+        }
+    }
+
+    private void runLine(long lineNo, String line) {
+        String[] parts = WHITESPACE.split(line);
+        int command = indexOf(parts[0]);
+        if (command < 0 || !hasArguments(command, parts.length - 1)) {
+            malformed++;
+            out.println("line " + lineNo + ": cannot run '" + line + "'");
+            return;
+        }
+        switch (command) {
+            case INIT:
+                int length;
+                int width;
+                try {
+                    length = Integer.parseInt(parts[1]);
+                    width = Integer.parseInt(parts[2]);
+                } catch (NumberFormatException ex) {
+                    malformed++;
+                    out.println("line " + lineNo + ": cannot run '" + line + "'");
+                    return;
+                }
+                record(lineNo, line, command, service.initParkingLot(length, width));
+                break;
+            case CHECKIN:
+                record(lineNo, line, command, service.checkIn(parts[1], parts[2],
+                        parts.length > 5 ? parts[5] : null, parts.length > 6 ? parts[6] : null, parts[3], parts[4]));
+                break;
+            case MOVE:
+                for (int i = 0; i < parts[2].length(); i++) {
+                    record(lineNo, line, command, service.move(parts[1], parts[2].charAt(i)));
+                }
+                break;
+            case PARK:
+                record(lineNo, line, command, service.autoPark(parts[1]));
+                break;
+            case DRIVE:
+                record(lineNo, line, command, service.driveToExit(parts[1]));
+                break;
+            case CHECKOUT:
+                ParkingResult result = service.checkOut(parts[1], parts[2], parts[3]);
+                if (result.isOk()) {
+                    revenueCents += result.getCheckoutVehicle().getParkingFeeCents();
+                }
+                record(lineNo, line, command, result);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Counts an outcome and reports it if it failed or every outcome is wanted
+    private void record(long lineNo, String line, int command, ParkingResult result) {
+        commands++;
+        outcomes[command][result.getStatus().ordinal()]++;
+        if (verbose || !isSuccess(command, result.getStatus())) {
+            out.println("line " + lineNo + ": " + line + " -> " + result.getStatus());
+        }
+    }
+
+    // Hits and arriving at the door are normal outcomes of a move
+    private static boolean isSuccess(int command, ParkingResult.Status status) {
+        if (status == ParkingResult.Status.OK) {
+            return true;
+        }
+        return command == MOVE && (status == ParkingResult.Status.AT_DOOR || status == ParkingResult.Status.HIT_PILLAR
+                || status == ParkingResult.Status.HIT_WALL || status == ParkingResult.Status.HIT_VEHICLE);
+    }
+
+    /**
+     * Prints the outcomes per command and the throughput.
+     *
+     * @param source Name of the replayed file.
+     * @param nanos Time taken by the replay.
+     */
+    public void printSummary(String source, long nanos) {
+        double millis = nanos / 1e6;
+        out.println("============ Batch summary for " + source + " ============");
+        out.printf(Locale.ROOT, "Commands: %d in %.1f ms (%.0f commands/s)%n",
+                commands, millis, nanos == 0 ? 0.0 : commands * 1e9 / nanos);
+        for (int command = 0; command < COMMANDS.length; command++) {
+            StringBuilder line = new StringBuilder();
+            long total = 0;
+            for (int s = 0; s < STATUSES.length; s++) {
+                if (outcomes[command][s] > 0) {
+                    total += outcomes[command][s];
+                    line.append(line.length() == 0 ? "" : ", ").append(STATUSES[s]).append(' ').append(outcomes[command][s]);
+                }
+            }
+            if (total > 0) {
+                out.printf(Locale.ROOT, "%-9s%10d  %s%n", COMMANDS[command], total, line);
+            }
+        }
+        if (malformed > 0) {
+            out.printf(Locale.ROOT, "%-9s%10d%n", "invalid", malformed);
+        }
+        int occQty = service.getOccQty();
+        out.printf(Locale.ROOT, "Checked in at the end: %s | Revenue: $%.2f%n",
+                occQty < 0 ? "[None]" : occQty, FeeCalculator.toDollars(revenueCents));
+    }
+
+    private static int indexOf(String command) {
+        for (int i = 0; i < COMMANDS.length; i++) {
+            if (COMMANDS[i].equalsIgnoreCase(command)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean hasArguments(int command, int count) {
+        switch (command) {
+            case INIT: return count == 2;
+            case CHECKIN: return count >= 4 && count <= 6;
+            case MOVE: return count == 2;
+            case PARK:
+            case DRIVE: return count == 1;
+            case CHECKOUT: return count == 3;
+            default: return false;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The BayAllocator class picks the nearest free parking spot for a vehicle when it is parked automatically.
+ * The spots of each vehicle class (truck column, bike/motorbike column and general spots) are ordered once
+ * by their distance from the entry door, and a free-spot bitset per class is scanned word by word, so
+ * finding the nearest legal spot does not walk the whole layout as the parking lot grows.
+ * All methods that touch the bitsets are synchronized so the allocator can be shared by several gates.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class BayAllocator {
+
+    // Spot classes, in the order they are indexed below
+    private static final int CLASS_GENERAL = 0;
+    private static final int CLASS_TRUCK = 1;
+    private static final int CLASS_BIKE = 2;
+    private static final int CLASS_COUNT = 3;
+
+    // The spot classes each vehicle type may use, in order of preference
+    private static final int[] CLASSES_CAR = {CLASS_GENERAL, CLASS_BIKE, CLASS_TRUCK};
+    private static final int[] CLASSES_TRUCK = {CLASS_TRUCK};
+    private static final int[] CLASSES_BIKE = {CLASS_BIKE};
+
+    private final int cols;
+
+    // Cell indexes (row * cols + col) of the spots of each class, nearest to the entry first
+    private final int[][] spots = new int[CLASS_COUNT][];
+
+    // Free spots of each class, bit i stands for spots[class][i]
+    private final BitSet[] freeSpots = new BitSet[CLASS_COUNT];
+
+    // Class and ordinal of every spot cell, packed as (class << 24 | ordinal), -1 for other cells
+    private final int[] spotIndexByCell;
+
+    /**
+     * Builds the allocator from a freshly initialised layout, every spot is free.
+     *
+     * @param parkingGrid The layout of the parking lot.
+     */
+    public BayAllocator(ParkingGrid parkingGrid) {
+        int rows = parkingGrid.getRows();
+        this.cols = parkingGrid.getCols();
+        this.spotIndexByCell = new int[rows * cols];
+        Arrays.fill(spotIndexByCell, -1);
+
+        int bikeCol = getBikeColumn(cols);
+        long[][] keys = new long[CLASS_COUNT][rows * cols];
+        int[] counts = new int[CLASS_COUNT];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (!parkingGrid.is(i, j, ParkingGrid.MASK_SPOT)) {
+                    continue;
+                }
+                int spotClass = j == 1 ? CLASS_TRUCK : (j == bikeCol ? CLASS_BIKE : CLASS_GENERAL);
+                // distance from the entry door at (1, 0), ties broken by cell index
+                long distance = Math.abs(i - Constant.ROW_INIT_VALUE) + Math.abs(j - Constant.COL_INIT_VALUE);
+                keys[spotClass][counts[spotClass]++] = distance << 32 | (i * cols + j);
+            }
+        }
+        for (int c = 0; c < CLASS_COUNT; c++) {
+            long[] sorted = Arrays.copyOf(keys[c], counts[c]);
+            Arrays.sort(sorted);
+            spots[c] = new int[sorted.length];
+            freeSpots[c] = new BitSet(sorted.length);
+            freeSpots[c].set(0, sorted.length);
+            for (int k = 0; k < sorted.length; k++) {
+                int cell = (int) sorted[k];
+                spots[c][k] = cell;
+                spotIndexByCell[cell] = c << 24 | k;
+            }
+        }
+    }
+
+    /**
+     * Returns the column of the spots reserved for bikes and motorbikes, the one nearest to the exit.
+     *
+     * @param cols Number of columns (the length of the parking lot).
+     */
+    public static int getBikeColumn(int cols) {
+        return cols - (cols % 2 == 0 ? 3 : 2);
+    }
+
+    /**
+     * Finds the free spot nearest to the entry that the vehicle class may park in.
+     *
+     * @param vehicleClass The class of the vehicle.
+     * @return The cell index (row * cols + col) of the spot, or -1 if there is no free legal spot.
+     */
+    public synchronized int findNearestSpot(VehicleClass vehicleClass) {
+        for (int spotClass : getSpotClasses(vehicleClass)) {
+            int ordinal = freeSpots[spotClass].nextSetBit(0);
+            if (ordinal >= 0) {
+                return spots[spotClass][ordinal];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the free spot nearest to the entry for the vehicle class and marks it as taken in one step,
+     * so that two gates parking at the same time never get the same spot.
+     *
+     * @param vehicleClass The class of the vehicle.
+     * @return The cell index (row * cols + col) of the spot, or -1 if there is no free legal spot.
+     */
+    public synchronized int claimNearestSpot(VehicleClass vehicleClass) {
+        int spot = findNearestSpot(vehicleClass);
+        if (spot >= 0) {
+            setFree(rowOf(spot), colOf(spot), false);
+        }
+        return spot;
+    }
+
+    /**
+     * Marks the spot at the given position as taken, other cells are ignored.
+     */
+    public synchronized void occupy(int row, int col) {
+        setFree(row, col, false);
+    }
+
+    /**
+     * Marks the spot at the given position as free again, other cells are ignored.
+     */
+    public synchronized void release(int row, int col) {
+        setFree(row, col, true);
+    }
+
+    /**
+     * Returns the row of a cell index returned by findNearestSpot.
+     */
+    public int rowOf(int cell) {
+        return cell / cols;
+    }
+
+    /**
+     * Returns the column of a cell index returned by findNearestSpot.
+     */
+    public int colOf(int cell) {
+        return cell % cols;
+    }
+
+    private void setFree(int row, int col, boolean free) {
+        int index = spotIndexByCell[row * cols + col];
+        if (index >= 0) {
+            freeSpots[index >>> 24].set(index & 0xFFFFFF, free);
+        }
+    }
+
+    private int[] getSpotClasses(VehicleClass vehicleClass) {
+        int spots = vehicleClass == null ? VehicleClass.SPOTS_ANY : vehicleClass.getSpots();
+        if (spots == VehicleClass.SPOTS_TRUCK_COLUMN) {
+            return CLASSES_TRUCK;
+        }
+        if (spots == VehicleClass.SPOTS_BIKE_COLUMN) {
+            return CLASSES_BIKE;
+        }
+        return CLASSES_CAR;
+    }
+}
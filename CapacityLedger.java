@@ -0,0 +1,154 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The CapacityLedger class keeps running counters of the parking capacity per vehicle class.
+ * Trucks are limited to the truck column, bikes and motorbikes to the bike column, and every checked-in
+ * vehicle takes one of the general bays, so availability for any vehicle type is answered in O(1)
+ * instead of scanning the checked-in vehicles.
+ * The three counters are packed into a single atomic word and updated with compare-and-set, so several
+ * gates can check vehicles in and out at the same time without locking and without overbooking. A counter holds at
+ * most MAX_BAYS vehicles, so a layout with more bays than that is refused rather than let a counter spill into the
+ * next one.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class CapacityLedger {
+
+    // Each counter takes 21 bits of the packed word: trucks, bikes/motorbikes, cars
+    private static final int COUNTER_BITS = 21;
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+    private static final int TRUCK_SHIFT = 0;
+    private static final int BIKE_SHIFT = COUNTER_BITS;
+    private static final int CAR_SHIFT = 2 * COUNTER_BITS;
+
+    // The most bays a lot can have, every counter then stays within its bits
+    public static final int MAX_BAYS = (int) COUNTER_MASK;
+
+    // Capacities derived from the layout
+    private final int totalQty;
+    private final int truckQty;
+    private final int bikeQty;
+
+    // Checked-in vehicles per class, packed as described above
+    private final AtomicLong checkinQty = new AtomicLong();
+
+    /**
+     * Creates the ledger of a freshly initialised parking lot.
+     *
+     * @param parkingGrid The layout of the parking lot.
+     * @throws IllegalArgumentException if the layout has more than MAX_BAYS bays.
+     */
+    public CapacityLedger(ParkingGrid parkingGrid) {
+        long bayQty = getBayQty(parkingGrid.getCols(), parkingGrid.getRows());
+        if (bayQty > MAX_BAYS) {
+            throw new IllegalArgumentException("A parking lot cannot have more than " + MAX_BAYS + " bays: " + bayQty);
+        }
+        this.totalQty = (int) bayQty;
+        this.truckQty = parkingGrid.getRows() - 6;
+        this.bikeQty = truckQty;
+    }
+
+    /**
+     * Returns whether a lot of the given dimensions has few enough bays for the ledger to count.
+     *
+     * @param length Length of the parking lot.
+     * @param width Width of the parking lot.
+     * @return true if the lot has at most MAX_BAYS bays.
+     */
+    public static boolean fits(int length, int width) {
+        return getBayQty(length, width) <= MAX_BAYS;
+    }
+
+    /**
+     * Returns the number of available slots for the specified vehicle type.
+     *
+     * @param vehicleType The type of vehicle, e.g. Car, Bike, Motorbike and Truck.
+     * @return Number of available slots, 0 if the type is unknown.
+     */
+    public int getAvailable(String vehicleType) {
+        return getAvailable(checkinQty.get(), getShift(VehicleClass.of(vehicleType)));
+    }
+
+    /**
+     * Records the checkin of a vehicle if there is still capacity for its class.
+     *
+     * @param vehicleClass The class of the vehicle checking in.
+     * @return true if a slot was taken, false if the parking is full for the class.
+     */
+    public boolean checkin(VehicleClass vehicleClass) {
+        int shift = getShift(vehicleClass);
+        if (shift < 0) {
+            return false;
+        }
+        while (true) {
+            long current = checkinQty.get();
+            if (getAvailable(current, shift) <= 0) {
+                return false;
+            }
+            if (checkinQty.compareAndSet(current, current + (1L << shift))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases the slot of a vehicle checking out.
+     *
+     * @param vehicleClass The class of the vehicle checking out.
+     */
+    public void checkout(VehicleClass vehicleClass) {
+        int shift = getShift(vehicleClass);
+        if (shift >= 0) {
+            checkinQty.addAndGet(-(1L << shift));
+        }
+    }
+
+    /**
+     * Returns the number of empty lots.
+     */
+    public int getEmpQty() {
+        return totalQty - getOccQty(checkinQty.get());
+    }
+
+    /**
+     * Returns the number of occupied lots.
+     */
+    public int getOccQty() {
+        return getOccQty(checkinQty.get());
+    }
+
+    private int getAvailable(long packed, int shift) {
+        int empQty = totalQty - getOccQty(packed);
+        if (shift == BIKE_SHIFT) {
+            return Math.min(bikeQty - counter(packed, BIKE_SHIFT), empQty);
+        }
+        if (shift == TRUCK_SHIFT) {
+            return Math.min(truckQty - counter(packed, TRUCK_SHIFT), empQty);
+        }
+        return shift == CAR_SHIFT ? empQty : 0;
+    }
+
+    private static long getBayQty(int length, int width) {
+        return (long) (width - 6) * ((length - 1) / 2);
+    }
+
+    private static int getOccQty(long packed) {
+        return counter(packed, TRUCK_SHIFT) + counter(packed, BIKE_SHIFT) + counter(packed, CAR_SHIFT);
+    }
+
+    private static int counter(long packed, int shift) {
+        return (int) ((packed >>> shift) & COUNTER_MASK);
+    }
+
+    private static int getShift(VehicleClass vehicleClass) {
+        if (vehicleClass == null) {
+            return -1;
+        }
+        switch (vehicleClass.getSpots()) {
+            case VehicleClass.SPOTS_TRUCK_COLUMN: return TRUCK_SHIFT;
+            case VehicleClass.SPOTS_BIKE_COLUMN: return BIKE_SHIFT;
+            default: return CAR_SHIFT;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * The CheckoutJournal class makes the fee log durable. Every checkout record is appended to a binary
+ * journal file as a fixed-size record and the journal is replayed sequentially at startup. The journal is the
+ * source of truth of the fee log; as records have a fixed size, a replay can start at any record, so the
+ * fee log store only replays the records it has not made durable yet.
+ * Appends are group-committed: a flusher thread writes all the records appended since its last round
+ * with a single write and fsync, and each append returns once its record is on disk. A torn record left
+ * by a crash fails its checksum and is cut off at the next startup; whole records found after an invalid one are
+ * reported and saved aside before they are cut off.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class CheckoutJournal implements AutoCloseable {
+
+    // System property naming the journal file, unset to keep the fee log in memory only
+    public static final String JOURNAL_PROPERTY = "parkinglot.journal";
+
+    // Record layout: type, packed regn id, hits, entry minutes, exit minutes, fee cents, hit fee cents, overnight
+    // fee cents, CRC32 of the preceding bytes
+    public static final int RECORD_SIZE = 1 + RegnIdCodec.REGN_ID_LENGTH + 4 + 8 + 8 + 8 + 8 + 8 + 4;
+    private static final int PAYLOAD_SIZE = RECORD_SIZE - 4;
+
+    private static final int INITIAL_BATCH_RECORDS = 64;
+
+    private final FileChannel channel;
+    private final long recordCount;
+    private final long droppedRecords;
+    private final Thread flusher;
+
+    // Guarded by lock: the records waiting for the flusher, and the sequence numbers appended and made durable
+    private final Object lock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(RECORD_SIZE * INITIAL_BATCH_RECORDS);
+    private ByteBuffer flushing = ByteBuffer.allocate(RECORD_SIZE * INITIAL_BATCH_RECORDS);
+    private long appendedSeq = 0;
+    private long durableSeq = 0;
+    private IOException failure = null;
+    private boolean closed = false;
+
+    private CheckoutJournal(FileChannel channel, long recordCount, long droppedRecords) {
+        this.channel = channel;
+        this.recordCount = recordCount;
+        this.droppedRecords = droppedRecords;
+        this.flusher = new Thread(this::flushLoop, "checkout-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Opens the journal file named by the parkinglot.journal system property.
+     *
+     * @param fromRecord Index of the first record to replay.
+     * @param consumer Receives the replayed records, oldest first.
+     * @return The journal, or null if no journal file is named.
+     */
+    public static CheckoutJournal open(long fromRecord, Consumer<CheckoutVehicle> consumer) throws IOException {
+        String file = System.getProperty(JOURNAL_PROPERTY);
+        return file == null || file.isEmpty() ? null : open(Path.of(file), fromRecord, consumer);
+    }
+
+    /**
+     * Opens a journal file, creating it if needed, and replays the records it holds from the given one on.
+     * The records before it are trusted, the ones after it are checked and a torn tail is cut off.
+     *
+     * @param file The journal file.
+     * @param fromRecord Index of the first record to replay.
+     * @param consumer Receives the replayed records, oldest first.
+     * @return The journal, positioned after its last valid record.
+     */
+    public static CheckoutJournal open(Path file, long fromRecord, Consumer<CheckoutVehicle> consumer) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long start = Math.min(fromRecord, channel.size() / RECORD_SIZE) * RECORD_SIZE;
+            long validEnd = replay(channel, start, consumer);
+            long dropped = 0;
+            if (validEnd < channel.size()) {
+                dropped = cutOff(file, channel, validEnd);
+            }
+            channel.position(validEnd);
+            return new CheckoutJournal(channel, validEnd / RECORD_SIZE, dropped);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the number of records the journal held when it was opened.
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the number of whole records cut off when the journal was opened, from its first invalid record on.
+     */
+    public long getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    /**
+     * Appends a checkout record and waits until it is on disk.
+     *
+     * @param checkoutVehicle The checkout record.
+     * @throws IOException If the journal cannot be written or is closed.
+     */
+    public void append(CheckoutVehicle checkoutVehicle) throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                throw new IOException("The checkout journal is closed");
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (pending.remaining() < RECORD_SIZE) {
+                ByteBuffer grown = ByteBuffer.allocate(pending.capacity() * 2);
+                pending.flip();
+                grown.put(pending);
+                pending = grown;
+            }
+            encode(checkoutVehicle, pending);
+            long seq = ++appendedSeq;
+            lock.notifyAll();
+            try {
+                while (durableSeq < seq && failure == null) {
+                    lock.wait();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the checkout journal");
+            }
+            if (durableSeq < seq) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Flushes the pending records and closes the journal file.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    // Writes and syncs the records appended since the last round until the journal is closed
+    private void flushLoop() {
+        while (true) {
+            long target;
+            synchronized (lock) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                if (pending.position() == 0) {
+                    return;
+                }
+                ByteBuffer batch = pending;
+                pending = flushing.capacity() >= batch.capacity() ? flushing : ByteBuffer.allocate(batch.capacity());
+                flushing = batch;
+                target = appendedSeq;
+            }
+            IOException error = null;
+            try {
+                flushing.flip();
+                while (flushing.hasRemaining()) {
+                    channel.write(flushing);
+                }
+                channel.force(false);
+            } catch (IOException ex) {
+                error = ex;
+            }
+            flushing.clear();
+            synchronized (lock) {
+                if (error == null) {
+                    durableSeq = target;
+                } else {
+                    failure = error;
+                }
+                lock.notifyAll();
+                if (error != null) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the records of a journal file from the given offset until its end or its first invalid record.
+     *
+     * @return The offset just after the last valid record.
+     */
+    private static long replay(FileChannel channel, long offset, Consumer<CheckoutVehicle> consumer) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+        long size = channel.size();
+        while (offset + RECORD_SIZE <= size) {
+            buffer.clear();
+            channel.read(buffer, offset);
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_SIZE) {
+                CheckoutVehicle record = decode(buffer);
+                if (record == null) {
+                    return offset;
+                }
+                consumer.accept(record);
+                offset += RECORD_SIZE;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Cuts the journal off at its first invalid record. A crash only tears the last record, so when whole records
+     * follow it the cut is reported, and the bytes cut off are saved next to the journal first so the records
+     * after a corrupted one can still be recovered by hand.
+     *
+     * @return The number of whole records cut off.
+     */
+    private static long cutOff(Path file, FileChannel channel, long validEnd) throws IOException {
+        long size = channel.size();
+        long dropped = (size - validEnd) / RECORD_SIZE;
+        if (dropped > 0) {
+            long intact = 0;
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            for (long offset = validEnd + RECORD_SIZE; offset + RECORD_SIZE <= size; offset += RECORD_SIZE) {
+                record.clear();
+                channel.read(record, offset);
+                if (record.getInt(PAYLOAD_SIZE) == checksum(record, 0)) {
+                    intact++;
+                }
+            }
+            Path saved = file.resolveSibling(file.getFileName() + ".dropped-" + validEnd / RECORD_SIZE);
+            try (FileChannel out = FileChannel.open(saved, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.transferTo(validEnd, size - validEnd, out);
+                out.force(true);
+            }
+            System.err.println("The checkout journal " + file + " has an invalid record at record " + validEnd / RECORD_SIZE
+                    + ": " + dropped + " records from it on, " + intact + " of them intact, were cut off and saved to " + saved);
+        }
+        channel.truncate(validEnd);
+        return dropped;
+    }
+
+    private static void encode(CheckoutVehicle checkoutVehicle, ByteBuffer buffer) {
+        long regnId = RegnIdCodec.pack(checkoutVehicle.getRegistrationId());
+        if (regnId == RegnIdCodec.INVALID) {
+            throw new IllegalArgumentException("Registration id cannot be journaled: " + checkoutVehicle.getRegistrationId());
+        }
+        byte type = VehicleTypeCodec.encode(checkoutVehicle.getVehicleType());
+        if (type == VehicleTypeCodec.INVALID) {
+            throw new IllegalArgumentException("Unknown vehicle type: " + checkoutVehicle.getVehicleType());
+        }
+        int start = buffer.position();
+        buffer.put(type);
+        for (int shift = (RegnIdCodec.REGN_ID_LENGTH - 1) * 8; shift >= 0; shift -= 8) {
+            buffer.put((byte) (regnId >>> shift));
+        }
+        buffer.putInt(checkoutVehicle.getHitNums());
+        buffer.putLong(checkoutVehicle.getEntryMinutes());
+        buffer.putLong(checkoutVehicle.getExitMinutes());
+        buffer.putLong(checkoutVehicle.getParkingFeeCents());
+        buffer.putLong(checkoutVehicle.getHitFeeCents());
+        buffer.putLong(checkoutVehicle.getOvernightFeeCents());
+        buffer.putInt(checksum(buffer, start));
+    }
+
+    // Decodes the record at the buffer position, null if it is torn or corrupted
+    private static CheckoutVehicle decode(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.getInt(start + PAYLOAD_SIZE) != checksum(buffer, start)) {
+            return null;
+        }
+        String type = VehicleTypeCodec.decode(buffer.get());
+        if (type == null) {
+            return null;
+        }
+        long regnId = 0;
+        for (int i = 0; i < RegnIdCodec.REGN_ID_LENGTH; i++) {
+            regnId = (regnId << 8) | (buffer.get() & 0xFF);
+        }
+        CheckoutVehicle checkoutVehicle = new CheckoutVehicle();
+        checkoutVehicle.setVehicleType(type);
+        checkoutVehicle.setRegistrationId(RegnIdCodec.unpack(regnId));
+        checkoutVehicle.setHitNums(buffer.getInt());
+        checkoutVehicle.setEntryMinutes(buffer.getLong());
+        checkoutVehicle.setExitMinutes(buffer.getLong());
+        checkoutVehicle.setParkingFeeCents(buffer.getLong());
+        checkoutVehicle.setHitFeeCents(buffer.getLong());
+        checkoutVehicle.setOvernightFeeCents(buffer.getLong());
+        buffer.getInt();
+        return checkoutVehicle;
+    }
+
+    // CRC32 of the record payload starting at the given offset
+    private static int checksum(ByteBuffer buffer, int start) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(start).limit(start + PAYLOAD_SIZE));
+        return (int) crc.getValue();
+    }
+}
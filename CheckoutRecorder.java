@@ -0,0 +1,22 @@
+import java.io.IOException;
+
+/**
+ * The CheckoutRecorder interface makes the record of a checkout durable before the vehicle leaves the lot, so a
+ * failed write or a crash never loses a fee. A lot in one process records to its CheckoutJournal; a shard records
+ * through its coordinator, which journals the checkouts of the whole site.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+@FunctionalInterface
+public interface CheckoutRecorder {
+
+    /**
+     * Records a checkout, returning once the record is durable.
+     *
+     * @param checkoutVehicle The checkout record of the vehicle about to leave.
+     * @return The row of the fee log of the site the checkout was recorded at.
+     * @throws IOException If the record could not be made durable, the vehicle then stays in the lot.
+     */
+    long record(CheckoutVehicle checkoutVehicle) throws IOException;
+}
@@ -13,14 +13,23 @@ public class CheckoutVehicle {
     // Represents the registration ID of the vehicle.
     private String registrationId;
 
-    // Represents the date and time when the vehicle entered the parkinglot.
-    private java.util.Date entryDateTime;
+    // Represents the date and time when the vehicle entered the parkinglot, in epoch minutes.
+    private long entryMinutes = Date.NO_TIME;
 
-    // Represents the date and time when the vehicle exited the parkinglot.
-    private java.util.Date exitDateTime;
+    // Represents the date and time when the vehicle exited the parkinglot, in epoch minutes.
+    private long exitMinutes = Date.NO_TIME;
 
-    // Represents the amount charged for parking the vehicle.
-    private double parkingFee;
+    // Represents the number of hits charged to the vehicle.
+    private int hitNums;
+
+    // Represents the amount charged for parking the vehicle, in cents.
+    private long parkingFeeCents;
+
+    // Represents the part of the parking fee charged for the hits, in cents, as priced at checkout.
+    private long hitFeeCents;
+
+    // Represents the part of the parking fee charged for the overnight stays, in cents, as priced at checkout.
+    private long overnightFeeCents;
 
     /**
      * Returns the type of the vehicle.
@@ -59,7 +68,7 @@ public class CheckoutVehicle {
      * @return A Date object representing the entry date and time of the vehicle.
      */
     public java.util.Date getEntryDateTime() {
-        return entryDateTime;
+        return Date.toJavaDate(getEntryMinutes());
     }
 
     /**
@@ -67,7 +76,23 @@ public class CheckoutVehicle {
      * @param entryDateTime A Date object representing the entry date and time of the vehicle.
      */
     public void setEntryDateTime(java.util.Date entryDateTime) {
-        this.entryDateTime = entryDateTime;
+        this.entryMinutes = Date.toEpochMinutes(entryDateTime);
+    }
+
+    /**
+     * Returns the entry date and time of the vehicle.
+     * @return The entry date and time in epoch minutes.
+     */
+    public long getEntryMinutes() {
+        return entryMinutes;
+    }
+
+    /**
+     * Sets the entry date and time of the vehicle.
+     * @param entryMinutes The entry date and time in epoch minutes.
+     */
+    public void setEntryMinutes(long entryMinutes) {
+        this.entryMinutes = entryMinutes;
     }
 
     /**
@@ -75,7 +100,7 @@ public class CheckoutVehicle {
      * @return A Date object representing the exit date and time of the vehicle.
      */
     public java.util.Date getExitDateTime() {
-        return exitDateTime;
+        return Date.toJavaDate(getExitMinutes());
     }
 
     /**
@@ -83,7 +108,55 @@ public class CheckoutVehicle {
      * @param exitDateTime A Date object representing the exit date and time of the vehicle.
      */
     public void setExitDateTime(java.util.Date exitDateTime) {
-        this.exitDateTime = exitDateTime;
+        this.exitMinutes = Date.toEpochMinutes(exitDateTime);
+    }
+
+    /**
+     * Returns the exit date and time of the vehicle.
+     * @return The exit date and time in epoch minutes.
+     */
+    public long getExitMinutes() {
+        return exitMinutes;
+    }
+
+    /**
+     * Sets the exit date and time of the vehicle.
+     * @param exitMinutes The exit date and time in epoch minutes.
+     */
+    public void setExitMinutes(long exitMinutes) {
+        this.exitMinutes = exitMinutes;
+    }
+
+    /**
+     * Returns the number of hits charged to the vehicle.
+     * @return The number of hits.
+     */
+    public int getHitNums() {
+        return hitNums;
+    }
+
+    /**
+     * Sets the number of hits charged to the vehicle.
+     * @param hitNums The number of hits.
+     */
+    public void setHitNums(int hitNums) {
+        this.hitNums = hitNums;
+    }
+
+    /**
+     * Returns the number of hours charged at the hourly rate.
+     * @return The parking hours, the ones left after the full days.
+     */
+    public long getParkingHours() {
+        return FeeCalculator.getParkingHours(FeeCalculator.getDiffHours(getEntryMinutes(), getExitMinutes()));
+    }
+
+    /**
+     * Returns the number of overnight stays charged.
+     * @return The overnight stays, one per full day parked.
+     */
+    public long getOvernight() {
+        return FeeCalculator.getOvernight(FeeCalculator.getDiffHours(getEntryMinutes(), getExitMinutes()));
     }
 
     /**
@@ -91,7 +164,7 @@ public class CheckoutVehicle {
      * @return A double representing the parking fee.
      */
     public double getParkingFee() {
-        return parkingFee;
+        return FeeCalculator.toDollars(getParkingFeeCents());
     }
 
     /**
@@ -99,7 +172,63 @@ public class CheckoutVehicle {
      * @param parkingFee A double representing the parking fee for the vehicle.
      */
     public void setParkingFee(double parkingFee) {
-        this.parkingFee = parkingFee;
+        this.parkingFeeCents = Math.round(parkingFee * FeeCalculator.CENTS_PER_DOLLAR);
+    }
+
+    /**
+     * Returns the parking fee for the vehicle.
+     * @return The parking fee in cents.
+     */
+    public long getParkingFeeCents() {
+        return parkingFeeCents;
+    }
+
+    /**
+     * Sets the parking fee for the vehicle.
+     * @param parkingFeeCents The parking fee in cents.
+     */
+    public void setParkingFeeCents(long parkingFeeCents) {
+        this.parkingFeeCents = parkingFeeCents;
+    }
+
+    /**
+     * Returns the part of the parking fee charged for the hits.
+     * @return The hit fee in cents, priced by the tariff plan that set the parking fee.
+     */
+    public long getHitFeeCents() {
+        return hitFeeCents;
+    }
+
+    /**
+     * Sets the part of the parking fee charged for the hits.
+     * @param hitFeeCents The hit fee in cents.
+     */
+    public void setHitFeeCents(long hitFeeCents) {
+        this.hitFeeCents = hitFeeCents;
+    }
+
+    /**
+     * Returns the part of the parking fee charged for the overnight stays.
+     * @return The overnight fee in cents, priced by the tariff plan that set the parking fee.
+     */
+    public long getOvernightFeeCents() {
+        return overnightFeeCents;
+    }
+
+    /**
+     * Sets the part of the parking fee charged for the overnight stays.
+     * @param overnightFeeCents The overnight fee in cents.
+     */
+    public void setOvernightFeeCents(long overnightFeeCents) {
+        this.overnightFeeCents = overnightFeeCents;
+    }
+
+    /**
+     * Returns the part of the parking fee charged by the hour.
+     * @return The hourly fee in cents, what is left of the parking fee after the hit and overnight fees.
+     */
+    public long getHourlyFeeCents() {
+        return getParkingFeeCents() - getHitFeeCents() - getOvernightFeeCents();
     }
 }
 
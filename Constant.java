@@ -47,6 +47,7 @@ public class Constant {
     public static final String SYMBOL_B = "B";
     public static final String SYMBOL_M = "M";
     public static final int MINIMUM_SIZE = 7;
+    public static final String PROMPT_TOO_MANY_BAYS = "A parking lot cannot have more than %d bays.";
 
     // Prompt texts that guide the user on how to proceed in the main menu
     public static final String PROMPT_MAIN = "Empty Lots: %s | Occupied: %s\n"
@@ -72,6 +73,16 @@ public class Constant {
     public static final String CMD_CHECKIN = "checkin";
     public static final String CMD_CHECKOUT = "checkout";
     public static final String CMD_PARKINGFEELOG = "parkingfeelog";
+    public static final String CMD_SEARCHFEELOG = "searchfeelog";
+    public static final String CMD_NEXT_PAGE = "n";
+    public static final String CMD_REPORT = "report";
+    public static final String CMD_WINDOW = "window";
+    public static final String CMD_OVERVIEW = "overview";
+    public static final String CMD_METRICS = "metrics";
+    public static final String CMD_METRICS_DUMP = "metricsdump";
+    public static final String CMD_TARIFF = "tariff";
+    public static final String CMD_RELOAD_TARIFF = "reloadtariff";
+    public static final String CMD_RERATE = "rerate";
     public static final String CMD_PARK = "park";
     public static final String CMD_INIT = "init";
     public static final String CMD_VIEW = "view";
@@ -92,11 +103,29 @@ public class Constant {
             + "park: park your car to one of the empty spot.\n"
             + "checkout: view the parking fee while exiting the parking lot.\n"
             + "parkingfeelog: view the transaction log for parking lot.\n"
+            + "searchfeelog: search the transaction log by exit date, vehicle type or regn id.\n"
+            + "report: view the revenue by vehicle type, hour of the day and day.\n"
+            + "window: view the part of a large parking lot around a vehicle or a row and column.\n"
+            + "overview: view a large parking lot shrunk to fit the screen, shaded by how full it is.\n"
+            + "metrics: view how many checkins, park steps, automatic parks and checkouts ran and how long they took.\n"
+            + "metricsdump: print the metrics one figure per line for scripts to read.\n"
+            + "tariff: view the rates of the tariff plan checkouts are priced with.\n"
+            + "reloadtariff: load the tariff plan file again without restarting.\n"
+            + "rerate: price the whole transaction log with another tariff plan and compare the revenue.\n"
             + "exit: To exit the program.\n"
             + "\n"
             + "Type 'commands' to list all the available commands\n"
             + "Type 'menu' to return to the main menu\n"
             + "> ";
     public static final String CMD_MENU = "menu"; // Command keyword for main menu
+
+    // Command line argument running a file of commands instead of the console, see BatchRunner
+    public static final String ARG_BATCH = "--batch";
+
+    // Prompt between the pages of the transaction log
+    public static final String PROMPT_NEXT_PAGE = "Type 'n' for the next page or 'menu' to return to the main menu\n> ";
+
+    // Prompt for moving a vehicle while parking
+    public static final String PROMPT_PARK_MOVE = "Type w/s/a/d to move the vehicle to up/down/left/right, p to park it automatically, e to drive it to the exit or else press q to exit.\n> ";
 }
 
@@ -1,22 +1,36 @@
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.SortedMap;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The Date class provides utility methods for date formatting, parsing, and calculations.
  * It helps in converting date objects to formatted strings and vice versa according to specified patterns.
  * Additionally, it offers a method to calculate the difference in days between two dates.
  * The class is particularly useful in scenarios where date manipulations are frequent and crucial for business logic.
+ * The yyyy-MM-dd and yyyy-MM-dd HH:mm patterns are handled by DateCodec, other patterns by cached
+ * java.time formatters, so every method is thread-safe.
  *
  * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
  */
- 
+
 public class Date {
 
     // Constants to represent the date and datetime format patterns
     public static final String FORMAT_DATETIME = "yyyy-MM-dd HH:mm";
     public static final String FORMAT_DATE     = "yyyy-MM-dd";
-    
+
+    // Marker for a date and time that has not been set, in epoch minutes
+    public static final long NO_TIME = DateCodec.INVALID;
+
+    // Formatters for any other pattern, built once per pattern
+    private static final Map<String, DateTimeFormatter> FORMATTERS = new ConcurrentHashMap<>();
+
     /**
      * Formats the given Date object to a String representation according to the specified pattern.
      * @param date The Date object to be formatted.
@@ -24,54 +38,101 @@ public class Date {
      * @return A formatted date string or null if the date object is null.
      */
     public static String getDateFormat(java.util.Date date, String pattern) {
-        SimpleDateFormat sdf = new SimpleDateFormat();
-        String str = null;
-        sdf.applyPattern(pattern);
-        if (date != null) {
-            str = sdf.format(date);
+        if (date == null) {
+            return null;
         }
-        return str;
+        if (FORMAT_DATETIME.equals(pattern)) {
+            return DateCodec.formatEpochMinutes(DateCodec.toEpochMinutes(date));
+        }
+        if (FORMAT_DATE.equals(pattern)) {
+            return DateCodec.formatEpochDay(Math.floorDiv(DateCodec.toEpochMinutes(date), 24 * 60));
+        }
+        return getFormatter(pattern).format(LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault()));
     }
-    
+
     /**
      * Parses the given date string to a Date object according to the specified pattern.
      * @param strDate The date string to be parsed.
      * @param pattern The pattern to parse the date string.
-     * @return A Date object representing the parsed date string or null if the string is null or empty.
+     * @return A Date object representing the parsed date string or null if the string is null, empty or invalid.
      */
     public static java.util.Date parseDateFormat(String strDate, String pattern) {
-        java.util.Date date = null;
-        if (strDate == null || strDate.trim().length() <= 0) { return date; }
-        SimpleDateFormat sdf = new SimpleDateFormat();
-        sdf.applyPattern(pattern);
+        if (strDate == null || strDate.trim().length() <= 0) { return null; }
+        if (FORMAT_DATETIME.equals(pattern) || FORMAT_DATE.equals(pattern)) {
+            long epochMinutes = FORMAT_DATETIME.equals(pattern)
+                    ? DateCodec.parseEpochMinutes(strDate)
+                    : multiplyValid(DateCodec.parseEpochDay(strDate), 24 * 60);
+            return epochMinutes == DateCodec.INVALID ? null : DateCodec.toJavaDate(epochMinutes);
+        }
         try {
-            date = sdf.parse(strDate);
-        } catch (Exception e) {
-            // Exception handling can be enhanced here for specific scenarios.
+            TemporalAccessor parsed = getFormatter(pattern).parse(strDate);
+            LocalDate date = LocalDate.from(parsed);
+            LocalDateTime dateTime = parsed.isSupported(ChronoField.MINUTE_OF_DAY)
+                    ? date.atTime(parsed.get(ChronoField.HOUR_OF_DAY), parsed.get(ChronoField.MINUTE_OF_HOUR))
+                    : date.atStartOfDay();
+            return java.util.Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+        } catch (DateTimeException e) {
+            return null;
         }
-        return date;
     }
-    
+
     /**
      * Calculates the difference in days between two date strings.
      * @param startDate The start date string.
      * @param endDate The end date string.
-     * @return The difference in days between the two dates.
+     * @return The difference in days between the two dates, 0 if either date is invalid.
      */
     public static long getDiffDays(String startDate, String endDate) {
-        long days = 0;
-        DateFormat dft = new SimpleDateFormat(FORMAT_DATE);
-        try {
-            java.util.Date star = dft.parse(startDate);
-            java.util.Date endDay = dft.parse(endDate);
-            Long starTime = star.getTime() / 1000;
-            Long endTime = endDay.getTime() / 1000;
-            long num = endTime - starTime;
-            days = num / 24 / 60 / 60;
-        } catch (Exception e) {
-            // Enhance exception handling here, possibly with logging or user notification.
+        long start = DateCodec.parseEpochDay(startDate);
+        long end = DateCodec.parseEpochDay(endDate);
+        if (start == DateCodec.INVALID || end == DateCodec.INVALID) {
+            return 0;
         }
-        return days;
+        return end - start;
+    }
+
+    /**
+     * Converts a date and a time string to minutes since 1970-01-01 00:00 (wall-clock time, no time zone).
+     * @param strDate The date string in yyyy-MM-dd format.
+     * @param strTime The time string in HH:mm format.
+     * @return The epoch minutes or NO_TIME if either string is missing or invalid.
+     */
+    public static long parseEpochMinutes(String strDate, String strTime) {
+        return DateCodec.parseEpochMinutes(strDate, strTime);
     }
-}
 
+    /**
+     * Formats epoch minutes as a yyyy-MM-dd HH:mm string.
+     * @param epochMinutes The minutes since 1970-01-01 00:00.
+     * @return A formatted datetime string or null if the time is not set.
+     */
+    public static String formatEpochMinutes(long epochMinutes) {
+        return epochMinutes == NO_TIME ? null : DateCodec.formatEpochMinutes(epochMinutes);
+    }
+
+    /**
+     * Converts epoch minutes to a Date object in the default time zone.
+     * @param epochMinutes The minutes since 1970-01-01 00:00.
+     * @return A Date object or null if the time is not set.
+     */
+    public static java.util.Date toJavaDate(long epochMinutes) {
+        return epochMinutes == NO_TIME ? null : DateCodec.toJavaDate(epochMinutes);
+    }
+
+    /**
+     * Converts a Date object in the default time zone to epoch minutes.
+     * @param date The Date object to be converted.
+     * @return The epoch minutes or NO_TIME if the date is null.
+     */
+    public static long toEpochMinutes(java.util.Date date) {
+        return date == null ? NO_TIME : DateCodec.toEpochMinutes(date);
+    }
+
+    private static DateTimeFormatter getFormatter(String pattern) {
+        return FORMATTERS.computeIfAbsent(pattern, DateTimeFormatter::ofPattern);
+    }
+
+    private static long multiplyValid(long value, int factor) {
+        return value == DateCodec.INVALID ? DateCodec.INVALID : value * factor;
+    }
+}
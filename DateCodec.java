@@ -0,0 +1,221 @@
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * The DateCodec class converts the fixed-width yyyy-MM-dd and HH:mm strings used by the parking lot to epoch
+ * days and epoch minutes and back. Parsing validates and converts in a single pass over the characters
+ * without allocating, and the class holds no mutable state, so it can be shared by any number of threads.
+ * Conversions to and from java.util.Date go through java.time in the default time zone.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class DateCodec {
+
+    // Returned by the parse methods for a missing or invalid input
+    public static final long INVALID = Long.MIN_VALUE;
+
+    public static final int DATE_LENGTH = 10;
+    public static final int TIME_LENGTH = 5;
+    public static final int DATETIME_LENGTH = DATE_LENGTH + 1 + TIME_LENGTH;
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    // Days from 0000-03-01 to 1970-01-01 in the proleptic Gregorian calendar
+    private static final long DAYS_0000_TO_1970 = 719468;
+    private static final int DAYS_PER_400_YEARS = 146097;
+
+    /**
+     * Parses a yyyy-MM-dd date.
+     * @param s The date string.
+     * @return The number of days since 1970-01-01 or INVALID if the string is not a valid date.
+     */
+    public static long parseEpochDay(CharSequence s) {
+        if (s == null || s.length() != DATE_LENGTH) {
+            return INVALID;
+        }
+        return parseEpochDay(s, 0);
+    }
+
+    private static long parseEpochDay(CharSequence s, int offset) {
+        if (s.charAt(offset + 4) != '-' || s.charAt(offset + 7) != '-') {
+            return INVALID;
+        }
+        int year = digits(s, offset, 4);
+        int month = digits(s, offset + 5, 2);
+        int day = digits(s, offset + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return INVALID;
+        }
+        return toEpochDay(year, month, day);
+    }
+
+    /**
+     * Parses a HH:mm time.
+     * @param s The time string.
+     * @return The minutes since midnight or INVALID if the string is not a valid time.
+     */
+    public static long parseMinuteOfDay(CharSequence s) {
+        if (s == null || s.length() != TIME_LENGTH) {
+            return INVALID;
+        }
+        return parseMinuteOfDay(s, 0);
+    }
+
+    private static long parseMinuteOfDay(CharSequence s, int offset) {
+        if (s.charAt(offset + 2) != ':') {
+            return INVALID;
+        }
+        int hour = digits(s, offset, 2);
+        int minute = digits(s, offset + 3, 2);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            return INVALID;
+        }
+        return hour * 60 + minute;
+    }
+
+    /**
+     * Parses a yyyy-MM-dd date and a HH:mm time.
+     * @return The minutes since 1970-01-01 00:00 or INVALID if either string is not valid.
+     */
+    public static long parseEpochMinutes(CharSequence date, CharSequence time) {
+        long epochDay = parseEpochDay(date);
+        long minuteOfDay = parseMinuteOfDay(time);
+        if (epochDay == INVALID || minuteOfDay == INVALID) {
+            return INVALID;
+        }
+        return epochDay * MINUTES_PER_DAY + minuteOfDay;
+    }
+
+    /**
+     * Parses a yyyy-MM-dd HH:mm datetime.
+     * @return The minutes since 1970-01-01 00:00 or INVALID if the string is not valid.
+     */
+    public static long parseEpochMinutes(CharSequence s) {
+        if (s == null || s.length() != DATETIME_LENGTH || s.charAt(DATE_LENGTH) != ' ') {
+            return INVALID;
+        }
+        long epochDay = parseEpochDay(s, 0);
+        long minuteOfDay = parseMinuteOfDay(s, DATE_LENGTH + 1);
+        if (epochDay == INVALID || minuteOfDay == INVALID) {
+            return INVALID;
+        }
+        return epochDay * MINUTES_PER_DAY + minuteOfDay;
+    }
+
+    /**
+     * Writes epoch minutes as yyyy-MM-dd HH:mm into a buffer.
+     * @param epochMinutes The minutes since 1970-01-01 00:00.
+     * @param buf The buffer, at least DATETIME_LENGTH chars from the offset.
+     * @param offset The position of the first char.
+     */
+    public static void formatEpochMinutes(long epochMinutes, char[] buf, int offset) {
+        long epochDay = Math.floorDiv(epochMinutes, MINUTES_PER_DAY);
+        int minuteOfDay = Math.floorMod(epochMinutes, MINUTES_PER_DAY);
+        formatEpochDay(epochDay, buf, offset);
+        buf[offset + DATE_LENGTH] = ' ';
+        writeDigits(buf, offset + 11, minuteOfDay / 60, 2);
+        buf[offset + 13] = ':';
+        writeDigits(buf, offset + 14, minuteOfDay % 60, 2);
+    }
+
+    /**
+     * Writes an epoch day as yyyy-MM-dd into a buffer.
+     * @param epochDay The days since 1970-01-01.
+     * @param buf The buffer, at least DATE_LENGTH chars from the offset.
+     * @param offset The position of the first char.
+     */
+    public static void formatEpochDay(long epochDay, char[] buf, int offset) {
+        // civil-from-days, with years starting on March 1st
+        long z = epochDay + DAYS_0000_TO_1970;
+        long era = Math.floorDiv(z, DAYS_PER_400_YEARS);
+        long dayOfEra = z - era * DAYS_PER_400_YEARS;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+        writeDigits(buf, offset, year, 4);
+        buf[offset + 4] = '-';
+        writeDigits(buf, offset + 5, month, 2);
+        buf[offset + 7] = '-';
+        writeDigits(buf, offset + 8, day, 2);
+    }
+
+    /**
+     * Formats epoch minutes as a yyyy-MM-dd HH:mm string.
+     */
+    public static String formatEpochMinutes(long epochMinutes) {
+        char[] buf = new char[DATETIME_LENGTH];
+        formatEpochMinutes(epochMinutes, buf, 0);
+        return new String(buf);
+    }
+
+    /**
+     * Formats an epoch day as a yyyy-MM-dd string.
+     */
+    public static String formatEpochDay(long epochDay) {
+        char[] buf = new char[DATE_LENGTH];
+        formatEpochDay(epochDay, buf, 0);
+        return new String(buf);
+    }
+
+    /**
+     * Converts epoch minutes to a Date object in the default time zone.
+     */
+    public static java.util.Date toJavaDate(long epochMinutes) {
+        LocalDateTime dateTime = LocalDateTime.ofEpochSecond(epochMinutes * 60, 0, ZoneOffset.UTC);
+        return java.util.Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    /**
+     * Converts a Date object in the default time zone to epoch minutes.
+     */
+    public static long toEpochMinutes(java.util.Date date) {
+        LocalDateTime dateTime = LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
+        return Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    /**
+     * Returns the number of days from 1970-01-01 to the given date.
+     */
+    public static long toEpochDay(int year, int month, int day) {
+        // days-from-civil, with years starting on March 1st
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * DAYS_PER_400_YEARS + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    // Reads a fixed number of decimal digits, -1 if any of them is not a digit
+    private static int digits(CharSequence s, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void writeDigits(char[] buf, int offset, int value, int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            buf[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
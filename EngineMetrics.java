@@ -0,0 +1,141 @@
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The EngineMetrics class counts the operations of the parking engine and how long they take, so a busy hour can
+ * be read back by operation: how many checkins, park steps, automatic parks, drives to the exit, checkouts and fee
+ * quotes ran, how many were turned away, and their latency percentiles. The free capacity of the lot is read as gauges
+ * from the parking service when the metrics are shown, so it costs nothing while the gates work.
+ * Every operation has its own LatencyHistogram and adders, recording is lock-free and allocates nothing, and the
+ * metrics are shown either as a table for the console or as one "name{labels} value" line per figure for scripts.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class EngineMetrics {
+
+    /**
+     * The timed operations of the engine.
+     */
+    public enum Operation {
+        CHECKIN("checkin"),
+        PARK_STEP("park_step"), // One move of a vehicle by a single key
+        AUTO_PARK("auto_park"), // A whole route from the entrance to a free bay
+        DRIVE_TO_EXIT("drive_to_exit"), // A whole route from a bay to the exit
+        RENDER("render"), // Redrawing the lot after a park step
+        CHECKOUT("checkout"),
+        FEE_QUOTE("fee_quote");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final String[] VEHICLE_TYPES = {
+            Constant.VEHICLE_TYPE_CAR, Constant.VEHICLE_TYPE_BIKE, Constant.VEHICLE_TYPE_MOTORBIKE, Constant.VEHICLE_TYPE_TRUCK
+    };
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_MICRO = 1_000.0;
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private final LongAdder[] rejected = new LongAdder[OPERATIONS.length];
+
+    public EngineMetrics() {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            latencies[i] = new LatencyHistogram();
+            rejected[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records an operation that started at the given System.nanoTime().
+     *
+     * @param operation The operation.
+     * @param startNanos The System.nanoTime() taken when it started.
+     * @param ok False if the operation was turned away, e.g. a checkin on a full lot or a move into a wall.
+     */
+    public void record(Operation operation, long startNanos, boolean ok) {
+        latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+        if (!ok) {
+            rejected[operation.ordinal()].increment();
+        }
+    }
+
+    public LatencyHistogram getLatency(Operation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    public long getRejected(Operation operation) {
+        return rejected[operation.ordinal()].sum();
+    }
+
+    /**
+     * Prints the metrics as a table, latencies in microseconds, and the free capacity per vehicle type.
+     *
+     * @param out The stream to print to.
+     * @param service The parking service the gauges are read from.
+     */
+    public void print(PrintStream out, ParkingService service) {
+        String line = "-".repeat(86);
+        out.println(line);
+        out.printf("|%12s|%9s|%9s|%9s|%9s|%9s|%9s|%9s|%n",
+                "Operation", "Count", "Rejected", "Mean us", "p50 us", "p99 us", "p99.9 us", "Max us");
+        out.println(line);
+        for (Operation operation : OPERATIONS) {
+            LatencyHistogram latency = getLatency(operation);
+            out.printf(Locale.ROOT, "|%12s|%9d|%9d|%9.1f|%9.1f|%9.1f|%9.1f|%9.1f|%n",
+                    operation.getLabel(), latency.getCount(), getRejected(operation),
+                    latency.getMeanNanos() / NANOS_PER_MICRO,
+                    latency.getPercentileNanos(0.5) / NANOS_PER_MICRO,
+                    latency.getPercentileNanos(0.99) / NANOS_PER_MICRO,
+                    latency.getPercentileNanos(0.999) / NANOS_PER_MICRO,
+                    latency.getMaxNanos() / NANOS_PER_MICRO);
+        }
+        out.println(line);
+        // the empty and occupied bays follow on the main prompt
+        if (service.getEmpQty() == Constant.QTY_INIT_VALUE) {
+            out.println("The parking lot is not initialised.");
+            return;
+        }
+        StringBuilder free = new StringBuilder("Free by type:");
+        for (String vehicleType : VEHICLE_TYPES) {
+            free.append(' ').append(vehicleType).append(' ').append(service.getAvailable(vehicleType));
+        }
+        out.println(free);
+    }
+
+    /**
+     * Prints the metrics one figure per line as "name{labels} value", latencies in nanoseconds, for scripts to read.
+     *
+     * @param out The stream to print to.
+     * @param service The parking service the gauges are read from.
+     */
+    public void printText(PrintStream out, ParkingService service) {
+        for (Operation operation : OPERATIONS) {
+            LatencyHistogram latency = getLatency(operation);
+            String labels = "{op=\"" + operation.getLabel() + "\"";
+            out.println("parkinglot_operations_total" + labels + "} " + latency.getCount());
+            out.println("parkinglot_operations_rejected_total" + labels + "} " + getRejected(operation));
+            out.println("parkinglot_latency_nanos_sum" + labels + "} " + latency.getTotalNanos());
+            for (double percentile : PERCENTILES) {
+                out.println("parkinglot_latency_nanos" + labels + ",quantile=\"" + percentile + "\"} "
+                        + latency.getPercentileNanos(percentile));
+            }
+            out.println("parkinglot_latency_nanos_max" + labels + "} " + latency.getMaxNanos());
+        }
+        out.println("parkinglot_empty_bays " + service.getEmpQty());
+        out.println("parkinglot_occupied_bays " + service.getOccQty());
+        for (String vehicleType : VEHICLE_TYPES) {
+            out.println("parkinglot_free_bays{type=\"" + vehicleType.toLowerCase() + "\"} "
+                    + service.getAvailable(vehicleType));
+        }
+    }
+}
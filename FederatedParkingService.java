@@ -0,0 +1,316 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The FederatedParkingService class hosts several parking lots, the levels or decks of one site, behind a single
+ * ParkingService. Every level is a ParkingLotService of its own with its own grid, capacity ledger, locks and lot
+ * store, so gates working on different levels never share a lock and the levels scale across cores.
+ * Arrivals go to the level with the most free capacity for their vehicle type, read from a shared AvailabilityIndex
+ * that the levels update after every checkin and checkout. The only other shared state is the map from registration
+ * id to level, which routes every later operation of a vehicle, and the fee log, journal and revenue totals of the site.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class FederatedParkingService implements ParkingService, AutoCloseable {
+
+    // Number of levels hosted by the console, 1 for a single parking lot
+    public static final String LEVELS_PROPERTY = "parkinglot.levels";
+
+    private static final String LEVEL_DIR_PREFIX = "level-";
+    private static final int TYPE_COUNT = 4;
+
+    private final ParkingLot parkingLot = new ParkingLot(this);
+    private final ParkingLotService[] levels;
+    private final LotStore[] lotStores; // Per level, null when the levels are kept in memory only
+    private final FeeLogStore feeLog;
+    private final AvailabilityIndex availability;
+    private final ConcurrentHashMap<String, Integer> levelByRegnId = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a site whose levels, fee log and revenue totals are kept in memory only.
+     *
+     * @param levelCount The number of levels.
+     */
+    public FederatedParkingService(int levelCount) {
+        this.feeLog = new FeeLogStore();
+        this.levels = new ParkingLotService[levelCount];
+        this.lotStores = null;
+        for (int level = 0; level < levelCount; level++) {
+            levels[level] = new ParkingLotService(feeLog);
+        }
+        this.availability = new AvailabilityIndex(levelCount);
+    }
+
+    private FederatedParkingService(ParkingLotService[] levels, LotStore[] lotStores, FeeLogStore feeLog) {
+        this.levels = levels;
+        this.lotStores = lotStores;
+        this.feeLog = feeLog;
+        this.availability = new AvailabilityIndex(levels.length);
+        // route the vehicles restored on every level
+        for (int level = 0; level < levels.length; level++) {
+            for (String regnId : levels[level].getRegnIds()) {
+                levelByRegnId.put(regnId, level);
+            }
+            refresh(level);
+        }
+    }
+
+    /**
+     * Opens a site whose fee log is shared by the levels and whose levels are restored from and persisted to
+     * their own lot stores, in the level-1, level-2... directories of the state directory.
+     *
+     * @param levelCount The number of levels.
+     * @param journal The checkout journal of the site, or null to keep the fee log in memory only.
+     * @param feeLog The fee log store of the site, already caught up with the journal.
+     * @param stateDir The state directory of the site, or null to keep the levels in memory only.
+     * @param snapshotInterval Number of logged changes after which a level takes a new snapshot.
+     */
+    public static FederatedParkingService open(int levelCount, CheckoutJournal journal, FeeLogStore feeLog,
+                                               Path stateDir, int snapshotInterval) throws IOException {
+        LotStore[] lotStores = new LotStore[levelCount];
+        ParkingLotService[] levels = new ParkingLotService[levelCount];
+        try {
+            for (int level = 0; level < levelCount; level++) {
+                if (stateDir != null) {
+                    lotStores[level] = new LotStore(stateDir.resolve(LEVEL_DIR_PREFIX + (level + 1)), snapshotInterval);
+                }
+                levels[level] = new ParkingLotService(journal, feeLog, lotStores[level]);
+            }
+        } catch (IOException | RuntimeException ex) {
+            closeAll(lotStores);
+            throw ex;
+        }
+        return new FederatedParkingService(levels, lotStores, feeLog);
+    }
+
+    /**
+     * Opens a site with the levels, state directory and snapshot interval named by the system properties.
+     */
+    public static FederatedParkingService open(CheckoutJournal journal, FeeLogStore feeLog) throws IOException {
+        return open(Integer.getInteger(LEVELS_PROPERTY, 1), journal, feeLog,
+                LotStore.getStateDir(),
+                Integer.getInteger(LotStore.SNAPSHOT_INTERVAL_PROPERTY, LotStore.DEFAULT_SNAPSHOT_INTERVAL));
+    }
+
+    @Override
+    public synchronized ParkingResult initParkingLot(int length, int width) {
+        if (getOccQty() > 0) {
+            return ParkingResult.of(ParkingResult.Status.LOT_OCCUPIED);
+        }
+        for (int level = 0; level < levels.length; level++) {
+            ParkingResult result = levels[level].initParkingLot(length, width);
+            if (!result.isOk()) {
+                return result;
+            }
+            refresh(level);
+        }
+        return ParkingResult.of(ParkingResult.Status.OK);
+    }
+
+    @Override
+    public ParkingResult checkIn(String vehicleType, String regnId, String model, String colour,
+                                 String dateEntry, String timeEntry) {
+        if (getEmpQty() == Constant.QTY_INIT_VALUE) {
+            return ParkingResult.of(ParkingResult.Status.NOT_INITIALISED);
+        }
+        if (!parkingLot.isValidVehicleType(vehicleType)) {
+            return ParkingResult.of(ParkingResult.Status.INVALID_VEHICLE_TYPE);
+        }
+        byte typeCode = VehicleTypeCodec.encode(parkingLot.toVehicleTypeName(vehicleType));
+        if (getEmpQty() <= 0) {
+            return ParkingResult.of(ParkingResult.Status.PARKING_FULL);
+        }
+        int level = availability.best(typeCode);
+        if (level < 0) {
+            return ParkingResult.of(ParkingResult.Status.PARKING_FULL_FOR_TYPE);
+        }
+        if (!parkingLot.isValidRegnId(regnId)) {
+            return ParkingResult.of(ParkingResult.Status.INVALID_REGN_ID);
+        }
+        // reserve the registration id on the whole site before the level checks the vehicle in
+        if (levelByRegnId.putIfAbsent(regnId, level) != null) {
+            return ParkingResult.of(ParkingResult.Status.DUPLICATE_REGN_ID);
+        }
+        for (int attempt = 0; ; attempt++) {
+            ParkingResult result = levels[level].checkIn(vehicleType, regnId, model, colour, dateEntry, timeEntry);
+            refresh(level);
+            boolean full = result.getStatus() == ParkingResult.Status.PARKING_FULL
+                    || result.getStatus() == ParkingResult.Status.PARKING_FULL_FOR_TYPE;
+            // another gate filled the level since it was picked, try the next best one
+            int next = full && attempt < levels.length ? availability.best(typeCode) : -1;
+            if (result.isOk() || next < 0) {
+                if (!result.isOk()) {
+                    levelByRegnId.remove(regnId);
+                }
+                return result;
+            }
+            level = next;
+            levelByRegnId.put(regnId, level);
+        }
+    }
+
+    @Override
+    public ParkingResult move(String regnId, char direction) {
+        int level = findLevel(regnId);
+        return level < 0 ? notFound() : levels[level].move(regnId, direction);
+    }
+
+    @Override
+    public ParkingResult autoPark(String regnId) {
+        int level = findLevel(regnId);
+        return level < 0 ? notFound() : levels[level].autoPark(regnId);
+    }
+
+    @Override
+    public ParkingResult driveToExit(String regnId) {
+        int level = findLevel(regnId);
+        return level < 0 ? notFound() : levels[level].driveToExit(regnId);
+    }
+
+    @Override
+    public ParkingResult quoteCheckout(String regnId, String dateExit, String timeExit) {
+        int level = findLevel(regnId);
+        return level < 0 ? notFound() : levels[level].quoteCheckout(regnId, dateExit, timeExit);
+    }
+
+    @Override
+    public ParkingResult checkOut(String regnId, String dateExit, String timeExit) {
+        int level = findLevel(regnId);
+        if (level < 0) {
+            return notFound();
+        }
+        ParkingResult result = levels[level].checkOut(regnId, dateExit, timeExit);
+        if (result.isOk()) {
+            levelByRegnId.remove(regnId, level);
+            refresh(level);
+        }
+        return result;
+    }
+
+    @Override
+    public Vehicle findVehicle(String regnId) {
+        int level = findLevel(regnId);
+        return level < 0 ? null : levels[level].findVehicle(regnId);
+    }
+
+    @Override
+    public boolean isAtExit(String regnId) {
+        int level = findLevel(regnId);
+        return level >= 0 && levels[level].isAtExit(regnId);
+    }
+
+    @Override
+    public ParkingGrid getParkingGrid() {
+        return levels[0].getParkingGrid();
+    }
+
+    @Override
+    public int getLevels() {
+        return levels.length;
+    }
+
+    @Override
+    public ParkingGrid getParkingGrid(int level) {
+        return level >= 0 && level < levels.length ? levels[level].getParkingGrid() : null;
+    }
+
+    @Override
+    public int findLevel(String regnId) {
+        Integer level = regnId == null ? null : levelByRegnId.get(regnId);
+        return level == null ? -1 : level;
+    }
+
+    @Override
+    public int getAvailable(String vehicleType) {
+        int available = 0;
+        for (ParkingLotService level : levels) {
+            available += level.getAvailable(vehicleType);
+        }
+        return available;
+    }
+
+    @Override
+    public int getEmpQty() {
+        int empQty = 0;
+        for (ParkingLotService level : levels) {
+            int levelQty = level.getEmpQty();
+            if (levelQty == Constant.QTY_INIT_VALUE) {
+                return Constant.QTY_INIT_VALUE;
+            }
+            empQty += levelQty;
+        }
+        return empQty;
+    }
+
+    @Override
+    public int getOccQty() {
+        int occQty = 0;
+        for (ParkingLotService level : levels) {
+            int levelQty = level.getOccQty();
+            if (levelQty == Constant.QTY_INIT_VALUE) {
+                return Constant.QTY_INIT_VALUE;
+            }
+            occQty += levelQty;
+        }
+        return occQty;
+    }
+
+    @Override
+    public Iterable<CheckoutVehicle> getCheckoutVehicles() {
+        return feeLog;
+    }
+
+    @Override
+    public FeeLogPage queryCheckoutVehicles(FeeLogQuery query) {
+        return feeLog.query(query);
+    }
+
+    @Override
+    public RevenueAggregates getRevenueAggregates() {
+        return feeLog.getRevenueAggregates();
+    }
+
+    /**
+     * Closes the lot stores of the levels, each one taking a last snapshot.
+     */
+    @Override
+    public void close() throws IOException {
+        closeAll(lotStores);
+    }
+
+    // Records the free capacity of a level for every vehicle type, read under the lock of the type so the readings
+    // of two gates refreshing the same level are stored in the order they were taken
+    private void refresh(int level) {
+        for (byte typeCode = 0; typeCode < TYPE_COUNT; typeCode++) {
+            String vehicleType = VehicleTypeCodec.decode(typeCode);
+            availability.update(level, typeCode, () -> levels[level].getAvailable(vehicleType));
+        }
+    }
+
+    private ParkingResult notFound() {
+        return ParkingResult.of(getEmpQty() == Constant.QTY_INIT_VALUE
+                ? ParkingResult.Status.NOT_INITIALISED : ParkingResult.Status.NOT_FOUND);
+    }
+
+    private static void closeAll(LotStore[] lotStores) throws IOException {
+        if (lotStores == null) {
+            return;
+        }
+        IOException failure = null;
+        for (LotStore lotStore : lotStores) {
+            if (lotStore == null) {
+                continue;
+            }
+            try {
+                lotStore.close();
+            } catch (IOException ex) {
+                failure = failure == null ? ex : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * The FeeCalculator class splits a stay, from entry and exit times stored as epoch minutes, into the
+ * overnight stays and hours a TariffPlan charges. Every method is plain long arithmetic without any
+ * object allocation; fees are kept in whole cents so that the checkout path and the fee log stay exact.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class FeeCalculator {
+
+    public static final int CENTS_PER_DOLLAR = 100;
+    public static final int MINUTES_PER_HOUR = 60;
+    public static final int HOURS_PER_DAY = 24;
+
+    /**
+     * Returns the number of started hours between entry and exit.
+     * @param entryMinutes The entry time in epoch minutes.
+     * @param exitMinutes The exit time in epoch minutes.
+     * @return The parked hours, a started hour counts as a full hour.
+     */
+    public static long getDiffHours(long entryMinutes, long exitMinutes) {
+        long diffMin = exitMinutes - entryMinutes;
+        return diffMin % MINUTES_PER_HOUR > 0 ? diffMin / MINUTES_PER_HOUR + 1 : diffMin / MINUTES_PER_HOUR;
+    }
+
+    /**
+     * Returns the hours charged at the hourly rate, the ones left after the full days.
+     * @param diffHours The parked hours.
+     */
+    public static long getParkingHours(long diffHours) {
+        return diffHours % HOURS_PER_DAY;
+    }
+
+    /**
+     * Returns the number of overnight stays, one per full day parked.
+     * @param diffHours The parked hours.
+     */
+    public static long getOvernight(long diffHours) {
+        return diffHours / HOURS_PER_DAY;
+    }
+
+    /**
+     * Converts cents to dollars for display.
+     */
+    public static double toDollars(long cents) {
+        return cents / (double) CENTS_PER_DOLLAR;
+    }
+}
@@ -0,0 +1,178 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * The FeeLogIndex class keeps the rows of a FeeLogStore sorted by exit time, so the rows of an exit time range
+ * are found with a binary search instead of a scan of the whole log.
+ * Each entry packs the exit epoch minutes in its high 32 bits and the row in its low 32 bits: a plain sort of the
+ * entries orders them by exit time and then by row, and an entry is a page cursor that stays valid as rows are added.
+ * The index catches up with the store when it is searched. The rows added since are sorted on their own and merged
+ * in, which is a plain copy to the end when they came in exit time order as checkouts mostly do.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class FeeLogIndex {
+
+    private static final long ROW_MASK = 0xFFFFFFFFL;
+
+    private final FeeLogStore store;
+
+    // Guarded by this. Entries below count are never changed in place, a merge writes a new array,
+    // so a search keeps working on the array and count it read
+    private long[] entries = new long[0];
+    private int count = 0;
+    private long indexedRows = 0;
+
+    public FeeLogIndex(FeeLogStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Returns the entry of a row exiting at the given time.
+     */
+    public static long toEntry(long exitMinutes, long row) {
+        return ((long) clampMinutes(exitMinutes) << 32) | (row & ROW_MASK);
+    }
+
+    /**
+     * Returns the row of an entry.
+     */
+    public static long toRow(long entry) {
+        return entry & ROW_MASK;
+    }
+
+    /**
+     * Iterates the entries matching a query after its cursor, in exit time order.
+     * The type and registration id filters read the columns of the store, nothing is decoded.
+     *
+     * @param query The query; its page size is ignored.
+     * @return The matching entries, found lazily.
+     */
+    public PrimitiveIterator.OfLong matches(FeeLogQuery query) {
+        long[] sorted;
+        int sortedCount;
+        synchronized (this) {
+            catchUp();
+            sorted = entries;
+            sortedCount = count;
+        }
+        int from = Math.max(search(sorted, sortedCount, toEntry(query.getFromExitMinutes(), 0), false),
+                search(sorted, sortedCount, query.getCursor(), true));
+        int to = query.getToExitMinutes() == Long.MAX_VALUE ? sortedCount
+                : search(sorted, sortedCount, toEntry(query.getToExitMinutes(), 0), false);
+
+        boolean anyType = query.getVehicleType() == null;
+        byte typeCode = anyType ? VehicleTypeCodec.INVALID : VehicleTypeCodec.encode(query.getVehicleType());
+        String prefix = query.getRegnIdPrefix();
+        boolean anyRegnId = prefix == null || prefix.isEmpty();
+        long packedPrefix = anyRegnId ? 0L : RegnIdCodec.packPrefix(prefix);
+        long prefixMask = anyRegnId ? 0L : RegnIdCodec.prefixMask(prefix.length());
+
+        return new PrimitiveIterator.OfLong() {
+            private int next = seek(from);
+
+            private int seek(int position) {
+                if ((!anyType && typeCode == VehicleTypeCodec.INVALID)
+                        || (!anyRegnId && packedPrefix == RegnIdCodec.INVALID)) {
+                    return to;
+                }
+                while (position < to) {
+                    long row = toRow(sorted[position]);
+                    if ((anyType || store.getTypeCode(row) == typeCode)
+                            && (anyRegnId || (store.getPackedRegnId(row) & prefixMask) == packedPrefix)) {
+                        break;
+                    }
+                    position++;
+                }
+                return position;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < to;
+            }
+
+            @Override
+            public long nextLong() {
+                if (next >= to) {
+                    throw new NoSuchElementException();
+                }
+                long entry = sorted[next];
+                next = seek(next + 1);
+                return entry;
+            }
+        };
+    }
+
+    // Adds the rows appended to the store since the last search, rebuilds if the store was truncated
+    private void catchUp() {
+        long rows = store.getRowCount();
+        if (rows < indexedRows) {
+            entries = new long[0];
+            count = 0;
+            indexedRows = 0;
+        }
+        if (rows == indexedRows) {
+            return;
+        }
+        int added = Math.toIntExact(rows - indexedRows);
+        long[] tail = new long[added];
+        boolean inOrder = true;
+        for (int i = 0; i < added; i++) {
+            long row = indexedRows + i;
+            tail[i] = toEntry(store.getExitMinutes(row), row);
+            inOrder &= i == 0 || tail[i - 1] < tail[i];
+        }
+        if (!inOrder) {
+            Arrays.sort(tail);
+        }
+        if (count == 0 || entries[count - 1] < tail[0]) {
+            if (count + added > entries.length) {
+                entries = Arrays.copyOf(entries, Math.max(count + added, entries.length + (entries.length >> 1)));
+            }
+            System.arraycopy(tail, 0, entries, count, added);
+        } else {
+            entries = merge(entries, count, tail);
+        }
+        count += added;
+        indexedRows = rows;
+    }
+
+    private static long[] merge(long[] sorted, int sortedCount, long[] tail) {
+        long[] merged = new long[sortedCount + tail.length + ((sortedCount + tail.length) >> 1)];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < sortedCount && j < tail.length) {
+            merged[k++] = sorted[i] < tail[j] ? sorted[i++] : tail[j++];
+        }
+        while (i < sortedCount) {
+            merged[k++] = sorted[i++];
+        }
+        while (j < tail.length) {
+            merged[k++] = tail[j++];
+        }
+        return merged;
+    }
+
+    // Position of the first entry after the key, or the first one not before it if the key itself is wanted
+    private static int search(long[] sorted, int sortedCount, long key, boolean after) {
+        int low = 0;
+        int high = sortedCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < key || (after && sorted[mid] == key)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int clampMinutes(long minutes) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, minutes));
+    }
+}
@@ -0,0 +1,38 @@
+import java.util.List;
+
+/**
+ * The FeeLogPage class is one page of the matches of a FeeLogQuery, in exit time order.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class FeeLogPage {
+
+    private final List<CheckoutVehicle> records;
+    private final long nextCursor; // Cursor of the last record, the next page starts after it
+    private final boolean hasMore;
+
+    public FeeLogPage(List<CheckoutVehicle> records, long nextCursor, boolean hasMore) {
+        this.records = records;
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * Returns the records of the page, each one its own view that may be kept.
+     */
+    public List<CheckoutVehicle> getRecords() {
+        return records;
+    }
+
+    public long getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Returns true if more records match after this page.
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * The FeeLogQuery class describes one page of a search over the fee log: an exit time range, an optional
+ * vehicle type, an optional registration id prefix, the page size and the cursor the page starts after.
+ * Matches come in exit time order; the cursor of the next page is taken from the previous FeeLogPage.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class FeeLogQuery {
+
+    // Cursor of the first page
+    public static final long FIRST_PAGE = Long.MIN_VALUE;
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    private final long fromExitMinutes; // Inclusive start of the exit time range, in epoch minutes
+    private final long toExitMinutes; // Exclusive end of the exit time range, in epoch minutes
+    private final String vehicleType; // Vehicle type to match, null for any
+    private final String regnIdPrefix; // Start of the registration id to match, null for any
+    private final int pageSize;
+    private final long cursor;
+
+    public FeeLogQuery(long fromExitMinutes, long toExitMinutes, String vehicleType, String regnIdPrefix,
+                       int pageSize, long cursor) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        this.fromExitMinutes = fromExitMinutes;
+        this.toExitMinutes = toExitMinutes;
+        this.vehicleType = vehicleType;
+        this.regnIdPrefix = regnIdPrefix;
+        this.pageSize = pageSize;
+        this.cursor = cursor;
+    }
+
+    /**
+     * Creates a query for the first page of every record.
+     */
+    public static FeeLogQuery all() {
+        return new FeeLogQuery(Long.MIN_VALUE, Long.MAX_VALUE, null, null, DEFAULT_PAGE_SIZE, FIRST_PAGE);
+    }
+
+    /**
+     * Returns the same query starting after the given cursor.
+     */
+    public FeeLogQuery withCursor(long cursor) {
+        return new FeeLogQuery(fromExitMinutes, toExitMinutes, vehicleType, regnIdPrefix, pageSize, cursor);
+    }
+
+    public long getFromExitMinutes() {
+        return fromExitMinutes;
+    }
+
+    public long getToExitMinutes() {
+        return toExitMinutes;
+    }
+
+    public String getVehicleType() {
+        return vehicleType;
+    }
+
+    public String getRegnIdPrefix() {
+        return regnIdPrefix;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+}
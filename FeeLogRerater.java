@@ -0,0 +1,188 @@
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The FeeLogRerater class prices the whole fee log again with another tariff plan and reports, per vehicle type, what
+ * the checkouts were charged, what the plan would have charged and the difference, so finance can compare a new plan
+ * against the history before installing it.
+ * The rows are split into chunks priced by a fork-join pool, each chunk reading the columns of the FeeLogStore
+ * straight from its segments into totals of its own that are added up as the tasks join, so no lock or shared counter
+ * is touched and the job scales with the cores given to it.
+ * The job prices the rows present when it starts. Rows below the published size of the store never change, so the
+ * scan takes no lock and live checkouts keep appending while it runs; they are left out of the report.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class FeeLogRerater {
+
+    // Rows priced by one task, a fork-join task should take some thousands of rows to pay for itself
+    private static final int CHUNK_ROWS = 1 << 14;
+
+    private static final int TYPE_COUNT = 4;
+
+    // Layout of the totals of a vehicle type
+    private static final int CHECKOUTS = 0;
+    private static final int CHARGED = 1;
+    private static final int RERATED = 2;
+    private static final int TOTALS_SIZE = 3;
+
+    private FeeLogRerater() {
+    }
+
+    /**
+     * Prices every checkout of a fee log with a plan.
+     *
+     * @param checkoutVehicles The fee log, a FeeLogStore is scanned in place, any other log is copied into one first.
+     * @param plan The plan to price the checkouts with.
+     * @param parallelism Number of threads pricing the chunks.
+     * @return The totals per vehicle type.
+     */
+    public static Report rerate(Iterable<CheckoutVehicle> checkoutVehicles, TariffPlan plan, int parallelism) {
+        FeeLogStore store;
+        if (checkoutVehicles instanceof FeeLogStore) {
+            store = (FeeLogStore) checkoutVehicles;
+        } else {
+            store = new FeeLogStore();
+            for (CheckoutVehicle checkoutVehicle : checkoutVehicles) {
+                store.append(checkoutVehicle);
+            }
+        }
+        long rows = store.getRowCount();
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            long[] totals = pool.invoke(new RerateTask(store, plan, 0, rows));
+            return new Report(plan.getName(), rows, System.nanoTime() - start, totals);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Prices a range of rows, splitting it in halves down to one chunk
+    private static final class RerateTask extends RecursiveTask<long[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FeeLogStore store;
+        private final TariffPlan plan;
+        private final long from;
+        private final long to;
+
+        RerateTask(FeeLogStore store, TariffPlan plan, long from, long to) {
+            this.store = store;
+            this.plan = plan;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from > CHUNK_ROWS) {
+                // split on a chunk boundary so every chunk stays inside one segment
+                long middle = from + Math.max(1, (to - from) / CHUNK_ROWS / 2) * CHUNK_ROWS;
+                RerateTask right = new RerateTask(store, plan, middle, to);
+                right.fork();
+                long[] totals = new RerateTask(store, plan, from, middle).compute();
+                long[] rightTotals = right.join();
+                for (int i = 0; i < totals.length; i++) {
+                    totals[i] += rightTotals[i];
+                }
+                return totals;
+            }
+            long[] totals = new long[TYPE_COUNT * TOTALS_SIZE];
+            for (long row = from; row < to; row++) {
+                byte code = store.getTypeCode(row);
+                if (code < 0 || code >= TYPE_COUNT) {
+                    continue;
+                }
+                int base = code * TOTALS_SIZE;
+                totals[base + CHECKOUTS]++;
+                totals[base + CHARGED] += store.getFeeCents(row);
+                totals[base + RERATED] += plan.feeCents(code, store.getEntryMinutes(row), store.getExitMinutes(row),
+                        store.getHitNums(row));
+            }
+            return totals;
+        }
+    }
+
+    /**
+     * The outcome of a re-rating: the checkouts, the fees they were charged and the fees of the plan, per type.
+     */
+    public static final class Report {
+
+        private final String planName;
+        private final long rows;
+        private final long elapsedNanos;
+        private final long[] totals;
+
+        private Report(String planName, long rows, long elapsedNanos, long[] totals) {
+            this.planName = planName;
+            this.rows = rows;
+            this.elapsedNanos = elapsedNanos;
+            this.totals = totals;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getCheckouts(String vehicleType) {
+            return total(vehicleType, CHECKOUTS);
+        }
+
+        public long getChargedCents(String vehicleType) {
+            return total(vehicleType, CHARGED);
+        }
+
+        public long getReratedCents(String vehicleType) {
+            return total(vehicleType, RERATED);
+        }
+
+        public long getDeltaCents(String vehicleType) {
+            return getReratedCents(vehicleType) - getChargedCents(vehicleType);
+        }
+
+        /**
+         * Prints the totals and the difference per vehicle type, and how fast the log was priced.
+         */
+        public void print(PrintStream out) {
+            String line = "-".repeat(80);
+            out.println("Re-rated with the tariff plan " + planName + ":");
+            out.println(line);
+            out.printf("|%14s|%11s|%14s|%14s|%13s|%7s|%n", "Vehicle Type", "Checkouts", "Charged", "Re-rated", "Delta", "Delta %");
+            out.println(line);
+            long[] sum = new long[TOTALS_SIZE];
+            for (byte code = 0; code < TYPE_COUNT; code++) {
+                int base = code * TOTALS_SIZE;
+                printRow(out, VehicleTypeCodec.decode(code), totals[base + CHECKOUTS], totals[base + CHARGED],
+                        totals[base + RERATED]);
+                for (int i = 0; i < TOTALS_SIZE; i++) {
+                    sum[i] += totals[base + i];
+                }
+            }
+            printRow(out, "Total", sum[CHECKOUTS], sum[CHARGED], sum[RERATED]);
+            out.println(line);
+            double seconds = elapsedNanos / 1e9;
+            out.printf(Locale.ROOT, "%d rows in %.3f s, %.0f rows/s%n", rows, seconds, seconds > 0 ? rows / seconds : 0.0);
+        }
+
+        private static void printRow(PrintStream out, String name, long checkouts, long charged, long rerated) {
+            String percent = charged == 0 ? "-" : String.format(Locale.ROOT, "%+.1f", 100.0 * (rerated - charged) / charged);
+            out.printf("|%14s|%11d|%14s|%14s|%13s|%7s|%n", name, checkouts, dollars(charged), dollars(rerated),
+                    (rerated >= charged ? "+" : "") + dollars(rerated - charged), percent);
+        }
+
+        private static String dollars(long cents) {
+            return BigDecimal.valueOf(cents, 2).toPlainString();
+        }
+
+        private long total(String vehicleType, int field) {
+            byte code = VehicleTypeCodec.encode(vehicleType);
+            return code == VehicleTypeCodec.INVALID ? 0 : totals[code * TOTALS_SIZE + field];
+        }
+    }
+}
@@ -0,0 +1,591 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.zip.CRC32;
+
+/**
+ * The FeeLogStore class holds the fee log as fixed-width columns instead of heap objects: the vehicle type code,
+ * the packed registration id, the entry and exit epoch minutes, the fee, hit fee and overnight fee in cents and the
+ * number of hits, 53 bytes a row.
+ * Rows live in segments of a fixed number of rows, each segment a memory-mapped file (or a heap buffer for a store
+ * kept in memory only), so months of history take a fraction of the heap and a scan reads the columns sequentially.
+ * Rows are read through a flyweight CheckoutVehicle view; iterating the store reuses one view, so a row must be
+ * copied if it is kept after the next step. The store is only Iterable, not a Collection, so it cannot be handed to
+ * toArray or a collection constructor that would keep the reused view once per row.
+ * The checkout journal stays the source of truth. The row count of a segment is only written once its columns
+ * have been forced to disk, so after a crash the store replays the journal from its last durable row.
+ * Searches by exit time, vehicle type and registration id prefix go through a FeeLogIndex sorted by exit time.
+ * The store also keeps the RevenueAggregates of its rows, updated as rows are appended. The totals are saved next to
+ * the segments whenever a segment is checkpointed, together with the rows they cover, so opening the store only sums
+ * the rows after the saved totals instead of the whole history.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class FeeLogStore implements Iterable<CheckoutVehicle>, AutoCloseable {
+
+    // System property naming the store directory, and its default
+    public static final String STORE_DIR_PROPERTY = "parkinglot.feelog";
+
+    // Rows per segment, a power of two
+    public static final int DEFAULT_SEGMENT_ROWS = 1 << 20;
+    public static final int MEMORY_SEGMENT_ROWS = 1 << 16;
+
+    private static final String SEGMENT_PREFIX = "feelog-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int SEGMENT_MAGIC = 0x504C464C; // "PLFL"
+    private static final int FORMAT_VERSION = 2;
+
+    // Saved revenue totals: magic, version, rows covered, the encoded totals, CRC32 of all that
+    private static final String TOTALS_FILE = "revenue.totals";
+    private static final int TOTALS_MAGIC = 0x504C5254; // "PLRT"
+    private static final int TOTALS_VERSION = 1;
+    private static final int TOTALS_HEADER_SIZE = 4 + 4 + 8;
+
+    // Segment header: magic, version, rows per segment, durable row count
+    private static final int HEADER_SIZE = 64;
+    private static final int COUNT_OFFSET = 12;
+
+    // Bytes per row of all the columns
+    public static final int ROW_SIZE = 1 + 8 + 8 + 8 + 8 + 8 + 8 + 4;
+
+    private final Path dir; // null for a store kept in memory only
+    private final int segmentRows;
+    private final int rowShift;
+
+    // Column offsets inside a segment
+    private final int typeOffset;
+    private final int regnOffset;
+    private final int entryOffset;
+    private final int exitOffset;
+    private final int feeOffset;
+    private final int hitFeeOffset;
+    private final int overnightFeeOffset;
+    private final int hitsOffset;
+
+    // Guarded by this for appends; readers only see rows below the published size
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private volatile ByteBuffer[] segmentArray = new ByteBuffer[0];
+    private volatile long size = 0;
+
+    private final FeeLogIndex exitIndex = new FeeLogIndex(this);
+
+    // Running totals of the rows, only changed while holding this so they always match the published size
+    private final RevenueAggregates revenue = new RevenueAggregates();
+
+    /**
+     * Creates a store kept in memory only.
+     */
+    public FeeLogStore() {
+        this(null, MEMORY_SEGMENT_ROWS);
+    }
+
+    private FeeLogStore(Path dir, int segmentRows) {
+        if (Integer.bitCount(segmentRows) != 1 || segmentRows < 8) {
+            throw new IllegalArgumentException("Rows per segment must be a power of two: " + segmentRows);
+        }
+        this.dir = dir;
+        this.segmentRows = segmentRows;
+        this.rowShift = Integer.numberOfTrailingZeros(segmentRows);
+        this.typeOffset = HEADER_SIZE;
+        this.regnOffset = typeOffset + segmentRows;
+        this.entryOffset = regnOffset + 8 * segmentRows;
+        this.exitOffset = entryOffset + 8 * segmentRows;
+        this.feeOffset = exitOffset + 8 * segmentRows;
+        this.hitFeeOffset = feeOffset + 8 * segmentRows;
+        this.overnightFeeOffset = hitFeeOffset + 8 * segmentRows;
+        this.hitsOffset = overnightFeeOffset + 8 * segmentRows;
+    }
+
+    /**
+     * Opens the store directory named by the parkinglot.feelog system property, or creates a store in memory if
+     * no directory is named.
+     */
+    public static FeeLogStore open() throws IOException {
+        String dir = System.getProperty(STORE_DIR_PROPERTY);
+        return dir == null || dir.isEmpty() ? new FeeLogStore() : open(Path.of(dir), DEFAULT_SEGMENT_ROWS);
+    }
+
+    /**
+     * Opens a store directory, creating it if needed, and maps its segments up to the last durable row.
+     *
+     * @param dir The directory holding the segment files.
+     * @param segmentRows Rows per segment of a new store, a power of two.
+     */
+    public static FeeLogStore open(Path dir, int segmentRows) throws IOException {
+        Files.createDirectories(dir);
+        Path first = segmentPath(dir, 0);
+        if (Files.exists(first)) {
+            try (FileChannel channel = FileChannel.open(first, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                channel.read(header, 0);
+                if (header.getInt(0) != SEGMENT_MAGIC || header.getInt(4) != FORMAT_VERSION) {
+                    throw new IOException("Not a fee log segment: " + first);
+                }
+                segmentRows = header.getInt(8);
+            }
+        }
+        FeeLogStore store = new FeeLogStore(dir, segmentRows);
+        long rows = 0;
+        for (int index = 0; Files.exists(segmentPath(dir, index)); index++) {
+            ByteBuffer segment = store.mapSegment(index);
+            store.segments.add(segment);
+            int count = segment.getInt(COUNT_OFFSET);
+            rows += count;
+            if (count < segmentRows) {
+                break;
+            }
+        }
+        store.segmentArray = store.segments.toArray(new ByteBuffer[0]);
+        store.size = rows;
+        store.loadTotals();
+        return store;
+    }
+
+    /**
+     * Returns the number of rows in the store.
+     */
+    public long getRowCount() {
+        return size;
+    }
+
+    /**
+     * Returns the running revenue totals of the rows.
+     */
+    public RevenueAggregates getRevenueAggregates() {
+        return revenue;
+    }
+
+    /**
+     * Appends a checkout record as a new row.
+     *
+     * @param checkoutVehicle The checkout record.
+     */
+    public synchronized void append(CheckoutVehicle checkoutVehicle) {
+        long row = size;
+        int index = (int) (row >>> rowShift);
+        if (index == segments.size()) {
+            try {
+                segments.add(dir == null ? newMemorySegment() : mapSegment(index));
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Cannot create the fee log segment " + index, ex);
+            }
+            segmentArray = segments.toArray(new ByteBuffer[0]);
+        }
+        ByteBuffer segment = segments.get(index);
+        int slot = (int) (row & (segmentRows - 1));
+        segment.put(typeOffset + slot, VehicleTypeCodec.encode(checkoutVehicle.getVehicleType()));
+        segment.putLong(regnOffset + 8 * slot, RegnIdCodec.pack(checkoutVehicle.getRegistrationId()));
+        segment.putLong(entryOffset + 8 * slot, checkoutVehicle.getEntryMinutes());
+        segment.putLong(exitOffset + 8 * slot, checkoutVehicle.getExitMinutes());
+        segment.putLong(feeOffset + 8 * slot, checkoutVehicle.getParkingFeeCents());
+        segment.putLong(hitFeeOffset + 8 * slot, checkoutVehicle.getHitFeeCents());
+        segment.putLong(overnightFeeOffset + 8 * slot, checkoutVehicle.getOvernightFeeCents());
+        segment.putInt(hitsOffset + 4 * slot, checkoutVehicle.getHitNums());
+        revenue.record(checkoutVehicle);
+        size = row + 1;
+        // a full segment is never written again, make it durable right away
+        if (slot == segmentRows - 1) {
+            checkpoint(segment, segmentRows);
+            saveTotals();
+        }
+    }
+
+    /**
+     * Journals a checkout record and appends it as a new row, holding the store throughout. Every gate of a site
+     * records its checkouts through the one store of the site, so the journal and the store take the records in the
+     * same order and row N of the store is always record N of the journal, which a restart relies on when it replays
+     * the journal from the last durable row of the store.
+     *
+     * @param checkoutVehicle The checkout record.
+     * @param journal The checkout journal, or null to keep the record in the store only.
+     * @return The row of the record.
+     * @throws IOException If the journal cannot be written; the record is then not added to the store either.
+     */
+    public synchronized long append(CheckoutVehicle checkoutVehicle, CheckoutJournal journal) throws IOException {
+        if (journal != null) {
+            journal.append(checkoutVehicle);
+        }
+        long row = size;
+        append(checkoutVehicle);
+        return row;
+    }
+
+    /**
+     * Drops the rows from the given one on, used when the journal holds fewer records than the store.
+     *
+     * @param rows Number of rows to keep.
+     */
+    public synchronized void truncate(long rows) {
+        if (rows >= size) {
+            return;
+        }
+        size = rows;
+        for (int index = 0; index < segments.size(); index++) {
+            long segmentStart = (long) index << rowShift;
+            int count = (int) Math.max(0, Math.min(segmentRows, rows - segmentStart));
+            checkpoint(segments.get(index), count);
+        }
+        //the dropped rows are in the totals, start again from the saved ones if they do not cover them
+        revenue.clear();
+        loadTotals();
+        saveTotals();
+    }
+
+    // Column readers, the row must be below getRowCount()
+
+    public byte getTypeCode(long row) {
+        return segment(row).get(typeOffset + slot(row));
+    }
+
+    public String getVehicleType(long row) {
+        return VehicleTypeCodec.decode(getTypeCode(row));
+    }
+
+    public long getPackedRegnId(long row) {
+        return segment(row).getLong(regnOffset + 8 * slot(row));
+    }
+
+    public long getEntryMinutes(long row) {
+        return segment(row).getLong(entryOffset + 8 * slot(row));
+    }
+
+    public long getExitMinutes(long row) {
+        return segment(row).getLong(exitOffset + 8 * slot(row));
+    }
+
+    public long getFeeCents(long row) {
+        return segment(row).getLong(feeOffset + 8 * slot(row));
+    }
+
+    public long getHitFeeCents(long row) {
+        return segment(row).getLong(hitFeeOffset + 8 * slot(row));
+    }
+
+    public long getOvernightFeeCents(long row) {
+        return segment(row).getLong(overnightFeeOffset + 8 * slot(row));
+    }
+
+    public int getHitNums(long row) {
+        return segment(row).getInt(hitsOffset + 4 * slot(row));
+    }
+
+    /**
+     * Returns a view of a row.
+     *
+     * @param row Index of the row, below getRowCount().
+     * @return A CheckoutVehicle reading the columns of the row.
+     */
+    public CheckoutVehicle get(long row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        return new RowView(row);
+    }
+
+    /**
+     * Iterates the rows oldest first, reusing a single view.
+     */
+    @Override
+    public Iterator<CheckoutVehicle> iterator() {
+        long end = size;
+        RowView view = new RowView(-1);
+        return new Iterator<CheckoutVehicle>() {
+            private long next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < end;
+            }
+
+            @Override
+            public CheckoutVehicle next() {
+                if (next >= end) {
+                    throw new NoSuchElementException();
+                }
+                view.row = next++;
+                return view;
+            }
+        };
+    }
+
+    /**
+     * Returns one page of the rows matching a query, in exit time order.
+     *
+     * @param query The filters, the page size and the cursor the page starts after.
+     * @return The page, with the cursor of the next one.
+     */
+    public FeeLogPage query(FeeLogQuery query) {
+        PrimitiveIterator.OfLong matches = exitIndex.matches(query);
+        List<CheckoutVehicle> records = new ArrayList<>(Math.min(query.getPageSize(), FeeLogQuery.DEFAULT_PAGE_SIZE));
+        long cursor = query.getCursor();
+        while (records.size() < query.getPageSize() && matches.hasNext()) {
+            cursor = matches.nextLong();
+            records.add(new RowView(FeeLogIndex.toRow(cursor)));
+        }
+        return new FeeLogPage(records, cursor, matches.hasNext());
+    }
+
+    /**
+     * Iterates every row matching a query after its cursor, in exit time order, reusing a single view.
+     *
+     * @param query The filters and the cursor to start after; the page size is ignored.
+     */
+    public Iterable<CheckoutVehicle> select(FeeLogQuery query) {
+        return () -> {
+            PrimitiveIterator.OfLong matches = exitIndex.matches(query);
+            RowView view = new RowView(-1);
+            return new Iterator<CheckoutVehicle>() {
+                @Override
+                public boolean hasNext() {
+                    return matches.hasNext();
+                }
+
+                @Override
+                public CheckoutVehicle next() {
+                    view.row = FeeLogIndex.toRow(matches.nextLong());
+                    return view;
+                }
+            };
+        };
+    }
+
+    /**
+     * Makes every row durable and releases the segments.
+     */
+    @Override
+    public synchronized void close() {
+        for (int index = 0; index < segments.size(); index++) {
+            long segmentStart = (long) index << rowShift;
+            checkpoint(segments.get(index), (int) Math.max(0, Math.min(segmentRows, size - segmentStart)));
+        }
+        saveTotals();
+    }
+
+    private ByteBuffer segment(long row) {
+        return segmentArray[(int) (row >>> rowShift)];
+    }
+
+    private int slot(long row) {
+        return (int) (row & (segmentRows - 1));
+    }
+
+    // Forces the columns of a segment to disk, then records its durable row count
+    private void checkpoint(ByteBuffer segment, int count) {
+        if (!(segment instanceof MappedByteBuffer)) {
+            segment.putInt(COUNT_OFFSET, count);
+            return;
+        }
+        ((MappedByteBuffer) segment).force();
+        segment.putInt(COUNT_OFFSET, count);
+        ((MappedByteBuffer) segment).force(0, HEADER_SIZE);
+    }
+
+    // Reads the saved totals and adds the rows after them, or sums every row if the saved totals cannot be used
+    private void loadTotals() {
+        long from = 0;
+        Path file = dir == null ? null : dir.resolve(TOTALS_FILE);
+        if (file != null && Files.exists(file)) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+                int end = buffer.limit() - 4;
+                CRC32 crc = new CRC32();
+                crc.update(buffer.array(), 0, Math.max(0, end));
+                //totals saved before rows were dropped may cover more rows than are left
+                if (end >= TOTALS_HEADER_SIZE && buffer.getInt(end) == (int) crc.getValue()
+                        && buffer.getInt() == TOTALS_MAGIC && buffer.getInt() == TOTALS_VERSION
+                        && buffer.getLong() <= size) {
+                    from = buffer.getLong(8);
+                    revenue.decode(buffer.limit(end));
+                }
+            } catch (IOException | RuntimeException ex) {
+                // unreadable totals are summed again from the rows
+                from = 0;
+                revenue.clear();
+            }
+        }
+        RowView view = new RowView(from);
+        for (; view.row < size; view.row++) {
+            revenue.record(view);
+        }
+    }
+
+    // Saves the totals of every row, called once the rows are durable; if they cannot be saved the older totals are
+    // still right for the rows they cover, so a restart only has more rows to sum
+    private void saveTotals() {
+        if (dir == null) {
+            return;
+        }
+        ByteBuffer totals = revenue.encode();
+        ByteBuffer buffer = ByteBuffer.allocate(TOTALS_HEADER_SIZE + totals.remaining() + 4)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(TOTALS_MAGIC).putInt(TOTALS_VERSION).putLong(size).put(totals);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue()).flip();
+        Path tmp = dir.resolve(TOTALS_FILE + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(tmp, dir.resolve(TOTALS_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            // the older totals stay in place
+        }
+    }
+
+    private ByteBuffer newMemorySegment() {
+        ByteBuffer segment = ByteBuffer.allocate(hitsOffset + 4 * segmentRows).order(ByteOrder.LITTLE_ENDIAN);
+        writeHeader(segment);
+        return segment;
+    }
+
+    private ByteBuffer mapSegment(int index) throws IOException {
+        Path file = segmentPath(dir, index);
+        boolean created = !Files.exists(file);
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, hitsOffset + 4L * segmentRows)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (created) {
+                writeHeader(segment);
+            }
+            return segment;
+        }
+    }
+
+    private void writeHeader(ByteBuffer segment) {
+        segment.putInt(0, SEGMENT_MAGIC);
+        segment.putInt(4, FORMAT_VERSION);
+        segment.putInt(8, segmentRows);
+        segment.putInt(COUNT_OFFSET, 0);
+    }
+
+    private static Path segmentPath(Path dir, int index) {
+        return dir.resolve(SEGMENT_PREFIX + index + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * A CheckoutVehicle reading one row of the columns; it cannot be changed.
+     */
+    private class RowView extends CheckoutVehicle {
+
+        private long row;
+
+        RowView(long row) {
+            this.row = row;
+        }
+
+        @Override
+        public String getVehicleType() {
+            return FeeLogStore.this.getVehicleType(row);
+        }
+
+        @Override
+        public String getRegistrationId() {
+            return RegnIdCodec.unpack(getPackedRegnId(row));
+        }
+
+        @Override
+        public long getEntryMinutes() {
+            return FeeLogStore.this.getEntryMinutes(row);
+        }
+
+        @Override
+        public long getExitMinutes() {
+            return FeeLogStore.this.getExitMinutes(row);
+        }
+
+        @Override
+        public int getHitNums() {
+            return FeeLogStore.this.getHitNums(row);
+        }
+
+        @Override
+        public long getParkingFeeCents() {
+            return getFeeCents(row);
+        }
+
+        @Override
+        public long getHitFeeCents() {
+            return FeeLogStore.this.getHitFeeCents(row);
+        }
+
+        @Override
+        public long getOvernightFeeCents() {
+            return FeeLogStore.this.getOvernightFeeCents(row);
+        }
+
+        @Override
+        public void setVehicleType(String vehicleType) {
+            throw new UnsupportedOperationException("Fee log rows cannot be changed");
+        }
+
+        @Override
+        public void setRegistrationId(String registrationId) {
+            throw new UnsupportedOperationException("Fee log rows cannot be changed");
+        }
+
+        @Override
+        public void setEntryDateTime(java.util.Date entryDateTime) {
+            throw new UnsupportedOperationException("Fee log rows cannot be changed");
+        }
+
+        @Override
+        public void setEntryMinutes(long entryMinutes) {
+            throw new UnsupportedOperationException("Fee log rows cannot be changed");
+        }
+
+        @Override
+        public void setExitDateTime(java.util.Date exitDateTime) {
+            throw new UnsupportedOperationException("Fee log rows cannot be changed");
+        }
+
+        @Override
+        public void setExitMinutes(long exitMinutes) {
+            throw new UnsupportedOperationException("Fee log rows cannot be changed");
+        }
+
+        @Override
+        public void setHitNums(int hitNums) {
+            throw new UnsupportedOperationException("Fee log rows cannot be changed");
+        }
+
+        @Override
+        public void setParkingFee(double parkingFee) {
+            throw new UnsupportedOperationException("Fee log rows cannot be changed");
+        }
+
+        @Override
+        public void setParkingFeeCents(long parkingFeeCents) {
+            throw new UnsupportedOperationException("Fee log rows cannot be changed");
+        }
+
+        @Override
+        public void setHitFeeCents(long hitFeeCents) {
+            throw new UnsupportedOperationException("Fee log rows cannot be changed");
+        }
+
+        @Override
+        public void setOvernightFeeCents(long overnightFeeCents) {
+            throw new UnsupportedOperationException("Fee log rows cannot be changed");
+        }
+    }
+}
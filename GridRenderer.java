@@ -0,0 +1,219 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * The GridRenderer class draws a ParkingGrid to a console.
+ * A frame is built in a char buffer that is reused while the size of the lot stays the same, and is written with a
+ * single call instead of one print per cell. For lots too large to read on a screen it writes a window around a cell
+ * or an overview where each character stands for a block of cells.
+ * On an ANSI terminal the renderer can also keep the lot drawn at the top of the screen and redraw only the cells that
+ * changed since the previous frame, moving the cursor to each of them. The changed cells are found by comparing the
+ * grid with a copy of the last frame many cells at a time, so moves made by other gates in the meantime are drawn too,
+ * and nothing is compared when the grid version has not moved.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class GridRenderer {
+
+    // Set to true or false to force or disable ANSI output, detected from the terminal otherwise
+    public static final String ANSI_PROPERTY = "parkinglot.ansi";
+
+    private static final char ESC = 27;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final PrintStream out;
+    private final boolean ansi;
+
+    // Reused between frames
+    private char[] frame = new char[0];
+    private final StringBuilder changes = new StringBuilder();
+
+    // Last frame drawn at the top of the screen, null until one is drawn
+    private byte[] shown = null;
+    private int shownRows;
+    private int shownCols;
+    private int shownVersion;
+
+    public GridRenderer(PrintStream out, boolean ansi) {
+        this.out = out;
+        this.ansi = ansi;
+    }
+
+    /**
+     * Returns true if the console is an ANSI terminal, or as forced by the parkinglot.ansi system property.
+     */
+    public static boolean isAnsiTerminal() {
+        String forced = System.getProperty(ANSI_PROPERTY);
+        if (forced != null) {
+            return Boolean.parseBoolean(forced);
+        }
+        String term = System.getenv("TERM");
+        return System.console() != null && term != null && !"dumb".equals(term);
+    }
+
+    public boolean isAnsi() {
+        return ansi;
+    }
+
+    /**
+     * Writes the whole grid where the cursor is, one line per row.
+     */
+    public void render(ParkingGrid grid) {
+        renderWindow(grid, 0, 0, grid.getRows(), grid.getCols());
+    }
+
+    /**
+     * Writes a rectangle of the grid where the cursor is, one line per row; only the cells of the rectangle are read.
+     *
+     * @param firstRow The top row of the rectangle.
+     * @param firstCol The left column of the rectangle.
+     * @param rows The number of rows, cut at the bottom of the grid.
+     * @param cols The number of columns, cut at the right of the grid.
+     */
+    public void renderWindow(ParkingGrid grid, int firstRow, int firstCol, int rows, int cols) {
+        rows = Math.max(0, Math.min(rows, grid.getRows() - firstRow));
+        cols = Math.max(0, Math.min(cols, grid.getCols() - firstCol));
+        char[] lines = frame(rows, cols);
+        int pos = 0;
+        for (int i = firstRow; i < firstRow + rows; i++) {
+            for (int j = firstCol; j < firstCol + cols; j++) {
+                lines[pos++] = ParkingGrid.charOf(grid.get(i, j));
+            }
+            pos = endLine(lines, pos);
+        }
+        out.print(lines);
+        shown = null;
+    }
+
+    /**
+     * Writes a downsampled view of the grid that fits in the given size. Each character summarises a block of cells
+     * by the share of its parking bays taken: '.' for none, '1' to '9' for 10% to 90% and '#' for all of them,
+     * or a blank if the block has no bay. Every cell is read once, whatever the size of the blocks.
+     *
+     * @param maxRows The most lines to write.
+     * @param maxCols The most characters per line.
+     * @return The number of cells summarised by a character, rows first.
+     */
+    public int[] renderOverview(ParkingGrid grid, int maxRows, int maxCols) {
+        int blockRows = (grid.getRows() + maxRows - 1) / maxRows;
+        int blockCols = (grid.getCols() + maxCols - 1) / maxCols;
+        int rows = (grid.getRows() + blockRows - 1) / blockRows;
+        int cols = (grid.getCols() + blockCols - 1) / blockCols;
+        int[] bays = new int[cols];
+        int[] taken = new int[cols];
+        char[] lines = frame(rows, cols);
+        int pos = 0;
+        for (int blockRow = 0; blockRow < rows; blockRow++) {
+            Arrays.fill(bays, 0);
+            Arrays.fill(taken, 0);
+            int lastRow = Math.min(grid.getRows(), (blockRow + 1) * blockRows);
+            for (int i = blockRow * blockRows; i < lastRow; i++) {
+                for (int j = 0; j < grid.getCols(); j++) {
+                    byte code = grid.get(i, j);
+                    // a vehicle counts as a taken bay, even while it is still on the driveway
+                    if (ParkingGrid.isKind(code, ParkingGrid.MASK_SPOT | ParkingGrid.MASK_VEHICLE)) {
+                        bays[j / blockCols]++;
+                        if (code != ParkingGrid.CELL_DOT) {
+                            taken[j / blockCols]++;
+                        }
+                    }
+                }
+            }
+            for (int j = 0; j < cols; j++) {
+                lines[pos++] = densityChar(bays[j], taken[j]);
+            }
+            pos = endLine(lines, pos);
+        }
+        out.print(lines);
+        shown = null;
+        return new int[]{blockRows, blockCols};
+    }
+
+    /**
+     * Brings the grid up to date on the screen. On an ANSI terminal the first call clears the screen and draws the
+     * grid at the top, the next ones redraw only the changed cells; either way the cursor is left on a cleared line
+     * below the grid. Without ANSI the whole grid is written as by render().
+     */
+    public void renderChanges(ParkingGrid grid) {
+        if (!ansi) {
+            render(grid);
+            return;
+        }
+        int rows = grid.getRows();
+        int cols = grid.getCols();
+        int version = grid.getVersion();
+        changes.setLength(0);
+        if (shown == null || shownRows != rows || shownCols != cols) {
+            // home the cursor and clear the screen, then draw the whole grid
+            changes.append(ESC).append("[H").append(ESC).append("[2J");
+            shown = new byte[rows * cols];
+            shownRows = rows;
+            shownCols = cols;
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < cols; j++) {
+                    byte code = grid.get(i, j);
+                    shown[i * cols + j] = code;
+                    changes.append(ParkingGrid.charOf(code));
+                }
+                changes.append(LINE_SEPARATOR);
+            }
+        } else if (version != shownVersion) {
+            for (int cell = grid.nextDifference(shown, 0); cell >= 0; cell = grid.nextDifference(shown, cell + 1)) {
+                int row = cell / cols;
+                int col = cell % cols;
+                byte code = grid.get(row, col);
+                shown[cell] = code;
+                moveCursor(row, col);
+                changes.append(ParkingGrid.charOf(code));
+            }
+        }
+        shownVersion = version;
+        // park the cursor below the grid and clear what the previous step printed there
+        moveCursor(rows, 0);
+        changes.append(ESC).append("[J");
+        out.print(changes);
+        out.flush();
+    }
+
+    // Returns the frame buffer sized for the given lines, reallocated only when the size changes
+    private char[] frame(int rows, int cols) {
+        int length = rows * (cols + LINE_SEPARATOR.length());
+        if (frame.length != length) {
+            frame = new char[length];
+        }
+        return frame;
+    }
+
+    private static int endLine(char[] lines, int pos) {
+        for (int k = 0; k < LINE_SEPARATOR.length(); k++) {
+            lines[pos++] = LINE_SEPARATOR.charAt(k);
+        }
+        return pos;
+    }
+
+    private static char densityChar(int bays, int taken) {
+        if (bays == 0) {
+            return ' ';
+        }
+        if (taken == 0) {
+            return '.';
+        }
+        if (taken == bays) {
+            return '#';
+        }
+        return (char) ('0' + Math.max(1, Math.min(9, taken * 10 / bays)));
+    }
+
+    /**
+     * Forgets the grid on the screen, the next renderChanges() clears the screen and draws the whole grid again.
+     */
+    public void reset() {
+        shown = null;
+    }
+
+    // Appends the ANSI sequence moving the cursor to a cell, the terminal counts from 1
+    private void moveCursor(int row, int col) {
+        changes.append(ESC).append('[').append(row + 1).append(';').append(col + 1).append('H');
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class counts latencies in log-linear buckets, the way HDR histograms do: every power of two
+ * is split into 16 equal buckets, so any latency from a nanosecond to minutes is kept to within about 6% in under
+ * a thousand counters, and percentiles are read without keeping the samples.
+ * Recording is lock-free and allocates nothing: one atomic increment of the bucket, two adders and a compare-and-set
+ * only when the maximum grows. Reads walk the buckets while gates keep recording, so a percentile may miss the
+ * latest samples but is never torn.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Latencies above 2^40 ns, about 18 minutes, are counted in the last bucket
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds, negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        totalNanos.add(value);
+        long max = maxNanos.get();
+        while (value > max && !maxNanos.compareAndSet(max, value)) {
+            max = maxNanos.get();
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public long getMeanNanos() {
+        long n = getCount();
+        return n == 0 ? 0 : getTotalNanos() / n;
+    }
+
+    /**
+     * Returns the latency under which the given share of the recorded latencies fall, to within the bucket width.
+     *
+     * @param quantile The share, from 0 to 1, e.g. 0.99 for the 99th percentile.
+     * @return The highest latency of the bucket holding the percentile, in nanoseconds, 0 if nothing was recorded.
+     */
+    public long getPercentileNanos(double quantile) {
+        long total = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            total += counts.get(bucket);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(upperBound(bucket), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    // Values below 16 get a bucket each, larger ones the bucket of their top 5 bits
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Highest value counted in a bucket
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long lowerBound = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
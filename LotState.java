@@ -0,0 +1,397 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The LotState class holds the live state of one initialised parking lot: the layout, the capacity ledger,
+ * the free-spot allocator, the route planner and the registry of checked-in vehicles.
+ * It is safe to share between several entry and exit gates. The registry is a VehicleRegistry, the
+ * capacity counters are updated with compare-and-set, and every grid move locks the stripes of the two
+ * cells involved and re-checks the destination, so bays are never double-booked and no update is lost.
+ * Once a LotStore is attached every change is logged while its locks are held, so the log order is the
+ * order the changes were made in, and a snapshot cut excludes all changes through the snapshot lock.
+ * The lot also keeps its fee log mark, the fee log row from which a checkout of the lot may be missing from its
+ * snapshot and log, so a restart only looks for vehicles that have already paid in the rows from there on.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class LotState {
+
+    // Results of the automatic moves, a non-negative value is the number of moves of the route
+    public static final int ALREADY_PARKED = -1;
+    public static final int NO_FREE_SPOT = -2;
+    public static final int NO_ROUTE = -3;
+    public static final int CELL_TAKEN = -4;
+
+    // Number of lock stripes guarding the grid cells, a power of two
+    private static final int LOCK_STRIPES = 64;
+
+    private final ParkingGrid parkingGrid;
+    private final CapacityLedger capacityLedger;
+    private final BayAllocator bayAllocator;
+    private final RoutePlanner routePlanner;
+    private final VehicleRegistry registry = new VehicleRegistry();
+    private final ReentrantLock[] cellLocks = new ReentrantLock[LOCK_STRIPES];
+
+    // Changes hold the read lock, a snapshot cut holds the write lock
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private volatile LotStore lotStore = null; // Logs the changes, null while restoring or without persistence
+    private boolean retired = false; // Set once the lot has been replaced, guarded by the snapshot lock
+    private final AtomicLong feeLogMark = new AtomicLong(); // Fee log rows below it hold no checkout missing from the log
+
+    /**
+     * Creates the state of a freshly initialised parking lot.
+     *
+     * @param parkingGrid The layout of the parking lot.
+     */
+    public LotState(ParkingGrid parkingGrid) {
+        this.parkingGrid = parkingGrid;
+        this.capacityLedger = new CapacityLedger(parkingGrid);
+        this.bayAllocator = new BayAllocator(parkingGrid);
+        this.routePlanner = new RoutePlanner(parkingGrid);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            cellLocks[i] = new ReentrantLock();
+        }
+    }
+
+    public ParkingGrid getParkingGrid() {
+        return parkingGrid;
+    }
+
+    public CapacityLedger getCapacityLedger() {
+        return capacityLedger;
+    }
+
+    public VehicleRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Returns the monitor a vehicle is locked on while it is moved, hit or checked out.
+     */
+    public Object lockOf(Vehicle vehicle) {
+        return registry.lockOf(vehicle);
+    }
+
+    public ReentrantReadWriteLock getSnapshotLock() {
+        return snapshotLock;
+    }
+
+    public void setLotStore(LotStore lotStore) {
+        this.lotStore = lotStore;
+    }
+
+    /**
+     * Returns the fee log mark: every checkout of this lot recorded at a fee log row below it has been logged.
+     */
+    public long getFeeLogMark() {
+        return feeLogMark.get();
+    }
+
+    /**
+     * Raises the fee log mark once the fee log rows below the given one are known to hold no checkout of a vehicle
+     * still in the lot, logging the new mark.
+     *
+     * @param rows The new mark, a lower one is ignored.
+     */
+    public void advanceFeeLogMark(long rows) {
+        snapshotLock.readLock().lock();
+        try {
+            if (feeLogMark.getAndAccumulate(rows, Math::max) < rows) {
+                LotStore store = lotStore;
+                if (store != null) {
+                    store.logFeeLogMark(rows);
+                }
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces this lot if no vehicle is checked in, holding off checkins from the check to the replacement so no
+     * vehicle can check in to a lot that is being thrown away. Once retired the lot takes no more checkins.
+     *
+     * @param replace Installs the lot replacing this one, run only if this lot is empty.
+     * @return true if the lot was empty and has been replaced.
+     */
+    public boolean retireIfEmpty(Runnable replace) {
+        snapshotLock.writeLock().lock();
+        try {
+            if (registry.size() > 0) {
+                return false;
+            }
+            replace.run();
+            retired = true;
+            return true;
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns true once the lot has been replaced by retireIfEmpty.
+     */
+    public boolean isRetired() {
+        snapshotLock.readLock().lock();
+        try {
+            return retired;
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Registers a vehicle if its registration id is not taken and there is capacity for its type.
+     *
+     * @param vehicle The vehicle checking in.
+     * @return true if the vehicle was checked in, false if the lot is full for its type, the id is taken or the lot
+     *         has been retired.
+     */
+    public boolean checkin(Vehicle vehicle) {
+        snapshotLock.readLock().lock();
+        try {
+            if (retired || !capacityLedger.checkin(vehicle.getVehicleClass())) {
+                return false;
+            }
+            boolean added = registry.add(vehicle, current -> {
+                LotStore store = lotStore;
+                if (store != null) {
+                    store.logCheckin(current);
+                }
+            });
+            if (!added) {
+                capacityLedger.checkout(vehicle.getVehicleClass());
+            }
+            return added;
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Puts a vehicle restored from a snapshot back in the registry and on its cell.
+     *
+     * @param vehicle The vehicle with its position and the symbol of the cell under it.
+     * @return true if the vehicle was restored.
+     */
+    public boolean restore(Vehicle vehicle) {
+        if (!checkin(vehicle)) {
+            return false;
+        }
+        //vehicles still at the entry door are not drawn on the layout
+        if (!Constant.SYMBOL_D.equals(vehicle.getOldSymbol())) {
+            parkingGrid.setSymbol(vehicle.getRow(), vehicle.getCol(), vehicle.getVehicleClass().getSymbol());
+            if (Constant.DOT.equals(vehicle.getOldSymbol())) {
+                bayAllocator.occupy(vehicle.getRow(), vehicle.getCol());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts a hit against a checked-in vehicle.
+     *
+     * @param vehicle The vehicle that hit a pillar, a wall or another vehicle.
+     */
+    public void recordHit(Vehicle vehicle) {
+        synchronized (lockOf(vehicle)) {
+            snapshotLock.readLock().lock();
+            try {
+                if (!registry.isCurrent(vehicle)) {
+                    return;
+                }
+                vehicle.setHitNums(vehicle.getHitNums() + 1);
+                LotStore store = lotStore;
+                if (store != null) {
+                    store.logHit(vehicle);
+                }
+            } finally {
+                snapshotLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Moves a vehicle to the given cell if the cell is still a free driveway cell or spot.
+     *
+     * @param vehicle The vehicle being moved.
+     * @param mvRow Row of the destination cell.
+     * @param mvCol Column of the destination cell.
+     * @return true if the vehicle was moved, false if the cell was taken or the vehicle checked out in the meantime.
+     */
+    public boolean moveVehicle(Vehicle vehicle, int mvRow, int mvCol) {
+        // the vehicle is always locked before the snapshot lock, callers may already hold it
+        synchronized (lockOf(vehicle)) {
+            snapshotLock.readLock().lock();
+            try {
+                if (!registry.isCurrent(vehicle)) {
+                    return false;
+                }
+                int from = vehicle.getRow() * parkingGrid.getCols() + vehicle.getCol();
+                int to = mvRow * parkingGrid.getCols() + mvCol;
+                lockCells(from, to);
+                try {
+                    byte mvCode = parkingGrid.get(mvRow, mvCol);
+                    if (!ParkingGrid.isKind(mvCode, ParkingGrid.MASK_DRIVEWAY_OR_SPOT)) {
+                        return false;
+                    }
+                    parkingGrid.setSymbol(vehicle.getRow(), vehicle.getCol(), vehicle.getOldSymbol());
+                    if (Constant.DOT.equals(vehicle.getOldSymbol())) {
+                        bayAllocator.release(vehicle.getRow(), vehicle.getCol());
+                    }
+                    vehicle.setOldSymbol(ParkingGrid.symbolOf(mvCode));
+                    parkingGrid.setSymbol(mvRow, mvCol, vehicle.getVehicleClass().getSymbol());
+                    if (ParkingGrid.isKind(mvCode, ParkingGrid.MASK_SPOT)) {
+                        bayAllocator.occupy(mvRow, mvCol);
+                    }
+                    vehicle.setCol(mvCol);
+                    vehicle.setRow(mvRow);
+                    LotStore store = lotStore;
+                    if (store != null) {
+                        store.logMove(vehicle);
+                    }
+                    return true;
+                } finally {
+                    unlockCells(from, to);
+                }
+            } finally {
+                snapshotLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Drives a vehicle along the shortest clear route to the free spot nearest to the entry that is legal for its type,
+     * one cell at a time. A vehicle stopped by a cell taken on the way stays where it got to.
+     *
+     * @param vehicle The vehicle being parked.
+     * @return The number of moves of the route, or ALREADY_PARKED, NO_FREE_SPOT, NO_ROUTE or CELL_TAKEN.
+     */
+    public int autoPark(Vehicle vehicle) {
+        synchronized (lockOf(vehicle)) {
+            if (Constant.DOT.equals(vehicle.getOldSymbol())) {
+                return ALREADY_PARKED;
+            }
+            int spot = bayAllocator.claimNearestSpot(vehicle.getVehicleClass());
+            if (spot < 0) {
+                return NO_FREE_SPOT;
+            }
+            int spotRow = bayAllocator.rowOf(spot), spotCol = bayAllocator.colOf(spot);
+            int[] route = routePlanner.planToSpot(vehicle.getRow(), vehicle.getCol(), spotRow, spotCol);
+            if (route != null && drive(vehicle, route)) {
+                return route.length;
+            }
+            releaseClaim(spotRow, spotCol);
+            return route == null ? NO_ROUTE : CELL_TAKEN;
+        }
+    }
+
+    /**
+     * Drives a vehicle along the shortest clear route to the checkout door, one cell at a time. A vehicle stopped by
+     * a cell taken on the way stays where it got to.
+     *
+     * @param vehicle The vehicle leaving the parking lot.
+     * @return The number of moves of the route, or NO_ROUTE or CELL_TAKEN.
+     */
+    public int driveToExit(Vehicle vehicle) {
+        synchronized (lockOf(vehicle)) {
+            int[] route = routePlanner.planToExit(vehicle.getRow(), vehicle.getCol());
+            if (route == null) {
+                return NO_ROUTE;
+            }
+            return drive(vehicle, route) ? route.length : CELL_TAKEN;
+        }
+    }
+
+    // Moves a vehicle one cell of a route at a time, stopping where a cell has been taken since the route was planned
+    private boolean drive(Vehicle vehicle, int[] route) {
+        int cols = parkingGrid.getCols();
+        for (int cell : route) {
+            if (!moveVehicle(vehicle, cell / cols, cell % cols)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the vehicle is on the cell in front of the exit door.
+     */
+    public boolean isAtExit(Vehicle vehicle) {
+        return vehicle.getRow() == routePlanner.getExitRow() && vehicle.getCol() == routePlanner.getExitCol();
+    }
+
+    /**
+     * Removes a checked-in vehicle from the parking lot and frees its cell and capacity. The checkouts of a lot are
+     * made in the order of their fee log rows, so the fee log mark moves past the row of each one logged.
+     *
+     * @param vehicle The vehicle checking out, with its exit date and time set.
+     * @param feeLogRow The row of the fee log its checkout was recorded at.
+     * @return The checkout record, or null if the vehicle was checked out by another gate.
+     */
+    public CheckoutVehicle checkout(Vehicle vehicle, long feeLogRow) {
+        synchronized (lockOf(vehicle)) {
+            snapshotLock.readLock().lock();
+            try {
+                boolean removed = registry.remove(vehicle, current -> {
+                    LotStore store = lotStore;
+                    if (store != null) {
+                        store.logCheckout(current, feeLogRow);
+                    }
+                });
+                if (!removed) {
+                    return null;
+                }
+                feeLogMark.accumulateAndGet(feeLogRow + 1, Math::max);
+                // the view keeps the data of the vehicle once it is removed; the cell gets back what was under the
+                // vehicle, a bay for one restored on its bay after its checkout was journaled
+                int cell = vehicle.getRow() * parkingGrid.getCols() + vehicle.getCol();
+                lockCells(cell, cell);
+                try {
+                    parkingGrid.setSymbol(vehicle.getRow(), vehicle.getCol(), vehicle.getOldSymbol());
+                    if (Constant.DOT.equals(vehicle.getOldSymbol())) {
+                        bayAllocator.release(vehicle.getRow(), vehicle.getCol());
+                    }
+                } finally {
+                    unlockCells(cell, cell);
+                }
+                capacityLedger.checkout(vehicle.getVehicleClass());
+                return vehicle.toCheckoutVehicle();
+            } finally {
+                snapshotLock.readLock().unlock();
+            }
+        }
+    }
+
+    // Gives a claimed spot back unless another vehicle has been moved onto it in the meantime
+    private void releaseClaim(int spotRow, int spotCol) {
+        int cell = spotRow * parkingGrid.getCols() + spotCol;
+        lockCells(cell, cell);
+        try {
+            if (!parkingGrid.is(spotRow, spotCol, ParkingGrid.MASK_VEHICLE)) {
+                bayAllocator.release(spotRow, spotCol);
+            }
+        } finally {
+            unlockCells(cell, cell);
+        }
+    }
+
+    // Locks the stripes of two cells, always in the same order to avoid deadlocks
+    private void lockCells(int cellA, int cellB) {
+        int a = cellA & (LOCK_STRIPES - 1), b = cellB & (LOCK_STRIPES - 1);
+        cellLocks[Math.min(a, b)].lock();
+        if (a != b) {
+            cellLocks[Math.max(a, b)].lock();
+        }
+    }
+
+    private void unlockCells(int cellA, int cellB) {
+        int a = cellA & (LOCK_STRIPES - 1), b = cellB & (LOCK_STRIPES - 1);
+        if (a != b) {
+            cellLocks[Math.max(a, b)].unlock();
+        }
+        cellLocks[Math.min(a, b)].unlock();
+    }
+}
@@ -0,0 +1,604 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.CRC32;
+
+/**
+ * The LotStore class persists the live state of the parking lot so a restart brings the checked-in vehicles back.
+ * It keeps a compact snapshot of the lot (its dimensions and every checked-in vehicle with its position; the
+ * layout itself is rebuilt from the dimensions) and a write-ahead log of the checkins, moves, hits and checkouts
+ * made since the snapshot. A flusher thread writes the log every few milliseconds and takes a new snapshot
+ * once enough changes have been logged, starting a new log generation. A restart maps the latest snapshot
+ * and replays only the log generations written after it.
+ * The log is written asynchronously, so a crash can lose the last few milliseconds of moves; the fee log is
+ * kept durable separately by the CheckoutJournal. The snapshot and every checkout record carry the fee log mark of the
+ * lot, so a restart knows from which fee log row on a checkout may be missing from the log.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class LotStore implements AutoCloseable {
+
+    // System properties naming the state directory, unset to keep the lot in memory only, and the number of
+    // changes between snapshots, with its default
+    public static final String STATE_DIR_PROPERTY = "parkinglot.state";
+    public static final String SNAPSHOT_INTERVAL_PROPERTY = "parkinglot.snapshot.interval";
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 50_000;
+
+    private static final String SNAPSHOT_FILE = "lot.snapshot";
+    private static final String LOG_PREFIX = "lot-";
+    private static final String LOG_SUFFIX = ".wal";
+
+    private static final int SNAPSHOT_MAGIC = 0x504C534E; // "PLSN"
+    private static final int LOG_MAGIC = 0x504C574C; // "PLWL"
+    private static final int FORMAT_VERSION = 2;
+    private static final int LOG_HEADER_SIZE = 4 + 4 + 8;
+
+    // Kinds of the log records
+    private static final byte EVENT_CHECKIN = 1;
+    private static final byte EVENT_MOVE = 2;
+    private static final byte EVENT_HIT = 3;
+    private static final byte EVENT_CHECKOUT = 4;
+    private static final byte EVENT_FEE_LOG_MARK = 5;
+
+    private static final long FLUSH_INTERVAL_MS = 20;
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final Path dir;
+    private final int snapshotInterval;
+    private final Thread flusher;
+
+    // Held through a whole snapshot, from the cut of the lot to the deletion of the old log generations, so two
+    // snapshots never interleave their writes; taken before the snapshot lock of the lot
+    private final Object snapshotLock = new Object();
+
+    // Held while writing the log, taken before this
+    private final Object ioLock = new Object();
+
+    // Guarded by this: the attached lot, the open log generation and the changes not written yet
+    private LotState lotState = null;
+    private long generation = 0;
+    private FileChannel logChannel = null;
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private ByteBuffer flushing = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private long changesSinceSnapshot = 0;
+    private IOException failure = null;
+    private boolean closed = false;
+
+    /**
+     * Opens the state directory named by the parkinglot.state system property.
+     *
+     * @return The store, or null if no state directory is named.
+     */
+    public static LotStore open() throws IOException {
+        Path dir = getStateDir();
+        return dir == null ? null : new LotStore(dir, Integer.getInteger(SNAPSHOT_INTERVAL_PROPERTY, DEFAULT_SNAPSHOT_INTERVAL));
+    }
+
+    /**
+     * Returns the state directory named by the parkinglot.state system property, null if none is named.
+     */
+    public static Path getStateDir() {
+        String dir = System.getProperty(STATE_DIR_PROPERTY);
+        return dir == null || dir.isEmpty() ? null : Path.of(dir);
+    }
+
+    /**
+     * Opens a state directory, creating it if needed.
+     *
+     * @param dir The directory holding the snapshot and the log generations.
+     * @param snapshotInterval Number of logged changes after which a new snapshot is taken.
+     */
+    public LotStore(Path dir, int snapshotInterval) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.snapshotInterval = snapshotInterval;
+        // new log generations continue after the ones on disk
+        for (Path logFile : listLogs(Long.MIN_VALUE)) {
+            generation = Math.max(generation, generationOf(logFile));
+        }
+        this.flusher = new Thread(this::flushLoop, "lot-store-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Rebuilds the parking lot from the latest snapshot and the log written after it.
+     *
+     * @param parkingLot Builds the layout of the restored lot.
+     * @return The restored lot, or null if no lot has been saved.
+     */
+    public LotState restore(ParkingLot parkingLot) throws IOException {
+        Path snapshotFile = dir.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(snapshotFile)) {
+            return null;
+        }
+        LotState restored;
+        long snapshotGeneration;
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < 4 || buffer.getInt(buffer.limit() - 4) != checksum(buffer, 0, buffer.limit() - 4)) {
+                throw new IOException("The lot snapshot is corrupted: " + snapshotFile);
+            }
+            if (buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException("Not a lot snapshot: " + snapshotFile);
+            }
+            snapshotGeneration = buffer.getLong();
+            int savedLength = buffer.getInt();
+            int savedWidth = buffer.getInt();
+            long feeLogMark = buffer.getLong();
+            int count = buffer.getInt();
+            restored = new LotState(parkingLot.buildParkingGrid(savedLength, savedWidth));
+            restored.advanceFeeLogMark(feeLogMark);
+            for (int i = 0; i < count; i++) {
+                restored.restore(decodeVehicle(buffer, parkingLot));
+            }
+        }
+        for (Path logFile : listLogs(snapshotGeneration)) {
+            replayLog(logFile, restored, parkingLot);
+        }
+        return restored;
+    }
+
+    /**
+     * Starts persisting a parking lot: takes its snapshot and logs its changes from now on.
+     * A previously attached lot is no longer persisted.
+     *
+     * @param lotState The lot to persist.
+     */
+    public void attach(LotState lotState) throws IOException {
+        synchronized (this) {
+            if (this.lotState != null) {
+                this.lotState.setLotStore(null);
+            }
+            this.lotState = lotState;
+            lotState.setLotStore(this);
+        }
+        snapshot();
+    }
+
+    /**
+     * Logs the checkin of a vehicle, called by the lot while it holds its locks.
+     */
+    public void logCheckin(Vehicle vehicle) {
+        synchronized (this) {
+            int start = beginEvent(EVENT_CHECKIN, vehicleSize(vehicle));
+            encodeVehicle(vehicle, pending);
+            endEvent(start);
+        }
+    }
+
+    /**
+     * Logs the new position of a vehicle, called by the lot while it holds its locks.
+     */
+    public void logMove(Vehicle vehicle) {
+        synchronized (this) {
+            int start = beginEvent(EVENT_MOVE, RegnIdCodec.REGN_ID_LENGTH + 8);
+            putRegnId(pending, vehicle.getRegnId());
+            pending.putInt(vehicle.getRow());
+            pending.putInt(vehicle.getCol());
+            endEvent(start);
+        }
+    }
+
+    /**
+     * Logs the hits of a vehicle, called by the lot while it holds its locks.
+     */
+    public void logHit(Vehicle vehicle) {
+        synchronized (this) {
+            int start = beginEvent(EVENT_HIT, RegnIdCodec.REGN_ID_LENGTH + 4);
+            putRegnId(pending, vehicle.getRegnId());
+            pending.putInt(vehicle.getHitNums());
+            endEvent(start);
+        }
+    }
+
+    /**
+     * Logs the checkout of a vehicle and the fee log row it was recorded at, called by the lot while it holds its locks.
+     */
+    public void logCheckout(Vehicle vehicle, long feeLogRow) {
+        synchronized (this) {
+            int start = beginEvent(EVENT_CHECKOUT, RegnIdCodec.REGN_ID_LENGTH + 8);
+            putRegnId(pending, vehicle.getRegnId());
+            pending.putLong(feeLogRow);
+            endEvent(start);
+        }
+    }
+
+    /**
+     * Logs a new fee log mark of the lot, called by the lot while it holds its snapshot lock.
+     */
+    public void logFeeLogMark(long feeLogMark) {
+        synchronized (this) {
+            int start = beginEvent(EVENT_FEE_LOG_MARK, 8);
+            pending.putLong(feeLogMark);
+            endEvent(start);
+        }
+    }
+
+    /**
+     * Takes a snapshot of the attached lot and starts a new log generation.
+     */
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            LotState state;
+            synchronized (this) {
+                state = lotState;
+            }
+            if (state == null) {
+                return;
+            }
+            ByteBuffer snapshot;
+            long snapshotGeneration;
+            Lock cut = state.getSnapshotLock().writeLock();
+            cut.lock();
+            try {
+                snapshot = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+                snapshot.putInt(SNAPSHOT_MAGIC).putInt(FORMAT_VERSION).putLong(0L);
+                synchronized (this) {
+                    if (lotState != state) {
+                        return;
+                    }
+                }
+                // the length of the parking lot is the number of columns of its layout
+                snapshot.putInt(state.getParkingGrid().getCols()).putInt(state.getParkingGrid().getRows());
+                snapshot.putLong(state.getFeeLogMark());
+                VehicleRegistry registry = state.getRegistry();
+                snapshot.putInt(registry.size());
+                ByteBuffer[] vehicles = {snapshot};
+                registry.forEach(vehicle -> {
+                    vehicles[0] = ensureCapacity(vehicles[0], vehicleSize(vehicle));
+                    encodeVehicle(vehicle, vehicles[0]);
+                });
+                snapshot = vehicles[0];
+                // changes made after the cut go to the next log generation
+                synchronized (ioLock) {
+                    synchronized (this) {
+                        writePending();
+                        snapshotGeneration = ++generation;
+                        openLog(snapshotGeneration);
+                        changesSinceSnapshot = 0;
+                    }
+                }
+            } finally {
+                cut.unlock();
+            }
+            snapshot.putLong(8, snapshotGeneration);
+            snapshot = ensureCapacity(snapshot, 4);
+            snapshot.putInt(checksum(snapshot, 0, snapshot.position()));
+            snapshot.flip();
+
+            Path tmp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (snapshot.hasRemaining()) {
+                    channel.write(snapshot);
+                }
+                channel.force(true);
+            }
+            Files.move(tmp, dir.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            for (Path logFile : listLogs(Long.MIN_VALUE)) {
+                if (generationOf(logFile) < snapshotGeneration) {
+                    Files.deleteIfExists(logFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the flusher, then takes a final snapshot and closes the store.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            // a snapshot the flusher has started is finished before the final one is taken
+            flusher.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            snapshot();
+            flush();
+        } finally {
+            synchronized (ioLock) {
+                synchronized (this) {
+                    if (logChannel != null) {
+                        logChannel.close();
+                    }
+                }
+            }
+        }
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    // Writes the pending changes every few milliseconds and takes a snapshot once enough have been logged
+    private void flushLoop() {
+        while (true) {
+            boolean snapshotDue;
+            synchronized (this) {
+                try {
+                    if (!closed) {
+                        wait(FLUSH_INTERVAL_MS);
+                    }
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            try {
+                flush();
+                synchronized (this) {
+                    snapshotDue = changesSinceSnapshot >= snapshotInterval;
+                }
+                if (snapshotDue) {
+                    snapshot();
+                }
+            } catch (IOException ex) {
+                synchronized (this) {
+                    failure = ex;
+                }
+                return;
+            }
+        }
+    }
+
+    // Writes and syncs the changes logged so far, without blocking the lot while writing; the tests call it to
+    // leave the log of a lot on disk as a crash would, without a final snapshot
+    void flush() throws IOException {
+        synchronized (ioLock) {
+            FileChannel channel;
+            synchronized (this) {
+                if (pending.position() == 0 || logChannel == null) {
+                    return;
+                }
+                ByteBuffer batch = pending;
+                pending = flushing;
+                flushing = batch;
+                channel = logChannel;
+            }
+            flushing.flip();
+            while (flushing.hasRemaining()) {
+                channel.write(flushing);
+            }
+            channel.force(false);
+            flushing.clear();
+        }
+    }
+
+    // Writes and syncs the changes logged so far to the open log generation, called holding ioLock and this
+    private void writePending() throws IOException {
+        if (pending.position() == 0 || logChannel == null) {
+            pending.clear();
+            return;
+        }
+        pending.flip();
+        while (pending.hasRemaining()) {
+            logChannel.write(pending);
+        }
+        logChannel.force(false);
+        pending.clear();
+    }
+
+    // Closes the open log generation and starts the given one, called holding this
+    private void openLog(long logGeneration) throws IOException {
+        if (logChannel != null) {
+            logChannel.close();
+        }
+        logChannel = FileChannel.open(logPath(logGeneration), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+        header.putInt(LOG_MAGIC).putInt(FORMAT_VERSION).putLong(logGeneration).flip();
+        while (header.hasRemaining()) {
+            logChannel.write(header);
+        }
+    }
+
+    // Starts a log record: kind, payload length, payload, CRC32 of the kind, length and payload, called holding this
+    private int beginEvent(byte kind, int payloadSize) {
+        pending = ensureCapacity(pending, 1 + 4 + payloadSize + 4);
+        int start = pending.position();
+        pending.put(kind).putInt(0);
+        return start;
+    }
+
+    private void endEvent(int start) {
+        int end = pending.position();
+        pending.putInt(start + 1, end - start - 5);
+        pending.putInt(checksum(pending, start, end - start));
+        changesSinceSnapshot++;
+    }
+
+    /**
+     * Replays one log generation into the restored lot, up to its end or its first torn record.
+     */
+    private static void replayLog(Path logFile, LotState lotState, ParkingLot parkingLot) throws IOException {
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < LOG_HEADER_SIZE || buffer.getInt() != LOG_MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return;
+            }
+            buffer.getLong();
+            while (buffer.remaining() >= 1 + 4 + 4) {
+                int start = buffer.position();
+                byte kind = buffer.get();
+                int payloadSize = buffer.getInt();
+                if (payloadSize < 0 || payloadSize > buffer.remaining() - 4
+                        || buffer.getInt(start + 5 + payloadSize) != checksum(buffer, start, 5 + payloadSize)) {
+                    return;
+                }
+                applyEvent(kind, buffer, lotState, parkingLot);
+                buffer.position(start + 5 + payloadSize + 4);
+            }
+        }
+    }
+
+    private static void applyEvent(byte kind, ByteBuffer buffer, LotState lotState, ParkingLot parkingLot) {
+        if (kind == EVENT_CHECKIN) {
+            lotState.checkin(decodeVehicle(buffer, parkingLot));
+            return;
+        }
+        if (kind == EVENT_FEE_LOG_MARK) {
+            lotState.advanceFeeLogMark(buffer.getLong());
+            return;
+        }
+        Vehicle vehicle = lotState.getRegistry().get(getPackedRegnId(buffer));
+        if (vehicle == null) {
+            return;
+        }
+        if (kind == EVENT_MOVE) {
+            int row = buffer.getInt();
+            lotState.moveVehicle(vehicle, row, buffer.getInt());
+        } else if (kind == EVENT_HIT) {
+            vehicle.setHitNums(buffer.getInt());
+        } else if (kind == EVENT_CHECKOUT) {
+            lotState.checkout(vehicle, buffer.getLong());
+        }
+    }
+
+    // Vehicle layout: type, packed regn id, row, col, code of the cell under it, hits, entry minutes, model, colour
+    private static void encodeVehicle(Vehicle vehicle, ByteBuffer buffer) {
+        buffer.put(vehicle.getVehicleClass().getCode());
+        putRegnId(buffer, vehicle.getRegnId());
+        buffer.putInt(vehicle.getRow());
+        buffer.putInt(vehicle.getCol());
+        buffer.put(ParkingGrid.codeOf(vehicle.getOldSymbol()));
+        buffer.putInt(vehicle.getHitNums());
+        buffer.putLong(vehicle.getEntryMinutes());
+        putString(buffer, vehicle.getModel());
+        putString(buffer, vehicle.getColour());
+    }
+
+    private static Vehicle decodeVehicle(ByteBuffer buffer, ParkingLot parkingLot) {
+        Vehicle vehicle = parkingLot.createVehicleByType(VehicleTypeCodec.decode(buffer.get()));
+        vehicle.setRegnId(getRegnId(buffer));
+        vehicle.setRow(buffer.getInt());
+        vehicle.setCol(buffer.getInt());
+        vehicle.setOldSymbol(ParkingGrid.symbolOf(buffer.get()));
+        vehicle.setHitNums(buffer.getInt());
+        long entryMinutes = buffer.getLong();
+        if (entryMinutes != Date.NO_TIME) {
+            String entry = Date.formatEpochMinutes(entryMinutes);
+            vehicle.setTimeEntry(entry.substring(DateCodec.DATE_LENGTH + 1));
+            vehicle.setDateEntry(entry.substring(0, DateCodec.DATE_LENGTH));
+        }
+        vehicle.setModel(getString(buffer));
+        vehicle.setColour(getString(buffer));
+        return vehicle;
+    }
+
+    // Upper bound of the encoded size of a vehicle
+    private static int vehicleSize(Vehicle vehicle) {
+        return 1 + RegnIdCodec.REGN_ID_LENGTH + 4 + 4 + 1 + 4 + 8 + stringSize(vehicle.getModel()) + stringSize(vehicle.getColour());
+    }
+
+    private static void putRegnId(ByteBuffer buffer, String regnId) {
+        long packed = RegnIdCodec.pack(regnId);
+        for (int shift = (RegnIdCodec.REGN_ID_LENGTH - 1) * 8; shift >= 0; shift -= 8) {
+            buffer.put((byte) (packed >>> shift));
+        }
+    }
+
+    private static String getRegnId(ByteBuffer buffer) {
+        return RegnIdCodec.unpack(getPackedRegnId(buffer));
+    }
+
+    private static long getPackedRegnId(ByteBuffer buffer) {
+        long packed = 0;
+        for (int i = 0; i < RegnIdCodec.REGN_ID_LENGTH; i++) {
+            packed = (packed << 8) | (buffer.get() & 0xFF);
+        }
+        return packed;
+    }
+
+    // Strings are stored as their UTF-8 length, -1 for null, followed by their bytes
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        if (size < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[size];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int stringSize(String value) {
+        return 4 + (value == null ? 0 : value.length() * 3);
+    }
+
+    // Grows a buffer so it has room for the given number of bytes
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int size) {
+        if (buffer.remaining() >= size) {
+            return buffer;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    private static int checksum(ByteBuffer buffer, int start, int size) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(start).limit(start + size));
+        return (int) crc.getValue();
+    }
+
+    // Log generations from the given one on, oldest first
+    private List<Path> listLogs(long fromGeneration) throws IOException {
+        List<Path> logs = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, LOG_PREFIX + "*" + LOG_SUFFIX)) {
+            for (Path logFile : stream) {
+                if (generationOf(logFile) >= fromGeneration) {
+                    logs.add(logFile);
+                }
+            }
+        }
+        Collections.sort(logs, (a, b) -> Long.compare(generationOf(a), generationOf(b)));
+        return logs;
+    }
+
+    private Path logPath(long logGeneration) {
+        return dir.resolve(LOG_PREFIX + logGeneration + LOG_SUFFIX);
+    }
+
+    private static long generationOf(Path logFile) {
+        String name = logFile.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length()));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+}
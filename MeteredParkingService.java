@@ -0,0 +1,139 @@
+/**
+ * The MeteredParkingService class wraps a ParkingService and records the latency and outcome of its checkins,
+ * park steps, automatic parks, drives to the exit, checkouts and fee quotes in an EngineMetrics, each under an
+ * operation of its own so a whole route is not averaged in with single key moves. The other operations are passed
+ * through untimed.
+ * It works with any parking service, a single lot, a site of levels or a sharded cluster, and adds two
+ * System.nanoTime() calls and no allocation to each timed operation.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class MeteredParkingService implements ParkingService {
+
+    private final ParkingService service;
+    private final EngineMetrics metrics;
+
+    public MeteredParkingService(ParkingService service, EngineMetrics metrics) {
+        this.service = service;
+        this.metrics = metrics;
+    }
+
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public ParkingResult initParkingLot(int length, int width) {
+        return service.initParkingLot(length, width);
+    }
+
+    @Override
+    public ParkingResult checkIn(String vehicleType, String regnId, String model, String colour,
+                                 String dateEntry, String timeEntry) {
+        long start = System.nanoTime();
+        ParkingResult result = service.checkIn(vehicleType, regnId, model, colour, dateEntry, timeEntry);
+        metrics.record(EngineMetrics.Operation.CHECKIN, start, result.isOk());
+        return result;
+    }
+
+    @Override
+    public ParkingResult move(String regnId, char direction) {
+        long start = System.nanoTime();
+        ParkingResult result = service.move(regnId, direction);
+        metrics.record(EngineMetrics.Operation.PARK_STEP, start, result.isOk());
+        return result;
+    }
+
+    @Override
+    public ParkingResult autoPark(String regnId) {
+        long start = System.nanoTime();
+        ParkingResult result = service.autoPark(regnId);
+        metrics.record(EngineMetrics.Operation.AUTO_PARK, start, result.isOk());
+        return result;
+    }
+
+    @Override
+    public ParkingResult driveToExit(String regnId) {
+        long start = System.nanoTime();
+        ParkingResult result = service.driveToExit(regnId);
+        metrics.record(EngineMetrics.Operation.DRIVE_TO_EXIT, start, result.isOk());
+        return result;
+    }
+
+    @Override
+    public ParkingResult quoteCheckout(String regnId, String dateExit, String timeExit) {
+        long start = System.nanoTime();
+        ParkingResult result = service.quoteCheckout(regnId, dateExit, timeExit);
+        metrics.record(EngineMetrics.Operation.FEE_QUOTE, start, result.isOk());
+        return result;
+    }
+
+    @Override
+    public ParkingResult checkOut(String regnId, String dateExit, String timeExit) {
+        long start = System.nanoTime();
+        ParkingResult result = service.checkOut(regnId, dateExit, timeExit);
+        metrics.record(EngineMetrics.Operation.CHECKOUT, start, result.isOk());
+        return result;
+    }
+
+    @Override
+    public Vehicle findVehicle(String regnId) {
+        return service.findVehicle(regnId);
+    }
+
+    @Override
+    public boolean isAtExit(String regnId) {
+        return service.isAtExit(regnId);
+    }
+
+    @Override
+    public ParkingGrid getParkingGrid() {
+        return service.getParkingGrid();
+    }
+
+    @Override
+    public int getLevels() {
+        return service.getLevels();
+    }
+
+    @Override
+    public ParkingGrid getParkingGrid(int level) {
+        return service.getParkingGrid(level);
+    }
+
+    @Override
+    public int findLevel(String regnId) {
+        return service.findLevel(regnId);
+    }
+
+    @Override
+    public int getAvailable(String vehicleType) {
+        return service.getAvailable(vehicleType);
+    }
+
+    @Override
+    public int getEmpQty() {
+        return service.getEmpQty();
+    }
+
+    @Override
+    public int getOccQty() {
+        return service.getOccQty();
+    }
+
+    @Override
+    public Iterable<CheckoutVehicle> getCheckoutVehicles() {
+        return service.getCheckoutVehicles();
+    }
+
+    @Override
+    public FeeLogPage queryCheckoutVehicles(FeeLogQuery query) {
+        return service.queryCheckoutVehicles(query);
+    }
+
+    @Override
+    public RevenueAggregates getRevenueAggregates() {
+        return service.getRevenueAggregates();
+    }
+}
@@ -0,0 +1,219 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The ParkingGrid class is a compact representation of the parking lot layout.
+ * Every cell is stored as a single cell-kind code in a flat byte array (row-major), and the symbol
+ * classification used while parking (pillar, wall, vehicle, driveway...) is a single bitmask test
+ * instead of a chain of String comparisons.
+ * Single cells can be written from several threads, callers coordinate moves with LotState's cell locks.
+ *
+ * Memory footprint compared to the former String[][] layout (64-bit JVM, compressed oops):
+ *   String[][] : 16 + 4 * rows bytes for the outer array plus (16 + 4 * cols) bytes per row,
+ *                i.e. ~4 bytes per cell plus a header per row (the symbols are shared constants).
+ *   ParkingGrid: 16 + rows * cols bytes, i.e. 1 byte per cell and no per-row headers.
+ * A 1000 x 1000 lot therefore drops from ~4.0 MB to ~1.0 MB (~8.0 MB without compressed oops),
+ * see {@link #footprintBytes()} and {@link #stringArrayFootprintBytes(int, int)}.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class ParkingGrid {
+
+    // Cell-kind codes, one per symbol of the layout
+    public static final byte CELL_DOT = 0;
+    public static final byte CELL_WAVY_LINE = 1;
+    public static final byte CELL_DASH = 2;
+    public static final byte CELL_PIPE = 3;
+    public static final byte CELL_PILLAR = 4;
+    public static final byte CELL_DOOR = 5;
+    public static final byte CELL_TRUCK = 6;
+    public static final byte CELL_CAR = 7;
+    public static final byte CELL_BIKE = 8;
+    public static final byte CELL_MOTORBIKE = 9;
+    public static final byte CELL_UNKNOWN = -1;
+
+    // Classification bits, a cell kind can be tested against any combination of them
+    public static final int MASK_SPOT = 1;
+    public static final int MASK_DRIVEWAY = 1 << 1;
+    public static final int MASK_WALL = 1 << 2;
+    public static final int MASK_PILLAR = 1 << 3;
+    public static final int MASK_ENTRY_OR_EXIT = 1 << 4;
+    public static final int MASK_VEHICLE = 1 << 5;
+    public static final int MASK_DRIVEWAY_OR_SPOT = MASK_SPOT | MASK_DRIVEWAY;
+    public static final int MASK_OBSTACLE = MASK_WALL | MASK_PILLAR | MASK_VEHICLE;
+
+    // Symbol and classification lookup tables indexed by cell-kind code
+    private static final String[] SYMBOLS = {
+            Constant.DOT, Constant.WAVY_LINE, Constant.DASH, Constant.PIPE, Constant.SYMBOL_P,
+            Constant.SYMBOL_D, Constant.SYMBOL_T, Constant.SYMBOL_C, Constant.SYMBOL_B, Constant.SYMBOL_M
+    };
+    private static final char[] SYMBOL_CHARS = {'.', '~', '-', '|', 'P', 'D', 'T', 'C', 'B', 'M'};
+    private static final int[] KIND_MASKS = {
+            MASK_SPOT, MASK_DRIVEWAY, MASK_WALL, MASK_WALL, MASK_PILLAR,
+            MASK_ENTRY_OR_EXIT, MASK_VEHICLE, MASK_VEHICLE, MASK_VEHICLE, MASK_VEHICLE
+    };
+
+    // Rough object layout sizes used by the footprint comparison
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+
+    private final int rows;
+    private final int cols;
+    private final byte[] cells;
+
+    // Incremented on every change, lets derived structures detect a stale view of the grid
+    private final AtomicInteger version = new AtomicInteger();
+
+    // Incremented when a cell becomes or stops being a free driveway cell, lets routes detect a changed driveway
+    private final AtomicInteger drivewayVersion = new AtomicInteger();
+
+    /**
+     * Creates an empty grid, every cell is a parking spot until it is set.
+     *
+     * @param rows Number of rows (the width of the parking lot).
+     * @param cols Number of columns (the length of the parking lot).
+     */
+    public ParkingGrid(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.cells = new byte[rows * cols];
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Returns the cell-kind code stored at the given position.
+     */
+    public byte get(int row, int col) {
+        return cells[row * cols + col];
+    }
+
+    /**
+     * Stores a cell-kind code at the given position.
+     */
+    public void set(int row, int col, byte code) {
+        byte previous = cells[row * cols + col];
+        cells[row * cols + col] = code;
+        version.incrementAndGet();
+        if (isKind(previous, MASK_DRIVEWAY) != isKind(code, MASK_DRIVEWAY)) {
+            drivewayVersion.incrementAndGet();
+        }
+    }
+
+    /**
+     * Finds the next cell that differs from a row-major copy of the grid, comparing many cells at a time.
+     *
+     * @param copy A copy of the cells, as long as the grid.
+     * @param from Row-major index to start from.
+     * @return The row-major index of the first differing cell from there, or -1 if none differs.
+     */
+    public int nextDifference(byte[] copy, int from) {
+        int offset = Arrays.mismatch(cells, from, cells.length, copy, from, cells.length);
+        return offset < 0 ? -1 : from + offset;
+    }
+
+    /**
+     * Returns the modification count of the grid.
+     */
+    public int getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Returns the number of changes that made a cell a free driveway cell or took one away. Spots filling up or
+     * emptying do not count, nor does any other change off the driveway.
+     */
+    public int getDrivewayVersion() {
+        return drivewayVersion.get();
+    }
+
+    /**
+     * Returns the display symbol stored at the given position.
+     */
+    public String getSymbol(int row, int col) {
+        return symbolOf(get(row, col));
+    }
+
+    /**
+     * Stores the cell-kind code of a display symbol at the given position.
+     */
+    public void setSymbol(int row, int col, String symbol) {
+        set(row, col, codeOf(symbol));
+    }
+
+    /**
+     * Tests the cell at the given position against a combination of MASK_* bits.
+     *
+     * @return true if the cell belongs to any of the requested classes.
+     */
+    public boolean is(int row, int col, int mask) {
+        return isKind(get(row, col), mask);
+    }
+
+    /**
+     * Tests a cell-kind code against a combination of MASK_* bits.
+     */
+    public static boolean isKind(byte code, int mask) {
+        return code >= 0 && (KIND_MASKS[code] & mask) != 0;
+    }
+
+    /**
+     * Converts a cell-kind code to its display symbol.
+     */
+    public static String symbolOf(byte code) {
+        return code >= 0 && code < SYMBOLS.length ? SYMBOLS[code] : null;
+    }
+
+    /**
+     * Converts a cell-kind code to its display character, '?' for an unknown code.
+     */
+    public static char charOf(byte code) {
+        return code >= 0 && code < SYMBOL_CHARS.length ? SYMBOL_CHARS[code] : '?';
+    }
+
+    /**
+     * Converts a display symbol to its cell-kind code.
+     *
+     * @return the code of the symbol or CELL_UNKNOWN if the symbol is not part of the layout.
+     */
+    public static byte codeOf(String symbol) {
+        if (symbol == null || symbol.length() != 1) {
+            return CELL_UNKNOWN;
+        }
+        switch (symbol.charAt(0)) {
+            case '.': return CELL_DOT;
+            case '~': return CELL_WAVY_LINE;
+            case '-': return CELL_DASH;
+            case '|': return CELL_PIPE;
+            case 'P': return CELL_PILLAR;
+            case 'D': return CELL_DOOR;
+            case 'T': return CELL_TRUCK;
+            case 'C': return CELL_CAR;
+            case 'B': return CELL_BIKE;
+            case 'M': return CELL_MOTORBIKE;
+            default: return CELL_UNKNOWN;
+        }
+    }
+
+    /**
+     * Estimated heap footprint of this grid in bytes.
+     */
+    public long footprintBytes() {
+        return ARRAY_HEADER_BYTES + (long) rows * cols;
+    }
+
+    /**
+     * Estimated heap footprint in bytes of the equivalent String[][] layout (symbols are shared constants).
+     */
+    public static long stringArrayFootprintBytes(int rows, int cols) {
+        return ARRAY_HEADER_BYTES + (long) REFERENCE_BYTES * rows
+                + (long) rows * (ARRAY_HEADER_BYTES + (long) REFERENCE_BYTES * cols);
+    }
+}
@@ -1,8 +1,5 @@
-import java.text.SimpleDateFormat;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.List;
-import java.util.Map;
 
 /**
  * The ParkingLot class provides methods to manage and display a parking lot.
@@ -12,22 +9,27 @@ import java.util.Map;
  */
 
 public class ParkingLot {
-    private final ParkingLotEngine engine;
+    // Range of the accepted entry and exit dates, 1970-01-01 to 2099-12-31
+    private static final long MIN_EPOCH_DAY = DateCodec.toEpochDay(1970, 1, 1);
+    private static final long MAX_EPOCH_DAY = DateCodec.toEpochDay(2099, 12, 31);
 
-    public ParkingLot(ParkingLotEngine parkingLotEngine) {
-        this.engine = parkingLotEngine;
+    private final ParkingService service;
+    private final GridRenderer renderer = new GridRenderer(System.out, false); // Draws a whole layout with one write
+
+    public ParkingLot(ParkingService parkingService) {
+        this.service = parkingService;
     }
 
     /**
      * Initializes a parking lot with given dimensions and then displays it.
      *
-     * @param parkingLotArray Current 2D array representation of the parking lot.
+     * @param parkingGrid Current grid representation of the parking lot.
      * @param length Length of the parking lot.
      * @param width Width of the parking lot.
-     * @return 2D array representation of the initialized parking lot.
+     * @return Grid representation of the initialized parking lot.
      */
-    public String[][] initParkingLotAndDisplay(String[][] parkingLotArray, int length, int width) {
-        String[][] lot = initParkingLot(parkingLotArray, length, width);
+    public ParkingGrid initParkingLotAndDisplay(ParkingGrid parkingGrid, int length, int width) {
+        ParkingGrid lot = initParkingLot(parkingGrid, length, width);
         if (lot != null) {
             displayParkingLot(lot);
         }
@@ -37,83 +39,75 @@ public class ParkingLot {
     /**
      * Initializes the parking lot based on provided dimensions.
      *
-     * @param parkingLotArray Current 2D array representation of the parking lot.
+     * @param parkingGrid Current grid representation of the parking lot.
      * @param length Length of the parking lot.
      * @param width Width of the parking lot.
-     * @return 2D array representation of the initialized parking lot or null if initialization fails.
+     * @return Grid representation of the initialized parking lot or null if initialization fails.
      */
-    public String[][] initParkingLot(String[][] parkingLotArray, int length, int width) {
+    public ParkingGrid initParkingLot(ParkingGrid parkingGrid, int length, int width) {
         if (length < Constant.MINIMUM_SIZE || width < Constant.MINIMUM_SIZE) {
             System.out.println("ParkingLot size cannot be less than " + Constant.MINIMUM_SIZE + ". Goodbye!\n");
             return null;
         }
-        if (parkingLotArray != null && engine.getOccQty() > 0) {
+        if (parkingGrid != null && service.getOccQty() > 0) {
             System.out.println("There are vehicles in the Parking Lot, you cannot change the space of the parking lot at the moment.\n");
             return null;
         }
-        parkingLotArray = new String[width][length];
+        return buildParkingGrid(length, width);
+    }
+
+    /**
+     * Builds the layout of a parking lot with the given dimensions.
+     *
+     * @param length Length of the parking lot.
+     * @param width Width of the parking lot.
+     * @return Grid representation of the parking lot.
+     */
+    public ParkingGrid buildParkingGrid(int length, int width) {
+        ParkingGrid parkingGrid = new ParkingGrid(width, length);
 
         for (int i = 0; i < width; i++) {
             for (int j = 0; j < length; j++) {
-                parkingLotArray[i][j] = getUnitStr(i, j, width, length);
+                parkingGrid.set(i, j, getUnitCode(i, j, width, length));
             }
         }
-        return parkingLotArray;
+        return parkingGrid;
     }
 
     /**
-     * Displays the parking lot in a grid format.
+     * Displays the parking lot in a grid format, written to the console in one go.
      *
-     * @param parkingLotArray 2D array representation of the parking lot.
+     * @param parkingGrid Grid representation of the parking lot.
      */
-    public void displayParkingLot(String[][] parkingLotArray) {
-        for (String[] itemArray : parkingLotArray) {
-            for (String item : itemArray) {
-                System.out.print(item);
-            }
-            System.out.println();
-        }
+    public void displayParkingLot(ParkingGrid parkingGrid) {
+        renderer.render(parkingGrid);
     }
 
-
     /**
-     * Determines the correct unit character to display at a given parking lot position.
+     * Determines the correct unit code to store at a given parking lot position.
      *
      * @param rowIndex Row index of the parking lot.
      * @param colIndex Column index of the parking lot.
      * @param rows Total number of rows in the parking lot.
      * @param cols Total number of columns in the parking lot.
-     * @return The character to be displayed.
+     * @return The cell-kind code of the unit.
      */
-    private String getUnitStr(int rowIndex, int colIndex, int rows, int cols) {
-        String s = "";
+    private byte getUnitCode(int rowIndex, int colIndex, int rows, int cols) {
         //1st and Last Column Output |
         if (colIndex == 0 || colIndex == cols - 1) {
             if ((rowIndex == 1 && colIndex == 0) || (rowIndex == rows - 2 && colIndex == cols - 1)) {
-                s = Constant.SYMBOL_D;
-            } else {
-                s = Constant.PIPE;
-            }
-        } else {
-            if (rowIndex == 2 || rowIndex == rows - 3) {
-                if (colIndex > 0 && colIndex % 2 == 0) {
-                    s = Constant.WAVY_LINE;
-                }else {
-                    s = Constant.SYMBOL_P;
-                }
-            } else if (rowIndex == 0 || rowIndex == rows - 1) {
-                s = Constant.DASH;
-            } else if (rowIndex == 1 || rowIndex == rows - 2) {
-                s = Constant.WAVY_LINE;
-            } else {
-                if (colIndex > 0 && colIndex % 2 == 0) {
-                    s = Constant.WAVY_LINE;
-                } else {
-                    s = Constant.DOT;
-                }
+                return ParkingGrid.CELL_DOOR;
             }
+            return ParkingGrid.CELL_PIPE;
         }
-        return s;
+        if (rowIndex == 2 || rowIndex == rows - 3) {
+            return colIndex % 2 == 0 ? ParkingGrid.CELL_WAVY_LINE : ParkingGrid.CELL_PILLAR;
+        } else if (rowIndex == 0 || rowIndex == rows - 1) {
+            return ParkingGrid.CELL_DASH;
+        } else if (rowIndex == 1 || rowIndex == rows - 2) {
+            return ParkingGrid.CELL_WAVY_LINE;
+        }
+        return colIndex % 2 == 0 ? ParkingGrid.CELL_WAVY_LINE : ParkingGrid.CELL_DOT;
     }
 
     /**
@@ -166,52 +160,49 @@ public class ParkingLot {
      * @return true if the time is valid, false otherwise.
      */
     public boolean isValidTime(String inCmd) {
-        if (inCmd == null || inCmd.trim().length() <= 0 || inCmd.indexOf(":") < 0) {
-            return false;
-        }
-        String[] split = inCmd.split(":");
-        if (split.length != 2 || split[0].length() != 2 || split[1].length() != 2
-                || !isValidDigit(split[0]) || !isValidDigit(split[1])) {
-            return false;
-        }
-        int hour = Integer.valueOf(split[0]);
-        int min = Integer.valueOf(split[1]);
-        if (hour > 23 || hour < 0 || min > 59 || min < 0) {
-            return false;
-        }
-        return true;
+        return DateCodec.parseMinuteOfDay(inCmd) != DateCodec.INVALID;
     }
 
+    /**
+     * Validates if the given input command represents a valid date format (yyyy-MM-dd).
+     *
+     * @param inCmd The input command to validate.
+     * @return 1 if the date is valid, 2 if it is outside 1970-01-01 to 2099-12-31, 0 otherwise.
+     */
     public int isValidDate(String inCmd) {
-        if (inCmd == null || inCmd.trim().length() != 10 || inCmd.indexOf("-") < 0) {
+        long epochDay = DateCodec.parseEpochDay(inCmd);
+        if (epochDay == DateCodec.INVALID) {
             return 0;
         }
-        int value = 0;
-        SimpleDateFormat sdf = new SimpleDateFormat();
-        sdf.applyPattern("yyyy-MM-dd");
-        try {
-            Date date = sdf.parse(inCmd);
-            value = inCmd.equals(sdf.format(date)) ? 1 : 0;
-            if (value == 1) {
-                if (inCmd.compareTo("1970-01-01") < 0 || inCmd.compareTo("2099-12-31") > 0) {
-                    value = 2;
-                }
-            }
-        } catch (Exception e) {
-            value = 0;
+        if (epochDay < MIN_EPOCH_DAY || epochDay > MAX_EPOCH_DAY) {
+            return 2;
         }
-        return value;
+        return 1;
+    }
+
+    /**
+     * Validates if the given input represents a valid registration id: exactly 6 Latin-1 characters without spaces,
+     * so it fits the fixed-size records of the checkout journal.
+     *
+     * @param inCmd The input to validate.
+     * @return true if the registration id is valid, false otherwise.
+     */
+    public boolean isValidRegnId(String inCmd) {
+        return inCmd != null && inCmd.indexOf(" ") < 0 && RegnIdCodec.isPackable(inCmd);
     }
 
     /**
      * Validates if the provided key represents a valid parking action.
-     * Valid keys are: w, s, a, d, and q.
+     * Valid keys are: w, s, a, d, p, e and q.
      *
      * @param key The key input by the user.
-     * @return true if the key is valid, false otherwise.
+     * @return true if the key is valid, false otherwise, including for null.
      */
     public boolean isValidParkActionKey(String key) {
-        List<String> parkKeyList = Arrays.asList(new String[] {"w", "s", "a", "d", "q"});
+        if (key == null) {
+            return false;
+        }
+        List<String> parkKeyList = Arrays.asList(new String[] {"w", "s", "a", "d", "p", "e", "q"});
         return parkKeyList.contains(key.toLowerCase());
     }
 
@@ -223,6 +214,9 @@ public class ParkingLot {
      * @return true if the vehicle type is valid, false otherwise.
      */
     public boolean isValidVehicleType(String vehicleType) {
+        if (vehicleType == null) {
+            return false;
+        }
         if(vehicleType.equalsIgnoreCase("car") || vehicleType.equalsIgnoreCase("bike")
                 || vehicleType.equalsIgnoreCase("truck")
                 || vehicleType.equalsIgnoreCase("motorbike")){
@@ -233,50 +227,26 @@ public class ParkingLot {
 
 
     /**
-     * This method calculates the number of available parking slots for the specified vehicle type.
-     * It considers the different quantities of vehicle types and the currently checked-in vehicles
-     * to return the available quantity for the specified type.
+     * This method returns the number of available parking slots for the specified vehicle type.
+     * The per-class counters are kept by the capacity ledger, so the lookup does not depend on
+     * the number of checked-in vehicles.
      *
-     * @param parkingLotArray Represents the parking lot as a 2D array.
-     * @param checkinMap      Contains the vehicles currently checked in with their details.
+     * @param capacityLedger  Holds the capacity counters of the parking lot.
      * @param vehicleType     Specifies the type of vehicle to calculate available slots for.
      * @return qty            Number of available slots for the specified vehicle type.
      */  
-    public int getEmpPlotQtyByVehicleType(String[][] parkingLotArray, Map<String, Vehicle> checkinMap, String vehicleType) {
-        int qty = 0;
-        if (parkingLotArray == null) {
-            return 0;
-        }
-        int truckQty =0, bikeQty =0, totalQty =0;
-        totalQty = (parkingLotArray.length - 6) * ((parkingLotArray[0].length - 1) / 2);
-        truckQty = parkingLotArray.length - 6;
-        bikeQty = truckQty;
-        int checkinTruckQty=0,checkinBikeQty=0,checkinCarQty=0;
-        if (checkinMap.size() > 0) {
-            for (Map.Entry<String, Vehicle> entry : checkinMap.entrySet()) {
-                if (entry.getValue().getType().equals(Constant.VEHICLE_TYPE_TRUCK)) {
-                    checkinTruckQty += 1;
-                }else if (entry.getValue().getType().equals(Constant.VEHICLE_TYPE_CAR)) {
-                    checkinCarQty += 1;
-                }else if (entry.getValue().getType().equals(Constant.VEHICLE_TYPE_BIKE) || entry.getValue().getType().equals(Constant.VEHICLE_TYPE_MOTORBIKE)) {
-                    checkinBikeQty += 1;
-                }
-            }
-        }
+    public int getEmpPlotQtyByVehicleType(CapacityLedger capacityLedger, String vehicleType) {
+        return capacityLedger.getAvailable(vehicleType);
+    }
 
-        if (Constant.VEHICLE_TYPE_MOTORBIKE.equals(vehicleType) || Constant.VEHICLE_TYPE_BIKE.equals(vehicleType)) {
-            qty = bikeQty - checkinBikeQty;
-            return qty;
-        }
-        if (Constant.VEHICLE_TYPE_TRUCK.equals(vehicleType)) {
-            qty = truckQty - checkinTruckQty;
-            return qty;
-        }
-        if (Constant.VEHICLE_TYPE_CAR.equals(vehicleType)) {
-            qty = totalQty - checkinCarQty - checkinTruckQty - checkinBikeQty;
-            return qty;
-        }
-        return qty;
+    /**
+     * Converts a valid vehicle type typed in any case to its canonical name, e.g. "truck" to "Truck".
+     *
+     * @param vehicleType The type of vehicle.
+     * @return The canonical vehicle type.
+     */
+    public String toVehicleTypeName(String vehicleType) {
+        return vehicleType.substring(0, 1).toUpperCase() + vehicleType.toLowerCase().substring(1);
     }
 
     public Vehicle createVehicleByType(String vehicleType) {
@@ -292,33 +262,4 @@ public class ParkingLot {
         }
         return vehicle;
     }
-    
-    /**
-     * Checks if the provided string matches any of the predefined symbols.
-     *
-     * @param mvStr The string to be checked.
-     * @return boolean Returns true if the string matches a following symbol, otherwise false.
-     */
-    public boolean isVehicleSymbol(String mvStr) {
-        return Constant.SYMBOL_T.equals(mvStr) || Constant.SYMBOL_C.equals(mvStr) || Constant.SYMBOL_B.equals(mvStr) || Constant.SYMBOL_M
-                .equals(mvStr);
-    }
-
-    public boolean isPillarSymbol(String mvStr) {
-        return Constant.SYMBOL_P.equals(mvStr);
-    }
-
-    public boolean isEntryOrExitSymbol(String mvStr) {
-        return Constant.SYMBOL_D.equals(mvStr);
-    }
-
-    public boolean isWallsSymbol(String mvStr) {
-        return Constant.PIPE.equals(mvStr) || Constant.DASH.equals(mvStr);
-    }
-
-    public boolean isDrivewayOrSpotsSymbol(String mvStr) {
-        return Constant.DOT.equals(mvStr) || Constant.WAVY_LINE.equals(mvStr);
-    }
 }
-
-
@@ -0,0 +1,181 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * The ParkingLotBenchmark class measures the core parking operations to give a baseline for future optimisations.
+ * Every case is warmed up first and then timed over several measurement rounds; the time and the bytes allocated
+ * by the benchmark thread are reported per operation, the latter playing the role of an allocation profiler.
+ * Run it with: java ParkingLotBenchmark [measurement rounds]
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class ParkingLotBenchmark {
+
+    // Rounds of each case, every round runs the case for the given number of operations
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int DEFAULT_MEASUREMENT_ROUNDS = 5;
+
+    // Sizes of the benchmarked parking lots
+    private static final int LARGE_LOT_SIZE = 1000;
+    private static final int BUSY_LOT_LENGTH = 201;
+    private static final int BUSY_LOT_WIDTH = 206;
+    private static final int BUSY_LOT_VEHICLES = 5000;
+    private static final int CYCLE_LOT_LENGTH = 41;
+    private static final int CYCLE_LOT_WIDTH = 46;
+
+    private static final String[] VEHICLE_TYPES = {
+            Constant.VEHICLE_TYPE_CAR, Constant.VEHICLE_TYPE_BIKE, Constant.VEHICLE_TYPE_MOTORBIKE, Constant.VEHICLE_TYPE_TRUCK
+    };
+
+    /**
+     * One benchmarked operation. The returned value is consumed so the work cannot be optimised away.
+     */
+    private interface Operation {
+        long run(int i);
+    }
+
+    private final int measurementRounds;
+    private final com.sun.management.ThreadMXBean threadBean;
+    private long sink = 0; // Consumes the results of the operations
+
+    public ParkingLotBenchmark(int measurementRounds) {
+        this.measurementRounds = measurementRounds;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        this.threadBean = bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) bean : null;
+    }
+
+    /**
+     * The main entry point of the benchmark.
+     *
+     * @param args optional number of measurement rounds
+     */
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_MEASUREMENT_ROUNDS;
+        new ParkingLotBenchmark(rounds).runAll();
+    }
+
+    /**
+     * Runs all benchmark cases and prints one line per case.
+     */
+    public void runAll() {
+        System.out.printf("%-40s|%14s|%14s%n", "Benchmark", "ns/op", "bytes/op");
+        System.out.println("--------------------------------------------------------------------");
+
+        ParkingLot parkingLot = new ParkingLot(new ParkingLotService());
+        run("initParkingLot " + LARGE_LOT_SIZE + "x" + LARGE_LOT_SIZE, 20,
+                i -> parkingLot.initParkingLot(null, LARGE_LOT_SIZE, LARGE_LOT_SIZE).getRows());
+
+        ParkingService busyService = newBusyService();
+        run("getEmpPlotQtyByVehicleType " + BUSY_LOT_VEHICLES + " in", 1_000_000,
+                i -> busyService.getAvailable(VEHICLE_TYPES[i & 3]));
+
+        // frames go to a discarding stream, a move changes one cell
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        ParkingGrid renderGrid = parkingLot.buildParkingGrid(BUSY_LOT_LENGTH, BUSY_LOT_WIDTH);
+        GridRenderer frameRenderer = new GridRenderer(discard, false);
+        run("render " + BUSY_LOT_LENGTH + "x" + BUSY_LOT_WIDTH, 2_000, i -> {
+            frameRenderer.render(renderGrid);
+            return renderGrid.getVersion();
+        });
+        GridRenderer ansiRenderer = new GridRenderer(discard, true);
+        run("renderChanges ANSI one move " + BUSY_LOT_LENGTH + "x" + BUSY_LOT_WIDTH, 2_000, i -> {
+            renderGrid.set(3, 3, (i & 1) == 0 ? ParkingGrid.CELL_CAR : ParkingGrid.CELL_DOT);
+            ansiRenderer.renderChanges(renderGrid);
+            return renderGrid.getVersion();
+        });
+
+        Vehicle vehicle = newParkedCar();
+        run("calculateParkingFee", 1_000_000, i -> (long) vehicle.calculateParkingFee());
+        run("toCheckoutVehicle", 1_000_000, i -> vehicle.toCheckoutVehicle().getParkingFeeCents());
+
+        run("Date.parseDateFormat datetime", 1_000_000,
+                i -> Date.parseDateFormat("2024-01-01 10:00", Date.FORMAT_DATETIME).getTime());
+        run("Date.parseDateFormat date", 1_000_000,
+                i -> Date.parseDateFormat("2024-01-01", Date.FORMAT_DATE).getTime());
+
+        ParkingService cycleService = new ParkingLotService();
+        cycleService.initParkingLot(CYCLE_LOT_LENGTH, CYCLE_LOT_WIDTH);
+        run("checkin-park-checkout cycle", 20_000, i -> runCycle(cycleService, i));
+
+        System.out.println("(sink " + sink + ")");
+    }
+
+    /**
+     * Warms a case up, measures it and prints the average time and allocation per operation.
+     *
+     * @param name Name of the case.
+     * @param ops Number of operations per round.
+     * @param operation The benchmarked operation.
+     */
+    private void run(String name, int ops, Operation operation) {
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            runRound(ops, operation);
+        }
+        long bestNanos = Long.MAX_VALUE;
+        long totalBytes = 0;
+        for (int r = 0; r < measurementRounds; r++) {
+            long bytesBefore = allocatedBytes();
+            long nanos = runRound(ops, operation);
+            totalBytes += allocatedBytes() - bytesBefore;
+            bestNanos = Math.min(bestNanos, nanos);
+        }
+        String bytesPerOp = threadBean == null ? "n/a"
+                : String.format(Locale.ROOT, "%.1f", (double) totalBytes / ((long) ops * measurementRounds));
+        System.out.printf(Locale.ROOT, "%-40s|%14.1f|%14s%n", name, (double) bestNanos / ops, bytesPerOp);
+    }
+
+    private long runRound(int ops, Operation operation) {
+        long acc = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            acc += operation.run(i);
+        }
+        long nanos = System.nanoTime() - start;
+        sink += acc;
+        return nanos;
+    }
+
+    private long allocatedBytes() {
+        return threadBean == null ? 0 : threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // A parking lot with thousands of vehicles checked in
+    private static ParkingService newBusyService() {
+        ParkingService service = new ParkingLotService();
+        service.initParkingLot(BUSY_LOT_LENGTH, BUSY_LOT_WIDTH);
+        for (int i = 0; i < BUSY_LOT_VEHICLES; i++) {
+            service.checkIn(VEHICLE_TYPES[i & 3], regnId(i), "Model", "Black", "2024-01-01", "10:00");
+        }
+        return service;
+    }
+
+    private static Vehicle newParkedCar() {
+        Vehicle vehicle = new Car();
+        vehicle.setRegnId("BEN001");
+        vehicle.setDateEntry("2024-01-01");
+        vehicle.setTimeEntry("10:00");
+        vehicle.setDateExit("2024-01-02");
+        vehicle.setTimeExit("12:30");
+        vehicle.setHitNums(1);
+        return vehicle;
+    }
+
+    // Checks a vehicle in, parks it, drives it to the exit and checks it out
+    private static long runCycle(ParkingService service, int i) {
+        String regnId = regnId(i % 100_000);
+        service.checkIn(VEHICLE_TYPES[i & 3], regnId, "Model", "Black", "2024-01-01", "10:00");
+        long moves = service.autoPark(regnId).getMoves();
+        moves += service.driveToExit(regnId).getMoves();
+        CheckoutVehicle checkoutVehicle = service.checkOut(regnId, "2024-01-02", "12:30").getCheckoutVehicle();
+        return moves + (checkoutVehicle == null ? 0 : checkoutVehicle.getParkingFeeCents());
+    }
+
+    private static String regnId(int i) {
+        return String.format(Locale.ROOT, "R%05d", i);
+    }
+}
@@ -2,15 +2,15 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
 
 /**
  * The ParkingLotEngine class provides the user interface and control mechanism to manage the parking lot simulation.
  * It interacts with the user through console commands to perform operations
  * like initializing the parking lot, checking in and checking out vehicles, viewing the current parking lot state, and more.
+ * All parking rules live in the ParkingService, the engine only reads the console and prints the results.
  * 
  * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
  */
@@ -20,27 +20,59 @@ import java.util.Map;
  */
 public class ParkingLotEngine {
     private final String[] args; // to collect command line arguments
-    private ParkingLot parkingLot;
-    private String[][] parkingLotArray = null; // Two-dimensional representation of the parking lot
+    private final ParkingService service;
+    private final ParkingLot parkingLot;
+    private final EngineMetrics metrics = new EngineMetrics(); // Counts and latencies of the operations
+    private final GridRenderer renderer = new GridRenderer(System.out, GridRenderer.isAnsiTerminal()); // Redraws the lot while parking
     private int globalLength = Constant.ZERO;
     private int globalWidth = Constant.ZERO;
 
-    private Map<String, Vehicle> checkinMap = new HashMap<>();
-    private List<CheckoutVehicle> checkoutVehicleList = new ArrayList<>();
+    // Number of latest days shown by the report
+    private static final int REPORT_DAYS = 7;
 
-    //Empty and Occupied spaces quantity in the parking lot
-    private int empQty = Constant.QTY_INIT_VALUE;
-    private int occQty = Constant.QTY_INIT_VALUE;
+    // Sizes of the window and overview views, in characters
+    private static final int WINDOW_ROWS = 21;
+    private static final int WINDOW_COLS = 61;
+    private static final int OVERVIEW_ROWS = 40;
+    private static final int OVERVIEW_COLS = 80;
 
     /**
      * The main entry point for the application.
      *
-     * @param args command line arguments
+     * @param args command line arguments, the length and width of the lot or --batch followed by a command file
      */
-    public static void main(String[] args) {
-        ParkingLotEngine engine = new ParkingLotEngine(args);
-        try {
-            engine.startParking();
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && Constant.ARG_BATCH.equals(args[0])) {
+            BatchRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // Everything is kept in memory unless persistence is asked for: the fee log is kept in the store named by
+        // -Dparkinglot.feelog, made durable by the checkout journal named by -Dparkinglot.journal, and the live lot
+        // in the state directory named by -Dparkinglot.state.
+        // -Dparkinglot.levels hosts several levels, each one kept in a level-N directory of the state directory, and
+        // -Dparkinglot.shards launches shard processes instead, each one kept in a shard-N directory.
+        // Checkouts are priced by the rate plan in the file named by -Dparkinglot.tariff, reloaded when it changes
+        TariffEngine.watch();
+        try (FeeLogStore feeLog = FeeLogStore.open();
+             CheckoutJournal journal = CheckoutJournal.open(feeLog.getRowCount(), feeLog::append)) {
+            // the journal is the source of truth and row N of the store is record N of the journal, drop rows it
+            // does not hold
+            if (journal != null) {
+                feeLog.truncate(journal.getRecordCount());
+            }
+            if (Integer.getInteger(ShardedParkingService.SHARDS_PROPERTY, 0) > 0) {
+                try (ShardedParkingService cluster = ShardedParkingService.launch(journal, feeLog)) {
+                    new ParkingLotEngine(args, cluster).startParking();
+                }
+            } else if (Integer.getInteger(FederatedParkingService.LEVELS_PROPERTY, 1) > 1) {
+                try (FederatedParkingService site = FederatedParkingService.open(journal, feeLog)) {
+                    new ParkingLotEngine(args, site).startParking();
+                }
+            } else {
+                try (LotStore lotStore = LotStore.open()) {
+                    new ParkingLotEngine(args, new ParkingLotService(journal, feeLog, lotStore)).startParking();
+                }
+            }
         } catch (Exception ex) {
             ex.printStackTrace();
         }
@@ -52,8 +84,19 @@ public class ParkingLotEngine {
      * @param args command line arguments
      */
     public ParkingLotEngine(String[] args) {
+        this(args, new ParkingLotService());
+    }
+
+    /**
+     * Constructor initializes the parking lot engine on top of an existing parking service.
+     *
+     * @param args command line arguments
+     * @param service the parking service the console drives
+     */
+    public ParkingLotEngine(String[] args, ParkingService service) {
         this.args = args;
-        this.parkingLot = new ParkingLot(this);
+        this.service = new MeteredParkingService(service, metrics);
+        this.parkingLot = new ParkingLot(this.service);
     }
 
     /**
@@ -94,11 +137,38 @@ public class ParkingLotEngine {
                     case Constant.CMD_PARKINGFEELOG:
                         inCmd = doParkingFeeLog(reader);
                         break;
+                    case Constant.CMD_SEARCHFEELOG:
+                        inCmd = doSearchFeeLog(reader);
+                        break;
+                    case Constant.CMD_REPORT:
+                        inCmd = doReport(reader);
+                        break;
+                    case Constant.CMD_WINDOW:
+                        inCmd = doWindow(reader);
+                        break;
+                    case Constant.CMD_OVERVIEW:
+                        inCmd = doOverview(reader);
+                        break;
+                    case Constant.CMD_METRICS:
+                        inCmd = doMetrics(reader);
+                        break;
+                    case Constant.CMD_METRICS_DUMP:
+                        inCmd = doMetricsDump(reader);
+                        break;
+                    case Constant.CMD_TARIFF:
+                        inCmd = doTariff(reader);
+                        break;
+                    case Constant.CMD_RELOAD_TARIFF:
+                        inCmd = doReloadTariff(reader);
+                        break;
+                    case Constant.CMD_RERATE:
+                        inCmd = doRerate(reader);
+                        break;
                     case Constant.CMD_EXIT:
                         System.out.println(Constant.PROMPT_EXIT);
                         return;
                     default:
-                        System.out.print(formatPrompt(Constant.PROMPT_NOTFOUND_MAIN, empQty, occQty));
+                        System.out.print(formatPrompt(Constant.PROMPT_NOTFOUND_MAIN));
             }
             inCmd = reader.readLine();
         }
@@ -118,11 +188,9 @@ public class ParkingLotEngine {
         }
         globalLength = Integer.valueOf(length);
         globalWidth = Integer.valueOf(width);
-        String[][] array = parkingLot.initParkingLot(parkingLotArray, globalLength, globalWidth);
-        if (array != null) {
-            this.parkingLotArray = array;
-            this.empQty = (array.length - 6) * ((array[0].length - 1) / 2);
-            this.occQty = 0;
+        if (service.initParkingLot(globalLength, globalWidth).getStatus() == ParkingResult.Status.INVALID_SIZE) {
+            System.out.println(String.format(Constant.PROMPT_TOO_MANY_BAYS, CapacityLedger.MAX_BAYS) + " Goodbye!\n");
+            return false;
         }
         return true;
     }
@@ -147,7 +215,7 @@ public class ParkingLotEngine {
             inCmd = reader.readLine();
         }
         System.out.println();
-        System.out.print(formatPrompt(Constant.PROMPT_MAIN,empQty, occQty));
+        System.out.print(formatPrompt(Constant.PROMPT_MAIN));
         return inCmd;
     }
 
@@ -174,7 +242,7 @@ public class ParkingLotEngine {
             inCmd = reader.readLine();
 
         }
-        System.out.print(formatPrompt(Constant.PROMPT_MAIN,empQty, occQty));
+        System.out.print(formatPrompt(Constant.PROMPT_MAIN));
         return inCmd;
     }
 
@@ -184,7 +252,7 @@ public class ParkingLotEngine {
      * @param sc BufferedReader instance for reading user input
      */
     private void doParkingLotToInit(BufferedReader sc) throws IOException {
-        if (parkingLotArray != null && occQty>0) {
+        if (getOccQty()>0) {
             System.out.println("There are vehicles in the Parking Lot, you cannot change the space of the parking lot at the moment.");
             return;
         }
@@ -203,11 +271,13 @@ public class ParkingLotEngine {
         }
         globalWidth = Integer.valueOf(inCmd);
         System.out.println("Parking Lot Space is setup. Here is the layout -");
-        String[][] array = parkingLot.initParkingLotAndDisplay(parkingLotArray, globalLength, globalWidth);
-        if (array != null) {
-            this.parkingLotArray = array;
-            this.empQty = (array.length - 6) * ((array[0].length - 1) / 2);
-            this.occQty = 0;
+        ParkingResult result = service.initParkingLot(globalLength, globalWidth);
+        if (result.isOk()) {
+            displayLevels();
+        } else if (result.getStatus() == ParkingResult.Status.LOT_OCCUPIED) {
+            System.out.println("There are vehicles in the Parking Lot, you cannot change the space of the parking lot at the moment.\n");
+        } else if (result.getStatus() == ParkingResult.Status.INVALID_SIZE) {
+            System.out.println(String.format(Constant.PROMPT_TOO_MANY_BAYS, CapacityLedger.MAX_BAYS) + "\n");
         }
 
         System.out.print("Press any key to return to parkinglot menu\n");
@@ -220,17 +290,197 @@ public class ParkingLotEngine {
      * @param sc BufferedReader instance for reading user input
      */
     private void doParkingLotToView(BufferedReader sc) throws IOException {
-        if (parkingLotArray == null) {
+        ParkingGrid parkingGrid = service.getParkingGrid();
+        if (parkingGrid == null) {
             System.out.print("The parking lot is not initialised. Please run init!\n");
             System.out.print("Press any key to return to parkinglot menu\n");
             sc.readLine();
             return;
         }
-        parkingLot.displayParkingLot(parkingLotArray);
+        displayLevels();
         System.out.println("Press any key to return to parkinglot menu");
         sc.readLine();
     }
 
+    // Displays every level of the parking lot, headed by its number when there are several
+    private void displayLevels() {
+        for (int level = 0; level < service.getLevels(); level++) {
+            if (service.getLevels() > 1) {
+                System.out.println("Level " + (level + 1) + ":");
+            }
+            parkingLot.displayParkingLot(service.getParkingGrid(level));
+        }
+    }
+
+    /**
+     * Displays the part of the parking lot around a vehicle or a cell, reading only the cells shown.
+     *
+     * @param sc BufferedReader instance for reading user input
+     * @return Returns an empty string after processing.
+     */
+    private String doWindow(BufferedReader sc) throws IOException {
+        ParkingGrid parkingGrid = service.getParkingGrid();
+        if (parkingGrid == null) {
+            System.out.println("The parking lot is not initialised. Please run init!");
+            System.out.print(formatPrompt(Constant.PROMPT_MAIN));
+            return "";
+        }
+        String prompt = service.getLevels() > 1 ? "> Regn Id or row,col,level: " : "> Regn Id or row,col: ";
+        System.out.print(prompt);
+        String inCmd = sc.readLine();
+        int[] centre;
+        while ((centre = toWindowCentre(parkingGrid, inCmd)) == null) {
+            System.out.println("Invalid detail, please enter detail again!");
+            System.out.print(prompt);
+            inCmd = sc.readLine();
+            if (inCmd == null) {
+                return "";
+            }
+        }
+        if (service.getLevels() > 1) {
+            parkingGrid = service.getParkingGrid(centre[2]);
+            System.out.print("Level " + (centre[2] + 1) + ", ");
+        }
+        int firstRow = Math.max(0, Math.min(centre[0] - WINDOW_ROWS / 2, parkingGrid.getRows() - WINDOW_ROWS));
+        int firstCol = Math.max(0, Math.min(centre[1] - WINDOW_COLS / 2, parkingGrid.getCols() - WINDOW_COLS));
+        System.out.printf("Rows %d-%d and columns %d-%d of %d x %d:%n",
+                firstRow + 1, Math.min(parkingGrid.getRows(), firstRow + WINDOW_ROWS),
+                firstCol + 1, Math.min(parkingGrid.getCols(), firstCol + WINDOW_COLS),
+                parkingGrid.getRows(), parkingGrid.getCols());
+        renderer.renderWindow(parkingGrid, firstRow, firstCol, WINDOW_ROWS, WINDOW_COLS);
+        System.out.print(formatPrompt(Constant.PROMPT_MAIN));
+        return "";
+    }
+
+    // Returns the row, col and level named by a regn id or a 1-based row,col pair, with a level after it when there
+    // are several, null if there is none
+    private int[] toWindowCentre(ParkingGrid parkingGrid, String inCmd) {
+        if (inCmd == null) {
+            return null;
+        }
+        int comma = inCmd.indexOf(',');
+        if (comma < 0) {
+            Vehicle vehicle = parkingLot.isValidRegnId(inCmd) ? service.findVehicle(inCmd) : null;
+            return vehicle == null ? null : new int[]{vehicle.getRow(), vehicle.getCol(), service.findLevel(inCmd)};
+        }
+        try {
+            int levelComma = inCmd.indexOf(',', comma + 1);
+            int row = Integer.parseInt(inCmd.substring(0, comma).trim()) - 1;
+            int col = Integer.parseInt(inCmd.substring(comma + 1, levelComma < 0 ? inCmd.length() : levelComma).trim()) - 1;
+            int level = levelComma < 0 ? 0 : Integer.parseInt(inCmd.substring(levelComma + 1).trim()) - 1;
+            if (row < 0 || row >= parkingGrid.getRows() || col < 0 || col >= parkingGrid.getCols()
+                    || level < 0 || level >= service.getLevels()) {
+                return null;
+            }
+            return new int[]{row, col, level};
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Displays the whole parking lot shrunk to fit the screen, each character shaded by how full its block of bays is.
+     *
+     * @param sc BufferedReader instance for reading user input
+     * @return Returns an empty string after processing.
+     */
+    private String doOverview(BufferedReader sc) {
+        ParkingGrid parkingGrid = service.getParkingGrid();
+        if (parkingGrid == null) {
+            System.out.println("The parking lot is not initialised. Please run init!");
+            System.out.print(formatPrompt(Constant.PROMPT_MAIN));
+            return "";
+        }
+        System.out.printf("Overview of the %d x %d parking lot:%n", parkingGrid.getRows(), parkingGrid.getCols());
+        int[] block = null;
+        for (int level = 0; level < service.getLevels(); level++) {
+            if (service.getLevels() > 1) {
+                System.out.println("Level " + (level + 1) + ":");
+            }
+            block = renderer.renderOverview(service.getParkingGrid(level), OVERVIEW_ROWS, OVERVIEW_COLS);
+        }
+        System.out.printf("Each character is a block of %d x %d cells: '.' no bay taken, 1-9 tens of percent taken, '#' full, blank no bays.%n",
+                block[0], block[1]);
+        System.out.print(formatPrompt(Constant.PROMPT_MAIN));
+        return "";
+    }
+
+    /**
+     * Shows the counts and latency percentiles of the operations and the free capacity of the lot.
+     * @param sc BufferedReader for user input.
+     * @return Returns an empty string after processing.
+     */
+    private String doMetrics(BufferedReader sc) {
+        System.out.println("=================== Here are the Metrics for the Java Parking Lot ====================");
+        metrics.print(System.out, service);
+        System.out.print(formatPrompt(Constant.PROMPT_MAIN));
+        return "";
+    }
+
+    /**
+     * Prints the metrics one figure per line, for scripts reading the console output.
+     * @param sc BufferedReader for user input.
+     * @return Returns an empty string after processing.
+     */
+    private String doMetricsDump(BufferedReader sc) {
+        metrics.printText(System.out, service);
+        System.out.print(formatPrompt(Constant.PROMPT_MAIN));
+        return "";
+    }
+
+    /**
+     * Shows the rates of the tariff plan checkouts are priced with.
+     * @param sc BufferedReader for user input.
+     * @return Returns an empty string after processing.
+     */
+    private String doTariff(BufferedReader sc) {
+        TariffEngine.current().print(System.out);
+        System.out.print(formatPrompt(Constant.PROMPT_MAIN));
+        return "";
+    }
+
+    /**
+     * Loads the tariff plan file again, keeping the active plan if the file cannot be read or has a malformed rule.
+     * @param sc BufferedReader for user input.
+     * @return Returns an empty string after processing.
+     */
+    private String doReloadTariff(BufferedReader sc) {
+        try {
+            TariffPlan plan = TariffEngine.reload();
+            System.out.println("The tariff plan " + plan.getName() + " is now active.");
+        } catch (IOException | IllegalArgumentException ex) {
+            System.out.println("Cannot reload the tariff: " + ex.getMessage());
+            System.out.println("The tariff plan " + TariffEngine.current().getName() + " stays active.");
+        }
+        System.out.print(formatPrompt(Constant.PROMPT_MAIN));
+        return "";
+    }
+
+    /**
+     * Prices the whole transaction log with the tariff plan of a file, or with the active plan when no file is given,
+     * and shows the revenue it would have made next to the fees charged, per vehicle type.
+     * @param sc BufferedReader for user input.
+     * @return Returns an empty string after processing.
+     */
+    private String doRerate(BufferedReader sc) throws IOException {
+        System.out.print("> Tariff plan file (blank for the active plan): ");
+        String inCmd = sc.readLine();
+        TariffPlan plan = TariffEngine.current();
+        if (inCmd != null && !inCmd.trim().isEmpty()) {
+            try {
+                plan = TariffPlan.read(Path.of(inCmd.trim()));
+            } catch (IOException | IllegalArgumentException ex) {
+                System.out.println("Cannot load the tariff: " + ex.getMessage());
+                System.out.print(formatPrompt(Constant.PROMPT_MAIN));
+                return "";
+            }
+        }
+        FeeLogRerater.rerate(service.getCheckoutVehicles(), plan, Runtime.getRuntime().availableProcessors())
+                .print(System.out);
+        System.out.print(formatPrompt(Constant.PROMPT_MAIN));
+        return "";
+    }
+
     /**
      * Manages the checkin process of a vehicle.
      *
@@ -238,16 +488,16 @@ public class ParkingLotEngine {
      * @return next command from user
      */
     private String doCheckin(BufferedReader sc) throws IOException {
-        if (parkingLotArray == null) {
+        if (service.getParkingGrid() == null) {
             System.out.print(
                     "The parking lot hasn't been initialised. Please set up a space for the parking lot. Taking you back to main menu.\n");
-            System.out.print(formatPrompt(Constant.PROMPT_MAIN, empQty, occQty));
+            System.out.print(formatPrompt(Constant.PROMPT_MAIN));
             return "";
         }
         //If the parking is full you should throw an error
-        if (empQty == 0) {
+        if (service.getEmpQty() == 0) {
             System.out.println("The parking is full. Please come back later. Taking you back to main menu.");
-            System.out.print(formatPrompt(Constant.PROMPT_MAIN, empQty, occQty));
+            System.out.print(formatPrompt(Constant.PROMPT_MAIN));
             return "";
         }
 
@@ -261,32 +511,27 @@ public class ParkingLotEngine {
             System.out.print("> Vehicle Type: ");
             inCmd = sc.readLine();
         }
-        String vehicleType = inCmd.substring(0, 1).toUpperCase() + inCmd.toLowerCase().substring(1);
-        int empPlotQty = parkingLot.getEmpPlotQtyByVehicleType(parkingLotArray,checkinMap,vehicleType);
-        if (empPlotQty <= 0) {
+        String vehicleType = parkingLot.toVehicleTypeName(inCmd);
+        if (service.getAvailable(vehicleType) <= 0) {
             System.out.println("Parking full for " + inCmd.toLowerCase() + ". Please come back later. Taking you back to main menu.");
-            System.out.print(formatPrompt(Constant.PROMPT_MAIN, empQty, occQty));
+            System.out.print(formatPrompt(Constant.PROMPT_MAIN));
             return "";
         }
-        Vehicle vehicle = parkingLot.createVehicleByType(vehicleType);
         System.out.print("> Regn Id: ");
         inCmd = sc.readLine();
 
-        while (inCmd == null || inCmd.indexOf(" ")>-1 || inCmd.length() != 6 || checkinMap.containsKey(inCmd)) {
+        while (!parkingLot.isValidRegnId(inCmd) || service.findVehicle(inCmd) != null) {
             System.out.println("Invalid detail, please enter detail again!");
             System.out.print("> Regn Id: ");
             inCmd = sc.readLine();
         }
-
-        vehicle.setRegnId(inCmd);
+        String regnId = inCmd;
 
         System.out.print("> Vehicle Model: ");
-        inCmd = sc.readLine();
-        vehicle.setModel(inCmd);
+        String model = sc.readLine();
 
         System.out.print("> Vehicle Colour: ");
-        inCmd = sc.readLine();
-        vehicle.setColour(inCmd);
+        String colour = sc.readLine();
 
         System.out.print("> Date of entry: ");
         inCmd = sc.readLine();
@@ -300,7 +545,7 @@ public class ParkingLotEngine {
             }
             inCmd = sc.readLine();
         }
-        vehicle.setDateEntry(inCmd);
+        String dateEntry = inCmd;
 
         System.out.print("> Time of entry: ");
         inCmd = sc.readLine();
@@ -309,12 +554,22 @@ public class ParkingLotEngine {
             System.out.print("Incorrect time format, please enter time in HH:mm format again!\n> Time of entry: ");
             inCmd = sc.readLine();
         }
-        vehicle.setTimeEntry(inCmd);
-        checkinMap.put(vehicle.getRegnId(), vehicle);
+        //another gate may have taken the last slot or the registration id in the meantime
+        ParkingResult result = service.checkIn(vehicleType, regnId, model, colour, dateEntry, inCmd);
+        if (!result.isOk()) {
+            if (result.getStatus() == ParkingResult.Status.DUPLICATE_REGN_ID) {
+                System.out.println("The vehicle is already checked in. Taking you back to main menu.");
+            } else {
+                System.out.println("Parking full for " + vehicleType.toLowerCase() + ". Please come back later. Taking you back to main menu.");
+            }
+            System.out.print(formatPrompt(Constant.PROMPT_MAIN));
+            return "";
+        }
+        if (service.getLevels() > 1) {
+            System.out.println("Please proceed to level " + (service.findLevel(regnId) + 1) + ".");
+        }
 
-        empQty--;
-        occQty++;
-        System.out.print(formatPrompt(Constant.PROMPT_MAIN, empQty, occQty));
+        System.out.print(formatPrompt(Constant.PROMPT_MAIN));
         return "";
     }
 
@@ -325,9 +580,9 @@ public class ParkingLotEngine {
     * @throws IOException
     */
     private String doCheckout(BufferedReader sc) throws IOException {
-        if (parkingLotArray == null || checkinMap.size() <= 0) {
+        if (getOccQty() <= 0) {
             System.out.println("Invalid command! The parking is empty. Taking you back to main menu.");
-            System.out.print(formatPrompt(Constant.PROMPT_MAIN, empQty, occQty));
+            System.out.print(formatPrompt(Constant.PROMPT_MAIN));
             return "";
         }
         String inCmd = null;
@@ -335,29 +590,30 @@ public class ParkingLotEngine {
         System.out.print("> Regn Id: ");
         inCmd = sc.readLine();
 
-        while (inCmd == null || inCmd.indexOf(" ")>-1 || inCmd.length() != 6) {
+        while (!parkingLot.isValidRegnId(inCmd)) {
             System.out.println("Invalid detail, please enter detail again!");
             System.out.print("> Regn Id: ");
             inCmd = sc.readLine();
         }
+        String regnId = inCmd;
 
-        if (checkinMap.size() <= 0 || !checkinMap.containsKey(inCmd)) {
+        if (service.findVehicle(regnId) == null) {
             System.out.println("The selected vehicle type is not present in the parking lot. Taking you back to main menu");
-            System.out.print(formatPrompt(Constant.PROMPT_MAIN, empQty, occQty));
+            System.out.print(formatPrompt(Constant.PROMPT_MAIN));
             return "";
         }
 
         //the vehicle has to move to the exit door
-        if (!(checkinMap.get(inCmd).getCol()==globalLength-2 && checkinMap.get(inCmd).getRow()==globalWidth-2)) {
+        if (!service.isAtExit(regnId)) {
             System.out.println("The selected vehicle type is not at the checkout door. Please proceed to checkout door. Taking you back to main menu.");
-            System.out.print(formatPrompt(Constant.PROMPT_MAIN, empQty, occQty));
+            System.out.print(formatPrompt(Constant.PROMPT_MAIN));
             return "";
         }
 
-        Vehicle vehicle = checkinMap.get(inCmd);
-        boolean checkOutStatus = false;
-        boolean validDatetime=false;
-        while(!validDatetime){
+        ParkingResult quote = null;
+        String exitDateStr = null;
+        String exitTimeStr = null;
+        while (quote == null) {
             System.out.print("> Date of exit: ");
             inCmd = sc.readLine();
 
@@ -371,7 +627,7 @@ public class ParkingLotEngine {
                 inCmd = sc.readLine();
             }
 
-            String exitDateStr = inCmd;
+            exitDateStr = inCmd;
             System.out.print("> Time of exit: ");
             inCmd = sc.readLine();
 
@@ -379,27 +635,35 @@ public class ParkingLotEngine {
                 System.out.print("Incorrect time format, please enter time in HH:mm format again!\n> Time of exit: ");
                 inCmd = sc.readLine();
             }
-            java.util.Date datetimeEntry = Date.parseDateFormat(vehicle.getDateEntry() + " " + vehicle.getTimeEntry(), Date.FORMAT_DATETIME);
-            java.util.Date datetimeExit = Date.parseDateFormat(exitDateStr + " " + inCmd, Date.FORMAT_DATETIME);
-            if (datetimeEntry == null || datetimeExit == null || datetimeExit.before(datetimeEntry)) {
+            exitTimeStr = inCmd;
+            ParkingResult result = service.quoteCheckout(regnId, exitDateStr, exitTimeStr);
+            if (result.getStatus() == ParkingResult.Status.EXIT_BEFORE_ENTRY) {
                 System.out.println("Checkout datetime cannot be less than checkin datetime for the vehicle. Please re-enter.");
+            } else if (!result.isOk()) {
+                System.out.println("The vehicle has already been checked out. Taking you back to main menu.");
+                System.out.print(formatPrompt(Constant.PROMPT_MAIN));
+                return "";
             } else {
-                validDatetime = true;
-                vehicle.setDateExit(exitDateStr);
-                vehicle.setTimeExit(inCmd);
+                quote = result;
             }
         }
 
+        CheckoutVehicle checkoutVehicle = quote.getCheckoutVehicle();
         System.out.println("Please verify your details.");
-        System.out.println("Total number of hours: " + vehicle.getParkingHours());
+        //the parts of the fee are those the tariff plan priced, whatever its rates and cap
+        System.out.println("Total number of hours: " + checkoutVehicle.getParkingHours()
+                + ", charged $" + dollars(checkoutVehicle.getHourlyFeeCents()));
         //checking whether there is overnight fee needing to be printed out
-        if (vehicle.getOvernight() > 0) {
-            System.out.println("Total number of overnight parking: " + vehicle.getOvernight());
+        long overnight = checkoutVehicle.getOvernight();
+        if (overnight > 0) {
+            System.out.println("Total number of overnight parking: " + overnight
+                    + ", charged $" + dollars(checkoutVehicle.getOvernightFeeCents()));
         }
-        System.out.println("Total number of hits:" + vehicle.getHitNums());
-        System.out.println("Vehicle Type: " + vehicle.getType());
-        System.out.println("Regn Id: " + vehicle.getRegnId());
-        System.out.println("Total Parking Fee: $" + new BigDecimal(vehicle.calculateParkingFee()).setScale(1));
+        System.out.println("Total number of hits:" + checkoutVehicle.getHitNums()
+                + ", charged $" + dollars(checkoutVehicle.getHitFeeCents()));
+        System.out.println("Vehicle Type: " + checkoutVehicle.getVehicleType());
+        System.out.println("Regn Id: " + checkoutVehicle.getRegistrationId());
+        System.out.println("Total Parking Fee: $" + dollars(checkoutVehicle.getParkingFeeCents()));
         System.out.print("Type Y to accept the fee or menu to return to main menu\n> ");
 
         inCmd = sc.readLine();
@@ -408,50 +672,192 @@ public class ParkingLotEngine {
             inCmd = sc.readLine();
         }
         if ("menu".equalsIgnoreCase(inCmd)) {
-            vehicle.setTimeExit(null);
-            vehicle.setDateExit(null);
-            System.out.print(formatPrompt(Constant.PROMPT_MAIN, empQty, occQty));
-            checkOutStatus = false;
-        }else{
-            checkOutStatus=true;
+            System.out.print(formatPrompt(Constant.PROMPT_MAIN));
+            return "";
         }
-        if (!checkOutStatus) {
+        if (!service.checkOut(regnId, exitDateStr, exitTimeStr).isOk()) {
+            System.out.println("The vehicle has already been checked out. Taking you back to main menu.");
+            System.out.print(formatPrompt(Constant.PROMPT_MAIN));
             return "";
         }
-        checkoutVehicleList.add(vehicle.toCheckoutVehicle());
-        parkingLotArray[vehicle.getRow()][vehicle.getCol()] = Constant.WAVY_LINE;
-        checkinMap.remove(vehicle.getRegnId());
 
         System.out.println("Thank you for visiting Java Parking Lot. See you next time!");
-        empQty++;
-        occQty--;
-        System.out.print(formatPrompt(Constant.PROMPT_MAIN, empQty, occQty));
+        System.out.print(formatPrompt(Constant.PROMPT_MAIN));
         return "";
     }
 
     private String doParkingFeeLog(BufferedReader sc) throws IOException {
-        System.out.println("============ Here are the Transaction logs for the Java Parking Lot =============");
-        System.out.println("---------------------------------------------------------------------------------");
-        System.out.println("| Vehicle Type | Registration Id | Entry DateTime | Exit DateTime | Parking Fee |");
-        System.out.println("---------------------------------------------------------------------------------");
+        printFeeLogHeader();
 
-        if (checkoutVehicleList == null || checkoutVehicleList.size() <= 0) {
+        // the rows are read lazily, one page at a time
+        Iterator<CheckoutVehicle> it = service.getCheckoutVehicles().iterator();
+        if (!it.hasNext()) {
             System.out.println("No records found!");
         }else{
-            for (CheckoutVehicle v : checkoutVehicleList) {
-                System.out.printf("|%14s|%17s|%16s|%16s|%13.1f|",
-                        v.getVehicleType(),
-                        v.getRegistrationId(),
-                        Date.getDateFormat(v.getEntryDateTime(), Date.FORMAT_DATETIME),
-                        Date.getDateFormat(v.getExitDateTime(), Date.FORMAT_DATETIME),
-                        v.getParkingFee());
-                System.out.println();
+            int printed = 0;
+            while (it.hasNext()) {
+                if (printed == FeeLogQuery.DEFAULT_PAGE_SIZE) {
+                    if (!readNextPage(sc)) {
+                        break;
+                    }
+                    printed = 0;
+                }
+                printFeeLogRow(it.next());
+                printed++;
             }
         }
-        System.out.print(formatPrompt(Constant.PROMPT_MAIN, empQty, occQty));
+        System.out.print(formatPrompt(Constant.PROMPT_MAIN));
         return "";
     }
 
+    /**
+     * Searches the transaction log by exit date range, vehicle type and regn id prefix,
+     * showing the matches in exit time order one page at a time.
+     * @param sc BufferedReader for user input.
+     * @return Returns an empty string after processing.
+     * @throws IOException
+     */
+    private String doSearchFeeLog(BufferedReader sc) throws IOException {
+        System.out.println("Please enter the search details, leave a detail blank to match any.");
+        long fromExit = readExitDate(sc, "> Exit from date: ", false);
+        long toExit = readExitDate(sc, "> Exit to date: ", true);
+
+        System.out.print("> Vehicle Type: ");
+        String inCmd = sc.readLine();
+        while (inCmd != null && !inCmd.isEmpty() && !parkingLot.isValidVehicleType(inCmd)) {
+            System.out.println("Invalid detail, please enter detail again!");
+            System.out.print("> Vehicle Type: ");
+            inCmd = sc.readLine();
+        }
+        String vehicleType = inCmd == null || inCmd.isEmpty() ? null : parkingLot.toVehicleTypeName(inCmd);
+
+        System.out.print("> Regn Id prefix: ");
+        inCmd = sc.readLine();
+        while (inCmd != null && (inCmd.indexOf(" ") >= 0 || RegnIdCodec.packPrefix(inCmd) == RegnIdCodec.INVALID)) {
+            System.out.println("Invalid detail, please enter detail again!");
+            System.out.print("> Regn Id prefix: ");
+            inCmd = sc.readLine();
+        }
+        String regnIdPrefix = inCmd == null || inCmd.isEmpty() ? null : inCmd;
+
+        printFeeLogHeader();
+        FeeLogQuery query = new FeeLogQuery(fromExit, toExit, vehicleType, regnIdPrefix,
+                FeeLogQuery.DEFAULT_PAGE_SIZE, FeeLogQuery.FIRST_PAGE);
+        FeeLogPage page = service.queryCheckoutVehicles(query);
+        if (page.getRecords().isEmpty()) {
+            System.out.println("No records found!");
+        }
+        while (!page.getRecords().isEmpty()) {
+            for (CheckoutVehicle v : page.getRecords()) {
+                printFeeLogRow(v);
+            }
+            if (!page.hasMore() || !readNextPage(sc)) {
+                break;
+            }
+            page = service.queryCheckoutVehicles(query.withCursor(page.getNextCursor()));
+        }
+        System.out.print(formatPrompt(Constant.PROMPT_MAIN));
+        return "";
+    }
+
+    /**
+     * Shows the revenue per vehicle type, per hour of the day and for the latest days, read from the running totals.
+     * @param sc BufferedReader for user input.
+     * @return Returns an empty string after processing.
+     */
+    private String doReport(BufferedReader sc) {
+        RevenueAggregates revenue = service.getRevenueAggregates();
+        System.out.println("============== Here is the Revenue report for the Java Parking Lot ===============");
+        printReportHeader("Vehicle Type");
+        for (String vehicleType : new String[]{Constant.VEHICLE_TYPE_CAR, Constant.VEHICLE_TYPE_BIKE,
+                Constant.VEHICLE_TYPE_MOTORBIKE, Constant.VEHICLE_TYPE_TRUCK}) {
+            printReportRow(vehicleType, revenue.getByType(vehicleType));
+        }
+        printReportRow("Total", revenue.getTotal());
+
+        printReportHeader("Exit Hour");
+        for (int hour = 0; hour < RevenueAggregates.HOURS_PER_DAY; hour++) {
+            RevenueBucket bucket = revenue.getByHourOfDay(hour);
+            if (bucket.getVisits() > 0) {
+                printReportRow(String.format("%02d:00", hour), bucket);
+            }
+        }
+
+        printReportHeader("Exit Day");
+        long[] days = revenue.getDays();
+        for (int i = Math.max(0, days.length - REPORT_DAYS); i < days.length; i++) {
+            String day = Date.formatEpochMinutes(days[i] * FeeCalculator.HOURS_PER_DAY * FeeCalculator.MINUTES_PER_HOUR);
+            printReportRow(day.substring(0, Date.FORMAT_DATE.length()), revenue.getByDay(days[i]));
+        }
+        System.out.print(formatPrompt(Constant.PROMPT_MAIN));
+        return "";
+    }
+
+    // Formats a fee in cents as dollars with both decimals
+    private static String dollars(long cents) {
+        return BigDecimal.valueOf(cents, 2).toPlainString();
+    }
+
+    private void printReportHeader(String bucketName) {
+        System.out.println("------------------------------------------------------------------------------");
+        System.out.printf("|%14s|%7s|%12s|%11s|%12s|%15s|", bucketName, "Visits", "Revenue", "Hit Fees", "Overnight", "Avg Dwell (h)");
+        System.out.println();
+        System.out.println("------------------------------------------------------------------------------");
+    }
+
+    private void printReportRow(String bucketName, RevenueBucket bucket) {
+        System.out.printf("|%14s|%7d|%12.2f|%11.2f|%12.2f|%15.1f|",
+                bucketName,
+                bucket.getVisits(),
+                FeeCalculator.toDollars(bucket.getRevenueCents()),
+                FeeCalculator.toDollars(bucket.getHitFeeCents()),
+                FeeCalculator.toDollars(bucket.getOvernightCents()),
+                bucket.getAverageDwellHours());
+        System.out.println();
+    }
+
+    // Reads an optional exit date, the start of the day or, for the end of a range, the start of the next day
+    private long readExitDate(BufferedReader sc, String prompt, boolean endOfRange) throws IOException {
+        System.out.print(prompt);
+        String inCmd = sc.readLine();
+        while (inCmd != null && !inCmd.isEmpty() && parkingLot.isValidDate(inCmd) != 1) {
+            System.out.print("Incorrect date format, please enter date in yyyy-MM-dd format again between 1970-01-01 and 2099-12-31!\n" + prompt);
+            inCmd = sc.readLine();
+        }
+        if (inCmd == null || inCmd.isEmpty()) {
+            return endOfRange ? Long.MAX_VALUE : Long.MIN_VALUE;
+        }
+        return endOfRange ? Date.parseEpochMinutes(inCmd, "23:59") + 1 : Date.parseEpochMinutes(inCmd, "00:00");
+    }
+
+    // Asks whether to show the next page of the transaction log
+    private boolean readNextPage(BufferedReader sc) throws IOException {
+        System.out.print(Constant.PROMPT_NEXT_PAGE);
+        String inCmd = sc.readLine();
+        while (inCmd != null && !Constant.CMD_NEXT_PAGE.equalsIgnoreCase(inCmd) && !Constant.CMD_MENU.equalsIgnoreCase(inCmd)) {
+            System.out.print(Constant.PROMPT_NEXT_PAGE);
+            inCmd = sc.readLine();
+        }
+        return Constant.CMD_NEXT_PAGE.equalsIgnoreCase(inCmd);
+    }
+
+    private void printFeeLogHeader() {
+        System.out.println("============ Here are the Transaction logs for the Java Parking Lot =============");
+        System.out.println("---------------------------------------------------------------------------------");
+        System.out.println("| Vehicle Type | Registration Id | Entry DateTime | Exit DateTime | Parking Fee |");
+        System.out.println("---------------------------------------------------------------------------------");
+    }
+
+    private void printFeeLogRow(CheckoutVehicle v) {
+        System.out.printf("|%14s|%17s|%16s|%16s|%13.2f|",
+                v.getVehicleType(),
+                v.getRegistrationId(),
+                Date.formatEpochMinutes(v.getEntryMinutes()),
+                Date.formatEpochMinutes(v.getExitMinutes()),
+                v.getParkingFee());
+        System.out.println();
+    }
+
     /**
     * Parks a checked-in vehicle in the parking lot.
     * @param sc BufferedReader for user input.
@@ -460,9 +866,9 @@ public class ParkingLotEngine {
     */
     private String doPark(BufferedReader sc) throws IOException {
         System.out.println("To park a vehicle provide the details.");
-        if (parkingLotArray == null || checkinMap.size() <= 0) {
+        if (getOccQty() <= 0) {
             System.out.println("No vehicle checked in the parking lot, taking you back to main menu");
-            System.out.print(formatPrompt(Constant.PROMPT_MAIN, empQty, occQty));
+            System.out.print(formatPrompt(Constant.PROMPT_MAIN));
             return "";
         }
 
@@ -470,102 +876,166 @@ public class ParkingLotEngine {
         System.out.print("> Regn Id: ");
         inCmd = sc.readLine();
 
-        while (inCmd == null || inCmd.indexOf(" ")>-1 || inCmd.length() != 6) {
+        while (!parkingLot.isValidRegnId(inCmd)) {
             System.out.println("Invalid detail, please enter detail again!");
             System.out.print("> Regn Id: ");
             inCmd = sc.readLine();
         }
 
-        while (!checkinMap.containsKey(inCmd)) {
+        while (service.findVehicle(inCmd) == null) {
             System.out.println("The vehicle mentioned is not parked in the parking lot.");
             System.out.print("> Regn Id: ");
             inCmd = sc.readLine();
         }
-        parkingLot.displayParkingLot(parkingLotArray);
-        Vehicle vehicle=checkinMap.get(inCmd);
-        doParkMove(sc,vehicle);
-        System.out.print(formatPrompt(Constant.PROMPT_MAIN, empQty, occQty));
+        renderer.reset();
+        renderer.renderChanges(service.getParkingGrid(service.findLevel(inCmd)));
+        doParkMove(sc, inCmd);
+        System.out.print(formatPrompt(Constant.PROMPT_MAIN));
         return "";
     }
 
 
     /**
-    * Similar to the above method but for a Bike object.
+    * Moves a checked-in vehicle around the parking lot until the user quits.
     *
     * @param sc The BufferedReader for reading user input.
-    * @param vehicle The Bike object being parked.
+    * @param regnId The registration id of the vehicle being parked.
     * @throws IOException If there's an error reading the input.
     */
-    private void doParkMove(BufferedReader sc, Vehicle vehicle) throws IOException {
-        System.out.print("Type w/s/a/d to move the vehicle to up/down/left/right or else press q to exit.\n> ");
+    private void doParkMove(BufferedReader sc, String regnId) throws IOException {
+        int level = service.findLevel(regnId); // A vehicle stays on the level it checked in on
+        System.out.print(Constant.PROMPT_PARK_MOVE);
         String inCmd = sc.readLine();
-        int mvCol=0, mvRow=0;
-        String mvStr=null;
         while (true) {
+            //the end of the input quits like q
+            if (inCmd == null) {
+                break;
+            }
             if (!parkingLot.isValidParkActionKey(inCmd)) {
                 System.out.println("Invalid command!");
-                System.out.print("Type w/s/a/d to move the vehicle to up/down/left/right or else press q to exit.\n> ");
+                System.out.print(Constant.PROMPT_PARK_MOVE);
             } else {
                 if ("q".equalsIgnoreCase(inCmd)) {
                     break;
                 }
-                mvCol=vehicle.getCol();
-                mvRow=vehicle.getRow();
-                if ("a".equalsIgnoreCase(inCmd)) {
-                    mvCol=vehicle.getCol()-1;
-                } else if ("s".equalsIgnoreCase(inCmd)) {
-                    mvRow=vehicle.getRow()+1;
-                } else if ("d".equalsIgnoreCase(inCmd)) {
-                    mvCol=vehicle.getCol()+1;
-                } else if ("w".equalsIgnoreCase(inCmd)) {
-                    mvRow=vehicle.getRow()-1;
+                ParkingResult result;
+                if ("p".equalsIgnoreCase(inCmd)) {
+                    result = service.autoPark(regnId);
+                } else if ("e".equalsIgnoreCase(inCmd)) {
+                    result = service.driveToExit(regnId);
+                } else {
+                    result = service.move(regnId, inCmd.charAt(0));
                 }
-                mvStr = parkingLotArray[mvRow][mvCol];
-
-                if (parkingLot.isEntryOrExitSymbol(mvStr)) {
-                    System.out.println("You cannot exit the parking lot without checkout.");
-                }else if (parkingLot.isPillarSymbol(mvStr)) {
-                    vehicle.setHitNums(vehicle.getHitNums() + 1);
-                    if (Constant.VEHICLE_TYPE_BIKE.equalsIgnoreCase(vehicle.getType())) {
-                        System.out.println("You have hit the pillar!");
-                    }else {
-                        System.out.println("You have hit the pillar, there will be a damage fee!");
-                    }
-                }else if (parkingLot.isWallsSymbol(mvStr)) {
-                    vehicle.setHitNums(vehicle.getHitNums() + 1);
-                    if (Constant.VEHICLE_TYPE_BIKE.equalsIgnoreCase(vehicle.getType())) {
-                        System.out.println("You have hit the wall!");
-                    }else {
-                        System.out.println("You have hit the wall, there will be a damage fee!");
-                    }
-                }else if (parkingLot.isVehicleSymbol(mvStr)) {
-                    vehicle.setHitNums(vehicle.getHitNums() + 1);
-                    if (Constant.VEHICLE_TYPE_BIKE.equalsIgnoreCase(vehicle.getType())) {
-                        System.out.println("You have hit a vehicle!");
-                    }else{
-                        System.out.println("You have hit a vehicle, there will be a damage fee!");
-                    }
-                }else if (parkingLot.isDrivewayOrSpotsSymbol(mvStr)) {
-                    if (vehicle.getType().equalsIgnoreCase(Constant.VEHICLE_TYPE_TRUCK) && Constant.DOT.equalsIgnoreCase(mvStr) && mvCol!=1) {
-                        System.out.println("You cannot park a truck in the parking lot anywhere except the parking spots near the entry.");
-                    }else if ((vehicle.getType().equalsIgnoreCase(Constant.VEHICLE_TYPE_BIKE) ||vehicle.getType().equalsIgnoreCase(Constant.VEHICLE_TYPE_MOTORBIKE))
-                            && Constant.DOT.equalsIgnoreCase(mvStr) && mvCol!=globalLength-(globalLength%2==0?3:2)) {
-                        System.out.println("You cannot park a bike or motorbike in the parking lot anywhere except the parking spots near the exit.");
-                    }else {
-                        parkingLotArray[vehicle.getRow()][vehicle.getCol()] = vehicle.getOldSymbol();
-                        vehicle.setOldSymbol(mvStr);
-                        parkingLotArray[mvRow][mvCol] = vehicle.getType().substring(0, 1).toUpperCase();
-                        vehicle.setCol(mvCol);
-                        vehicle.setRow(mvRow);
-                    }
+                //another gate has checked the vehicle out in the meantime
+                if (result.getStatus() == ParkingResult.Status.NOT_FOUND) {
+                    System.out.println("The vehicle mentioned is not parked in the parking lot.");
+                    break;
                 }
-                parkingLot.displayParkingLot(parkingLotArray);
-                System.out.print("Type w/s/a/d to move the vehicle to up/down/left/right or else press q to exit.\n> ");
+                //an ANSI terminal keeps the lot on top and the messages below it, otherwise the lot follows the message
+                if (renderer.isAnsi()) {
+                    render(level);
+                    printParkAction(inCmd, result);
+                } else {
+                    printParkAction(inCmd, result);
+                    render(level);
+                }
+                System.out.print(Constant.PROMPT_PARK_MOVE);
             }
             inCmd = sc.readLine();
         }
     }
 
+    // Redraws a level after a park step, timing the redraw
+    private void render(int level) {
+        long start = System.nanoTime();
+        renderer.renderChanges(service.getParkingGrid(level));
+        metrics.record(EngineMetrics.Operation.RENDER, start, true);
+    }
+
+    // Prints the outcome of a park action key
+    private void printParkAction(String inCmd, ParkingResult result) {
+        if ("p".equalsIgnoreCase(inCmd)) {
+            printAutoPark(result);
+        } else if ("e".equalsIgnoreCase(inCmd)) {
+            printDriveToExit(result);
+        } else {
+            printMove(result);
+        }
+    }
+
+    /**
+     * Prints the outcome of a move by one cell.
+     *
+     * @param result The result of the move.
+     */
+    private void printMove(ParkingResult result) {
+        boolean isBike = result.getVehicle() != null
+                && result.getVehicle().getVehicleClass() == VehicleClass.BIKE;
+        switch (result.getStatus()) {
+            case AT_DOOR:
+                System.out.println("You cannot exit the parking lot without checkout.");
+                break;
+            case HIT_PILLAR:
+                System.out.println(isBike ? "You have hit the pillar!" : "You have hit the pillar, there will be a damage fee!");
+                break;
+            case HIT_WALL:
+                System.out.println(isBike ? "You have hit the wall!" : "You have hit the wall, there will be a damage fee!");
+                break;
+            case HIT_VEHICLE:
+                System.out.println(isBike ? "You have hit a vehicle!" : "You have hit a vehicle, there will be a damage fee!");
+                break;
+            case TRUCK_SPOTS_ONLY:
+                System.out.println("You cannot park a truck in the parking lot anywhere except the parking spots near the entry.");
+                break;
+            case BIKE_SPOTS_ONLY:
+                System.out.println("You cannot park a bike or motorbike in the parking lot anywhere except the parking spots near the exit.");
+                break;
+            case CELL_TAKEN:
+                System.out.println("Another vehicle has just moved there.");
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Prints the outcome of driving the vehicle to the free spot nearest to the entry that is legal for its type.
+     *
+     * @param result The result of the automatic parking.
+     */
+    private void printAutoPark(ParkingResult result) {
+        switch (result.getStatus()) {
+            case OK:
+                System.out.println("The vehicle has been parked after " + result.getMoves() + " moves.");
+                break;
+            case ALREADY_PARKED:
+                System.out.println("The vehicle is already parked in a spot.");
+                break;
+            case NO_FREE_SPOT:
+                System.out.println("There is no free spot for " + result.getVehicle().getType().toLowerCase() + " at the moment.");
+                break;
+            case NO_ROUTE:
+            case CELL_TAKEN:
+                System.out.println("There is no clear route to the nearest free spot at the moment.");
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Prints the outcome of driving the vehicle to the checkout door.
+     *
+     * @param result The result of the drive.
+     */
+    private void printDriveToExit(ParkingResult result) {
+        if (result.isOk()) {
+            System.out.println("The vehicle is at the checkout door after " + result.getMoves() + " moves.");
+        } else if (result.getStatus() != ParkingResult.Status.NOT_FOUND) {
+            System.out.println("There is no clear route to the checkout door at the moment.");
+        }
+    }
+
     /*
      *  Displays the welcome text.
      */
@@ -583,16 +1053,18 @@ public class ParkingLotEngine {
         System.out.println(titleText);
         System.out.println();
 
-        System.out.print(formatPrompt(Constant.PROMPT_MAIN, empQty, occQty));
+        System.out.print(formatPrompt(Constant.PROMPT_MAIN));
 
     }
 
-    private String formatPrompt(String prompt, int empQty, int occQty) {
+    private String formatPrompt(String prompt) {
+        int empQty = service.getEmpQty();
+        int occQty = getOccQty();
         return String.format(prompt, empQty <= 0 ? "[None]" : empQty, occQty < 0 ? "[None]" : occQty);
     }
 
     public int getOccQty() {
-        return occQty;
+        return service.getOccQty();
     }
 }
 
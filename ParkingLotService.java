@@ -0,0 +1,505 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The ParkingLotService class implements the ParkingService on top of the LotState of one parking lot.
+ * It holds all the parking rules (capacity per vehicle type, reserved columns, hits and the checkout door)
+ * and performs no console input or output, so several gates or a load test can drive it concurrently.
+ * The fee log is kept as columns in a FeeLogStore, which keeps the running revenue totals next to it. With a
+ * CheckoutJournal it survives restarts: every checkout is on disk before the vehicle leaves the lot and the store
+ * catches up with the journal at startup. With a LotStore the live lot itself survives restarts: it is restored from the latest
+ * snapshot and its log when the service is created.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class ParkingLotService implements ParkingService {
+
+    private final ParkingLot parkingLot = new ParkingLot(this);
+    private volatile LotState lotState = null; // Live state of the parking lot, null until initialised
+
+    private final FeeLogStore feeLog; // The fee log, oldest first, null for a shard
+    private final CheckoutJournal journal; // Durable copy of the fee log, null to keep it in memory only
+    private final LotStore lotStore; // Persists the live lot, null to keep it in memory only
+    // Held from recording a checkout to logging it, so the lot logs its checkouts in the order of their fee log rows
+    private final Object checkoutLock = new Object();
+
+    /**
+     * Creates a service whose fee log and lot are kept in memory only.
+     */
+    public ParkingLotService() {
+        this(new FeeLogStore());
+    }
+
+    /**
+     * Creates a service kept in memory only whose fee log may be shared with other lots.
+     *
+     * @param feeLog The fee log store.
+     */
+    public ParkingLotService(FeeLogStore feeLog) {
+        this.feeLog = feeLog;
+        this.journal = null;
+        this.lotStore = null;
+    }
+
+    /**
+     * Creates a service whose fee log is kept in a store backed by a checkout journal and whose lot is
+     * restored from and persisted to a lot store. The fee log and journal may be shared with other lots.
+     *
+     * @param journal The checkout journal, or null to keep the fee log in memory only.
+     * @param feeLog The fee log store, already caught up with the journal.
+     * @param lotStore The lot store, or null to keep the lot in memory only.
+     */
+    public ParkingLotService(CheckoutJournal journal, FeeLogStore feeLog, LotStore lotStore) throws IOException {
+        this.feeLog = feeLog;
+        this.journal = journal;
+        this.lotStore = lotStore;
+        if (lotStore != null) {
+            LotState restored = lotStore.restore(parkingLot);
+            if (restored != null) {
+                if (journal != null) {
+                    removeCheckedOut(restored, feeLog);
+                    restored.advanceFeeLogMark(feeLog.getRowCount());
+                }
+                lotStore.attach(restored);
+                lotState = restored;
+            }
+        }
+    }
+
+    /**
+     * Creates a shard of a site whose lot is restored from and persisted to a lot store. The fee log, journal and
+     * revenue totals of the site stay with its coordinator, so the shard keeps none: it checks out only with the
+     * recorder of the coordinator and is laid out with the rows of the coordinator's fee log.
+     *
+     * @param lotStore The lot store, or null to keep the lot in memory only.
+     */
+    public ParkingLotService(LotStore lotStore) throws IOException {
+        this(null, null, lotStore);
+    }
+
+    @Override
+    public ParkingResult initParkingLot(int length, int width) {
+        return initParkingLot(length, width, feeLog == null ? 0 : feeLog.getRowCount());
+    }
+
+    /**
+     * Lays out a new lot whose checkouts will be recorded in a fee log of the given number of rows. A shard is laid
+     * out this way, the fee log of the site being kept by its coordinator.
+     *
+     * @param feeLogRows The rows of the fee log, none of them a checkout of the new lot.
+     */
+    public synchronized ParkingResult initParkingLot(int length, int width, long feeLogRows) {
+        if (length < Constant.MINIMUM_SIZE || width < Constant.MINIMUM_SIZE || !CapacityLedger.fits(length, width)) {
+            return ParkingResult.of(ParkingResult.Status.INVALID_SIZE);
+        }
+        LotState state = new LotState(parkingLot.buildParkingGrid(length, width));
+        state.advanceFeeLogMark(feeLogRows);
+        LotState previous = lotState;
+        //checkins are held off from the occupancy check to the swap, the new lot is saved once it is in place
+        if (previous == null) {
+            lotState = state;
+        } else if (!previous.retireIfEmpty(() -> lotState = state)) {
+            return ParkingResult.of(ParkingResult.Status.LOT_OCCUPIED);
+        }
+        if (lotStore != null) {
+            try {
+                lotStore.attach(state);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Cannot save the parking lot", ex);
+            }
+        }
+        return ParkingResult.of(ParkingResult.Status.OK);
+    }
+
+    @Override
+    public ParkingResult checkIn(String vehicleType, String regnId, String model, String colour,
+                                 String dateEntry, String timeEntry) {
+        LotState state = lotState;
+        if (state == null) {
+            return ParkingResult.of(ParkingResult.Status.NOT_INITIALISED);
+        }
+        if (!parkingLot.isValidVehicleType(vehicleType)) {
+            return ParkingResult.of(ParkingResult.Status.INVALID_VEHICLE_TYPE);
+        }
+        String typeName = parkingLot.toVehicleTypeName(vehicleType);
+        if (state.getCapacityLedger().getEmpQty() <= 0) {
+            return ParkingResult.of(ParkingResult.Status.PARKING_FULL);
+        }
+        if (state.getCapacityLedger().getAvailable(typeName) <= 0) {
+            return ParkingResult.of(ParkingResult.Status.PARKING_FULL_FOR_TYPE);
+        }
+        if (!parkingLot.isValidRegnId(regnId)) {
+            return ParkingResult.of(ParkingResult.Status.INVALID_REGN_ID);
+        }
+        if (state.getRegistry().contains(regnId)) {
+            return ParkingResult.of(ParkingResult.Status.DUPLICATE_REGN_ID);
+        }
+        ParkingResult.Status dateStatus = checkDate(dateEntry);
+        if (dateStatus != ParkingResult.Status.OK) {
+            return ParkingResult.of(dateStatus);
+        }
+        if (!parkingLot.isValidTime(timeEntry)) {
+            return ParkingResult.of(ParkingResult.Status.INVALID_TIME);
+        }
+
+        Vehicle vehicle = parkingLot.createVehicleByType(typeName);
+        vehicle.setRegnId(regnId);
+        vehicle.setModel(model);
+        vehicle.setColour(colour);
+        vehicle.setDateEntry(dateEntry);
+        vehicle.setTimeEntry(timeEntry);
+        //another gate may have taken the last slot or the registration id in the meantime
+        if (!state.checkin(vehicle)) {
+            //or the lot has been initialised again, the arrival goes to the new one
+            if (state.isRetired()) {
+                return checkIn(vehicleType, regnId, model, colour, dateEntry, timeEntry);
+            }
+            return ParkingResult.of(state.getRegistry().contains(regnId)
+                    ? ParkingResult.Status.DUPLICATE_REGN_ID : ParkingResult.Status.PARKING_FULL_FOR_TYPE);
+        }
+        return ParkingResult.of(ParkingResult.Status.OK, vehicle);
+    }
+
+    @Override
+    public ParkingResult move(String regnId, char direction) {
+        LotState state = lotState;
+        if (state == null) {
+            return ParkingResult.of(ParkingResult.Status.NOT_INITIALISED);
+        }
+        Vehicle vehicle = state.getRegistry().get(regnId);
+        if (vehicle == null) {
+            return ParkingResult.of(ParkingResult.Status.NOT_FOUND);
+        }
+        synchronized (state.lockOf(vehicle)) {
+            int mvCol = vehicle.getCol(), mvRow = vehicle.getRow();
+            switch (Character.toLowerCase(direction)) {
+                case 'a': mvCol--; break;
+                case 's': mvRow++; break;
+                case 'd': mvCol++; break;
+                case 'w': mvRow--; break;
+                default: return ParkingResult.of(ParkingResult.Status.INVALID_DIRECTION, vehicle);
+            }
+            ParkingGrid grid = state.getParkingGrid();
+            //outside the layout can only be reached through the doors, which are walls from the inside
+            if (mvRow < 0 || mvRow >= grid.getRows() || mvCol < 0 || mvCol >= grid.getCols()) {
+                return hit(state, vehicle, ParkingResult.Status.HIT_WALL);
+            }
+            byte mvCode = grid.get(mvRow, mvCol);
+            if (ParkingGrid.isKind(mvCode, ParkingGrid.MASK_ENTRY_OR_EXIT)) {
+                return ParkingResult.of(ParkingResult.Status.AT_DOOR, vehicle);
+            } else if (ParkingGrid.isKind(mvCode, ParkingGrid.MASK_PILLAR)) {
+                return hit(state, vehicle, ParkingResult.Status.HIT_PILLAR);
+            } else if (ParkingGrid.isKind(mvCode, ParkingGrid.MASK_WALL)) {
+                return hit(state, vehicle, ParkingResult.Status.HIT_WALL);
+            } else if (ParkingGrid.isKind(mvCode, ParkingGrid.MASK_VEHICLE)) {
+                return hit(state, vehicle, ParkingResult.Status.HIT_VEHICLE);
+            }
+            VehicleClass vehicleClass = vehicle.getVehicleClass();
+            if (ParkingGrid.isKind(mvCode, ParkingGrid.MASK_SPOT) && !vehicleClass.mayParkIn(mvCol, grid.getCols())) {
+                return ParkingResult.of(vehicleClass.getSpots() == VehicleClass.SPOTS_TRUCK_COLUMN
+                        ? ParkingResult.Status.TRUCK_SPOTS_ONLY : ParkingResult.Status.BIKE_SPOTS_ONLY, vehicle);
+            }
+            if (!state.moveVehicle(vehicle, mvRow, mvCol)) {
+                return ParkingResult.of(ParkingResult.Status.CELL_TAKEN, vehicle);
+            }
+            return new ParkingResult(ParkingResult.Status.OK, vehicle, 1, null);
+        }
+    }
+
+    @Override
+    public ParkingResult autoPark(String regnId) {
+        LotState state = lotState;
+        if (state == null) {
+            return ParkingResult.of(ParkingResult.Status.NOT_INITIALISED);
+        }
+        Vehicle vehicle = state.getRegistry().get(regnId);
+        if (vehicle == null) {
+            return ParkingResult.of(ParkingResult.Status.NOT_FOUND);
+        }
+        return toMoveResult(state.autoPark(vehicle), vehicle);
+    }
+
+    @Override
+    public ParkingResult driveToExit(String regnId) {
+        LotState state = lotState;
+        if (state == null) {
+            return ParkingResult.of(ParkingResult.Status.NOT_INITIALISED);
+        }
+        Vehicle vehicle = state.getRegistry().get(regnId);
+        if (vehicle == null) {
+            return ParkingResult.of(ParkingResult.Status.NOT_FOUND);
+        }
+        return toMoveResult(state.driveToExit(vehicle), vehicle);
+    }
+
+    @Override
+    public ParkingResult quoteCheckout(String regnId, String dateExit, String timeExit) {
+        LotState state = lotState;
+        if (state == null) {
+            return ParkingResult.of(ParkingResult.Status.NOT_INITIALISED);
+        }
+        Vehicle vehicle = state.getRegistry().get(regnId);
+        ParkingResult.Status status = checkCheckout(state, vehicle, dateExit, timeExit);
+        if (status != ParkingResult.Status.OK) {
+            return ParkingResult.of(status, vehicle);
+        }
+        CheckoutVehicle checkoutVehicle = vehicle.toCheckoutVehicle(Date.parseEpochMinutes(dateExit, timeExit));
+        return new ParkingResult(ParkingResult.Status.OK, vehicle, 0, checkoutVehicle);
+    }
+
+    @Override
+    public ParkingResult checkOut(String regnId, String dateExit, String timeExit) {
+        if (feeLog == null) {
+            throw new IllegalStateException("A shard checks out through the recorder of its coordinator");
+        }
+        return checkOut(regnId, dateExit, timeExit, this::record);
+    }
+
+    /**
+     * Checks a vehicle out, handing its checkout record to a recorder before the vehicle leaves the lot. The recorder
+     * journals the record and adds it to the fee log of the site; a shard checks out this way, recording through the
+     * coordinator that keeps the fee log of the site.
+     *
+     * @param recorder Records the checkout in the journal and fee log of the site.
+     */
+    public ParkingResult checkOut(String regnId, String dateExit, String timeExit, CheckoutRecorder recorder) {
+        LotState state = lotState;
+        if (state == null) {
+            return ParkingResult.of(ParkingResult.Status.NOT_INITIALISED);
+        }
+        Vehicle vehicle = state.getRegistry().get(regnId);
+        if (vehicle == null) {
+            return ParkingResult.of(ParkingResult.Status.NOT_FOUND);
+        }
+        CheckoutVehicle checkoutVehicle;
+        synchronized (state.lockOf(vehicle)) {
+            ParkingResult.Status status = checkCheckout(state, vehicle, dateExit, timeExit);
+            if (status != ParkingResult.Status.OK) {
+                return ParkingResult.of(status, vehicle);
+            }
+            //another gate has checked the vehicle out in the meantime
+            if (!state.getRegistry().isCurrent(vehicle)) {
+                return ParkingResult.of(ParkingResult.Status.NOT_FOUND, vehicle);
+            }
+            //the record is on disk before the vehicle leaves, so neither a failed write nor a crash loses the fee;
+            //the vehicle is locked, so no hit or move can change the record in between
+            checkoutVehicle = vehicle.toCheckoutVehicle(Date.parseEpochMinutes(dateExit, timeExit));
+            synchronized (checkoutLock) {
+                long feeLogRow;
+                try {
+                    feeLogRow = recorder.record(checkoutVehicle);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException("Cannot record the checkout of " + regnId, ex);
+                }
+                vehicle.setDateExit(dateExit);
+                vehicle.setTimeExit(timeExit);
+                state.checkout(vehicle, feeLogRow);
+            }
+        }
+        return new ParkingResult(ParkingResult.Status.OK, vehicle, 0, checkoutVehicle);
+    }
+
+    @Override
+    public Vehicle findVehicle(String regnId) {
+        LotState state = lotState;
+        return state == null || regnId == null ? null : state.getRegistry().get(regnId);
+    }
+
+    @Override
+    public boolean isAtExit(String regnId) {
+        LotState state = lotState;
+        Vehicle vehicle = findVehicle(regnId);
+        return vehicle != null && state.isAtExit(vehicle);
+    }
+
+    @Override
+    public ParkingGrid getParkingGrid() {
+        LotState state = lotState;
+        return state == null ? null : state.getParkingGrid();
+    }
+
+    @Override
+    public int getLevels() {
+        return 1;
+    }
+
+    @Override
+    public ParkingGrid getParkingGrid(int level) {
+        return level == 0 ? getParkingGrid() : null;
+    }
+
+    @Override
+    public int findLevel(String regnId) {
+        return findVehicle(regnId) == null ? -1 : 0;
+    }
+
+    /**
+     * Returns the registration ids of the vehicles checked in, a copy.
+     */
+    public List<String> getRegnIds() {
+        LotState state = lotState;
+        return state == null ? Collections.emptyList() : state.getRegistry().getRegnIds();
+    }
+
+    @Override
+    public int getAvailable(String vehicleType) {
+        LotState state = lotState;
+        return state == null ? 0 : parkingLot.getEmpPlotQtyByVehicleType(state.getCapacityLedger(), vehicleType);
+    }
+
+    @Override
+    public int getEmpQty() {
+        LotState state = lotState;
+        return state == null ? Constant.QTY_INIT_VALUE : state.getCapacityLedger().getEmpQty();
+    }
+
+    @Override
+    public int getOccQty() {
+        LotState state = lotState;
+        return state == null ? Constant.QTY_INIT_VALUE : state.getCapacityLedger().getOccQty();
+    }
+
+    @Override
+    public Iterable<CheckoutVehicle> getCheckoutVehicles() {
+        return feeLog == null ? Collections.emptyList() : feeLog;
+    }
+
+    /**
+     * Returns the running totals of the fee log, null for a shard.
+     */
+    @Override
+    public RevenueAggregates getRevenueAggregates() {
+        return feeLog == null ? null : feeLog.getRevenueAggregates();
+    }
+
+    @Override
+    public FeeLogPage queryCheckoutVehicles(FeeLogQuery query) {
+        return feeLog == null ? new FeeLogPage(Collections.emptyList(), query.getCursor(), false) : feeLog.query(query);
+    }
+
+    /**
+     * Passes every vehicle checked in to the action, in no particular order. The vehicles are only valid during
+     * the call and no checkin or checkout runs meanwhile.
+     */
+    public void forEachVehicle(Consumer<Vehicle> action) {
+        LotState state = lotState;
+        if (state != null) {
+            state.getRegistry().forEach(action);
+        }
+    }
+
+    /**
+     * Returns the fee log row from which a checkout of this lot may be missing from its lot store, 0 if the lot is
+     * not initialised.
+     */
+    public long getFeeLogMark() {
+        LotState state = lotState;
+        return state == null ? 0 : state.getFeeLogMark();
+    }
+
+    /**
+     * Raises the fee log mark of the lot once the fee log rows below the given one have been looked through.
+     */
+    public void advanceFeeLogMark(long feeLogRows) {
+        LotState state = lotState;
+        if (state != null) {
+            state.advanceFeeLogMark(feeLogRows);
+        }
+    }
+
+    /**
+     * Removes the vehicle checked in with a registration id and entry time, the one a checkout record was written
+     * for, from a lot that outlived the record of its leaving.
+     *
+     * @param packedRegnId The registration id of the record, packed by the RegnIdCodec.
+     * @param entryMinutes The entry time of the record.
+     * @param feeLogRow The row of the record in the fee log.
+     * @return true if the vehicle was found and removed.
+     */
+    public boolean removeCheckedOut(long packedRegnId, long entryMinutes, long feeLogRow) {
+        LotState state = lotState;
+        return state != null && removeCheckedOut(state, packedRegnId, entryMinutes, feeLogRow);
+    }
+
+    /**
+     * Removes from a restored lot the vehicles whose checkout is in the fee log. A checkout is journaled before the
+     * vehicle leaves and the lot logs its changes a few milliseconds later, so a crash in between restores a vehicle
+     * that has already paid. It is the one with the registration id and entry time of a record. Only the rows from
+     * the fee log mark of the lot on are looked through, the checkouts before it being in the lot store already.
+     *
+     * @return The number of vehicles removed.
+     */
+    static int removeCheckedOut(LotState state, FeeLogStore feeLog) {
+        VehicleRegistry registry = state.getRegistry();
+        int removed = 0;
+        for (long row = state.getFeeLogMark(), rows = feeLog.getRowCount(); row < rows && registry.size() > 0; row++) {
+            if (removeCheckedOut(state, feeLog.getPackedRegnId(row), feeLog.getEntryMinutes(row), row)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private static boolean removeCheckedOut(LotState state, long packedRegnId, long entryMinutes, long feeLogRow) {
+        Vehicle vehicle = state.getRegistry().get(packedRegnId);
+        return vehicle != null && vehicle.getEntryMinutes() == entryMinutes
+                && state.checkout(vehicle, feeLogRow) != null;
+    }
+
+    // Journals a checkout and adds it to the fee log and its revenue totals; the fee log holds the site's order of
+    // the two logs while journaling, so levels sharing them record their checkouts in the same order in both
+    private long record(CheckoutVehicle checkoutVehicle) throws IOException {
+        return feeLog.append(checkoutVehicle, journal);
+    }
+
+    // Counts a hit against the vehicle
+    private ParkingResult hit(LotState state, Vehicle vehicle, ParkingResult.Status status) {
+        state.recordHit(vehicle);
+        return ParkingResult.of(status, vehicle);
+    }
+
+    private ParkingResult.Status checkDate(String date) {
+        int dateValidValue = parkingLot.isValidDate(date);
+        if (dateValidValue == 2) {
+            return ParkingResult.Status.DATE_OUT_OF_RANGE;
+        }
+        return dateValidValue == 1 ? ParkingResult.Status.OK : ParkingResult.Status.INVALID_DATE;
+    }
+
+    private ParkingResult.Status checkCheckout(LotState state, Vehicle vehicle, String dateExit, String timeExit) {
+        if (vehicle == null) {
+            return ParkingResult.Status.NOT_FOUND;
+        }
+        //the vehicle has to move to the exit door
+        if (!state.isAtExit(vehicle)) {
+            return ParkingResult.Status.NOT_AT_EXIT;
+        }
+        ParkingResult.Status dateStatus = checkDate(dateExit);
+        if (dateStatus != ParkingResult.Status.OK) {
+            return dateStatus;
+        }
+        if (!parkingLot.isValidTime(timeExit)) {
+            return ParkingResult.Status.INVALID_TIME;
+        }
+        long datetimeEntry = vehicle.getEntryMinutes();
+        long datetimeExit = Date.parseEpochMinutes(dateExit, timeExit);
+        if (datetimeEntry == Date.NO_TIME || datetimeExit < datetimeEntry) {
+            return ParkingResult.Status.EXIT_BEFORE_ENTRY;
+        }
+        return ParkingResult.Status.OK;
+    }
+
+    private ParkingResult toMoveResult(int moves, Vehicle vehicle) {
+        switch (moves) {
+            case LotState.ALREADY_PARKED: return ParkingResult.of(ParkingResult.Status.ALREADY_PARKED, vehicle);
+            case LotState.NO_FREE_SPOT: return ParkingResult.of(ParkingResult.Status.NO_FREE_SPOT, vehicle);
+            case LotState.NO_ROUTE: return ParkingResult.of(ParkingResult.Status.NO_ROUTE, vehicle);
+            case LotState.CELL_TAKEN: return ParkingResult.of(ParkingResult.Status.CELL_TAKEN, vehicle);
+            default: return new ParkingResult(ParkingResult.Status.OK, vehicle, moves, null);
+        }
+    }
+}
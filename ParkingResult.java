@@ -0,0 +1,97 @@
+/**
+ * The ParkingResult class is the typed outcome of an operation of the ParkingService.
+ * It carries a status telling what happened and, depending on the operation, the vehicle involved,
+ * the number of moves driven or the checkout record.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class ParkingResult {
+
+    /**
+     * The possible outcomes of the parking operations.
+     */
+    public enum Status {
+        OK,
+        NOT_INITIALISED,
+        INVALID_SIZE,
+        LOT_OCCUPIED,
+        INVALID_VEHICLE_TYPE,
+        PARKING_FULL,
+        PARKING_FULL_FOR_TYPE,
+        INVALID_REGN_ID,
+        DUPLICATE_REGN_ID,
+        INVALID_DATE,
+        DATE_OUT_OF_RANGE,
+        INVALID_TIME,
+        NOT_FOUND,
+        INVALID_DIRECTION,
+        AT_DOOR,
+        HIT_PILLAR,
+        HIT_WALL,
+        HIT_VEHICLE,
+        TRUCK_SPOTS_ONLY,
+        BIKE_SPOTS_ONLY,
+        CELL_TAKEN,
+        ALREADY_PARKED,
+        NO_FREE_SPOT,
+        NO_ROUTE,
+        NOT_AT_EXIT,
+        EXIT_BEFORE_ENTRY
+    }
+
+    private final Status status;
+    private final Vehicle vehicle;
+    private final int moves;
+    private final CheckoutVehicle checkoutVehicle;
+
+    public ParkingResult(Status status, Vehicle vehicle, int moves, CheckoutVehicle checkoutVehicle) {
+        this.status = status;
+        this.vehicle = vehicle;
+        this.moves = moves;
+        this.checkoutVehicle = checkoutVehicle;
+    }
+
+    /**
+     * Creates a result without any payload.
+     */
+    public static ParkingResult of(Status status) {
+        return new ParkingResult(status, null, 0, null);
+    }
+
+    /**
+     * Creates a result about a vehicle.
+     */
+    public static ParkingResult of(Status status, Vehicle vehicle) {
+        return new ParkingResult(status, vehicle, 0, null);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isOk() {
+        return status == Status.OK;
+    }
+
+    /**
+     * Returns the vehicle the operation was about, null if it is not known.
+     */
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+
+    /**
+     * Returns the number of moves driven by an automatic move.
+     */
+    public int getMoves() {
+        return moves;
+    }
+
+    /**
+     * Returns the checkout record of a checkout or of a checkout quote.
+     */
+    public CheckoutVehicle getCheckoutVehicle() {
+        return checkoutVehicle;
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * The ParkingService interface is the programmatic API of the parking lot.
+ * It exposes checkin, moves, checkout and the fee log without any console input or output, so it can be
+ * driven by the console, by other services or by load tests. Every operation returns a typed ParkingResult.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public interface ParkingService {
+
+    /**
+     * Initialises the parking lot with the given dimensions.
+     *
+     * @param length Length of the parking lot.
+     * @param width Width of the parking lot.
+     * @return OK, INVALID_SIZE if a side is below the minimum or the lot has more bays than CapacityLedger.MAX_BAYS,
+     *         or LOT_OCCUPIED.
+     */
+    ParkingResult initParkingLot(int length, int width);
+
+    /**
+     * Checks a vehicle in at the entry door.
+     *
+     * @param vehicleType The type of the vehicle, case insensitive.
+     * @param regnId The registration id, exactly 6 characters without spaces.
+     * @param model The model of the vehicle.
+     * @param colour The colour of the vehicle.
+     * @param dateEntry The date of entry in yyyy-MM-dd format.
+     * @param timeEntry The time of entry in HH:mm format.
+     * @return OK with the vehicle, or the reason the checkin was refused.
+     */
+    ParkingResult checkIn(String vehicleType, String regnId, String model, String colour, String dateEntry, String timeEntry);
+
+    /**
+     * Moves a checked-in vehicle by one cell.
+     *
+     * @param regnId The registration id of the vehicle.
+     * @param direction One of w, s, a, d for up, down, left and right.
+     * @return OK if the vehicle moved, or what prevented the move.
+     */
+    ParkingResult move(String regnId, char direction);
+
+    /**
+     * Drives a checked-in vehicle to the nearest free spot legal for its type.
+     *
+     * @param regnId The registration id of the vehicle.
+     * @return OK with the number of moves, or what prevented the parking.
+     */
+    ParkingResult autoPark(String regnId);
+
+    /**
+     * Drives a checked-in vehicle to the checkout door.
+     *
+     * @param regnId The registration id of the vehicle.
+     * @return OK with the number of moves, or what prevented the drive.
+     */
+    ParkingResult driveToExit(String regnId);
+
+    /**
+     * Computes the checkout record of a vehicle at the checkout door without checking it out.
+     *
+     * @param regnId The registration id of the vehicle.
+     * @param dateExit The date of exit in yyyy-MM-dd format.
+     * @param timeExit The time of exit in HH:mm format.
+     * @return OK with the checkout record, or the reason the vehicle cannot check out.
+     */
+    ParkingResult quoteCheckout(String regnId, String dateExit, String timeExit);
+
+    /**
+     * Checks a vehicle at the checkout door out and records its fee.
+     *
+     * @param regnId The registration id of the vehicle.
+     * @param dateExit The date of exit in yyyy-MM-dd format.
+     * @param timeExit The time of exit in HH:mm format.
+     * @return OK with the checkout record, or the reason the vehicle cannot check out.
+     */
+    ParkingResult checkOut(String regnId, String dateExit, String timeExit);
+
+    /**
+     * Returns a checked-in vehicle, null if there is none with the registration id.
+     */
+    Vehicle findVehicle(String regnId);
+
+    /**
+     * Returns true if the checked-in vehicle is at the checkout door.
+     */
+    boolean isAtExit(String regnId);
+
+    /**
+     * Returns the layout of the parking lot, the first level if there are several, null if it is not initialised.
+     */
+    ParkingGrid getParkingGrid();
+
+    /**
+     * Returns the number of levels, each one a parking lot of its own.
+     */
+    int getLevels();
+
+    /**
+     * Returns the layout of a level, counted from 0, or null if it is not initialised.
+     */
+    ParkingGrid getParkingGrid(int level);
+
+    /**
+     * Returns the level a vehicle is checked in on, -1 if it is not checked in.
+     */
+    int findLevel(String regnId);
+
+    /**
+     * Returns the number of available slots for the vehicle type.
+     */
+    int getAvailable(String vehicleType);
+
+    /**
+     * Returns the number of empty lots, QTY_INIT_VALUE if the parking lot is not initialised.
+     */
+    int getEmpQty();
+
+    /**
+     * Returns the number of occupied lots, QTY_INIT_VALUE if the parking lot is not initialised.
+     */
+    int getOccQty();
+
+    /**
+     * Returns the checkout records, oldest first. Iterating may reuse one record for every step, so a record must be
+     * copied if it is kept after the next step.
+     */
+    Iterable<CheckoutVehicle> getCheckoutVehicles();
+
+    /**
+     * Returns one page of the checkout records matching a query, in exit time order.
+     *
+     * @param query The exit time range, vehicle type and registration id prefix to match, the page size and the
+     *              cursor the page starts after.
+     */
+    FeeLogPage queryCheckoutVehicles(FeeLogQuery query);
+
+    /**
+     * Returns the running revenue totals per vehicle type, hour of the day and day of exit.
+     */
+    RevenueAggregates getRevenueAggregates();
+}
@@ -0,0 +1,92 @@
+/**
+ * The RegnIdCodec class packs a registration id of 6 Latin-1 characters into the low 48 bits of a long.
+ * Packed ids take 6 bytes in the binary journals and stores and compare as plain numbers.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class RegnIdCodec {
+
+    public static final int REGN_ID_LENGTH = 6;
+
+    // Returned when a registration id cannot be packed, no packed id has its top bit set
+    public static final long INVALID = -1L;
+
+    private RegnIdCodec() {
+    }
+
+    /**
+     * Returns true if the registration id has exactly 6 characters, all of them Latin-1.
+     */
+    public static boolean isPackable(CharSequence regnId) {
+        if (regnId == null || regnId.length() != REGN_ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < REGN_ID_LENGTH; i++) {
+            if (regnId.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Packs a registration id, the first character in the highest byte so packed ids sort like the ids.
+     *
+     * @param regnId The registration id.
+     * @return The packed id, or INVALID if it is not packable.
+     */
+    public static long pack(CharSequence regnId) {
+        if (!isPackable(regnId)) {
+            return INVALID;
+        }
+        long packed = 0;
+        for (int i = 0; i < REGN_ID_LENGTH; i++) {
+            packed = (packed << 8) | regnId.charAt(i);
+        }
+        return packed;
+    }
+
+    /**
+     * Packs the start of a registration id the way pack() places it, the missing characters left as zero.
+     *
+     * @param prefix Up to 6 Latin-1 characters.
+     * @return The packed prefix, or INVALID if it is too long or not Latin-1.
+     */
+    public static long packPrefix(CharSequence prefix) {
+        if (prefix == null || prefix.length() > REGN_ID_LENGTH) {
+            return INVALID;
+        }
+        long packed = 0;
+        for (int i = 0; i < REGN_ID_LENGTH; i++) {
+            char c = i < prefix.length() ? prefix.charAt(i) : 0;
+            if (c > 0xFF) {
+                return INVALID;
+            }
+            packed = (packed << 8) | c;
+        }
+        return packed;
+    }
+
+    /**
+     * Returns the bits of a packed id covered by a prefix of the given length.
+     */
+    public static long prefixMask(int prefixLength) {
+        return prefixLength <= 0 ? 0L : (0xFFFFFFFFFFFFL >>> (8 * (REGN_ID_LENGTH - prefixLength))) << (8 * (REGN_ID_LENGTH - prefixLength));
+    }
+
+    /**
+     * Unpacks a registration id.
+     *
+     * @param packed The packed id.
+     * @return The registration id.
+     */
+    public static String unpack(long packed) {
+        char[] chars = new char[REGN_ID_LENGTH];
+        for (int i = REGN_ID_LENGTH - 1; i >= 0; i--) {
+            chars[i] = (char) (packed & 0xFF);
+            packed >>>= 8;
+        }
+        return new String(chars);
+    }
+}
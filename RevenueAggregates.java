@@ -0,0 +1,182 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The RevenueAggregates class keeps running totals of the checkouts so a report never re-sums the fee log.
+ * Totals are kept per vehicle type, per hour of the day and per day of the exit time; each bucket holds the
+ * revenue, the hit fees, the overnight fees, the visits and the minutes parked. Recording a checkout adds to
+ * one bucket of each kind and takes constant time. The totals are kept by the FeeLogStore and saved with its
+ * segments, so a restart only sums the rows written after the saved totals.
+ * The hit and overnight fees are the parts of the fee kept with each checkout record when it was priced, so the
+ * totals never depend on the tariff plan active when they are summed.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class RevenueAggregates {
+
+    public static final int HOURS_PER_DAY = FeeCalculator.HOURS_PER_DAY;
+    private static final int MINUTES_PER_DAY = FeeCalculator.MINUTES_PER_HOUR * FeeCalculator.HOURS_PER_DAY;
+
+    // Layout of a bucket in the total arrays
+    private static final int REVENUE = 0;
+    private static final int HIT_FEE = 1;
+    private static final int OVERNIGHT = 2;
+    private static final int VISITS = 3;
+    private static final int DWELL = 4;
+    private static final int BUCKET_SIZE = 5;
+
+    private static final int TYPE_COUNT = 4;
+
+    // Guarded by this
+    private final long[] byType = new long[TYPE_COUNT * BUCKET_SIZE];
+    private final long[] byHour = new long[HOURS_PER_DAY * BUCKET_SIZE];
+    private final Map<Long, long[]> byDay = new HashMap<>();
+
+    /**
+     * Adds a checkout to the totals.
+     *
+     * @param checkoutVehicle The checkout record, it is not kept.
+     */
+    public void record(CheckoutVehicle checkoutVehicle) {
+        byte code = VehicleTypeCodec.encode(checkoutVehicle.getVehicleType());
+        if (code == VehicleTypeCodec.INVALID) {
+            return;
+        }
+        long entryMinutes = checkoutVehicle.getEntryMinutes();
+        long exitMinutes = checkoutVehicle.getExitMinutes();
+        long revenue = checkoutVehicle.getParkingFeeCents();
+        long hitFee = checkoutVehicle.getHitFeeCents();
+        long overnightFee = checkoutVehicle.getOvernightFeeCents();
+        long dwell = exitMinutes - entryMinutes;
+        int hour = Math.floorMod(Math.floorDiv(exitMinutes, FeeCalculator.MINUTES_PER_HOUR), HOURS_PER_DAY);
+        long day = Math.floorDiv(exitMinutes, MINUTES_PER_DAY);
+
+        synchronized (this) {
+            add(byType, code * BUCKET_SIZE, revenue, hitFee, overnightFee, dwell);
+            add(byHour, hour * BUCKET_SIZE, revenue, hitFee, overnightFee, dwell);
+            add(byDay.computeIfAbsent(day, k -> new long[BUCKET_SIZE]), 0, revenue, hitFee, overnightFee, dwell);
+        }
+    }
+
+    /**
+     * Returns the totals of every checkout.
+     */
+    public synchronized RevenueBucket getTotal() {
+        long[] total = new long[BUCKET_SIZE];
+        for (int i = 0; i < byType.length; i++) {
+            total[i % BUCKET_SIZE] += byType[i];
+        }
+        return toBucket(total, 0);
+    }
+
+    /**
+     * Returns the totals of a vehicle type, empty if the type is unknown.
+     */
+    public synchronized RevenueBucket getByType(String vehicleType) {
+        byte code = VehicleTypeCodec.encode(vehicleType);
+        return code == VehicleTypeCodec.INVALID ? toBucket(new long[BUCKET_SIZE], 0) : toBucket(byType, code * BUCKET_SIZE);
+    }
+
+    /**
+     * Returns the totals of the checkouts exiting in an hour of the day.
+     *
+     * @param hour The hour of the day, 0 to 23.
+     */
+    public synchronized RevenueBucket getByHourOfDay(int hour) {
+        return toBucket(byHour, hour * BUCKET_SIZE);
+    }
+
+    /**
+     * Returns the totals of the checkouts exiting on a day.
+     *
+     * @param epochDay The day, counted from 1970-01-01.
+     */
+    public synchronized RevenueBucket getByDay(long epochDay) {
+        long[] totals = byDay.get(epochDay);
+        return toBucket(totals == null ? new long[BUCKET_SIZE] : totals, 0);
+    }
+
+    /**
+     * Returns the days with at least one checkout, oldest first.
+     */
+    public synchronized long[] getDays() {
+        long[] days = new long[byDay.size()];
+        int i = 0;
+        for (Long day : byDay.keySet()) {
+            days[i++] = day;
+        }
+        Arrays.sort(days);
+        return days;
+    }
+
+    /**
+     * Returns the totals encoded for saving, to be read back by decode.
+     */
+    public synchronized ByteBuffer encode() {
+        int size = 8 * (byType.length + byHour.length) + 4 + byDay.size() * 8 * (1 + BUCKET_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        for (long total : byType) {
+            buffer.putLong(total);
+        }
+        for (long total : byHour) {
+            buffer.putLong(total);
+        }
+        buffer.putInt(byDay.size());
+        for (Map.Entry<Long, long[]> day : byDay.entrySet()) {
+            buffer.putLong(day.getKey());
+            for (long total : day.getValue()) {
+                buffer.putLong(total);
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Replaces the totals by ones written by encode.
+     *
+     * @param buffer The encoded totals, read from its position.
+     */
+    public synchronized void decode(ByteBuffer buffer) {
+        for (int i = 0; i < byType.length; i++) {
+            byType[i] = buffer.getLong();
+        }
+        for (int i = 0; i < byHour.length; i++) {
+            byHour[i] = buffer.getLong();
+        }
+        byDay.clear();
+        for (int days = buffer.getInt(); days > 0; days--) {
+            long[] totals = new long[BUCKET_SIZE];
+            long day = buffer.getLong();
+            for (int i = 0; i < BUCKET_SIZE; i++) {
+                totals[i] = buffer.getLong();
+            }
+            byDay.put(day, totals);
+        }
+    }
+
+    /**
+     * Drops every total.
+     */
+    public synchronized void clear() {
+        Arrays.fill(byType, 0);
+        Arrays.fill(byHour, 0);
+        byDay.clear();
+    }
+
+    private static void add(long[] totals, int offset, long revenue, long hitFee, long overnightFee, long dwell) {
+        totals[offset + REVENUE] += revenue;
+        totals[offset + HIT_FEE] += hitFee;
+        totals[offset + OVERNIGHT] += overnightFee;
+        totals[offset + VISITS]++;
+        totals[offset + DWELL] += dwell;
+    }
+
+    private static RevenueBucket toBucket(long[] totals, int offset) {
+        return new RevenueBucket(totals[offset + REVENUE], totals[offset + HIT_FEE], totals[offset + OVERNIGHT],
+                totals[offset + VISITS], totals[offset + DWELL]);
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * The RevenueBucket class is a snapshot of the running totals of one bucket of the RevenueAggregates:
+ * the revenue split into hit fees and overnight fees, the number of visits and the minutes they stayed.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class RevenueBucket {
+
+    private final long revenueCents; // Total fees charged, in cents
+    private final long hitFeeCents; // Part of the revenue charged for hits, in cents
+    private final long overnightCents; // Part of the revenue charged for overnight stays, in cents
+    private final long visits;
+    private final long dwellMinutes; // Total minutes between entry and exit
+
+    public RevenueBucket(long revenueCents, long hitFeeCents, long overnightCents, long visits, long dwellMinutes) {
+        this.revenueCents = revenueCents;
+        this.hitFeeCents = hitFeeCents;
+        this.overnightCents = overnightCents;
+        this.visits = visits;
+        this.dwellMinutes = dwellMinutes;
+    }
+
+    public long getRevenueCents() {
+        return revenueCents;
+    }
+
+    public long getHitFeeCents() {
+        return hitFeeCents;
+    }
+
+    public long getOvernightCents() {
+        return overnightCents;
+    }
+
+    public long getVisits() {
+        return visits;
+    }
+
+    public long getDwellMinutes() {
+        return dwellMinutes;
+    }
+
+    /**
+     * Returns the average stay in hours, 0 if there was no visit.
+     */
+    public double getAverageDwellHours() {
+        return visits == 0 ? 0 : dwellMinutes / (double) visits / FeeCalculator.MINUTES_PER_HOUR;
+    }
+}
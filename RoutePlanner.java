@@ -0,0 +1,197 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The RoutePlanner class computes the shortest collision-free route of a vehicle over the parking lot.
+ * Routes only use the driveway, so pillars, walls and other vehicles are never hit, and a route ends
+ * in the requested spot or in the cell in front of the exit door. The breadth-first distance fields from
+ * the fixed entry and exit cells are cached and only recomputed once a driveway cell has been taken or freed;
+ * vehicles filling or leaving spots do not invalidate them.
+ * Planning takes no lock, so the gates plan in parallel. Every search fills arrays of its own and a cached field is
+ * published with the driveway version read before it was filled, so a field filled while the driveway changed is
+ * tagged with the older version and filled again by the next search.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class RoutePlanner {
+
+    private static final int[] EMPTY_ROUTE = new int[0];
+
+    // Slots of the cached fields
+    private static final int ENTRY_FIELD = 0;
+    private static final int EXIT_FIELD = 1;
+
+    private final ParkingGrid parkingGrid;
+    private final int rows;
+    private final int cols;
+    private final int entryCell;
+    private final int exitCell;
+
+    // Cached distance fields from the entry and the exit cell, null until the first search from them
+    private final AtomicReferenceArray<DistanceField> fields = new AtomicReferenceArray<>(2);
+
+    // A distance field and the driveway version of the grid it was filled from, never changed once published
+    private static final class DistanceField {
+        private final int drivewayVersion;
+        private final int[] distances;
+
+        DistanceField(int drivewayVersion, int[] distances) {
+            this.drivewayVersion = drivewayVersion;
+            this.distances = distances;
+        }
+    }
+
+    /**
+     * Creates a planner for a freshly initialised layout.
+     *
+     * @param parkingGrid The layout of the parking lot.
+     */
+    public RoutePlanner(ParkingGrid parkingGrid) {
+        this.parkingGrid = parkingGrid;
+        this.rows = parkingGrid.getRows();
+        this.cols = parkingGrid.getCols();
+        this.entryCell = Constant.ROW_INIT_VALUE * cols + Constant.COL_INIT_VALUE;
+        this.exitCell = (rows - 2) * cols + (cols - 2);
+    }
+
+    /**
+     * Returns the row of the cell in front of the exit door, where vehicles check out.
+     */
+    public int getExitRow() {
+        return exitCell / cols;
+    }
+
+    /**
+     * Returns the column of the cell in front of the exit door, where vehicles check out.
+     */
+    public int getExitCol() {
+        return exitCell % cols;
+    }
+
+    /**
+     * Plans the route of a vehicle to a spot.
+     *
+     * @param fromRow Current row of the vehicle.
+     * @param fromCol Current column of the vehicle.
+     * @param spotRow Row of the destination spot.
+     * @param spotCol Column of the destination spot.
+     * @return The cell indexes (row * cols + col) to move through, ending with the spot, or null if there is no route.
+     */
+    public int[] planToSpot(int fromRow, int fromCol, int spotRow, int spotCol) {
+        int from = fromRow * cols + fromCol;
+        int[] field = from == entryCell ? cachedField(ENTRY_FIELD, entryCell) : fillDistanceField(from);
+        return routeFromSeed(field, spotRow * cols + spotCol);
+    }
+
+    /**
+     * Plans the route of a vehicle to the cell in front of the exit door.
+     *
+     * @param fromRow Current row of the vehicle.
+     * @param fromCol Current column of the vehicle.
+     * @return The cell indexes (row * cols + col) to move through, ending with the exit cell, or null if there is no route.
+     */
+    public int[] planToExit(int fromRow, int fromCol) {
+        int from = fromRow * cols + fromCol;
+        if (from == exitCell) {
+            return EMPTY_ROUTE;
+        }
+        // the route from the exit to the vehicle, walked backwards
+        int[] reversed = routeFromSeed(cachedField(EXIT_FIELD, exitCell), from);
+        if (reversed == null) {
+            return null;
+        }
+        int[] route = new int[reversed.length];
+        for (int i = 0; i < reversed.length - 1; i++) {
+            route[i] = reversed[reversed.length - 2 - i];
+        }
+        route[route.length - 1] = exitCell;
+        return route;
+    }
+
+    /**
+     * Returns the cached field of a seed, filling it again if the driveway has changed since it was filled.
+     */
+    private int[] cachedField(int slot, int seed) {
+        // read before filling, so changes made during the fill leave the field stale
+        int drivewayVersion = parkingGrid.getDrivewayVersion();
+        DistanceField field = fields.get(slot);
+        if (field == null || field.drivewayVersion != drivewayVersion) {
+            field = new DistanceField(drivewayVersion, fillDistanceField(seed));
+            fields.set(slot, field);
+        }
+        return field.distances;
+    }
+
+    /**
+     * Returns the breadth-first distance of every driveway cell from the seed cell, -1 if it cannot be reached.
+     */
+    private int[] fillDistanceField(int seed) {
+        int[] field = new int[rows * cols];
+        int[] queue = new int[rows * cols];
+        Arrays.fill(field, -1);
+        int head = 0, tail = 0;
+        field[seed] = 0;
+        queue[tail++] = seed;
+        while (head < tail) {
+            int cell = queue[head++];
+            int row = cell / cols, col = cell % cols;
+            int distance = field[cell] + 1;
+            if (row > 0) tail = visit(field, queue, cell - cols, distance, tail);
+            if (row < rows - 1) tail = visit(field, queue, cell + cols, distance, tail);
+            if (col > 0) tail = visit(field, queue, cell - 1, distance, tail);
+            if (col < cols - 1) tail = visit(field, queue, cell + 1, distance, tail);
+        }
+        return field;
+    }
+
+    private int visit(int[] field, int[] queue, int cell, int distance, int tail) {
+        if (field[cell] < 0 && isDriveway(cell)) {
+            field[cell] = distance;
+            queue[tail++] = cell;
+        }
+        return tail;
+    }
+
+    /**
+     * Walks a distance field back from a neighbour of the target to its seed.
+     *
+     * @return The route from the seed (excluded) to the target (included), or null if the target cannot be reached.
+     */
+    private int[] routeFromSeed(int[] field, int target) {
+        int cell = nearestNeighbour(field, target, Integer.MAX_VALUE);
+        if (cell < 0) {
+            return null;
+        }
+        int[] route = new int[field[cell] + 1];
+        route[route.length - 1] = target;
+        for (int i = route.length - 2; i >= 0; i--) {
+            route[i] = cell;
+            cell = nearestNeighbour(field, cell, field[cell]);
+        }
+        return route;
+    }
+
+    /**
+     * Returns the reached neighbour of a cell with the smallest distance below the given bound, -1 if there is none.
+     */
+    private int nearestNeighbour(int[] field, int cell, int bound) {
+        int row = cell / cols, col = cell % cols;
+        int best = -1;
+        int[] neighbours = {
+                row > 0 ? cell - cols : -1, row < rows - 1 ? cell + cols : -1,
+                col > 0 ? cell - 1 : -1, col < cols - 1 ? cell + 1 : -1
+        };
+        for (int neighbour : neighbours) {
+            if (neighbour >= 0 && field[neighbour] >= 0 && field[neighbour] < bound
+                    && (best < 0 || field[neighbour] < field[best])) {
+                best = neighbour;
+            }
+        }
+        return best;
+    }
+
+    private boolean isDriveway(int cell) {
+        return parkingGrid.is(cell / cols, cell % cols, ParkingGrid.MASK_DRIVEWAY);
+    }
+}
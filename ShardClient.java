@@ -0,0 +1,289 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The ShardClient class calls one ShardServer over loopback sockets.
+ * A call borrows an idle connection, or opens one if every connection is busy, and returns it once the response
+ * has been read, so each gate talking to the shard at the same time has a connection of its own and a shard call
+ * costs a round trip on an open socket. A connection that fails is dropped and the failure is thrown unchecked,
+ * like the journal failures of the ParkingLotService. A call cut short by any other failure drops its connection
+ * too, so the shard never waits for the rest of a conversation.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class ShardClient implements AutoCloseable {
+
+    private final int shard;
+    private final int port;
+    private final ParkingLot parkingLot; // Creates the vehicles read back from the shard
+    private final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<>();
+    private ParkingGrid mirror = null; // Local copy of the layout of the shard, refreshed on every read
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a client of the shard listening on a loopback port.
+     *
+     * @param shard The number of the shard, counted from 0, used in error messages.
+     * @param port The port of the shard.
+     * @param parkingLot The parking lot creating the vehicles read back from the shard.
+     */
+    public ShardClient(int shard, int port, ParkingLot parkingLot) {
+        this.shard = shard;
+        this.port = port;
+        this.parkingLot = parkingLot;
+    }
+
+    /**
+     * Lays out the lot of the shard.
+     *
+     * @param feeLogRows The rows of the fee log of the site, none of them a checkout of the new lot.
+     */
+    public ParkingResult initParkingLot(int length, int width, long feeLogRows) {
+        return call(ShardProtocol.OP_INIT, connection -> {
+            connection.out.writeInt(length);
+            connection.out.writeInt(width);
+            connection.out.writeLong(feeLogRows);
+        }, this::readResult);
+    }
+
+    public ParkingResult checkIn(String vehicleType, String regnId, String model, String colour,
+                                 String dateEntry, String timeEntry) {
+        return call(ShardProtocol.OP_CHECKIN, connection -> {
+            ShardProtocol.writeString(connection.out, vehicleType);
+            ShardProtocol.writeString(connection.out, regnId);
+            ShardProtocol.writeString(connection.out, model);
+            ShardProtocol.writeString(connection.out, colour);
+            ShardProtocol.writeString(connection.out, dateEntry);
+            ShardProtocol.writeString(connection.out, timeEntry);
+        }, this::readResult);
+    }
+
+    public ParkingResult move(String regnId, char direction) {
+        return call(ShardProtocol.OP_MOVE, connection -> {
+            ShardProtocol.writeString(connection.out, regnId);
+            connection.out.writeChar(direction);
+        }, this::readResult);
+    }
+
+    public ParkingResult autoPark(String regnId) {
+        return call(ShardProtocol.OP_AUTO_PARK, connection -> ShardProtocol.writeString(connection.out, regnId),
+                this::readResult);
+    }
+
+    public ParkingResult driveToExit(String regnId) {
+        return call(ShardProtocol.OP_DRIVE_TO_EXIT, connection -> ShardProtocol.writeString(connection.out, regnId),
+                this::readResult);
+    }
+
+    public ParkingResult quoteCheckout(String regnId, String dateExit, String timeExit) {
+        return call(ShardProtocol.OP_QUOTE_CHECKOUT, connection -> writeCheckout(connection, regnId, dateExit, timeExit),
+                this::readResult);
+    }
+
+    /**
+     * Checks a vehicle out on the shard, which sends its checkout record to the recorder and only lets the vehicle
+     * leave once the record is durable.
+     *
+     * @param recorder Records the checkout in the journal and fee log of the site.
+     * @throws UncheckedIOException If the shard is unreachable or the recorder failed, the vehicle then stays.
+     */
+    public ParkingResult checkOut(String regnId, String dateExit, String timeExit, CheckoutRecorder recorder) {
+        IOException[] refusal = new IOException[1];
+        ParkingResult result = call(ShardProtocol.OP_CHECKOUT,
+                connection -> writeCheckout(connection, regnId, dateExit, timeExit),
+                connection -> {
+                    if (connection.in.readBoolean()) {
+                        CheckoutVehicle checkoutVehicle = ShardProtocol.readCheckoutVehicle(connection.in);
+                        long feeLogRow = -1;
+                        try {
+                            feeLogRow = recorder.record(checkoutVehicle);
+                        } catch (IOException ex) {
+                            refusal[0] = ex;
+                        }
+                        connection.out.writeBoolean(refusal[0] == null);
+                        if (refusal[0] != null) {
+                            connection.out.flush();
+                            return null;
+                        }
+                        connection.out.writeLong(feeLogRow);
+                        connection.out.flush();
+                        if (connection.in.readBoolean()) {
+                            throw new IOException("Unexpected second checkout record for " + regnId);
+                        }
+                    }
+                    return readResult(connection);
+                });
+        if (refusal[0] != null) {
+            throw new UncheckedIOException("Cannot record the checkout of " + regnId, refusal[0]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of a vehicle checked in on the shard, null if there is none.
+     */
+    public Vehicle findVehicle(String regnId) {
+        return call(ShardProtocol.OP_FIND_VEHICLE, connection -> ShardProtocol.writeString(connection.out, regnId),
+                connection -> ShardProtocol.readVehicle(connection.in, parkingLot));
+    }
+
+    public boolean isAtExit(String regnId) {
+        return call(ShardProtocol.OP_IS_AT_EXIT, connection -> ShardProtocol.writeString(connection.out, regnId),
+                connection -> connection.in.readBoolean());
+    }
+
+    /**
+     * Returns a local copy of the layout of the shard brought up to date, null if it is not initialised.
+     * The same copy is returned every time, its version only moving when the layout of the shard changed.
+     */
+    public synchronized ParkingGrid getParkingGrid() {
+        mirror = call(ShardProtocol.OP_GRID, connection -> { }, connection -> ShardProtocol.readGrid(connection.in, mirror));
+        return mirror;
+    }
+
+    public int getAvailable(String vehicleType) {
+        return call(ShardProtocol.OP_AVAILABLE, connection -> ShardProtocol.writeString(connection.out, vehicleType),
+                connection -> connection.in.readInt());
+    }
+
+    public int getEmpQty() {
+        return call(ShardProtocol.OP_EMP_QTY, connection -> { }, connection -> connection.in.readInt());
+    }
+
+    public int getOccQty() {
+        return call(ShardProtocol.OP_OCC_QTY, connection -> { }, connection -> connection.in.readInt());
+    }
+
+    /**
+     * Adds the registration id, packed, and entry time of every vehicle checked in on the shard to a map.
+     *
+     * @return The fee log mark of the shard, the fee log row from which a checkout may be missing from its lot store.
+     */
+    public long getParked(Map<Long, Long> parked) {
+        return call(ShardProtocol.OP_PARKED, connection -> { }, connection -> {
+            long feeLogMark = connection.in.readLong();
+            for (int count = connection.in.readInt(); count > 0; count--) {
+                parked.put(connection.in.readLong(), connection.in.readLong());
+            }
+            return feeLogMark;
+        });
+    }
+
+    /**
+     * Removes the vehicles checked in on the shard with the given registration ids, packed, and entry times, and
+     * moves the fee log mark of the shard past the rows looked through.
+     *
+     * @param feeLogRows The rows of the fee log looked through.
+     * @return The number of vehicles removed.
+     */
+    public int removeCheckedOut(long[] packedRegnIds, long[] entryMinutes, long[] rows, int count, long feeLogRows) {
+        return call(ShardProtocol.OP_REMOVE_CHECKED_OUT, connection -> {
+            connection.out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                connection.out.writeLong(packedRegnIds[i]);
+                connection.out.writeLong(entryMinutes[i]);
+                connection.out.writeLong(rows[i]);
+            }
+            connection.out.writeLong(feeLogRows);
+        }, connection -> connection.in.readInt());
+    }
+
+    /**
+     * Asks the shard to take its last snapshot and exit.
+     */
+    public void shutdown() {
+        call(ShardProtocol.OP_SHUTDOWN, connection -> { }, connection -> connection.in.readBoolean());
+    }
+
+    /**
+     * Closes the idle connections, the busy ones are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    private void writeCheckout(Connection connection, String regnId, String dateExit, String timeExit) throws IOException {
+        ShardProtocol.writeString(connection.out, regnId);
+        ShardProtocol.writeString(connection.out, dateExit);
+        ShardProtocol.writeString(connection.out, timeExit);
+    }
+
+    private ParkingResult readResult(Connection connection) throws IOException {
+        return ShardProtocol.readResult(connection.in, parkingLot);
+    }
+
+    // Sends a request on an idle connection and reads its response
+    private <T> T call(byte op, Request request, Response<T> response) {
+        Connection connection = idle.poll();
+        try {
+            if (connection == null) {
+                connection = new Connection(port);
+            }
+            connection.out.writeByte(op);
+            request.write(connection);
+            connection.out.flush();
+            T value = response.read(connection);
+            if (closed) {
+                connection.close();
+            } else {
+                idle.offer(connection);
+            }
+            return value;
+        } catch (IOException ex) {
+            if (connection != null) {
+                connection.close();
+            }
+            throw new UncheckedIOException("Shard " + (shard + 1) + " on port " + port + " is unreachable", ex);
+        } catch (RuntimeException ex) {
+            //a recorder that failed mid checkout leaves the shard waiting for its answer, closing lets the vehicle go
+            if (connection != null) {
+                connection.close();
+            }
+            throw ex;
+        }
+    }
+
+    private interface Request {
+        void write(Connection connection) throws IOException;
+    }
+
+    private interface Response<T> {
+        T read(Connection connection) throws IOException;
+    }
+
+    private static class Connection {
+
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Connection(int port) throws IOException {
+            this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // nothing left to release
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The ShardProtocol class defines the messages a ShardedParkingService exchanges with its ShardServer processes.
+ * A request is an operation code followed by its arguments, a response the value of the operation; both are written
+ * with DataOutput, strings as a presence flag and their modified UTF-8 form so that null fields survive the trip.
+ * A connection carries one request at a time, the next one is only sent once the response has been read.
+ * A checkout is answered in two steps: the shard sends the checkout record, flagged, and waits for the coordinator
+ * to flag back that it is journaled, with its fee log row, before the vehicle leaves; the ParkingResult then follows
+ * an unflagged byte. When the coordinator flags that it could not journal the record, the vehicle stays and nothing
+ * more is sent.
+ * A shard keeps the fee log mark of its lot like a lot of its own: a layout is sent with the rows of the fee log of
+ * the site, and every checkout with its row.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class ShardProtocol {
+
+    // Line a shard prints on its standard output once it accepts connections, followed by its port
+    public static final String READY_LINE = "SHARD LISTENING ";
+
+    // Operations answered with a ParkingResult
+    public static final byte OP_INIT = 1;
+    public static final byte OP_CHECKIN = 2;
+    public static final byte OP_MOVE = 3;
+    public static final byte OP_AUTO_PARK = 4;
+    public static final byte OP_DRIVE_TO_EXIT = 5;
+    public static final byte OP_QUOTE_CHECKOUT = 6;
+    public static final byte OP_CHECKOUT = 7;
+
+    // Operations answered with a vehicle, a flag, a grid or a count
+    public static final byte OP_FIND_VEHICLE = 8;
+    public static final byte OP_IS_AT_EXIT = 9;
+    public static final byte OP_GRID = 10;
+    public static final byte OP_AVAILABLE = 11;
+    public static final byte OP_EMP_QTY = 12;
+    public static final byte OP_OCC_QTY = 13;
+
+    // Closes the shard, answered once its lot store has taken its last snapshot
+    public static final byte OP_SHUTDOWN = 14;
+
+    // Reconcile a restarted shard with the journal of the site: the first sends the fee log mark of the shard and
+    // lists the registration ids, packed, and entry times of the vehicles checked in, the second removes the vehicles
+    // of the same pairs with the fee log rows of their checkouts, counts them and moves the mark past the rows read
+    public static final byte OP_PARKED = 15;
+    public static final byte OP_REMOVE_CHECKED_OUT = 16;
+
+    private static final ParkingResult.Status[] STATUSES = ParkingResult.Status.values();
+
+    private ShardProtocol() {
+    }
+
+    public static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Writes a parking result with the vehicle and the checkout record it carries.
+     */
+    public static void writeResult(DataOutput out, ParkingResult result) throws IOException {
+        out.writeByte(result.getStatus().ordinal());
+        out.writeInt(result.getMoves());
+        writeVehicle(out, result.getVehicle());
+        writeCheckoutVehicle(out, result.getCheckoutVehicle());
+    }
+
+    public static ParkingResult readResult(DataInput in, ParkingLot parkingLot) throws IOException {
+        ParkingResult.Status status = STATUSES[in.readByte()];
+        int moves = in.readInt();
+        Vehicle vehicle = readVehicle(in, parkingLot);
+        return new ParkingResult(status, vehicle, moves, readCheckoutVehicle(in));
+    }
+
+    // Vehicle layout: presence, type, regn id, model, colour, row, col, code of the cell under it, hits, entry and exit
+    public static void writeVehicle(DataOutput out, Vehicle vehicle) throws IOException {
+        out.writeBoolean(vehicle != null);
+        if (vehicle == null) {
+            return;
+        }
+        out.writeByte(vehicle.getVehicleClass().getCode());
+        writeString(out, vehicle.getRegnId());
+        writeString(out, vehicle.getModel());
+        writeString(out, vehicle.getColour());
+        out.writeInt(vehicle.getRow());
+        out.writeInt(vehicle.getCol());
+        out.writeByte(ParkingGrid.codeOf(vehicle.getOldSymbol()));
+        out.writeInt(vehicle.getHitNums());
+        writeString(out, vehicle.getDateEntry());
+        writeString(out, vehicle.getTimeEntry());
+        writeString(out, vehicle.getDateExit());
+        writeString(out, vehicle.getTimeExit());
+    }
+
+    /**
+     * Reads a copy of a vehicle, null if none was written.
+     */
+    public static Vehicle readVehicle(DataInput in, ParkingLot parkingLot) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        Vehicle vehicle = parkingLot.createVehicleByType(VehicleTypeCodec.decode(in.readByte()));
+        vehicle.setRegnId(readString(in));
+        vehicle.setModel(readString(in));
+        vehicle.setColour(readString(in));
+        vehicle.setRow(in.readInt());
+        vehicle.setCol(in.readInt());
+        vehicle.setOldSymbol(ParkingGrid.symbolOf(in.readByte()));
+        vehicle.setHitNums(in.readInt());
+        vehicle.setDateEntry(readString(in));
+        vehicle.setTimeEntry(readString(in));
+        vehicle.setDateExit(readString(in));
+        vehicle.setTimeExit(readString(in));
+        return vehicle;
+    }
+
+    public static void writeCheckoutVehicle(DataOutput out, CheckoutVehicle checkoutVehicle) throws IOException {
+        out.writeBoolean(checkoutVehicle != null);
+        if (checkoutVehicle == null) {
+            return;
+        }
+        out.writeByte(VehicleTypeCodec.encode(checkoutVehicle.getVehicleType()));
+        writeString(out, checkoutVehicle.getRegistrationId());
+        out.writeInt(checkoutVehicle.getHitNums());
+        out.writeLong(checkoutVehicle.getEntryMinutes());
+        out.writeLong(checkoutVehicle.getExitMinutes());
+        out.writeLong(checkoutVehicle.getParkingFeeCents());
+        out.writeLong(checkoutVehicle.getHitFeeCents());
+        out.writeLong(checkoutVehicle.getOvernightFeeCents());
+    }
+
+    public static CheckoutVehicle readCheckoutVehicle(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        CheckoutVehicle checkoutVehicle = new CheckoutVehicle();
+        checkoutVehicle.setVehicleType(VehicleTypeCodec.decode(in.readByte()));
+        checkoutVehicle.setRegistrationId(readString(in));
+        checkoutVehicle.setHitNums(in.readInt());
+        checkoutVehicle.setEntryMinutes(in.readLong());
+        checkoutVehicle.setExitMinutes(in.readLong());
+        checkoutVehicle.setParkingFeeCents(in.readLong());
+        checkoutVehicle.setHitFeeCents(in.readLong());
+        checkoutVehicle.setOvernightFeeCents(in.readLong());
+        return checkoutVehicle;
+    }
+
+    // Grid layout: presence, rows, cols, then the cell codes row by row
+    public static void writeGrid(DataOutput out, ParkingGrid grid) throws IOException {
+        out.writeBoolean(grid != null);
+        if (grid == null) {
+            return;
+        }
+        out.writeInt(grid.getRows());
+        out.writeInt(grid.getCols());
+        byte[] row = new byte[grid.getCols()];
+        for (int r = 0; r < grid.getRows(); r++) {
+            for (int c = 0; c < row.length; c++) {
+                row[c] = grid.get(r, c);
+            }
+            out.write(row);
+        }
+    }
+
+    /**
+     * Reads a grid into a mirror of it, setting only the cells that changed so the version of the mirror moves
+     * only when the grid did.
+     *
+     * @param in The response.
+     * @param mirror The grid read last time, or null.
+     * @return The mirror, a new grid if there was none or the size changed, null if no grid was written.
+     */
+    public static ParkingGrid readGrid(DataInput in, ParkingGrid mirror) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int rows = in.readInt();
+        int cols = in.readInt();
+        ParkingGrid grid = mirror != null && mirror.getRows() == rows && mirror.getCols() == cols
+                ? mirror : new ParkingGrid(rows, cols);
+        byte[] row = new byte[cols];
+        for (int r = 0; r < rows; r++) {
+            in.readFully(row);
+            for (int c = 0; c < cols; c++) {
+                if (grid.get(r, c) != row[c]) {
+                    grid.set(r, c, row[c]);
+                }
+            }
+        }
+        return grid;
+    }
+}
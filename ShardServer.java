@@ -0,0 +1,272 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ShardServer class runs one shard of a sharded parking site as a process of its own: a ParkingLotService
+ * holding the grid, capacity ledger and checked in vehicles of its region of bays, served over a loopback socket
+ * with the ShardProtocol.
+ * Every connection gets a thread of its own, so the gates of a coordinator work on the shard in parallel and
+ * contend only on the locks of the lot state. The shard keeps its live lot in a lot store when it is given a
+ * state directory; the fee log and revenue totals of the site are kept by the coordinator alone, which journals
+ * every checkout before the shard lets the vehicle leave.
+ * A shard exits when its coordinator asks it to or when its standard input is closed, so it never outlives the
+ * coordinator that launched it.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class ShardServer implements AutoCloseable {
+
+    private static final int BACKLOG = 64;
+    private static final long SHUTDOWN_TIMEOUT_MS = 5_000;
+
+    private final ParkingLotService service;
+    private final LotStore lotStore; // Persists the live lot, null to keep it in memory only
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "shard-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean closed = false;
+
+    /**
+     * Creates a shard listening on an ephemeral loopback port.
+     *
+     * @param stateDir The state directory of the shard, or null to keep its lot in memory only.
+     * @param snapshotInterval Number of logged changes after which the shard takes a new snapshot.
+     */
+    public ShardServer(Path stateDir, int snapshotInterval) throws IOException {
+        this.lotStore = stateDir == null ? null : new LotStore(stateDir, snapshotInterval);
+        this.service = new ParkingLotService(lotStore);
+        this.serverSocket = new ServerSocket(0, BACKLOG, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Runs a shard until its coordinator shuts it down or closes its standard input.
+     *
+     * @param args The state directory of the shard, none to keep its lot in memory only.
+     */
+    public static void main(String[] args) throws IOException {
+        Path stateDir = args.length > 0 ? Path.of(args[0]) : null;
+        ShardServer shard = new ShardServer(stateDir,
+                Integer.getInteger(LotStore.SNAPSHOT_INTERVAL_PROPERTY, LotStore.DEFAULT_SNAPSHOT_INTERVAL));
+        Thread watchdog = new Thread(() -> {
+            awaitEndOfInput(System.in);
+            shard.close();
+        }, "shard-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+        TariffEngine.watch();
+        System.out.println(ShardProtocol.READY_LINE + shard.getPort());
+        System.out.flush();
+        shard.serve();
+        shard.awaitConnections();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the shard is closed.
+     */
+    public void serve() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.execute(() -> handle(socket));
+            } catch (IOException ex) {
+                // the server socket has been closed
+            }
+        }
+    }
+
+    /**
+     * Takes a last snapshot of the lot and stops accepting connections. The open connections are answered until
+     * the coordinator closes them.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (lotStore != null) {
+                lotStore.close();
+            }
+            serverSocket.close();
+        } catch (IOException ex) {
+            System.err.println("Cannot close the shard: " + ex.getMessage());
+        }
+        connections.shutdown();
+    }
+
+    /**
+     * Waits a bounded time for the open connections to be closed, so a shutdown is answered before the process exits.
+     */
+    public void awaitConnections() {
+        try {
+            connections.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Answers the requests of one connection until the coordinator closes it
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            while (true) {
+                byte op = in.readByte();
+                if (op == ShardProtocol.OP_SHUTDOWN) {
+                    close();
+                    out.writeBoolean(true);
+                    out.flush();
+                    return;
+                }
+                answer(op, in, out);
+                out.flush();
+            }
+        } catch (EOFException | SocketException ex) {
+            // the coordinator has closed the connection
+        } catch (IOException ex) {
+            System.err.println("Shard connection failed: " + ex.getMessage());
+        }
+    }
+
+    private void answer(byte op, DataInputStream in, DataOutputStream out) throws IOException {
+        switch (op) {
+            case ShardProtocol.OP_INIT:
+                ShardProtocol.writeResult(out, service.initParkingLot(in.readInt(), in.readInt(), in.readLong()));
+                break;
+            case ShardProtocol.OP_CHECKIN:
+                ShardProtocol.writeResult(out, service.checkIn(ShardProtocol.readString(in), ShardProtocol.readString(in),
+                        ShardProtocol.readString(in), ShardProtocol.readString(in), ShardProtocol.readString(in),
+                        ShardProtocol.readString(in)));
+                break;
+            case ShardProtocol.OP_MOVE:
+                ShardProtocol.writeResult(out, service.move(ShardProtocol.readString(in), in.readChar()));
+                break;
+            case ShardProtocol.OP_AUTO_PARK:
+                ShardProtocol.writeResult(out, service.autoPark(ShardProtocol.readString(in)));
+                break;
+            case ShardProtocol.OP_DRIVE_TO_EXIT:
+                ShardProtocol.writeResult(out, service.driveToExit(ShardProtocol.readString(in)));
+                break;
+            case ShardProtocol.OP_QUOTE_CHECKOUT:
+                ShardProtocol.writeResult(out, service.quoteCheckout(ShardProtocol.readString(in),
+                        ShardProtocol.readString(in), ShardProtocol.readString(in)));
+                break;
+            case ShardProtocol.OP_CHECKOUT:
+                checkOut(ShardProtocol.readString(in), ShardProtocol.readString(in), ShardProtocol.readString(in),
+                        in, out);
+                break;
+            case ShardProtocol.OP_FIND_VEHICLE:
+                ShardProtocol.writeVehicle(out, service.findVehicle(ShardProtocol.readString(in)));
+                break;
+            case ShardProtocol.OP_IS_AT_EXIT:
+                out.writeBoolean(service.isAtExit(ShardProtocol.readString(in)));
+                break;
+            case ShardProtocol.OP_GRID:
+                ShardProtocol.writeGrid(out, service.getParkingGrid());
+                break;
+            case ShardProtocol.OP_AVAILABLE:
+                out.writeInt(service.getAvailable(ShardProtocol.readString(in)));
+                break;
+            case ShardProtocol.OP_EMP_QTY:
+                out.writeInt(service.getEmpQty());
+                break;
+            case ShardProtocol.OP_OCC_QTY:
+                out.writeInt(service.getOccQty());
+                break;
+            case ShardProtocol.OP_PARKED:
+                writeParked(out);
+                break;
+            case ShardProtocol.OP_REMOVE_CHECKED_OUT:
+                int removed = 0;
+                for (int records = in.readInt(); records > 0; records--) {
+                    if (service.removeCheckedOut(in.readLong(), in.readLong(), in.readLong())) {
+                        removed++;
+                    }
+                }
+                service.advanceFeeLogMark(in.readLong());
+                out.writeInt(removed);
+                break;
+            default:
+                throw new IOException("Unknown shard operation " + op);
+        }
+    }
+
+    // Checks a vehicle out once the coordinator has journaled its checkout record, the vehicle staying locked and in
+    // the lot while the record makes the round trip
+    private void checkOut(String regnId, String dateExit, String timeExit, DataInputStream in, DataOutputStream out)
+            throws IOException {
+        boolean[] refused = new boolean[1];
+        ParkingResult result;
+        try {
+            result = service.checkOut(regnId, dateExit, timeExit, checkoutVehicle -> {
+                out.writeBoolean(true);
+                ShardProtocol.writeCheckoutVehicle(out, checkoutVehicle);
+                out.flush();
+                refused[0] = !in.readBoolean();
+                if (refused[0]) {
+                    throw new IOException("The coordinator could not journal the checkout of " + regnId);
+                }
+                return in.readLong();
+            });
+        } catch (UncheckedIOException ex) {
+            if (refused[0]) {
+                //the coordinator expects nothing more and reports its own failure
+                return;
+            }
+            throw ex.getCause();
+        }
+        out.writeBoolean(false);
+        ShardProtocol.writeResult(out, result);
+    }
+
+    // Sends the fee log mark and lists the registration id, packed, and entry time of every vehicle checked in
+    private void writeParked(DataOutputStream out) throws IOException {
+        List<long[]> parked = new ArrayList<>();
+        service.forEachVehicle(vehicle ->
+                parked.add(new long[] {RegnIdCodec.pack(vehicle.getRegnId()), vehicle.getEntryMinutes()}));
+        out.writeLong(service.getFeeLogMark());
+        out.writeInt(parked.size());
+        for (long[] pair : parked) {
+            out.writeLong(pair[0]);
+            out.writeLong(pair[1]);
+        }
+    }
+
+    // Blocks until the stream ends, the coordinator having exited or closed its end of the pipe
+    private static void awaitEndOfInput(InputStream in) {
+        byte[] buf = new byte[256];
+        try {
+            while (in.read(buf) >= 0) {
+                // the coordinator sends nothing on the pipe, it only closes it
+            }
+        } catch (IOException ex) {
+            // treated as the end of the input
+        }
+    }
+}
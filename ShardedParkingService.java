@@ -0,0 +1,424 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The ShardedParkingService class coordinates a parking site split into shards, each shard a ShardServer process
+ * owning a region of bays and the vehicles whose registration ids hash to it. No process holds the checked in
+ * vehicles or the grid of the whole site, so the site grows by adding shards rather than heap.
+ * The bay columns of the requested lot are dealt out to the shards, each shard laying out the columns it gets as a
+ * lot of the same width with walls and doors of its own, so the bays of the shards add up to those of the lot.
+ * Every operation on a vehicle goes to the shard owning its registration id, found by hashing the id, so the
+ * coordinator keeps no map of vehicles and a vehicle can only be checked in on its own shard: an arrival is turned
+ * away when its shard is full for its type, even if another shard has room. Counts and availability are summed over
+ * the shards. The fee log, checkout journal and revenue totals of the site stay with the coordinator: a shard sends
+ * the checkout record of a vehicle and only lets the vehicle leave once the coordinator has journaled it. A vehicle
+ * a shard still holds after its checkout was journaled, the coordinator or the shard having died in between, is
+ * removed when the coordinator starts again.
+ * launch() starts the shards as local processes talking over loopback sockets, so a whole cluster runs on one box.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class ShardedParkingService implements ParkingService, AutoCloseable {
+
+    // Number of shard processes launched by the console, 0 to keep the lot in the console process
+    public static final String SHARDS_PROPERTY = "parkinglot.shards";
+
+    private static final String SHARD_DIR_PREFIX = "shard-";
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+
+    private final ParkingLot parkingLot = new ParkingLot(this);
+    private final ShardClient[] shards;
+    private final List<Process> processes; // The shard processes launched by this coordinator, empty if none
+    private final FeeLogStore feeLog;
+    private final CheckoutJournal journal; // Durable copy of the fee log, null to keep it in memory only
+    // Checkins hold the read lock, so none reaches a shard while the shards are laid out under the write lock
+    private final ReentrantReadWriteLock layoutLock = new ReentrantReadWriteLock();
+    private volatile boolean initialised; // Set once every shard holds its region of the same lot
+
+    /**
+     * Creates a coordinator of shards already listening on loopback ports.
+     *
+     * @param ports The ports of the shards, in shard order.
+     * @param journal The checkout journal of the site, or null to keep the fee log in memory only.
+     * @param feeLog The fee log store of the site, already caught up with the journal.
+     */
+    public ShardedParkingService(int[] ports, CheckoutJournal journal, FeeLogStore feeLog) {
+        this(ports, new ArrayList<>(), journal, feeLog);
+    }
+
+    private ShardedParkingService(int[] ports, List<Process> processes, CheckoutJournal journal, FeeLogStore feeLog) {
+        this.shards = new ShardClient[ports.length];
+        for (int shard = 0; shard < ports.length; shard++) {
+            shards[shard] = new ShardClient(shard, ports[shard], parkingLot);
+        }
+        this.processes = processes;
+        this.journal = journal;
+        this.feeLog = feeLog;
+        boolean laidOut = true;
+        for (ShardClient shard : shards) {
+            laidOut &= shard.getEmpQty() != Constant.QTY_INIT_VALUE;
+        }
+        this.initialised = laidOut;
+        if (journal != null) {
+            removeCheckedOut();
+        }
+    }
+
+    /**
+     * Launches the shards as processes of this JVM's Java runtime and class path and coordinates them. Each shard
+     * keeps its lot in the shard-1, shard-2... directory of the state directory.
+     *
+     * @param shardCount The number of shards.
+     * @param stateDir The state directory of the site, or null to keep the shards in memory only.
+     * @param journal The checkout journal of the site, or null to keep the fee log in memory only.
+     * @param feeLog The fee log store of the site, already caught up with the journal.
+     */
+    public static ShardedParkingService launch(int shardCount, Path stateDir, CheckoutJournal journal, FeeLogStore feeLog)
+            throws IOException {
+        String java = ProcessHandle.current().info().command()
+                .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        List<Process> processes = new ArrayList<>();
+        int[] ports = new int[shardCount];
+        try {
+            for (int shard = 0; shard < shardCount; shard++) {
+                List<String> command = new ArrayList<>(List.of(java,
+                        "-cp", System.getProperty("java.class.path"),
+                        "-D" + LotStore.SNAPSHOT_INTERVAL_PROPERTY + "="
+                                + Integer.getInteger(LotStore.SNAPSHOT_INTERVAL_PROPERTY, LotStore.DEFAULT_SNAPSHOT_INTERVAL),
+                        "-D" + TariffEngine.TARIFF_PROPERTY + "=" + System.getProperty(TariffEngine.TARIFF_PROPERTY, ""),
+                        ShardServer.class.getName()));
+                if (stateDir != null) {
+                    command.add(stateDir.resolve(SHARD_DIR_PREFIX + (shard + 1)).toString());
+                }
+                Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+                processes.add(process);
+                ports[shard] = awaitReady(shard, process);
+            }
+        } catch (IOException | RuntimeException ex) {
+            for (Process process : processes) {
+                process.destroyForcibly();
+            }
+            throw ex;
+        }
+        return new ShardedParkingService(ports, processes, journal, feeLog);
+    }
+
+    /**
+     * Launches the number of shards named by the system properties, in the state directory they name.
+     */
+    public static ShardedParkingService launch(CheckoutJournal journal, FeeLogStore feeLog) throws IOException {
+        return launch(Integer.getInteger(SHARDS_PROPERTY, 0),
+                LotStore.getStateDir(), journal, feeLog);
+    }
+
+    /**
+     * Returns the shard owning a registration id.
+     */
+    public int shardOf(String regnId) {
+        int h = regnId.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+    /**
+     * Lays out the lot over the shards, each shard getting its share of the bay columns. If a shard fails, the
+     * shards already laid out are put back to their previous lots, or the site stays uninitialised if it had none.
+     */
+    @Override
+    public ParkingResult initParkingLot(int length, int width) {
+        if (length < Constant.MINIMUM_SIZE || width < Constant.MINIMUM_SIZE) {
+            return ParkingResult.of(ParkingResult.Status.INVALID_SIZE);
+        }
+        int[] lengths = regionLengths(length, shards.length);
+        //the first shard gets the most bay columns, every other shard fits if it does
+        if (lengths == null || !CapacityLedger.fits(lengths[0], width)) {
+            return ParkingResult.of(ParkingResult.Status.INVALID_SIZE);
+        }
+        layoutLock.writeLock().lock();
+        try {
+            if (getOccQty() > 0) {
+                return ParkingResult.of(ParkingResult.Status.LOT_OCCUPIED);
+            }
+            long feeLogRows = feeLog.getRowCount();
+            int[][] previous = new int[shards.length][];
+            for (int shard = 0; shard < shards.length; shard++) {
+                ParkingGrid grid = shards[shard].getParkingGrid();
+                previous[shard] = grid == null ? null : new int[] {grid.getCols(), grid.getRows()};
+            }
+            initialised = false;
+            for (int shard = 0; shard < shards.length; shard++) {
+                ParkingResult result;
+                try {
+                    result = shards[shard].initParkingLot(lengths[shard], width, feeLogRows);
+                } catch (UncheckedIOException ex) {
+                    rollBack(shard, previous, feeLogRows);
+                    throw ex;
+                }
+                if (!result.isOk()) {
+                    rollBack(shard, previous, feeLogRows);
+                    return result;
+                }
+            }
+            initialised = true;
+            return ParkingResult.of(ParkingResult.Status.OK);
+        } finally {
+            layoutLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the length of the lot of every shard, dealing the bay columns of a lot of the given length out to
+     * the shards, or null if the lot is too short to give every shard a lot of the minimum size.
+     * A lot of odd length 2n + 1 has its n bay columns at the odd columns between its walls, so a shard getting n
+     * bay columns is given the length 2n + 1.
+     */
+    public static int[] regionLengths(int length, int shardCount) {
+        int bayColumns = (length - 1) / 2;
+        int[] lengths = new int[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            lengths[shard] = 2 * (bayColumns / shardCount + (shard < bayColumns % shardCount ? 1 : 0)) + 1;
+            if (lengths[shard] < Constant.MINIMUM_SIZE) {
+                return null;
+            }
+        }
+        return lengths;
+    }
+
+    @Override
+    public ParkingResult checkIn(String vehicleType, String regnId, String model, String colour,
+                                 String dateEntry, String timeEntry) {
+        layoutLock.readLock().lock();
+        try {
+            if (!initialised) {
+                return ParkingResult.of(ParkingResult.Status.NOT_INITIALISED);
+            }
+            if (regnId == null) {
+                return ParkingResult.of(ParkingResult.Status.INVALID_REGN_ID);
+            }
+            return shards[shardOf(regnId)].checkIn(vehicleType, regnId, model, colour, dateEntry, timeEntry);
+        } finally {
+            layoutLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ParkingResult move(String regnId, char direction) {
+        return regnId == null ? notFound() : shards[shardOf(regnId)].move(regnId, direction);
+    }
+
+    @Override
+    public ParkingResult autoPark(String regnId) {
+        return regnId == null ? notFound() : shards[shardOf(regnId)].autoPark(regnId);
+    }
+
+    @Override
+    public ParkingResult driveToExit(String regnId) {
+        return regnId == null ? notFound() : shards[shardOf(regnId)].driveToExit(regnId);
+    }
+
+    @Override
+    public ParkingResult quoteCheckout(String regnId, String dateExit, String timeExit) {
+        return regnId == null ? notFound() : shards[shardOf(regnId)].quoteCheckout(regnId, dateExit, timeExit);
+    }
+
+    @Override
+    public ParkingResult checkOut(String regnId, String dateExit, String timeExit) {
+        if (regnId == null) {
+            return notFound();
+        }
+        //the fee log is held while the checkout is journaled, so gates checking out on several shards at once write
+        //the journal and the fee log in the same order
+        return shards[shardOf(regnId)].checkOut(regnId, dateExit, timeExit,
+                checkoutVehicle -> feeLog.append(checkoutVehicle, journal));
+    }
+
+    @Override
+    public Vehicle findVehicle(String regnId) {
+        return regnId == null ? null : shards[shardOf(regnId)].findVehicle(regnId);
+    }
+
+    @Override
+    public boolean isAtExit(String regnId) {
+        return regnId != null && shards[shardOf(regnId)].isAtExit(regnId);
+    }
+
+    @Override
+    public ParkingGrid getParkingGrid() {
+        return shards[0].getParkingGrid();
+    }
+
+    @Override
+    public int getLevels() {
+        return shards.length;
+    }
+
+    @Override
+    public ParkingGrid getParkingGrid(int level) {
+        return level >= 0 && level < shards.length ? shards[level].getParkingGrid() : null;
+    }
+
+    @Override
+    public int findLevel(String regnId) {
+        return findVehicle(regnId) == null ? -1 : shardOf(regnId);
+    }
+
+    @Override
+    public int getAvailable(String vehicleType) {
+        int available = 0;
+        for (ShardClient shard : shards) {
+            available += shard.getAvailable(vehicleType);
+        }
+        return available;
+    }
+
+    @Override
+    public int getEmpQty() {
+        if (!initialised) {
+            return Constant.QTY_INIT_VALUE;
+        }
+        int empQty = 0;
+        for (ShardClient shard : shards) {
+            int shardQty = shard.getEmpQty();
+            if (shardQty == Constant.QTY_INIT_VALUE) {
+                return Constant.QTY_INIT_VALUE;
+            }
+            empQty += shardQty;
+        }
+        return empQty;
+    }
+
+    @Override
+    public int getOccQty() {
+        if (!initialised) {
+            return Constant.QTY_INIT_VALUE;
+        }
+        int occQty = 0;
+        for (ShardClient shard : shards) {
+            int shardQty = shard.getOccQty();
+            if (shardQty == Constant.QTY_INIT_VALUE) {
+                return Constant.QTY_INIT_VALUE;
+            }
+            occQty += shardQty;
+        }
+        return occQty;
+    }
+
+    @Override
+    public Iterable<CheckoutVehicle> getCheckoutVehicles() {
+        return feeLog;
+    }
+
+    @Override
+    public FeeLogPage queryCheckoutVehicles(FeeLogQuery query) {
+        return feeLog.query(query);
+    }
+
+    @Override
+    public RevenueAggregates getRevenueAggregates() {
+        return feeLog.getRevenueAggregates();
+    }
+
+    /**
+     * Shuts down the shards this coordinator launched, each one taking a last snapshot, and closes the connections.
+     */
+    @Override
+    public void close() {
+        for (int shard = 0; shard < shards.length; shard++) {
+            if (shard < processes.size()) {
+                try {
+                    shards[shard].shutdown();
+                } catch (UncheckedIOException ex) {
+                    System.err.println(ex.getMessage());
+                }
+            }
+            shards[shard].close();
+        }
+        for (Process process : processes) {
+            try {
+                process.getOutputStream().close();
+                if (!process.waitFor(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (IOException ex) {
+                process.destroyForcibly();
+            } catch (InterruptedException ex) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Removes from the shards the vehicles whose checkout is in the fee log, matched by registration id and entry time,
+    // looking through the rows from the lowest fee log mark of the shards on, then moves every mark past them
+    private void removeCheckedOut() {
+        Map<Long, Long> parked = new HashMap<>();
+        long from = Long.MAX_VALUE;
+        for (ShardClient shard : shards) {
+            from = Math.min(from, shard.getParked(parked));
+        }
+        long rows = feeLog.getRowCount();
+        long[][] packedRegnIds = new long[shards.length][parked.size()];
+        long[][] entryMinutes = new long[shards.length][parked.size()];
+        long[][] feeLogRows = new long[shards.length][parked.size()];
+        int[] counts = new int[shards.length];
+        for (long row = from; row < rows && !parked.isEmpty(); row++) {
+            long packedRegnId = feeLog.getPackedRegnId(row);
+            Long entry = parked.get(packedRegnId);
+            if (entry != null && entry == feeLog.getEntryMinutes(row)) {
+                int shard = shardOf(RegnIdCodec.unpack(packedRegnId));
+                packedRegnIds[shard][counts[shard]] = packedRegnId;
+                entryMinutes[shard][counts[shard]] = entry;
+                feeLogRows[shard][counts[shard]++] = row;
+                parked.remove(packedRegnId);
+            }
+        }
+        for (int shard = 0; shard < shards.length; shard++) {
+            shards[shard].removeCheckedOut(packedRegnIds[shard], entryMinutes[shard], feeLogRows[shard], counts[shard],
+                    rows);
+        }
+    }
+
+    // Puts the shards before the failed one back to their previous lots, which are empty as the site was
+    private void rollBack(int failedShard, int[][] previous, long feeLogRows) {
+        for (int shard = 0; shard < failedShard; shard++) {
+            if (previous[shard] == null) {
+                continue;
+            }
+            try {
+                shards[shard].initParkingLot(previous[shard][0], previous[shard][1], feeLogRows);
+            } catch (UncheckedIOException ex) {
+                System.err.println(ex.getMessage());
+            }
+        }
+        boolean restored = true;
+        for (int[] dimensions : previous) {
+            restored &= dimensions != null;
+        }
+        initialised = restored;
+    }
+
+    private ParkingResult notFound() {
+        return ParkingResult.of(!initialised
+                ? ParkingResult.Status.NOT_INITIALISED : ParkingResult.Status.NOT_FOUND);
+    }
+
+    // Reads the port a shard prints once it listens
+    private static int awaitReady(int shard, Process process) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line = reader.readLine();
+        if (line == null || !line.startsWith(ShardProtocol.READY_LINE)) {
+            throw new IOException("Shard " + (shard + 1) + " did not start: " + line);
+        }
+        return Integer.parseInt(line.substring(ShardProtocol.READY_LINE.length()).trim());
+    }
+}
@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * The TariffEngine class holds the rate plan every checkout of this process is priced with and swaps it without a
+ * restart. The plan is read from the file named by -Dparkinglot.tariff, or is the flat plan of the vehicle class
+ * prices when no file is named.
+ * A new plan is compiled in full before it replaces the active one with a single volatile write, so a checkout is
+ * priced entirely by the old plan or entirely by the new one and never waits for a reload; a file that does not
+ * compile leaves the active plan in place. The console reloads the file on request, and watch() reloads it whenever
+ * it changes, which is how the shard processes of a cluster pick up a new plan.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class TariffEngine {
+
+    // File of the rate plan, unset to charge the prices of the vehicle classes
+    public static final String TARIFF_PROPERTY = "parkinglot.tariff";
+
+    // How often watch() looks at the file for changes
+    public static final long WATCH_INTERVAL_MS = 2_000;
+
+    private static volatile TariffPlan active = load();
+    private static FileTime loadedModified = modifiedTime(); // Guarded by the class
+    private static Thread watcher = null; // Guarded by the class
+
+    private TariffEngine() {
+    }
+
+    /**
+     * Returns the plan checkouts are priced with.
+     */
+    public static TariffPlan current() {
+        return active;
+    }
+
+    /**
+     * Makes a plan the one checkouts are priced with.
+     */
+    public static void install(TariffPlan plan) {
+        active = plan;
+    }
+
+    /**
+     * Returns the file of the rate plan, null if none is named.
+     */
+    public static Path getTariffFile() {
+        String file = System.getProperty(TARIFF_PROPERTY);
+        return file == null || file.isEmpty() ? null : Path.of(file);
+    }
+
+    /**
+     * Reads and compiles the plan file again and installs it.
+     *
+     * @return The plan now active.
+     * @throws IOException if the file cannot be read, the active plan is kept.
+     * @throws IllegalArgumentException if the file has a malformed rule, the active plan is kept.
+     */
+    public static synchronized TariffPlan reload() throws IOException {
+        Path file = getTariffFile();
+        FileTime modified = modifiedTime();
+        TariffPlan plan = file == null ? TariffPlan.flat() : TariffPlan.read(file);
+        active = plan;
+        loadedModified = modified;
+        return plan;
+    }
+
+    /**
+     * Starts a daemon thread reloading the plan file whenever its modification time changes, if a file is named.
+     * Reload errors are reported on standard error and the active plan is kept.
+     */
+    public static synchronized void watch() {
+        if (watcher != null || getTariffFile() == null) {
+            return;
+        }
+        watcher = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(WATCH_INTERVAL_MS);
+                    reloadIfModified();
+                } catch (InterruptedException ex) {
+                    return;
+                } catch (IOException | IllegalArgumentException ex) {
+                    System.err.println("Cannot reload the tariff: " + ex.getMessage());
+                }
+            }
+        }, "tariff-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private static synchronized void reloadIfModified() throws IOException {
+        FileTime modified = modifiedTime();
+        if (modified != null && !modified.equals(loadedModified)) {
+            // the failed version is not retried until the file changes again
+            loadedModified = modified;
+            reload();
+        }
+    }
+
+    // Loads the plan at class initialisation, falling back to the flat plan so the lot still opens
+    private static TariffPlan load() {
+        Path file = getTariffFile();
+        if (file == null) {
+            return TariffPlan.flat();
+        }
+        try {
+            return TariffPlan.read(file);
+        } catch (IOException | IllegalArgumentException ex) {
+            System.err.println("Cannot load the tariff " + file + ", using the flat plan: " + ex.getMessage());
+            return TariffPlan.flat();
+        }
+    }
+
+    private static FileTime modifiedTime() {
+        Path file = getTariffFile();
+        try {
+            return file == null ? null : Files.getLastModifiedTime(file);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+}
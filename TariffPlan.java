@@ -0,0 +1,346 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The TariffPlan class is a rate plan compiled into flat tables, so pricing a stay takes a handful of array reads
+ * however many bands the plan has.
+ * A plan sets, per vehicle type, an hourly rate for every hour of the week, a cap on the hourly charge of a stay,
+ * a price per overnight stay and a price per hit. As before, every full 24 hours of a stay is charged one overnight
+ * price and the hours left after them are charged by the hour, a started hour counting as a full one; each of
+ * those hours is charged at the rate of the hour of the week it starts in.
+ * The hourly rates are compiled into running sums over the 168 hours of the week, so the hourly charge of a stay is
+ * the difference of two sums, or three when the hours wrap from Sunday to Monday.
+ *
+ * Plans are read from a text file, one rule per line, later rules overriding earlier ones, # starting a comment:
+ * <pre>
+ * plan city-centre
+ * hourly all all 00:00-24:00 4.00       # types (all or a comma list), days (all, weekday or weekend), hours, rate
+ * hourly Car weekday 07:00-19:00 6.00
+ * cap Car 30.00                         # most charged for the hours after the full days of a stay
+ * overnight Truck 25.00                 # per full 24 hours
+ * hit Car 20.00
+ * </pre>
+ * Prices are in dollars with at most two decimals and hours are whole hours. Whatever a file does not set keeps the
+ * prices of the vehicle classes, so an empty file is the flat plan.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public final class TariffPlan {
+
+    public static final int HOURS_PER_WEEK = 7 * FeeCalculator.HOURS_PER_DAY;
+
+    private static final int TYPE_COUNT = 4;
+    private static final long NO_CAP = Long.MAX_VALUE;
+
+    // 1970-01-01, epoch day 0, was a Thursday; hours of the week are counted from Monday 00:00
+    private static final int EPOCH_HOUR_OF_WEEK = 3 * FeeCalculator.HOURS_PER_DAY;
+    private static final int WEEKEND_START = 5 * FeeCalculator.HOURS_PER_DAY;
+
+    private final String name;
+
+    // Hourly rate in cents of every hour of the week, summed: hourSums[type * (HOURS_PER_WEEK + 1) + h] is the
+    // charge of the hours of the week before h
+    private final long[] hourSums;
+    private final long[] capCents;
+    private final long[] overnightCents;
+    private final long[] hitCents;
+
+    private TariffPlan(String name, long[][] hourlyCents, long[] capCents, long[] overnightCents, long[] hitCents) {
+        this.name = name;
+        this.hourSums = new long[TYPE_COUNT * (HOURS_PER_WEEK + 1)];
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            int base = type * (HOURS_PER_WEEK + 1);
+            for (int hour = 0; hour < HOURS_PER_WEEK; hour++) {
+                hourSums[base + hour + 1] = hourSums[base + hour] + hourlyCents[type][hour];
+            }
+        }
+        this.capCents = capCents;
+        this.overnightCents = overnightCents;
+        this.hitCents = hitCents;
+    }
+
+    /**
+     * Returns the flat plan charging the prices of the vehicle classes at every hour.
+     */
+    public static TariffPlan flat() {
+        return new Builder().build();
+    }
+
+    /**
+     * Reads and compiles a plan.
+     *
+     * @param reader The rules of the plan, not closed.
+     * @throws IllegalArgumentException if a rule is malformed, naming its line.
+     */
+    public static TariffPlan parse(Reader reader) throws IOException {
+        Builder builder = new Builder();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNo = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNo++;
+            int comment = line.indexOf('#');
+            String rule = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (rule.isEmpty()) {
+                continue;
+            }
+            try {
+                builder.apply(rule.split("\\s+"));
+            } catch (IllegalArgumentException | ArithmeticException ex) {
+                throw new IllegalArgumentException("Tariff line " + lineNo + ": " + ex.getMessage() + ": " + line.trim());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads and compiles a plan file.
+     *
+     * @throws IllegalArgumentException if a rule is malformed, naming its line.
+     */
+    public static TariffPlan read(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(reader);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Prices a stay.
+     *
+     * @param typeCode The code of the vehicle type, see VehicleTypeCodec.
+     * @param entryMinutes The entry time in epoch minutes.
+     * @param exitMinutes The exit time in epoch minutes.
+     * @param hitNums The number of hits during parking.
+     * @return The total fee in cents.
+     */
+    public long feeCents(byte typeCode, long entryMinutes, long exitMinutes, int hitNums) {
+        long diffHours = Math.max(0, FeeCalculator.getDiffHours(entryMinutes, exitMinutes));
+        long days = FeeCalculator.getOvernight(diffHours);
+        int hours = (int) FeeCalculator.getParkingHours(diffHours);
+        long firstHour = Math.floorDiv(entryMinutes, FeeCalculator.MINUTES_PER_HOUR) + days * FeeCalculator.HOURS_PER_DAY;
+        int start = Math.floorMod(firstHour + EPOCH_HOUR_OF_WEEK, HOURS_PER_WEEK);
+        int end = start + hours;
+        int base = typeCode * (HOURS_PER_WEEK + 1);
+        long hourly = end <= HOURS_PER_WEEK
+                ? hourSums[base + end] - hourSums[base + start]
+                : hourSums[base + HOURS_PER_WEEK] - hourSums[base + start] + hourSums[base + end - HOURS_PER_WEEK];
+        return Math.min(hourly, capCents[typeCode]) + days * overnightCents[typeCode] + hitNums * hitCents[typeCode];
+    }
+
+    /**
+     * Prices the stay of a checkout record, setting its fee and the hit and overnight parts of the fee, so the parts
+     * kept with the record are always those of the plan that set its fee.
+     *
+     * @param checkoutVehicle The checkout record, with its vehicle type, entry and exit times and hits set.
+     */
+    public void price(CheckoutVehicle checkoutVehicle) {
+        byte typeCode = VehicleTypeCodec.encode(checkoutVehicle.getVehicleType());
+        long entryMinutes = checkoutVehicle.getEntryMinutes();
+        long exitMinutes = checkoutVehicle.getExitMinutes();
+        int hitNums = checkoutVehicle.getHitNums();
+        long days = FeeCalculator.getOvernight(Math.max(0, FeeCalculator.getDiffHours(entryMinutes, exitMinutes)));
+        checkoutVehicle.setParkingFeeCents(feeCents(typeCode, entryMinutes, exitMinutes, hitNums));
+        checkoutVehicle.setHitFeeCents(hitNums * hitCents[typeCode]);
+        checkoutVehicle.setOvernightFeeCents(days * overnightCents[typeCode]);
+    }
+
+    /**
+     * Prints the rates of the plan per vehicle type: the hourly rate bands of a weekday and of a weekend day, the cap,
+     * the overnight price and the hit price.
+     */
+    public void print(PrintStream out) {
+        out.println("Tariff plan: " + name);
+        for (byte type = 0; type < TYPE_COUNT; type++) {
+            int base = type * (HOURS_PER_WEEK + 1);
+            out.printf(Locale.ROOT, "%-10s weekday %s | weekend %s | cap %s | overnight %s | hit %s%n",
+                    VehicleTypeCodec.decode(type), bands(base, 0), bands(base, WEEKEND_START),
+                    capCents[type] == NO_CAP ? "none" : dollars(capCents[type]),
+                    dollars(overnightCents[type]), dollars(hitCents[type]));
+        }
+    }
+
+    // Lists the hourly rates of one day as from-to rate bands
+    private String bands(int base, int dayStart) {
+        StringBuilder text = new StringBuilder();
+        int from = 0;
+        for (int hour = 1; hour <= FeeCalculator.HOURS_PER_DAY; hour++) {
+            long rate = rate(base, dayStart + from);
+            if (hour == FeeCalculator.HOURS_PER_DAY || rate(base, dayStart + hour) != rate) {
+                if (text.length() > 0) {
+                    text.append(' ');
+                }
+                text.append(String.format(Locale.ROOT, "%02d-%02d %s", from, hour, dollars(rate)));
+                from = hour;
+            }
+        }
+        return text.toString();
+    }
+
+    private long rate(int base, int hourOfWeek) {
+        return hourSums[base + hourOfWeek + 1] - hourSums[base + hourOfWeek];
+    }
+
+    private static String dollars(long cents) {
+        return BigDecimal.valueOf(cents, 2).toPlainString();
+    }
+
+    /**
+     * Collects the rules of a plan, starting from the prices of the vehicle classes.
+     */
+    private static final class Builder {
+
+        private String name = "flat";
+        private final long[][] hourlyCents = new long[TYPE_COUNT][HOURS_PER_WEEK];
+        private final long[] capCents = new long[TYPE_COUNT];
+        private final long[] overnightCents = new long[TYPE_COUNT];
+        private final long[] hitCents = new long[TYPE_COUNT];
+
+        Builder() {
+            for (byte type = 0; type < TYPE_COUNT; type++) {
+                VehicleClass vehicleClass = VehicleClass.of(type);
+                Arrays.fill(hourlyCents[type], (long) vehicleClass.getParkingPrice() * FeeCalculator.CENTS_PER_DOLLAR);
+                capCents[type] = NO_CAP;
+                overnightCents[type] = (long) vehicleClass.getOvernightPrice() * FeeCalculator.CENTS_PER_DOLLAR;
+                hitCents[type] = (long) vehicleClass.getHitPrice() * FeeCalculator.CENTS_PER_DOLLAR;
+            }
+        }
+
+        void apply(String[] words) {
+            switch (words[0].toLowerCase(Locale.ROOT)) {
+                case "plan":
+                    expect(words, 2);
+                    name = words[1];
+                    break;
+                case "hourly":
+                    expect(words, 5);
+                    boolean[] types = types(words[1]);
+                    boolean[] days = days(words[2]);
+                    int[] hours = hours(words[3]);
+                    long rate = cents(words[4]);
+                    for (int type = 0; type < TYPE_COUNT; type++) {
+                        for (int day = 0; day < 7 && types[type]; day++) {
+                            for (int hour = hours[0]; hour < hours[1] && days[day]; hour++) {
+                                hourlyCents[type][day * FeeCalculator.HOURS_PER_DAY + hour] = rate;
+                            }
+                        }
+                    }
+                    break;
+                case "cap":
+                    expect(words, 3);
+                    set(capCents, types(words[1]), cents(words[2]));
+                    break;
+                case "overnight":
+                    expect(words, 3);
+                    set(overnightCents, types(words[1]), cents(words[2]));
+                    break;
+                case "hit":
+                    expect(words, 3);
+                    set(hitCents, types(words[1]), cents(words[2]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown rule " + words[0]);
+            }
+        }
+
+        TariffPlan build() {
+            return new TariffPlan(name, hourlyCents, capCents.clone(), overnightCents.clone(), hitCents.clone());
+        }
+
+        private static void expect(String[] words, int count) {
+            if (words.length != count) {
+                throw new IllegalArgumentException(words[0] + " takes " + (count - 1) + " values");
+            }
+        }
+
+        private static void set(long[] prices, boolean[] types, long cents) {
+            for (int type = 0; type < TYPE_COUNT; type++) {
+                if (types[type]) {
+                    prices[type] = cents;
+                }
+            }
+        }
+
+        // all, or a comma separated list of vehicle types in any case
+        private static boolean[] types(String word) {
+            boolean[] types = new boolean[TYPE_COUNT];
+            if ("all".equalsIgnoreCase(word)) {
+                Arrays.fill(types, true);
+                return types;
+            }
+            for (String type : word.split(",")) {
+                byte code = VehicleTypeCodec.INVALID;
+                for (byte candidate = 0; candidate < TYPE_COUNT; candidate++) {
+                    if (VehicleTypeCodec.decode(candidate).equalsIgnoreCase(type)) {
+                        code = candidate;
+                    }
+                }
+                if (code == VehicleTypeCodec.INVALID) {
+                    throw new IllegalArgumentException("unknown vehicle type " + type);
+                }
+                types[code] = true;
+            }
+            return types;
+        }
+
+        // all, weekday (Monday to Friday) or weekend, indexed from Monday
+        private static boolean[] days(String word) {
+            boolean[] days = new boolean[7];
+            switch (word.toLowerCase(Locale.ROOT)) {
+                case "all": Arrays.fill(days, true); break;
+                case "weekday": Arrays.fill(days, 0, 5, true); break;
+                case "weekend": Arrays.fill(days, 5, 7, true); break;
+                default: throw new IllegalArgumentException("days must be all, weekday or weekend");
+            }
+            return days;
+        }
+
+        // HH:00-HH:00 with 24:00 for the end of the day
+        private static int[] hours(String word) {
+            String[] range = word.split("-");
+            if (range.length != 2) {
+                throw new IllegalArgumentException("hours must be HH:00-HH:00");
+            }
+            int from = hour(range[0]), to = hour(range[1]);
+            if (from >= to) {
+                throw new IllegalArgumentException("the hours end before they start");
+            }
+            return new int[]{from, to};
+        }
+
+        private static int hour(String time) {
+            if (!time.matches("\\d{2}:00")) {
+                throw new IllegalArgumentException("hours must be whole hours as HH:00");
+            }
+            int hour = Integer.parseInt(time.substring(0, 2));
+            if (hour > FeeCalculator.HOURS_PER_DAY) {
+                throw new IllegalArgumentException("no hour " + time);
+            }
+            return hour;
+        }
+
+        // Dollars with at most two decimals
+        private static long cents(String word) {
+            BigDecimal cents = new BigDecimal(word).movePointRight(2);
+            if (cents.signum() < 0) {
+                throw new IllegalArgumentException("negative price " + word);
+            }
+            if (cents.stripTrailingZeros().scale() > 0) {
+                throw new IllegalArgumentException("prices have at most two decimals");
+            }
+            return cents.longValueExact();
+        }
+    }
+}
@@ -0,0 +1,356 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * The TrafficSimulator class generates realistic gate traffic to size a new site. Vehicles of each type arrive as a
+ * Poisson process, stay for a log-normal time and now and then stay overnight until the next morning; every arrival
+ * is checked in and parked automatically, and every departure is driven to the exit and checked out through the
+ * ParkingService, exactly as the gates do.
+ * The simulation is event driven over simulated time and fully determined by its seed, so two runs with the same
+ * seed and settings give the same report. Events are kept in a binary heap of longs packing the time, the kind,
+ * the vehicle type and the vehicle number, so the event loop does not allocate.
+ * The report gives the throughput, the rejection rate per vehicle type ("Parking full for ...") and the occupancy
+ * per simulated day.
+ * Run it with: java TrafficSimulator [seed] [days] [length width]
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class TrafficSimulator {
+
+    public static final long DEFAULT_SEED = 42L;
+    public static final int DEFAULT_DAYS = 7;
+    public static final int DEFAULT_LENGTH = 21;
+    public static final int DEFAULT_WIDTH = 22;
+
+    // Default traffic per vehicle type, in the order of the VehicleTypeCodec codes: Car, Bike, Motorbike, Truck
+    private static final double[] DEFAULT_ARRIVALS_PER_HOUR = {14, 3, 4, 1};
+    private static final double[] DEFAULT_MEDIAN_DWELL_HOURS = {2.5, 2, 2, 4};
+    private static final double[] DEFAULT_OVERNIGHT_SHARE = {0.05, 0.02, 0.03, 0.15};
+    private static final double DEFAULT_DWELL_SIGMA = 0.8;
+
+    // Overnight stays leave the next morning between these hours
+    private static final int MORNING_FIRST_HOUR = 7;
+    private static final int MORNING_HOURS = 3;
+
+    private static final int TYPE_COUNT = 4;
+    private static final int MINUTES_PER_HOUR = FeeCalculator.MINUTES_PER_HOUR;
+    private static final int MINUTES_PER_DAY = FeeCalculator.HOURS_PER_DAY * MINUTES_PER_HOUR;
+
+    // Event kinds, a departure sorts before an arrival at the same minute so it frees its bay first
+    private static final int EVENT_DEPARTURE = 0;
+    private static final int EVENT_ARRIVAL = 1;
+    private static final int EVENT_SAMPLE = 2;
+
+    // Event layout: minutes since the start << 36 | kind << 34 | type << 32 | vehicle number
+    private static final int TIME_SHIFT = 36;
+    private static final int KIND_SHIFT = 34;
+    private static final int TYPE_SHIFT = 32;
+    private static final long NUMBER_MASK = 0xFFFFFFFFL;
+
+    // Registration ids are a letter and the vehicle number in 5 base-36 digits
+    private static final String REGN_DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final int REGN_NUMBERS = 36 * 36 * 36 * 36 * 36;
+
+    private final ParkingService service;
+    private final SplittableRandom random;
+    private final double[] arrivalsPerHour = DEFAULT_ARRIVALS_PER_HOUR.clone();
+    private final double[] medianDwellHours = DEFAULT_MEDIAN_DWELL_HOURS.clone();
+    private final double[] overnightShare = DEFAULT_OVERNIGHT_SHARE.clone();
+    private double dwellSigma = DEFAULT_DWELL_SIGMA;
+
+    // Pending events, a binary min-heap
+    private long[] events = new long[1024];
+    private int eventCount = 0;
+    private int nextNumber = 0;
+
+    // Outcomes per vehicle type
+    private final long[] arrivals = new long[TYPE_COUNT];
+    private final long[] admitted = new long[TYPE_COUNT];
+    private final long[] rejected = new long[TYPE_COUNT];
+    private final long[] departures = new long[TYPE_COUNT];
+    private long parkFailures = 0;
+    private long exitFailures = 0;
+    private long revenueCents = 0;
+    private long operations = 0;
+
+    // Occupancy sampled every simulated hour, per simulated day
+    private long[] dayOccupancySum = new long[0];
+    private int[] dayOccupancyPeak = new int[0];
+    private int[] daySamples = new int[0];
+    private long[] dayArrivals = new long[0];
+    private long[] dayRejected = new long[0];
+    private int capacity = 0;
+    private long elapsedNanos = 0;
+    private int simulatedDays = 0;
+
+    public TrafficSimulator(ParkingService service, long seed) {
+        this.service = service;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * The main entry point of the simulator.
+     *
+     * @param args optional seed, number of simulated days, and length and width of the lot
+     */
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_SEED;
+        int days = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_DAYS;
+        int length = args.length > 3 ? Integer.parseInt(args[2]) : DEFAULT_LENGTH;
+        int width = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_WIDTH;
+        ParkingService service = new ParkingLotService();
+        if (!service.initParkingLot(length, width).isOk()) {
+            System.out.println("ParkingLot size cannot be less than " + Constant.MINIMUM_SIZE + ". Goodbye!");
+            return;
+        }
+        TrafficSimulator simulator = new TrafficSimulator(service, seed);
+        simulator.run(Date.parseEpochMinutes("2024-01-01", "00:00"), days);
+        System.out.printf("Seed %d, %d x %d parking lot%n", seed, length, width);
+        simulator.printReport(System.out);
+    }
+
+    /**
+     * Sets the traffic of a vehicle type.
+     *
+     * @param vehicleType The vehicle type.
+     * @param perHour The mean number of arrivals per hour.
+     * @param medianDwellHours The median stay in hours, the stays are log-normal around it.
+     * @param overnightShare The share of the vehicles staying until the next morning, 0 to 1.
+     */
+    public void setTraffic(String vehicleType, double perHour, double medianDwellHours, double overnightShare) {
+        byte code = VehicleTypeCodec.encode(vehicleType);
+        if (code == VehicleTypeCodec.INVALID) {
+            throw new IllegalArgumentException("Unknown vehicle type: " + vehicleType);
+        }
+        this.arrivalsPerHour[code] = perHour;
+        this.medianDwellHours[code] = medianDwellHours;
+        this.overnightShare[code] = overnightShare;
+    }
+
+    /**
+     * Sets the spread of the log-normal stays, the standard deviation of their logarithm.
+     */
+    public void setDwellSigma(double dwellSigma) {
+        this.dwellSigma = dwellSigma;
+    }
+
+    /**
+     * Simulates the traffic of the given number of days on an initialised parking lot.
+     *
+     * @param startMinutes The simulated start, in epoch minutes.
+     * @param days The number of simulated days.
+     */
+    public void run(long startMinutes, int days) {
+        simulatedDays = days;
+        dayOccupancySum = new long[days];
+        dayOccupancyPeak = new int[days];
+        daySamples = new int[days];
+        dayArrivals = new long[days];
+        dayRejected = new long[days];
+        capacity = Math.max(0, service.getEmpQty()) + Math.max(0, service.getOccQty());
+        long endMinute = (long) days * MINUTES_PER_DAY;
+
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            scheduleArrival(0, type);
+        }
+        for (long minute = 0; minute < endMinute; minute += MINUTES_PER_HOUR) {
+            push(toEvent(minute, EVENT_SAMPLE, 0, 0));
+        }
+
+        long start = System.nanoTime();
+        while (eventCount > 0) {
+            long event = pop();
+            long minute = event >>> TIME_SHIFT;
+            if (minute >= endMinute) {
+                break;
+            }
+            int kind = (int) (event >>> KIND_SHIFT) & 3;
+            int type = (int) (event >>> TYPE_SHIFT) & 3;
+            int number = (int) (event & NUMBER_MASK);
+            int day = (int) (minute / MINUTES_PER_DAY);
+            switch (kind) {
+                case EVENT_ARRIVAL:
+                    arrive(startMinutes, minute, day, type);
+                    scheduleArrival(minute, type);
+                    break;
+                case EVENT_DEPARTURE:
+                    depart(startMinutes + minute, type, number);
+                    break;
+                default:
+                    int occupied = Math.max(0, service.getOccQty());
+                    dayOccupancySum[day] += occupied;
+                    dayOccupancyPeak[day] = Math.max(dayOccupancyPeak[day], occupied);
+                    daySamples[day]++;
+                    break;
+            }
+        }
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    // Checks a vehicle in, parks it and schedules its departure, or counts it as rejected
+    private void arrive(long startMinutes, long minute, int day, int type) {
+        int number = nextNumber++;
+        String regnId = regnId(number);
+        String[] entry = splitDateTime(startMinutes + minute);
+        arrivals[type]++;
+        dayArrivals[day]++;
+        operations++;
+        ParkingResult result = service.checkIn(VehicleTypeCodec.decode((byte) type), regnId, null, null, entry[0], entry[1]);
+        if (result.getStatus() == ParkingResult.Status.PARKING_FULL
+                || result.getStatus() == ParkingResult.Status.PARKING_FULL_FOR_TYPE) {
+            rejected[type]++;
+            dayRejected[day]++;
+            return;
+        }
+        if (!result.isOk()) {
+            throw new IllegalStateException("Cannot check in " + regnId + ": " + result.getStatus());
+        }
+        admitted[type]++;
+        operations++;
+        if (!service.autoPark(regnId).isOk()) {
+            parkFailures++;
+        }
+        push(toEvent(minute + dwellMinutes(startMinutes + minute, type), EVENT_DEPARTURE, type, number));
+    }
+
+    // Drives a vehicle to the exit and checks it out
+    private void depart(long exitMinutes, int type, int number) {
+        String regnId = regnId(number);
+        String[] exit = splitDateTime(exitMinutes);
+        operations += 2;
+        if (!service.driveToExit(regnId).isOk()) {
+            exitFailures++;
+            return;
+        }
+        ParkingResult result = service.checkOut(regnId, exit[0], exit[1]);
+        if (result.isOk()) {
+            departures[type]++;
+            revenueCents += result.getCheckoutVehicle().getParkingFeeCents();
+        } else {
+            exitFailures++;
+        }
+    }
+
+    private void scheduleArrival(long minute, int type) {
+        if (arrivalsPerHour[type] <= 0) {
+            return;
+        }
+        // exponential gaps between arrivals make a Poisson process, rounded up so time always moves
+        double gapMinutes = -Math.log(1 - random.nextDouble()) * MINUTES_PER_HOUR / arrivalsPerHour[type];
+        push(toEvent(minute + Math.max(1, Math.round(gapMinutes)), EVENT_ARRIVAL, type, 0));
+    }
+
+    // A log-normal stay, or until the next morning for an overnight stay
+    private long dwellMinutes(long entryMinutes, int type) {
+        if (random.nextDouble() < overnightShare[type]) {
+            long nextDay = Math.floorDiv(entryMinutes, MINUTES_PER_DAY) + 1;
+            long leave = nextDay * MINUTES_PER_DAY + MORNING_FIRST_HOUR * MINUTES_PER_HOUR
+                    + random.nextInt(MORNING_HOURS * MINUTES_PER_HOUR);
+            return leave - entryMinutes;
+        }
+        double hours = medianDwellHours[type] * Math.exp(dwellSigma * gaussian());
+        return Math.max(1, Math.round(hours * MINUTES_PER_HOUR));
+    }
+
+    // A standard normal value from two uniform ones (Box-Muller)
+    private double gaussian() {
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    /**
+     * Prints the throughput, the outcomes per vehicle type and the occupancy per simulated day.
+     */
+    public void printReport(PrintStream out) {
+        double seconds = elapsedNanos / 1e9;
+        out.printf(Locale.ROOT, "Simulated %d days in %.2f s: %d operations (%.0f operations/s)%n",
+                simulatedDays, seconds, operations, seconds == 0 ? 0.0 : operations / seconds);
+        out.println("---------------------------------------------------------------------------");
+        out.printf("|%14s|%10s|%10s|%10s|%10s|%14s|%n", "Vehicle Type", "Arrivals", "Admitted", "Rejected", "Departed", "Rejection (%)");
+        out.println("---------------------------------------------------------------------------");
+        long totalArrivals = 0;
+        long totalRejected = 0;
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            out.printf(Locale.ROOT, "|%14s|%10d|%10d|%10d|%10d|%14.1f|%n", VehicleTypeCodec.decode((byte) type),
+                    arrivals[type], admitted[type], rejected[type], departures[type], percent(rejected[type], arrivals[type]));
+            totalArrivals += arrivals[type];
+            totalRejected += rejected[type];
+        }
+        out.printf(Locale.ROOT, "Rejected %d of %d arrivals (%.1f%%), %d park and %d exit failures, revenue $%.2f%n",
+                totalRejected, totalArrivals, percent(totalRejected, totalArrivals), parkFailures, exitFailures,
+                FeeCalculator.toDollars(revenueCents));
+        out.println("---------------------------------------------------------------------");
+        out.printf("|%6s|%10s|%10s|%16s|%12s|%10s|%n", "Day", "Arrivals", "Rejected", "Avg occupied", "Peak", "Peak (%)");
+        out.println("---------------------------------------------------------------------");
+        for (int day = 0; day < simulatedDays; day++) {
+            double average = daySamples[day] == 0 ? 0 : dayOccupancySum[day] / (double) daySamples[day];
+            out.printf(Locale.ROOT, "|%6d|%10d|%10d|%16.1f|%12d|%10.1f|%n", day + 1, dayArrivals[day], dayRejected[day],
+                    average, dayOccupancyPeak[day], percent(dayOccupancyPeak[day], capacity));
+        }
+    }
+
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0 : part * 100.0 / whole;
+    }
+
+    private static String regnId(int number) {
+        char[] chars = new char[RegnIdCodec.REGN_ID_LENGTH];
+        chars[0] = (char) ('S' + number / REGN_NUMBERS);
+        int rest = number % REGN_NUMBERS;
+        for (int i = chars.length - 1; i > 0; i--) {
+            chars[i] = REGN_DIGITS.charAt(rest % 36);
+            rest /= 36;
+        }
+        return new String(chars);
+    }
+
+    // Splits epoch minutes into the yyyy-MM-dd and HH:mm strings the service takes
+    private static String[] splitDateTime(long epochMinutes) {
+        String dateTime = Date.formatEpochMinutes(epochMinutes);
+        return new String[]{dateTime.substring(0, Date.FORMAT_DATE.length()), dateTime.substring(Date.FORMAT_DATE.length() + 1)};
+    }
+
+    private static long toEvent(long minute, int kind, int type, int number) {
+        return minute << TIME_SHIFT | (long) kind << KIND_SHIFT | (long) type << TYPE_SHIFT | (number & NUMBER_MASK);
+    }
+
+    private void push(long event) {
+        if (eventCount == events.length) {
+            events = Arrays.copyOf(events, eventCount * 2);
+        }
+        int i = eventCount++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (events[parent] <= event) {
+                break;
+            }
+            events[i] = events[parent];
+            i = parent;
+        }
+        events[i] = event;
+    }
+
+    private long pop() {
+        long top = events[0];
+        long last = events[--eventCount];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= eventCount) {
+                break;
+            }
+            if (child + 1 < eventCount && events[child + 1] < events[child]) {
+                child++;
+            }
+            if (last <= events[child]) {
+                break;
+            }
+            events[i] = events[child];
+            i = child;
+        }
+        events[i] = last;
+        return top;
+    }
+}
@@ -1,6 +1,7 @@
 /**
  * Vehicle is an abstract class representing a generic vehicle in a parking simulation.
  * This class encompasses common attributes and methods shared by all types of vehicles.
+ * The type, symbol and prices are not kept per vehicle, they are read from the shared VehicleClass of its type.
  * 
  * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
  */
@@ -12,6 +13,9 @@ public abstract class Vehicle {
 
     protected String oldSymbol=Constant.SYMBOL_D;
 
+    // Number of hits against pillars, walls and other vehicles
+    protected int hitNums;
+
     // Registration ID, model, and colour of the car
     protected String regnId;
     protected String model;
@@ -23,6 +27,10 @@ public abstract class Vehicle {
     protected String timeEntry;
     protected String timeExit;
 
+    // Start and end times for parking in epoch minutes, kept in sync with the strings above
+    protected long entryMinutes = Date.NO_TIME;
+    protected long exitMinutes = Date.NO_TIME;
+
     // Getter method for row attribute
     public int getRow() {
         return row;
@@ -51,18 +59,30 @@ public abstract class Vehicle {
         this.oldSymbol = oldSymbol;
     }
 
-    // Getter method for parkingPrice attribute
+    // Getter method for the shared class of the vehicle type
+    public abstract VehicleClass getVehicleClass();
 
-    public abstract int getParkingPrice();
+    // Getter method for parkingPrice attribute
+    public int getParkingPrice() {
+        return getVehicleClass().getParkingPrice();
+    }
 
-    public abstract int getHitNums();
+    public int getHitNums() {
+        return hitNums;
+    }
 
-    public abstract void setHitNums(int hitNums);
+    public void setHitNums(int hitNums) {
+        this.hitNums = hitNums;
+    }
 
     // Getter method for hitPrice attribute
-    public abstract int getHitPrice();
+    public int getHitPrice() {
+        return getVehicleClass().getHitPrice();
+    }
 
-    public abstract int getOvernightPrice();
+    public int getOvernightPrice() {
+        return getVehicleClass().getOvernightPrice();
+    }
 
     // Getter method for time of entry (parking start time)
     public String getTimeEntry() {
@@ -72,6 +92,7 @@ public abstract class Vehicle {
     // Setter method for time of entry (parking start time)
     public void setTimeEntry(String timeEntry) {
         this.timeEntry = timeEntry;
+        this.entryMinutes = Date.parseEpochMinutes(dateEntry, timeEntry);
     }
 
     // Getter method for time of exit (parking end time)
@@ -82,6 +103,7 @@ public abstract class Vehicle {
     // Setter method for time of exit (parking end time)
     public void setTimeExit(String timeExit) {
         this.timeExit = timeExit;
+        this.exitMinutes = Date.parseEpochMinutes(dateExit, timeExit);
     }
 
     // Setter method for the registration ID
@@ -115,11 +137,8 @@ public abstract class Vehicle {
     }
 
     // Getter method for the car type
-    public abstract String getType();
-
-    // Method to compute the parking fee based on the number of hours parked
-    public double getParkingFee() {
-        return getParkingHours() * getParkingPrice();
+    public String getType() {
+        return getVehicleClass().getType();
     }
 
     public String getDateEntry() {
@@ -128,6 +147,7 @@ public abstract class Vehicle {
 
     public void setDateEntry(String dateEntry) {
         this.dateEntry = dateEntry;
+        this.entryMinutes = Date.parseEpochMinutes(dateEntry, timeEntry);
     }
 
     public String getDateExit() {
@@ -136,57 +156,57 @@ public abstract class Vehicle {
 
     public void setDateExit(String dateExit) {
         this.dateExit = dateExit;
+        this.exitMinutes = Date.parseEpochMinutes(dateExit, timeExit);
     }
 
-    private long getDiffHours() {
-        java.util.Date stdate = Date.parseDateFormat(getDateEntry() + " " + getTimeEntry(), Date.FORMAT_DATETIME);
-        java.util.Date eddate = Date.parseDateFormat(getDateExit() + " " + getTimeExit(), Date.FORMAT_DATETIME);
-
-        Long diff = eddate.getTime() - stdate.getTime();
-        long diffMin = diff / 1000 / 60;
-        long diffHours = diffMin % 60 > 0 ? (diffMin / 60 + 1) : diffMin / 60;
-        return diffHours;
+    // Getter method for the entry time in epoch minutes
+    public long getEntryMinutes() {
+        return entryMinutes;
     }
 
-    // Method to calculate the number of hours the car has been parked
-    public long getParkingHours() {
-        long diffHours = getDiffHours();
-        if (diffHours % 24 == 0) {
-            return 0;
-        } else {
-            return diffHours % 24;
-        }
-
+    // Getter method for the exit time in epoch minutes
+    public long getExitMinutes() {
+        return exitMinutes;
     }
 
-    // Method to compute the total hit fee
-    public int getHitFee() {
-        return getHitNums() * getHitPrice();
+    private long getDiffHours() {
+        return FeeCalculator.getDiffHours(getEntryMinutes(), getExitMinutes());
     }
 
-    // Method to compute the total overnight fee
-    public long getOvernightFee() {
-        return getOvernightPrice() * getOvernight();
+    // Method to calculate the number of hours the car has been parked
+    public long getParkingHours() {
+        return FeeCalculator.getParkingHours(getDiffHours());
     }
 
     public long getOvernight(){
-        return getDiffHours() /24 ;
-        
+        return FeeCalculator.getOvernight(getDiffHours());
     }
 
     public CheckoutVehicle toCheckoutVehicle() {
+        return toCheckoutVehicle(getExitMinutes());
+    }
+
+    // Builds the checkout record for the given exit time, without changing the vehicle
+    public CheckoutVehicle toCheckoutVehicle(long exitMinutes) {
         CheckoutVehicle vehicle = new CheckoutVehicle();
         vehicle.setRegistrationId(this.getRegnId());
         vehicle.setVehicleType(this.getType());
-        vehicle.setEntryDateTime(Date.parseDateFormat(this.getDateEntry() + " " + this.getTimeEntry(), Date.FORMAT_DATETIME));
-        vehicle.setExitDateTime(Date.parseDateFormat(this.getDateExit() + " " + this.getTimeExit(), Date.FORMAT_DATETIME));
-        vehicle.setParkingFee(this.calculateParkingFee());
+        vehicle.setEntryMinutes(getEntryMinutes());
+        vehicle.setExitMinutes(exitMinutes);
+        vehicle.setHitNums(this.getHitNums());
+        TariffEngine.current().price(vehicle);
         return vehicle;
     }
 
-    // Method to compute the total fee (parking + hit)
+    // Method to compute the total fee (parking + hit + overnight) in cents, priced by the active tariff plan
+    public long calculateParkingFeeCents() {
+        return TariffEngine.current().feeCents(getVehicleClass().getCode(), getEntryMinutes(), getExitMinutes(),
+                getHitNums());
+    }
+
+    // Method to compute the total fee (parking + hit + overnight)
     public double calculateParkingFee() {
-        return getHitFee() + getParkingFee() + getOvernightFee();
+        return FeeCalculator.toDollars(calculateParkingFeeCents());
     }
 }
 
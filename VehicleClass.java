@@ -0,0 +1,115 @@
+/**
+ * The VehicleClass class describes one vehicle type: its code, its name, the symbol it is drawn with, its prices and
+ * the spots it may park in. There is one shared instance per type, looked up by the type code of VehicleTypeCodec,
+ * so a vehicle carries no copy of them and the parking rules compare classes by reference instead of type names.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public final class VehicleClass {
+
+    // The spots a vehicle class may park in
+    public static final int SPOTS_ANY = 0;
+    public static final int SPOTS_TRUCK_COLUMN = 1; // Only the column next to the entry
+    public static final int SPOTS_BIKE_COLUMN = 2; // Only the column nearest to the exit
+
+    public static final VehicleClass CAR = new VehicleClass(Constant.VEHICLE_TYPE_CAR, Constant.SYMBOL_C,
+            Constant.PARKING_PRICE_CAR, Constant.HIT_PRICE_CAR, Constant.OVERNIGHT_FEE_CAR, SPOTS_ANY);
+    public static final VehicleClass BIKE = new VehicleClass(Constant.VEHICLE_TYPE_BIKE, Constant.SYMBOL_B,
+            Constant.PARKING_PRICE_BIKE, Constant.HIT_PRICE_BIKE, Constant.OVERNIGHT_FEE_BIKE, SPOTS_BIKE_COLUMN);
+    public static final VehicleClass MOTORBIKE = new VehicleClass(Constant.VEHICLE_TYPE_MOTORBIKE, Constant.SYMBOL_M,
+            Constant.PARKING_PRICE_MOTORBIKE, Constant.HIT_PRICE_MOTORBIKE, Constant.OVERNIGHT_FEE_MOTORBIKE, SPOTS_BIKE_COLUMN);
+    public static final VehicleClass TRUCK = new VehicleClass(Constant.VEHICLE_TYPE_TRUCK, Constant.SYMBOL_T,
+            Constant.PARKING_PRICE_TRUCK, Constant.HIT_PRICE_TRUCK, Constant.OVERNIGHT_FEE_TRUCK, SPOTS_TRUCK_COLUMN);
+
+    // The classes by type code
+    private static final VehicleClass[] CLASSES = new VehicleClass[4];
+
+    static {
+        for (VehicleClass vehicleClass : new VehicleClass[]{CAR, BIKE, MOTORBIKE, TRUCK}) {
+            CLASSES[vehicleClass.code] = vehicleClass;
+        }
+    }
+
+    private final byte code;
+    private final String type;
+    private final String symbol;
+    private final int parkingPrice;
+    private final int hitPrice;
+    private final int overnightPrice;
+    private final int spots;
+
+    private VehicleClass(String type, String symbol, int parkingPrice, int hitPrice, int overnightPrice, int spots) {
+        this.code = VehicleTypeCodec.encode(type);
+        this.type = type;
+        this.symbol = symbol;
+        this.parkingPrice = parkingPrice;
+        this.hitPrice = hitPrice;
+        this.overnightPrice = overnightPrice;
+        this.spots = spots;
+    }
+
+    /**
+     * Returns the class of a type code, null if the code is unknown.
+     */
+    public static VehicleClass of(byte code) {
+        return code >= 0 && code < CLASSES.length ? CLASSES[code] : null;
+    }
+
+    /**
+     * Returns the class of a vehicle type, null if the type is unknown.
+     */
+    public static VehicleClass of(String vehicleType) {
+        return of(VehicleTypeCodec.encode(vehicleType));
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public int getParkingPrice() {
+        return parkingPrice;
+    }
+
+    public int getHitPrice() {
+        return hitPrice;
+    }
+
+    public int getOvernightPrice() {
+        return overnightPrice;
+    }
+
+    /**
+     * Returns SPOTS_ANY, SPOTS_TRUCK_COLUMN or SPOTS_BIKE_COLUMN.
+     */
+    public int getSpots() {
+        return spots;
+    }
+
+    /**
+     * Returns true if a vehicle of this class may park in a spot of the given column.
+     *
+     * @param col The column of the spot.
+     * @param cols Number of columns (the length of the parking lot).
+     */
+    public boolean mayParkIn(int col, int cols) {
+        switch (spots) {
+            case SPOTS_TRUCK_COLUMN: return col == 1;
+            case SPOTS_BIKE_COLUMN: return col == BayAllocator.getBikeColumn(cols);
+            default: return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type;
+    }
+}
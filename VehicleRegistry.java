@@ -0,0 +1,663 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * The VehicleRegistry class holds the vehicles checked in to one parking lot, keyed by their packed registration id.
+ * The index is an open-addressing hash table of longs with linear probing, kept at most half full, so a lookup is a
+ * multiply, a shift and usually one or two array reads, with no boxing, no String hashing and no equals() calls.
+ * The vehicle data is kept in parallel primitive arrays, one record per vehicle, in chunks that never move once
+ * allocated, and models and colours are stored once per distinct value, counted by the records using them so a
+ * value no vehicle uses any more is dropped. A checked in vehicle costs about 70 bytes of records and index plus a
+ * view of about 100 bytes, instead of a Vehicle object, its strings and a hash map node.
+ * get() returns the Vehicle view reading and writing the record of the vehicle, so the parking rules work on it as
+ * on any other vehicle. Every record has one view, made when the vehicle checks in, so a lookup allocates nothing.
+ * A view is bound to a generation of its record: once the vehicle is checked out the view keeps a copy of its data,
+ * isCurrent() tells it apart, and the record may be reused with a new view.
+ * Lookups are lock-free optimistic reads that are retried under the read lock if a checkin or checkout raced them;
+ * checkins and checkouts take the write lock and run their callback under it, so the order in which they are logged
+ * is the order in which they were made.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class VehicleRegistry {
+
+    private static final long EMPTY = RegnIdCodec.INVALID;
+    private static final int INITIAL_CAPACITY = 64; // Slots of the hash index, a power of two
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L; // 2^64 divided by the golden ratio
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    // Number of monitors the vehicles are locked on, a power of two
+    private static final int LOCK_STRIPES = 64;
+
+    // Hash index from packed registration id to record, guarded by the index lock
+    private final StampedLock indexLock = new StampedLock();
+    private long[] keys;
+    private int[] records;
+    private int shift; // 64 minus the number of bits of the index capacity
+    private volatile int size = 0;
+
+    // Records in chunks, allocated and freed under the write lock
+    private volatile Chunk[] chunks = new Chunk[0];
+    private int nextRecord = 0;
+    private int[] freeRecords = new int[16];
+    private int freeCount = 0;
+
+    // Distinct models and colours and the number of records using each, changed under the write lock. The id of
+    // a value no record uses is reused; its slot keeps the old value until then, so a racing view never reads null
+    private final Map<String, Integer> dictionaryIds = new HashMap<>();
+    private volatile String[] dictionary = new String[16];
+    private int[] dictionaryRefs = new int[16];
+    private int dictionarySize = 0;
+    private int[] freeIds = new int[16];
+    private int freeIdCount = 0;
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public VehicleRegistry() {
+        allocateIndex(INITIAL_CAPACITY);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    // One block of records, every field in an array of its own
+    private static final class Chunk {
+        final long[] regnIds = new long[CHUNK_SIZE];
+        final byte[] typeCodes = new byte[CHUNK_SIZE];
+        final int[] rows = new int[CHUNK_SIZE];
+        final int[] cols = new int[CHUNK_SIZE];
+        final byte[] underCodes = new byte[CHUNK_SIZE]; // Code of the cell under the vehicle
+        final int[] hitNums = new int[CHUNK_SIZE];
+        final long[] entryMinutes = new long[CHUNK_SIZE];
+        final int[] modelIds = new int[CHUNK_SIZE];
+        final int[] colourIds = new int[CHUNK_SIZE];
+        final int[] generations = new int[CHUNK_SIZE]; // Incremented when the vehicle of the record checks out
+        final RegisteredVehicle[] views = new RegisteredVehicle[CHUNK_SIZE]; // View of the current generation
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if a vehicle with the registration id is checked in.
+     */
+    public boolean contains(String regnId) {
+        long packed = RegnIdCodec.pack(regnId);
+        return packed != EMPTY && find(packed) >= 0;
+    }
+
+    /**
+     * Returns a view of the checked in vehicle with the registration id, or null if there is none.
+     */
+    public Vehicle get(String regnId) {
+        long packed = RegnIdCodec.pack(regnId);
+        return packed == EMPTY ? null : get(packed);
+    }
+
+    /**
+     * Returns a view of the checked in vehicle with the packed registration id, or null if there is none.
+     */
+    public Vehicle get(long packed) {
+        long stamp = indexLock.tryOptimisticRead();
+        Vehicle view = viewOf(probe(packed));
+        if (!indexLock.validate(stamp)) {
+            stamp = indexLock.readLock();
+            try {
+                view = viewOf(probe(packed));
+            } finally {
+                indexLock.unlockRead(stamp);
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Adds a vehicle unless its registration id is taken.
+     *
+     * @param vehicle The vehicle checking in, its data is copied into a record.
+     * @param onAdded Called with the vehicle once it is added, while the registry is still locked.
+     * @return true if the vehicle was added.
+     */
+    public boolean add(Vehicle vehicle, Consumer<Vehicle> onAdded) {
+        long packed = RegnIdCodec.pack(vehicle.getRegnId());
+        if (packed == EMPTY) {
+            return false;
+        }
+        long stamp = indexLock.writeLock();
+        try {
+            if (probe(packed) >= 0) {
+                return false;
+            }
+            int record = allocateRecord();
+            Chunk chunk = chunks[record >>> CHUNK_BITS];
+            int i = record & (CHUNK_SIZE - 1);
+            chunk.regnIds[i] = packed;
+            chunk.typeCodes[i] = vehicle.getVehicleClass().getCode();
+            chunk.rows[i] = vehicle.getRow();
+            chunk.cols[i] = vehicle.getCol();
+            chunk.underCodes[i] = ParkingGrid.codeOf(vehicle.getOldSymbol());
+            chunk.hitNums[i] = vehicle.getHitNums();
+            chunk.entryMinutes[i] = vehicle.getEntryMinutes();
+            chunk.modelIds[i] = intern(vehicle.getModel());
+            chunk.colourIds[i] = intern(vehicle.getColour());
+            chunk.views[i] = new RegisteredVehicle(record, chunk.generations[i]);
+            if ((size + 1) * 2 > keys.length) {
+                resizeIndex(keys.length * 2);
+            }
+            insert(packed, record);
+            size++;
+            onAdded.accept(vehicle);
+            return true;
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes a vehicle if the view is still current. The view keeps a copy of the data of the vehicle.
+     *
+     * @param vehicle A view returned by get().
+     * @param onRemoved Called with the vehicle before it is removed, while the registry is locked.
+     * @return true if the vehicle was removed, false if it had already been checked out.
+     */
+    public boolean remove(Vehicle vehicle, Consumer<Vehicle> onRemoved) {
+        if (!(vehicle instanceof RegisteredVehicle) || ((RegisteredVehicle) vehicle).registry() != this) {
+            return false;
+        }
+        RegisteredVehicle view = (RegisteredVehicle) vehicle;
+        long stamp = indexLock.writeLock();
+        try {
+            if (view.detached || view.chunk.generations[view.index] != view.generation) {
+                return false;
+            }
+            onRemoved.accept(view);
+            view.detach();
+            delete(view.chunk.regnIds[view.index]);
+            release(view.chunk.modelIds[view.index]);
+            release(view.chunk.colourIds[view.index]);
+            view.chunk.generations[view.index]++;
+            view.chunk.views[view.index] = null;
+            if (freeCount == freeRecords.length) {
+                int[] grown = new int[freeCount * 2];
+                System.arraycopy(freeRecords, 0, grown, 0, freeCount);
+                freeRecords = grown;
+            }
+            freeRecords[freeCount++] = view.record;
+            size--;
+            return true;
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns true if the vehicle is a view of this registry whose vehicle has not been checked out.
+     */
+    public boolean isCurrent(Vehicle vehicle) {
+        if (!(vehicle instanceof RegisteredVehicle) || ((RegisteredVehicle) vehicle).registry() != this) {
+            return false;
+        }
+        RegisteredVehicle view = (RegisteredVehicle) vehicle;
+        return !view.detached && view.chunk.generations[view.index] == view.generation;
+    }
+
+    /**
+     * Returns the monitor guarding the position and hits of a vehicle. Views of the same record share it, so
+     * two gates holding views of one vehicle are serialised; any other vehicle is its own monitor.
+     */
+    public Object lockOf(Vehicle vehicle) {
+        if (vehicle instanceof RegisteredVehicle && ((RegisteredVehicle) vehicle).registry() == this) {
+            return locks[((RegisteredVehicle) vehicle).record & (LOCK_STRIPES - 1)];
+        }
+        return vehicle;
+    }
+
+    /**
+     * Passes a view of every checked in vehicle to the action, holding the read lock, so no checkin or checkout
+     * runs meanwhile.
+     */
+    public void forEach(Consumer<Vehicle> action) {
+        long stamp = indexLock.readLock();
+        try {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY) {
+                    action.accept(viewOf(records[slot]));
+                }
+            }
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns the registration ids of the vehicles checked in, a copy.
+     */
+    public List<String> getRegnIds() {
+        long stamp = indexLock.readLock();
+        try {
+            List<String> regnIds = new ArrayList<>(size);
+            for (long key : keys) {
+                if (key != EMPTY) {
+                    regnIds.add(RegnIdCodec.unpack(key));
+                }
+            }
+            return regnIds;
+        } finally {
+            indexLock.unlockRead(stamp);
+        }
+    }
+
+    // Finds the record of a packed id, -1 if absent; may read a torn index when not locked, which validate() catches
+    private int find(long packed) {
+        long stamp = indexLock.tryOptimisticRead();
+        int record = probe(packed);
+        if (!indexLock.validate(stamp)) {
+            stamp = indexLock.readLock();
+            try {
+                record = probe(packed);
+            } finally {
+                indexLock.unlockRead(stamp);
+            }
+        }
+        return record;
+    }
+
+    // Probes at most every slot once, so a lookup racing a resize ends and is retried
+    private int probe(long packed) {
+        long[] k = keys;
+        int[] r = records;
+        if (k == null || r == null || k.length != r.length) {
+            return -1;
+        }
+        int mask = k.length - 1;
+        int slot = (int) ((packed * HASH_MULTIPLIER) >>> shift) & mask;
+        for (int n = 0; n < k.length; n++) {
+            long key = k[slot];
+            if (key == packed) {
+                return r[slot];
+            }
+            if (key == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Returns the view of a record, null for -1; may read a torn record when not locked, which validate() catches
+    private RegisteredVehicle viewOf(int record) {
+        Chunk[] c = chunks;
+        int chunk = record >>> CHUNK_BITS;
+        return record < 0 || chunk >= c.length ? null : c[chunk].views[record & (CHUNK_SIZE - 1)];
+    }
+
+    // The methods below are called holding the write lock
+
+    private void insert(long packed, int record) {
+        int mask = keys.length - 1;
+        int slot = (int) ((packed * HASH_MULTIPLIER) >>> shift);
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        records[slot] = record;
+        keys[slot] = packed;
+    }
+
+    // Deletes by shifting the following entries of the probe run back, so no tombstones are left
+    private void delete(long packed) {
+        int mask = keys.length - 1;
+        int slot = (int) ((packed * HASH_MULTIPLIER) >>> shift);
+        while (keys[slot] != packed) {
+            slot = (slot + 1) & mask;
+        }
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = (int) ((keys[next] * HASH_MULTIPLIER) >>> shift);
+            // the entry may fill the hole if its home is not between the hole and the entry, cyclically
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                records[hole] = records[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+    }
+
+    private void allocateIndex(int capacity) {
+        long[] k = new long[capacity];
+        Arrays.fill(k, EMPTY);
+        records = new int[capacity];
+        keys = k;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    private void resizeIndex(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldRecords = records;
+        allocateIndex(capacity);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY) {
+                insert(oldKeys[slot], oldRecords[slot]);
+            }
+        }
+    }
+
+    private int allocateRecord() {
+        if (freeCount > 0) {
+            return freeRecords[--freeCount];
+        }
+        int record = nextRecord++;
+        Chunk[] c = chunks;
+        if (record >>> CHUNK_BITS == c.length) {
+            Chunk[] grown = Arrays.copyOf(c, c.length + 1);
+            grown[c.length] = new Chunk();
+            chunks = grown;
+        }
+        return record;
+    }
+
+    // Returns the id of a model or colour, -1 for null, counting one more record using it
+    private int intern(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer id = dictionaryIds.get(value);
+        if (id != null) {
+            dictionaryRefs[id]++;
+            return id;
+        }
+        int newId;
+        String[] d = dictionary;
+        if (freeIdCount > 0) {
+            newId = freeIds[--freeIdCount];
+        } else {
+            newId = dictionarySize++;
+            if (newId == d.length) {
+                d = Arrays.copyOf(d, d.length * 2);
+                dictionaryRefs = Arrays.copyOf(dictionaryRefs, d.length);
+            }
+        }
+        d[newId] = value;
+        dictionary = d;
+        dictionaryRefs[newId] = 1;
+        dictionaryIds.put(value, newId);
+        return newId;
+    }
+
+    // Counts one record less using a model or colour, dropping the value once no record uses it
+    private void release(int id) {
+        if (id < 0 || --dictionaryRefs[id] > 0) {
+            return;
+        }
+        dictionaryIds.remove(dictionary[id]);
+        if (freeIdCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIdCount * 2);
+        }
+        freeIds[freeIdCount++] = id;
+    }
+
+    // Points a record at another packed registration id, which must be free
+    private void rekey(Chunk chunk, int index, int record, long packed) {
+        delete(chunk.regnIds[index]);
+        insert(packed, record);
+        chunk.regnIds[index] = packed;
+    }
+
+    private String lookup(int id) {
+        return id < 0 ? null : dictionary[id];
+    }
+
+    /**
+     * A checked in vehicle as a view of its record. Every field but the exit date and time is read and written
+     * through; the registration id, model, colour and entry time are changed under the write lock, as checkins and
+     * checkouts are. The exit date and time belong to the view, as the gate checking the vehicle out sets them.
+     */
+    private final class RegisteredVehicle extends Vehicle {
+
+        private final int record;
+        private final int generation;
+        private final Chunk chunk;
+        private final int index;
+        private final VehicleClass vehicleClass;
+        private volatile boolean detached = false; // Set once checked out, the data is then held by the view
+        private volatile EntryText entryText = EntryText.NONE; // The entry date and time last formatted
+
+        RegisteredVehicle(int record, int generation) {
+            this.record = record;
+            this.generation = generation;
+            this.chunk = chunks[record >>> CHUNK_BITS];
+            this.index = record & (CHUNK_SIZE - 1);
+            this.vehicleClass = VehicleClass.of(chunk.typeCodes[index]);
+        }
+
+        VehicleRegistry registry() {
+            return VehicleRegistry.this;
+        }
+
+        // Copies the record into the fields of the view before the record is freed
+        void detach() {
+            row = chunk.rows[index];
+            col = chunk.cols[index];
+            oldSymbol = ParkingGrid.symbolOf(chunk.underCodes[index]);
+            hitNums = chunk.hitNums[index];
+            regnId = RegnIdCodec.unpack(chunk.regnIds[index]);
+            model = lookup(chunk.modelIds[index]);
+            colour = lookup(chunk.colourIds[index]);
+            entryMinutes = chunk.entryMinutes[index];
+            dateEntry = getDateEntry();
+            timeEntry = getTimeEntry();
+            detached = true;
+        }
+
+        @Override
+        public int getRow() {
+            return detached ? row : chunk.rows[index];
+        }
+
+        @Override
+        public void setRow(int row) {
+            if (detached) {
+                this.row = row;
+            } else {
+                chunk.rows[index] = row;
+            }
+        }
+
+        @Override
+        public int getCol() {
+            return detached ? col : chunk.cols[index];
+        }
+
+        @Override
+        public void setCol(int col) {
+            if (detached) {
+                this.col = col;
+            } else {
+                chunk.cols[index] = col;
+            }
+        }
+
+        @Override
+        public String getOldSymbol() {
+            return detached ? oldSymbol : ParkingGrid.symbolOf(chunk.underCodes[index]);
+        }
+
+        @Override
+        public void setOldSymbol(String oldSymbol) {
+            if (detached) {
+                this.oldSymbol = oldSymbol;
+            } else {
+                chunk.underCodes[index] = ParkingGrid.codeOf(oldSymbol);
+            }
+        }
+
+        @Override
+        public int getHitNums() {
+            return detached ? hitNums : chunk.hitNums[index];
+        }
+
+        @Override
+        public void setHitNums(int hitNums) {
+            if (detached) {
+                this.hitNums = hitNums;
+            } else {
+                chunk.hitNums[index] = hitNums;
+            }
+        }
+
+        @Override
+        public String getRegnId() {
+            return detached ? regnId : RegnIdCodec.unpack(chunk.regnIds[index]);
+        }
+
+        @Override
+        public String getModel() {
+            return detached ? model : lookup(chunk.modelIds[index]);
+        }
+
+        @Override
+        public String getColour() {
+            return detached ? colour : lookup(chunk.colourIds[index]);
+        }
+
+        @Override
+        public long getEntryMinutes() {
+            return detached ? entryMinutes : chunk.entryMinutes[index];
+        }
+
+        @Override
+        public String getDateEntry() {
+            return formatEntry().date;
+        }
+
+        @Override
+        public String getTimeEntry() {
+            return formatEntry().time;
+        }
+
+        /**
+         * Changes the registration id of the vehicle, moving its record to the new id in the index.
+         *
+         * @throws IllegalArgumentException if the id cannot be packed or another vehicle is checked in with it.
+         */
+        @Override
+        public void setRegnId(String regnId) {
+            long packed = RegnIdCodec.pack(regnId);
+            if (packed == EMPTY) {
+                throw new IllegalArgumentException("Invalid registration id: " + regnId);
+            }
+            long stamp = indexLock.writeLock();
+            try {
+                if (detached) {
+                    this.regnId = regnId;
+                } else if (chunk.regnIds[index] != packed) {
+                    if (probe(packed) >= 0) {
+                        throw new IllegalArgumentException("Registration id already checked in: " + regnId);
+                    }
+                    rekey(chunk, index, record, packed);
+                }
+            } finally {
+                indexLock.unlockWrite(stamp);
+            }
+        }
+
+        @Override
+        public void setModel(String model) {
+            long stamp = indexLock.writeLock();
+            try {
+                if (detached) {
+                    this.model = model;
+                } else {
+                    int previous = chunk.modelIds[index];
+                    chunk.modelIds[index] = intern(model);
+                    release(previous);
+                }
+            } finally {
+                indexLock.unlockWrite(stamp);
+            }
+        }
+
+        @Override
+        public void setColour(String colour) {
+            long stamp = indexLock.writeLock();
+            try {
+                if (detached) {
+                    this.colour = colour;
+                } else {
+                    int previous = chunk.colourIds[index];
+                    chunk.colourIds[index] = intern(colour);
+                    release(previous);
+                }
+            } finally {
+                indexLock.unlockWrite(stamp);
+            }
+        }
+
+        @Override
+        public void setDateEntry(String dateEntry) {
+            setEntryMinutes(Date.parseEpochMinutes(dateEntry, getTimeEntry()));
+        }
+
+        @Override
+        public void setTimeEntry(String timeEntry) {
+            setEntryMinutes(Date.parseEpochMinutes(getDateEntry(), timeEntry));
+        }
+
+        private void setEntryMinutes(long entryMinutes) {
+            long stamp = indexLock.writeLock();
+            try {
+                if (detached) {
+                    this.entryMinutes = entryMinutes;
+                } else {
+                    chunk.entryMinutes[index] = entryMinutes;
+                }
+            } finally {
+                indexLock.unlockWrite(stamp);
+            }
+        }
+
+        // Formats the entry time once per change of it rather than on every read
+        private EntryText formatEntry() {
+            long minutes = getEntryMinutes();
+            EntryText text = entryText;
+            if (text.minutes != minutes) {
+                text = new EntryText(minutes);
+                entryText = text;
+            }
+            return text;
+        }
+
+        @Override
+        public VehicleClass getVehicleClass() {
+            return vehicleClass;
+        }
+    }
+
+    // The entry date and time of a view as strings, with the entry time they were formatted from
+    private static final class EntryText {
+
+        static final EntryText NONE = new EntryText(Date.NO_TIME);
+
+        final long minutes;
+        final String date;
+        final String time;
+
+        EntryText(long minutes) {
+            String dateTime = Date.formatEpochMinutes(minutes);
+            this.minutes = minutes;
+            this.date = dateTime == null ? null : dateTime.substring(0, Date.FORMAT_DATE.length());
+            this.time = dateTime == null ? null : dateTime.substring(Date.FORMAT_DATE.length() + 1);
+        }
+    }
+}
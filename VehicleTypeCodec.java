@@ -0,0 +1,37 @@
+/**
+ * The VehicleTypeCodec class maps the vehicle types to the one-byte codes used in the binary journals and stores.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class VehicleTypeCodec {
+
+    // Vehicle types in the order of their codes, never reorder as the codes are persisted
+    private static final String[] VEHICLE_TYPES = {
+            Constant.VEHICLE_TYPE_CAR, Constant.VEHICLE_TYPE_BIKE, Constant.VEHICLE_TYPE_MOTORBIKE, Constant.VEHICLE_TYPE_TRUCK
+    };
+
+    public static final byte INVALID = -1;
+
+    private VehicleTypeCodec() {
+    }
+
+    /**
+     * Returns the code of a vehicle type, INVALID if the type is unknown.
+     */
+    public static byte encode(String vehicleType) {
+        for (byte i = 0; i < VEHICLE_TYPES.length; i++) {
+            if (VEHICLE_TYPES[i].equals(vehicleType)) {
+                return i;
+            }
+        }
+        return INVALID;
+    }
+
+    /**
+     * Returns the vehicle type of a code, null if the code is unknown.
+     */
+    public static String decode(byte code) {
+        return code >= 0 && code < VEHICLE_TYPES.length ? VEHICLE_TYPES[code] : null;
+    }
+}
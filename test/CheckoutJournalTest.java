@@ -0,0 +1,195 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The CheckoutJournalTest class checks the binary format of the CheckoutJournal: records read back as written, a
+ * replay can start at any record, a torn last record is cut off silently and the records after a corrupted one are
+ * reported and saved aside. It also checks that gates recording at the same time write the journal and the fee log
+ * in the same order, and that a lot restarted after a crash between journaling a checkout and logging it no longer
+ * holds the vehicle.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class CheckoutJournalTest {
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("journal-test");
+        recordsReadBackAsWritten(dir.resolve("round-trip"));
+        tornRecordIsCutOff(dir.resolve("torn"));
+        recordsAfterACorruptedOneAreSaved(dir.resolve("corrupted"));
+        concurrentGatesKeepOneOrder(dir.resolve("order"));
+        journaledCheckoutLeavesAfterCrash(dir.resolve("crash"));
+        Checks.deleteTree(dir);
+        System.out.println("CheckoutJournalTest passed");
+    }
+
+    private static void recordsReadBackAsWritten(Path file) throws IOException {
+        List<CheckoutVehicle> written = new ArrayList<>();
+        written.add(record("Car", "AAA111", 0, 100, 200, 1200, 0, 0));
+        written.add(record("Truck", "BBB222", 2, 1_000, 4_000, 9_950, 4_000, 2_500));
+        written.add(record("Motorbike", "CCC333", 1, 5_000, 5_061, 725, 310, 0));
+        try (CheckoutJournal journal = CheckoutJournal.open(file, 0, record -> { })) {
+            for (CheckoutVehicle checkoutVehicle : written) {
+                journal.append(checkoutVehicle);
+            }
+        }
+        Checks.checkEquals(3L * CheckoutJournal.RECORD_SIZE, Files.size(file), "records have a fixed size");
+
+        List<CheckoutVehicle> replayed = new ArrayList<>();
+        try (CheckoutJournal journal = CheckoutJournal.open(file, 0, replayed::add)) {
+            Checks.checkEquals(3, journal.getRecordCount(), "every record is counted");
+            Checks.checkEquals(0, journal.getDroppedRecords(), "no record is dropped");
+        }
+        Checks.checkEquals(written.size(), replayed.size(), "every record is replayed");
+        for (int i = 0; i < written.size(); i++) {
+            checkSame(written.get(i), replayed.get(i));
+        }
+
+        List<CheckoutVehicle> tail = new ArrayList<>();
+        try (CheckoutJournal journal = CheckoutJournal.open(file, 2, tail::add)) {
+            journal.append(record("Bike", "DDD444", 0, 10, 20, 100, 0, 0));
+        }
+        Checks.checkEquals(1, tail.size(), "a replay starts at the record asked for");
+        checkSame(written.get(2), tail.get(0));
+        Checks.checkEquals(4L * CheckoutJournal.RECORD_SIZE, Files.size(file), "an append follows the last record");
+    }
+
+    private static void tornRecordIsCutOff(Path file) throws IOException {
+        append(file, 3);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(CheckoutJournal.RECORD_SIZE / 2));
+        }
+        List<CheckoutVehicle> replayed = new ArrayList<>();
+        try (CheckoutJournal journal = CheckoutJournal.open(file, 0, replayed::add)) {
+            Checks.checkEquals(3, journal.getRecordCount(), "the whole records are kept");
+            Checks.checkEquals(0, journal.getDroppedRecords(), "a torn record is not a whole record");
+        }
+        Checks.checkEquals(3, replayed.size(), "the whole records are replayed");
+        Checks.checkEquals(3L * CheckoutJournal.RECORD_SIZE, Files.size(file), "the torn record is cut off");
+    }
+
+    private static void recordsAfterACorruptedOneAreSaved(Path file) throws IOException {
+        append(file, 5);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), CheckoutJournal.RECORD_SIZE + 10);
+        }
+        List<CheckoutVehicle> replayed = new ArrayList<>();
+        try (CheckoutJournal journal = CheckoutJournal.open(file, 0, replayed::add)) {
+            Checks.checkEquals(1, journal.getRecordCount(), "the records before the corrupted one are kept");
+            Checks.checkEquals(4, journal.getDroppedRecords(), "the corrupted record and the ones after are dropped");
+        }
+        Checks.checkEquals(1, replayed.size(), "only the records before the corrupted one are replayed");
+        Path saved = file.resolveSibling(file.getFileName() + ".dropped-1");
+        Checks.checkEquals(4L * CheckoutJournal.RECORD_SIZE, Files.size(saved), "the dropped records are saved aside");
+        Checks.checkEquals((long) CheckoutJournal.RECORD_SIZE, Files.size(file), "the journal is cut at the corruption");
+    }
+
+    private static void concurrentGatesKeepOneOrder(Path file) throws Exception {
+        int gates = 8;
+        int checkouts = 200;
+        FeeLogStore feeLog = new FeeLogStore();
+        try (CheckoutJournal journal = CheckoutJournal.open(file, 0, record -> { })) {
+            Thread[] threads = new Thread[gates];
+            IOException[] failures = new IOException[gates];
+            for (int gate = 0; gate < gates; gate++) {
+                int g = gate;
+                threads[gate] = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < checkouts; i++) {
+                            feeLog.append(record("Car", String.format("G%dC%03d", g, i), 0, i, i + 60, 400, 0, 0),
+                                    journal);
+                        }
+                    } catch (IOException ex) {
+                        failures[g] = ex;
+                    }
+                });
+                threads[gate].start();
+            }
+            for (int gate = 0; gate < gates; gate++) {
+                threads[gate].join();
+                Checks.check(failures[gate] == null, "gate " + gate + " records every checkout");
+            }
+        }
+        List<CheckoutVehicle> replayed = new ArrayList<>();
+        try (CheckoutJournal journal = CheckoutJournal.open(file, 0, replayed::add)) {
+            Checks.checkEquals(gates * checkouts, journal.getRecordCount(), "every checkout is journaled");
+        }
+        Checks.checkEquals((long) gates * checkouts, feeLog.getRowCount(), "every checkout is in the fee log");
+        for (int row = 0; row < replayed.size(); row++) {
+            Checks.checkEquals(RegnIdCodec.pack(replayed.get(row).getRegistrationId()), feeLog.getPackedRegnId(row),
+                    "row " + row + " of the fee log is record " + row + " of the journal");
+        }
+    }
+
+    private static void journaledCheckoutLeavesAfterCrash(Path dir) throws IOException {
+        Path journalFile = dir.resolve("journal");
+        Path stateDir = dir.resolve("state");
+        Path crashDir = dir.resolve("crash");
+        Files.createDirectories(dir);
+        LotStore lotStore = new LotStore(stateDir, LotStore.DEFAULT_SNAPSHOT_INTERVAL);
+        try (CheckoutJournal journal = CheckoutJournal.open(journalFile, 0, record -> { })) {
+            ParkingLotService service = new ParkingLotService(journal, new FeeLogStore(), lotStore);
+            Checks.check(service.initParkingLot(9, 10).isOk(), "the lot is laid out");
+            Checks.check(service.checkIn("Car", "AAA111", "Model", "Red", "2024-01-01", "10:00").isOk(), "AAA111 checks in");
+            Checks.check(service.checkIn("Car", "BBB222", "Model", "Red", "2024-01-01", "10:00").isOk(), "BBB222 checks in");
+            Checks.check(service.driveToExit("AAA111").isOk(), "AAA111 drives to the exit");
+            //the process dies once the checkout of AAA111 is journaled, before the lot logs it
+            journal.append(service.quoteCheckout("AAA111", "2024-01-01", "12:00").getCheckoutVehicle());
+            lotStore.flush();
+            Checks.copyFiles(stateDir, crashDir);
+        }
+        lotStore.close();
+
+        FeeLogStore feeLog = new FeeLogStore();
+        try (CheckoutJournal journal = CheckoutJournal.open(journalFile, 0, feeLog::append)) {
+            LotStore restoredStore = new LotStore(crashDir, LotStore.DEFAULT_SNAPSHOT_INTERVAL);
+            ParkingLotService service = new ParkingLotService(journal, feeLog, restoredStore);
+            Checks.checkEquals(1, feeLog.getRowCount(), "the journaled checkout is in the fee log");
+            Checks.check(service.findVehicle("AAA111") == null, "the journaled vehicle is not restored");
+            Checks.check(service.findVehicle("BBB222") != null, "the parked vehicle is restored");
+            Checks.checkEquals(1, service.getOccQty(), "one vehicle is left in the lot");
+            restoredStore.close();
+        }
+    }
+
+    private static void append(Path file, int count) throws IOException {
+        try (CheckoutJournal journal = CheckoutJournal.open(file, 0, record -> { })) {
+            for (int i = 0; i < count; i++) {
+                journal.append(record("Car", String.format("CAR%03d", i), i, i * 60L, i * 60L + 90, 800 + i, 0, 0));
+            }
+        }
+    }
+
+    private static CheckoutVehicle record(String type, String regnId, int hitNums, long entryMinutes, long exitMinutes,
+                                          long feeCents, long hitFeeCents, long overnightFeeCents) {
+        CheckoutVehicle checkoutVehicle = new CheckoutVehicle();
+        checkoutVehicle.setVehicleType(type);
+        checkoutVehicle.setRegistrationId(regnId);
+        checkoutVehicle.setHitNums(hitNums);
+        checkoutVehicle.setEntryMinutes(entryMinutes);
+        checkoutVehicle.setExitMinutes(exitMinutes);
+        checkoutVehicle.setParkingFeeCents(feeCents);
+        checkoutVehicle.setHitFeeCents(hitFeeCents);
+        checkoutVehicle.setOvernightFeeCents(overnightFeeCents);
+        return checkoutVehicle;
+    }
+
+    private static void checkSame(CheckoutVehicle expected, CheckoutVehicle actual) {
+        String regnId = expected.getRegistrationId();
+        Checks.checkEquals(expected.getVehicleType(), actual.getVehicleType(), regnId + " type");
+        Checks.checkEquals(regnId, actual.getRegistrationId(), regnId + " registration id");
+        Checks.checkEquals(expected.getHitNums(), actual.getHitNums(), regnId + " hits");
+        Checks.checkEquals(expected.getEntryMinutes(), actual.getEntryMinutes(), regnId + " entry");
+        Checks.checkEquals(expected.getExitMinutes(), actual.getExitMinutes(), regnId + " exit");
+        Checks.checkEquals(expected.getParkingFeeCents(), actual.getParkingFeeCents(), regnId + " fee");
+        Checks.checkEquals(expected.getHitFeeCents(), actual.getHitFeeCents(), regnId + " hit fee");
+        Checks.checkEquals(expected.getOvernightFeeCents(), actual.getOvernightFeeCents(), regnId + " overnight fee");
+    }
+}
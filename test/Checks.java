@@ -0,0 +1,63 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * The Checks class holds the assertions of the test programs in this directory. They throw whether or not the
+ * JVM runs with assertions enabled, so a test program fails by exiting with the stack trace of the first failure.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class Checks {
+
+    private Checks() {
+    }
+
+    public static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public static void checkEquals(long expected, long actual, String message) {
+        if (expected != actual) {
+            throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    public static void checkEquals(Object expected, Object actual, String message) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    /**
+     * Deletes a directory a test worked in, with everything in it.
+     */
+    public static void deleteTree(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Copies the files of a directory as they are now into another one, as a crash would leave them on disk.
+     */
+    public static void copyFiles(Path from, Path to) throws IOException {
+        Files.createDirectories(to);
+        try (Stream<Path> files = Files.list(from)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, to.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+}
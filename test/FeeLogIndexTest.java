@@ -0,0 +1,163 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The FeeLogIndexTest class checks the exit time index behind the fee log searches: rows appended out of exit time
+ * order are found in order once the index catches up, both when the new rows come after the indexed ones and when
+ * they have to be merged in, and again after the store is truncated. Exit time ranges keep their start and drop
+ * their end, and a search walked page by page with the cursors of FeeLogStore.query meets every match once, even
+ * with rows appended between the pages.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class FeeLogIndexTest {
+
+    private static final long BASE = DateCodec.parseEpochMinutes("2024-01-01 00:00");
+
+    public static void main(String[] args) {
+        outOfOrderRowsAreCaughtUp();
+        rangesKeepTheirStartAndDropTheirEnd();
+        cursorWalksEveryPage();
+        System.out.println("FeeLogIndexTest passed");
+    }
+
+    private static void outOfOrderRowsAreCaughtUp() {
+        FeeLogStore store = new FeeLogStore();
+        append(store, 50, 10, 30, 20, 40);
+        checkExits(store, FeeLogQuery.all(), "rows appended out of order are sorted", 10, 20, 30, 40, 50);
+        checkRows(store, FeeLogQuery.all(), "the rows keep their records", 1, 3, 2, 4, 0);
+
+        //after a search, rows exiting before the indexed ones are merged in, equal exits in row order
+        append(store, 5, 60, 30);
+        checkExits(store, FeeLogQuery.all(), "the new rows are merged in", 5, 10, 20, 30, 30, 40, 50, 60);
+        checkRows(store, FeeLogQuery.all(), "equal exits come in row order", 5, 1, 3, 2, 7, 4, 0, 6);
+
+        //rows exiting after every indexed one are added to the end
+        append(store, 80, 70);
+        checkExits(store, FeeLogQuery.all(), "the later rows are added", 5, 10, 20, 30, 30, 40, 50, 60, 70, 80);
+
+        store.truncate(4);
+        checkExits(store, FeeLogQuery.all(), "the index follows a truncated store", 10, 20, 30, 50);
+        append(store, 15);
+        checkExits(store, FeeLogQuery.all(), "rows appended after the truncation are found", 10, 15, 20, 30, 50);
+    }
+
+    private static void rangesKeepTheirStartAndDropTheirEnd() {
+        FeeLogStore store = new FeeLogStore();
+        //one exit before 1970 keeps its place at the start
+        append(store, 40, 20, 30, 25, -BASE - 100, 20, 60);
+        checkExits(store, range(20, 40), "the start is kept, the end dropped", 20, 20, 25, 30);
+        checkExits(store, range(21, 41), "a range between exits", 25, 30, 40);
+        checkExits(store, range(30, 30), "an empty range");
+        checkExits(store, range(61, 100), "a range after every exit");
+        checkExits(store, range(-BASE - 200, 0), "a range before 1970", -BASE - 100);
+        checkExits(store, new FeeLogQuery(BASE + 30, Long.MAX_VALUE, null, null, 20, FeeLogQuery.FIRST_PAGE),
+                "a range open at its end", 30, 40, 60);
+        checkExits(store, new FeeLogQuery(Long.MIN_VALUE, BASE + 25, null, null, 20, FeeLogQuery.FIRST_PAGE),
+                "a range open at its start", -BASE - 100, 20, 20);
+
+        //odd rows are trucks, the others cars
+        checkExits(store, new FeeLogQuery(BASE + 20, BASE + 60, "Truck", null, 20, FeeLogQuery.FIRST_PAGE),
+                "the trucks of the range", 20, 20, 25);
+        checkExits(store, new FeeLogQuery(BASE + 20, BASE + 60, null, "ROW005", 20, FeeLogQuery.FIRST_PAGE),
+                "the ids of the range starting with the prefix", 20);
+        checkExits(store, new FeeLogQuery(BASE + 20, BASE + 60, "Van", null, 20, FeeLogQuery.FIRST_PAGE),
+                "an unknown type matches nothing");
+    }
+
+    private static void cursorWalksEveryPage() {
+        FeeLogStore store = new FeeLogStore();
+        //50 rows in a shuffled exit order, every exit time taken by two rows
+        int rows = 50;
+        long[] exits = new long[rows];
+        for (int row = 0; row < rows; row++) {
+            exits[row] = row * 17 % rows / 2;
+        }
+        append(store, exits);
+
+        FeeLogQuery query = new FeeLogQuery(Long.MIN_VALUE, Long.MAX_VALUE, null, null, 7, FeeLogQuery.FIRST_PAGE);
+        List<Long> walked = new ArrayList<>();
+        int pages = 0;
+        FeeLogPage page;
+        do {
+            page = store.query(query);
+            pages++;
+            Checks.check(page.getRecords().size() == 7 || !page.hasMore(), "only the last page is short");
+            for (CheckoutVehicle record : page.getRecords()) {
+                walked.add(rowOf(record));
+            }
+            query = query.withCursor(page.getNextCursor());
+            if (pages == 3) {
+                //a row exiting before the cursor belongs to pages already read, one exiting after it is still ahead
+                append(store, -1, rows);
+            }
+        } while (page.hasMore());
+
+        Checks.checkEquals(8, pages, "51 matches take 8 pages of 7");
+        Checks.checkEquals(rows + 1, walked.size(), "every match is met once");
+        long previousExit = Long.MIN_VALUE;
+        long previousRow = -1;
+        for (long row : walked) {
+            long exit = store.getExitMinutes(row);
+            Checks.check(exit > previousExit || (exit == previousExit && row > previousRow),
+                    "the walk goes by exit time, then by row");
+            previousExit = exit;
+            previousRow = row;
+        }
+        Checks.check(!walked.contains((long) rows), "the row appended before the cursor is not met");
+        Checks.check(walked.contains(rows + 1L), "the row appended after the cursor is met");
+        Checks.checkEquals(0, store.query(query).getRecords().size(), "the cursor of the last page finds nothing");
+
+        //the same walk over the trucks only, the odd rows
+        query = new FeeLogQuery(Long.MIN_VALUE, Long.MAX_VALUE, "Truck", null, 4, FeeLogQuery.FIRST_PAGE);
+        int trucks = 0;
+        do {
+            page = store.query(query);
+            for (CheckoutVehicle record : page.getRecords()) {
+                Checks.checkEquals(1, rowOf(record) % 2, "only trucks are met");
+                trucks++;
+            }
+            query = query.withCursor(page.getNextCursor());
+        } while (page.hasMore());
+        Checks.checkEquals((rows + 2) / 2, trucks, "every truck is met");
+    }
+
+    private static FeeLogQuery range(long from, long to) {
+        return new FeeLogQuery(BASE + from, BASE + to, null, null, 20, FeeLogQuery.FIRST_PAGE);
+    }
+
+    // Appends a row per exit, given in minutes after BASE; row n is ROW and n in three digits, a truck if n is odd
+    private static void append(FeeLogStore store, long... exits) {
+        for (long exit : exits) {
+            long row = store.getRowCount();
+            CheckoutVehicle checkoutVehicle = new CheckoutVehicle();
+            checkoutVehicle.setVehicleType(row % 2 == 1 ? "Truck" : "Car");
+            checkoutVehicle.setRegistrationId(String.format("ROW%03d", row));
+            checkoutVehicle.setEntryMinutes(BASE + exit - 60);
+            checkoutVehicle.setExitMinutes(BASE + exit);
+            store.append(checkoutVehicle);
+        }
+    }
+
+    // Checks the exits of the first page of a query, in minutes after BASE
+    private static void checkExits(FeeLogStore store, FeeLogQuery query, String message, long... expected) {
+        List<CheckoutVehicle> records = store.query(query).getRecords();
+        Checks.checkEquals(expected.length, records.size(), message + ": matches");
+        for (int i = 0; i < expected.length; i++) {
+            Checks.checkEquals(BASE + expected[i], records.get(i).getExitMinutes(), message + ": match " + i);
+        }
+    }
+
+    private static void checkRows(FeeLogStore store, FeeLogQuery query, String message, long... expected) {
+        List<CheckoutVehicle> records = store.query(query).getRecords();
+        Checks.checkEquals(expected.length, records.size(), message + ": matches");
+        for (int i = 0; i < expected.length; i++) {
+            Checks.checkEquals(expected[i], rowOf(records.get(i)), message + ": match " + i);
+        }
+    }
+
+    private static long rowOf(CheckoutVehicle record) {
+        return Long.parseLong(record.getRegistrationId().substring(3));
+    }
+}
@@ -0,0 +1,168 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The FeeLogStoreTest class checks the memory-mapped segments of the FeeLogStore: rows spanning several segments read
+ * back after a reopen, a store that was not closed catches up from the checkout journal past its last durable row,
+ * and a store holding more rows than the journal is truncated to it for good. The revenue totals kept by the store
+ * must match its rows after each of these, and after their saved copy is found corrupted.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class FeeLogStoreTest {
+
+    // Rows per segment, small so a few rows span several segments
+    private static final int SEGMENT_ROWS = 8;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("fee-log-test");
+        rowsReadBackAfterReopen(dir.resolve("round-trip"));
+        storeCatchesUpFromJournal(dir.resolve("catch-up"));
+        storeIsTruncatedToJournal(dir.resolve("truncate"));
+        corruptedTotalsAreSummedAgain(dir.resolve("corrupted-totals"));
+        Checks.deleteTree(dir);
+        System.out.println("FeeLogStoreTest passed");
+    }
+
+    private static void rowsReadBackAfterReopen(Path dir) throws IOException {
+        try (FeeLogStore store = FeeLogStore.open(dir, SEGMENT_ROWS)) {
+            for (int i = 0; i < 20; i++) {
+                store.append(record(i));
+            }
+        }
+        try (FeeLogStore store = FeeLogStore.open(dir, SEGMENT_ROWS)) {
+            Checks.checkEquals(20, store.getRowCount(), "every row is kept");
+            for (int i = 0; i < 20; i++) {
+                checkRow(store, i, i);
+            }
+            checkTotals(store, 0, 20);
+        }
+    }
+
+    private static void storeCatchesUpFromJournal(Path dir) throws IOException {
+        Path journalFile = dir.resolve("journal");
+        Path storeDir = dir.resolve("store");
+        Files.createDirectories(dir);
+        //the process dies after 20 checkouts, only the two full segments were made durable
+        FeeLogStore crashed = FeeLogStore.open(storeDir, SEGMENT_ROWS);
+        try (CheckoutJournal journal = CheckoutJournal.open(journalFile, 0, record -> { })) {
+            for (int i = 0; i < 20; i++) {
+                journal.append(record(i));
+                crashed.append(record(i));
+            }
+        }
+
+        try (FeeLogStore store = FeeLogStore.open(storeDir, SEGMENT_ROWS)) {
+            Checks.checkEquals(2L * SEGMENT_ROWS, store.getRowCount(), "only the durable rows are counted");
+            checkTotals(store, 0, 2 * SEGMENT_ROWS);
+            try (CheckoutJournal journal = CheckoutJournal.open(journalFile, store.getRowCount(), store::append)) {
+                Checks.checkEquals(20, journal.getRecordCount(), "the journal holds every checkout");
+            }
+            Checks.checkEquals(20, store.getRowCount(), "the store catches up with the journal");
+            for (int i = 0; i < 20; i++) {
+                checkRow(store, i, i);
+            }
+            checkTotals(store, 0, 20);
+        }
+        try (FeeLogStore store = FeeLogStore.open(storeDir, SEGMENT_ROWS)) {
+            Checks.checkEquals(20, store.getRowCount(), "the caught up rows are durable");
+        }
+    }
+
+    private static void storeIsTruncatedToJournal(Path dir) throws IOException {
+        Path journalFile = dir.resolve("journal");
+        Path storeDir = dir.resolve("store");
+        Files.createDirectories(dir);
+        try (FeeLogStore store = FeeLogStore.open(storeDir, SEGMENT_ROWS);
+             CheckoutJournal journal = CheckoutJournal.open(journalFile, 0, record -> { })) {
+            for (int i = 0; i < 20; i++) {
+                store.append(record(i));
+                if (i < 12) {
+                    journal.append(record(i));
+                }
+            }
+        }
+
+        try (FeeLogStore store = FeeLogStore.open(storeDir, SEGMENT_ROWS);
+             CheckoutJournal journal = CheckoutJournal.open(journalFile, store.getRowCount(), store::append)) {
+            Checks.checkEquals(20, store.getRowCount(), "the store holds more rows than the journal");
+            store.truncate(journal.getRecordCount());
+            Checks.checkEquals(12, store.getRowCount(), "the store is cut to the journal");
+            checkTotals(store, 0, 12);
+            store.append(record(100));
+        }
+        try (FeeLogStore store = FeeLogStore.open(storeDir, SEGMENT_ROWS)) {
+            Checks.checkEquals(13, store.getRowCount(), "the cut and the next append are durable");
+            for (int i = 0; i < 12; i++) {
+                checkRow(store, i, i);
+            }
+            checkRow(store, 12, 100);
+            RevenueBucket total = store.getRevenueAggregates().getTotal();
+            Checks.checkEquals(13, total.getVisits(), "the totals count the rows left and the next append");
+            Checks.checkEquals(sumFees(0, 12) + record(100).getParkingFeeCents(), total.getRevenueCents(),
+                    "the totals hold the fees of the rows left and the next append");
+        }
+    }
+
+    private static void corruptedTotalsAreSummedAgain(Path dir) throws IOException {
+        try (FeeLogStore store = FeeLogStore.open(dir, SEGMENT_ROWS)) {
+            for (int i = 0; i < 20; i++) {
+                store.append(record(i));
+            }
+        }
+        Path totals = dir.resolve("revenue.totals");
+        Checks.check(Files.exists(totals), "the totals are saved with the segments");
+        byte[] bytes = Files.readAllBytes(totals);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(totals, bytes);
+        try (FeeLogStore store = FeeLogStore.open(dir, SEGMENT_ROWS)) {
+            checkTotals(store, 0, 20);
+        }
+    }
+
+    // A checkout record with every column derived from i
+    private static CheckoutVehicle record(int i) {
+        CheckoutVehicle checkoutVehicle = new CheckoutVehicle();
+        checkoutVehicle.setVehicleType(i % 2 == 0 ? "Car" : "Truck");
+        checkoutVehicle.setRegistrationId(String.format("CAR%03d", i));
+        checkoutVehicle.setHitNums(i % 3);
+        checkoutVehicle.setEntryMinutes(i * 60L);
+        checkoutVehicle.setExitMinutes(i * 60L + 90);
+        checkoutVehicle.setParkingFeeCents(800 + i);
+        checkoutVehicle.setHitFeeCents(i % 3 * 100L);
+        checkoutVehicle.setOvernightFeeCents(i % 4 == 0 ? 2_500 : 0);
+        return checkoutVehicle;
+    }
+
+    // Checks the totals of the store against those of the records from first to last, exclusive
+    private static void checkTotals(FeeLogStore store, int first, int last) {
+        RevenueBucket total = store.getRevenueAggregates().getTotal();
+        Checks.checkEquals(last - first, total.getVisits(), "the totals count every row");
+        Checks.checkEquals(sumFees(first, last), total.getRevenueCents(), "the totals hold the fee of every row");
+        RevenueBucket trucks = store.getRevenueAggregates().getByType("Truck");
+        Checks.checkEquals((last - first) / 2, trucks.getVisits(), "the totals count the trucks");
+    }
+
+    private static long sumFees(int first, int last) {
+        long fees = 0;
+        for (int i = first; i < last; i++) {
+            fees += record(i).getParkingFeeCents();
+        }
+        return fees;
+    }
+
+    private static void checkRow(FeeLogStore store, long row, int i) {
+        CheckoutVehicle expected = record(i);
+        String regnId = expected.getRegistrationId();
+        Checks.checkEquals(expected.getVehicleType(), store.getVehicleType(row), regnId + " type");
+        Checks.checkEquals(RegnIdCodec.pack(regnId), store.getPackedRegnId(row), regnId + " registration id");
+        Checks.checkEquals(expected.getHitNums(), store.getHitNums(row), regnId + " hits");
+        Checks.checkEquals(expected.getEntryMinutes(), store.getEntryMinutes(row), regnId + " entry");
+        Checks.checkEquals(expected.getExitMinutes(), store.getExitMinutes(row), regnId + " exit");
+        Checks.checkEquals(expected.getParkingFeeCents(), store.getFeeCents(row), regnId + " fee");
+        Checks.checkEquals(expected.getHitFeeCents(), store.getHitFeeCents(row), regnId + " hit fee");
+        Checks.checkEquals(expected.getOvernightFeeCents(), store.getOvernightFeeCents(row), regnId + " overnight fee");
+    }
+}
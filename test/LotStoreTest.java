@@ -0,0 +1,200 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * The LotStoreTest class checks that a LotStore brings a lot back: from its last snapshot after a clean close, and
+ * from a snapshot and the log written after it when the process died without one, a torn last log record included.
+ * With a checkout journal as well, a vehicle restored on its bay after its checkout was journaled leaves the bay free,
+ * and a restart only looks for such vehicles in the fee log rows from the fee log mark the lot saved on.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class LotStoreTest {
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("lot-store-test");
+        snapshotRestoresTheLot(dir.resolve("snapshot"));
+        logIsReplayedAfterCrash(dir.resolve("log"));
+        journaledCheckoutFreesItsBay(dir.resolve("journal"));
+        restartLooksFromTheFeeLogMark(dir.resolve("mark"));
+        Checks.deleteTree(dir);
+        System.out.println("LotStoreTest passed");
+    }
+
+    private static void snapshotRestoresTheLot(Path stateDir) throws IOException {
+        LotStore store = new LotStore(stateDir, LotStore.DEFAULT_SNAPSHOT_INTERVAL);
+        ParkingLotService service = new ParkingLotService(null, new FeeLogStore(), store);
+        Checks.check(service.initParkingLot(9, 10).isOk(), "the lot is laid out");
+        checkIn(service, "Car", "AAA111");
+        checkIn(service, "Truck", "BBB222");
+        Checks.check(service.autoPark("AAA111").isOk(), "AAA111 parks");
+        Vehicle parked = service.findVehicle("AAA111");
+        int row = parked.getRow();
+        int col = parked.getCol();
+        int available = service.getAvailable("Car");
+        store.close();
+
+        LotStore restoredStore = new LotStore(stateDir, LotStore.DEFAULT_SNAPSHOT_INTERVAL);
+        ParkingLotService restored = new ParkingLotService(null, new FeeLogStore(), restoredStore);
+        Checks.checkEquals(2, restored.getOccQty(), "both vehicles are restored");
+        Checks.checkEquals(row, restored.findVehicle("AAA111").getRow(), "the parked vehicle keeps its row");
+        Checks.checkEquals(col, restored.findVehicle("AAA111").getCol(), "the parked vehicle keeps its column");
+        Checks.check(restored.findVehicle("BBB222") != null, "the vehicle at the door is restored");
+        Checks.checkEquals(available, restored.getAvailable("Car"), "the taken bay is taken again");
+        Checks.checkEquals(Constant.SYMBOL_C, restored.getParkingGrid().getSymbol(row, col), "the vehicle is drawn");
+        restoredStore.close();
+    }
+
+    private static void logIsReplayedAfterCrash(Path dir) throws IOException {
+        Path stateDir = dir.resolve("state");
+        Path crashDir = dir.resolve("crash");
+        Path tornDir = dir.resolve("torn");
+        LotStore store = new LotStore(stateDir, LotStore.DEFAULT_SNAPSHOT_INTERVAL);
+        ParkingLotService service = new ParkingLotService(null, new FeeLogStore(), store);
+        Checks.check(service.initParkingLot(9, 10).isOk(), "the lot is laid out");
+        checkIn(service, "Car", "AAA111");
+        store.snapshot();
+        //everything below is only in the log generation written after the snapshot
+        checkIn(service, "Car", "BBB222");
+        checkIn(service, "Car", "CCC333");
+        Checks.check(service.autoPark("AAA111").isOk(), "AAA111 parks");
+        Checks.check(service.driveToExit("CCC333").isOk(), "CCC333 drives to the exit");
+        Checks.check(service.checkOut("CCC333", "2024-01-01", "12:00").isOk(), "CCC333 checks out");
+        Vehicle parked = service.findVehicle("AAA111");
+        int row = parked.getRow();
+        int col = parked.getCol();
+        store.flush();
+        Checks.copyFiles(stateDir, crashDir);
+        Checks.copyFiles(stateDir, tornDir);
+        store.close();
+        tearLastLog(tornDir);
+
+        for (Path copy : new Path[] {crashDir, tornDir}) {
+            LotStore restoredStore = new LotStore(copy, LotStore.DEFAULT_SNAPSHOT_INTERVAL);
+            ParkingLotService restored = new ParkingLotService(null, new FeeLogStore(), restoredStore);
+            Checks.checkEquals(2, restored.getOccQty(), "the vehicles left are restored from " + copy.getFileName());
+            Checks.checkEquals(row, restored.findVehicle("AAA111").getRow(), "the logged park is replayed");
+            Checks.checkEquals(col, restored.findVehicle("AAA111").getCol(), "the logged park is replayed");
+            Checks.check(restored.findVehicle("BBB222") != null, "the logged checkin is replayed");
+            Checks.check(restored.findVehicle("CCC333") == null, "the logged checkout is replayed");
+            restoredStore.close();
+        }
+    }
+
+    private static void journaledCheckoutFreesItsBay(Path dir) throws IOException {
+        Path journalFile = dir.resolve("journal");
+        Path stateDir = dir.resolve("state");
+        Path crashDir = dir.resolve("crash");
+        Files.createDirectories(dir);
+        int available;
+        int row;
+        int col;
+        LotStore store = new LotStore(stateDir, LotStore.DEFAULT_SNAPSHOT_INTERVAL);
+        try (CheckoutJournal journal = CheckoutJournal.open(journalFile, 0, record -> { })) {
+            ParkingLotService service = new ParkingLotService(journal, new FeeLogStore(), store);
+            Checks.check(service.initParkingLot(9, 10).isOk(), "the lot is laid out");
+            available = service.getAvailable("Car");
+            checkIn(service, "Car", "AAA111");
+            Checks.check(service.autoPark("AAA111").isOk(), "AAA111 parks");
+            row = service.findVehicle("AAA111").getRow();
+            col = service.findVehicle("AAA111").getCol();
+            //the log last reaches the disk while the vehicle is on its bay, the process dies after the checkout
+            store.flush();
+            Checks.copyFiles(stateDir, crashDir);
+            Checks.check(service.driveToExit("AAA111").isOk(), "AAA111 drives to the exit");
+            Checks.check(service.checkOut("AAA111", "2024-01-01", "12:00").isOk(), "AAA111 checks out");
+        }
+        store.close();
+
+        FeeLogStore feeLog = new FeeLogStore();
+        try (CheckoutJournal journal = CheckoutJournal.open(journalFile, 0, feeLog::append)) {
+            LotStore restoredStore = new LotStore(crashDir, LotStore.DEFAULT_SNAPSHOT_INTERVAL);
+            ParkingLotService restored = new ParkingLotService(journal, feeLog, restoredStore);
+            Checks.check(restored.findVehicle("AAA111") == null, "the journaled vehicle is not restored");
+            Checks.checkEquals(Constant.DOT, restored.getParkingGrid().getSymbol(row, col), "its bay is a bay again");
+            Checks.checkEquals(available, restored.getAvailable("Car"), "its bay is counted free once");
+            checkIn(restored, "Car", "BBB222");
+            Checks.check(restored.autoPark("BBB222").isOk(), "BBB222 parks");
+            Checks.checkEquals(row, restored.findVehicle("BBB222").getRow(), "the freed bay is given out again");
+            Checks.checkEquals(col, restored.findVehicle("BBB222").getCol(), "the freed bay is given out again");
+            restoredStore.close();
+        }
+    }
+
+    private static void restartLooksFromTheFeeLogMark(Path dir) throws IOException {
+        Path journalFile = dir.resolve("journal");
+        Path stateDir = dir.resolve("state");
+        Files.createDirectories(dir);
+        long entryMinutes;
+        LotStore store = new LotStore(stateDir, LotStore.DEFAULT_SNAPSHOT_INTERVAL);
+        try (CheckoutJournal journal = CheckoutJournal.open(journalFile, 0, record -> { })) {
+            ParkingLotService service = new ParkingLotService(journal, new FeeLogStore(), store);
+            Checks.check(service.initParkingLot(9, 10).isOk(), "the lot is laid out");
+            checkIn(service, "Car", "AAA111");
+            checkIn(service, "Car", "BBB222");
+            checkIn(service, "Car", "CCC333");
+            Checks.check(service.driveToExit("AAA111").isOk(), "AAA111 drives to the exit");
+            Checks.check(service.checkOut("AAA111", "2024-01-01", "12:00").isOk(), "AAA111 checks out");
+            Checks.checkEquals(1, service.getFeeLogMark(), "the mark moves past the row of the checkout");
+            entryMinutes = service.findVehicle("BBB222").getEntryMinutes();
+        }
+        store.close();
+
+        //row 0 is below the saved mark and is not looked at again, row 1 is
+        FeeLogStore feeLog = new FeeLogStore();
+        feeLog.append(paid("BBB222", entryMinutes));
+        feeLog.append(paid("CCC333", entryMinutes));
+        try (CheckoutJournal journal = CheckoutJournal.open(journalFile, 1, record -> { })) {
+            LotStore restoredStore = new LotStore(stateDir, LotStore.DEFAULT_SNAPSHOT_INTERVAL);
+            ParkingLotService restored = new ParkingLotService(journal, feeLog, restoredStore);
+            Checks.check(restored.findVehicle("BBB222") != null, "a row below the mark is not looked at");
+            Checks.check(restored.findVehicle("CCC333") == null, "a row from the mark on is looked at");
+            Checks.checkEquals(2, restored.getFeeLogMark(), "the mark moves past the rows looked at");
+            restoredStore.close();
+        }
+        LotStore reopenedStore = new LotStore(stateDir, LotStore.DEFAULT_SNAPSHOT_INTERVAL);
+        ParkingLotService reopened = new ParkingLotService(null, new FeeLogStore(), reopenedStore);
+        Checks.checkEquals(2, reopened.getFeeLogMark(), "the mark is saved with the lot");
+        reopenedStore.close();
+    }
+
+    // A checkout record of a vehicle that entered at the given time
+    private static CheckoutVehicle paid(String regnId, long entryMinutes) {
+        CheckoutVehicle checkoutVehicle = new CheckoutVehicle();
+        checkoutVehicle.setVehicleType("Car");
+        checkoutVehicle.setRegistrationId(regnId);
+        checkoutVehicle.setEntryMinutes(entryMinutes);
+        checkoutVehicle.setExitMinutes(entryMinutes + 60);
+        return checkoutVehicle;
+    }
+
+    private static void checkIn(ParkingLotService service, String type, String regnId) {
+        Checks.check(service.checkIn(type, regnId, "Model", "Red", "2024-01-01", "10:00").isOk(), regnId + " checks in");
+    }
+
+    // Appends half a record to the newest log generation, as a crash in the middle of a write leaves it
+    private static void tearLastLog(Path stateDir) throws IOException {
+        Path last;
+        try (Stream<Path> files = Files.list(stateDir)) {
+            last = files.filter(file -> file.getFileName().toString().endsWith(".wal"))
+                    .max(Comparator.comparingLong(LotStoreTest::generationOf))
+                    .orElseThrow(() -> new AssertionError("no log generation was written"));
+        }
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {2, 0, 0, 0, 40, 1, 2, 3}));
+        }
+    }
+
+    // The generation of a log file named lot-<generation>.wal
+    private static long generationOf(Path logFile) {
+        String name = logFile.getFileName().toString();
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.lastIndexOf('.')));
+    }
+}
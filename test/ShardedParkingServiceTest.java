@@ -0,0 +1,152 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The ShardedParkingServiceTest class checks that a sharded site lays out the lot it is asked for: the shards
+ * share out its bays rather than each holding a whole lot, and a lot too short to be shared out or with more bays
+ * than a shard can count is refused. It
+ * also checks that a checkout is journaled by the coordinator while the shard keeps no fee log of its own, and that
+ * a vehicle a shard still holds after its checkout was journaled is gone once the site starts again. A recorder
+ * failing mid checkout must not leave the shard holding the vehicle's lock.
+ * The shards are launched from the class path of the test, so it runs with the compiled classes on it.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class ShardedParkingServiceTest {
+
+    public static void main(String[] args) throws Exception {
+        shardsAddUpToOneLot(2, 21, 10);
+        shardsAddUpToOneLot(3, 22, 9);
+        tooShortLotIsRefused();
+        lotWithTooManyBaysIsRefused();
+        shardKeepsNoFeeLog();
+        failedRecorderReleasesTheVehicle();
+        journaledCheckoutLeavesAfterRestart();
+        System.out.println("ShardedParkingServiceTest passed");
+    }
+
+    private static void shardsAddUpToOneLot(int shardCount, int length, int width) throws Exception {
+        ParkingLotService lot = new ParkingLotService();
+        Checks.check(lot.initParkingLot(length, width).isOk(), "the single lot is laid out");
+        try (ShardedParkingService site = ShardedParkingService.launch(shardCount, null, null, new FeeLogStore())) {
+            Checks.check(site.initParkingLot(length, width).isOk(), "the site is laid out");
+            Checks.checkEquals(lot.getEmpQty(), site.getEmpQty(), shardCount + " shards hold the bays of one lot");
+            int rows = 0;
+            for (int level = 0; level < site.getLevels(); level++) {
+                rows = Math.max(rows, site.getParkingGrid(level).getRows());
+            }
+            Checks.checkEquals(width, rows, "every shard keeps the width of the lot");
+            Checks.check(site.initParkingLot(length, width).isOk(), "an empty site is laid out again");
+            Checks.checkEquals(lot.getEmpQty(), site.getEmpQty(), "laying out again keeps the bays of one lot");
+        }
+    }
+
+    private static void tooShortLotIsRefused() throws Exception {
+        try (ShardedParkingService site = ShardedParkingService.launch(2, null, null, new FeeLogStore())) {
+            Checks.checkEquals(ParkingResult.Status.INVALID_SIZE, site.initParkingLot(9, 10).getStatus(),
+                    "a lot of 4 bay columns cannot give 2 shards a lot each");
+            Checks.checkEquals(Constant.QTY_INIT_VALUE, site.getEmpQty(), "the refused site stays uninitialised");
+            Checks.checkEquals(ParkingResult.Status.NOT_INITIALISED,
+                    site.checkIn("Car", "ABC123", "Model", "Red", "2024-01-01", "10:00").getStatus(),
+                    "the refused site turns arrivals away");
+        }
+    }
+
+    private static void lotWithTooManyBaysIsRefused() throws Exception {
+        //1000 rows of bays by 2097 bay columns fit the ledger, 2098 columns do not
+        Checks.check(CapacityLedger.fits(4195, 1006), "2097000 bays fit");
+        Checks.check(!CapacityLedger.fits(4197, 1006), "2098000 bays do not fit");
+        Checks.check(!CapacityLedger.fits(Integer.MAX_VALUE, Integer.MAX_VALUE), "the bay count does not wrap");
+        ParkingLotService lot = new ParkingLotService();
+        Checks.checkEquals(ParkingResult.Status.INVALID_SIZE, lot.initParkingLot(4197, 1006).getStatus(),
+                "a lot of 2098000 bays is refused");
+        Checks.checkEquals(Constant.QTY_INIT_VALUE, lot.getEmpQty(), "the refused lot stays uninitialised");
+        try (ShardedParkingService site = ShardedParkingService.launch(2, null, null, new FeeLogStore())) {
+            Checks.checkEquals(ParkingResult.Status.INVALID_SIZE, site.initParkingLot(8393, 1006).getStatus(),
+                    "a site whose shards get 2098 bay columns each is refused");
+            Checks.checkEquals(Constant.QTY_INIT_VALUE, site.getEmpQty(), "the refused site stays uninitialised");
+        }
+    }
+
+    private static void shardKeepsNoFeeLog() throws Exception {
+        ParkingLotService shard = new ParkingLotService((LotStore) null);
+        Checks.check(shard.initParkingLot(9, 10, 5).isOk(), "the shard is laid out");
+        Checks.checkEquals(5, shard.getFeeLogMark(), "the shard starts at the rows of the site's fee log");
+        Checks.check(shard.checkIn("Car", "AAA111", "Model", "Red", "2024-01-01", "10:00").isOk(), "AAA111 checks in");
+        Checks.check(shard.driveToExit("AAA111").isOk(), "AAA111 drives to the exit");
+        FeeLogStore siteLog = new FeeLogStore();
+        ParkingResult result = shard.checkOut("AAA111", "2024-01-01", "12:00",
+                checkoutVehicle -> siteLog.append(checkoutVehicle, null) + 5);
+        Checks.check(result.isOk(), "AAA111 checks out through the recorder");
+        Checks.checkEquals(1, siteLog.getRowCount(), "the recorder holds the checkout");
+        Checks.check(!shard.getCheckoutVehicles().iterator().hasNext(), "the shard keeps no fee log");
+        Checks.check(shard.getRevenueAggregates() == null, "the shard keeps no revenue totals");
+        Checks.checkEquals(6, shard.getFeeLogMark(), "the mark moves past the row of the checkout");
+    }
+
+    private static void failedRecorderReleasesTheVehicle() throws Exception {
+        ShardServer server = new ShardServer(null, LotStore.DEFAULT_SNAPSHOT_INTERVAL);
+        Thread serving = new Thread(server::serve, "test-shard");
+        serving.setDaemon(true);
+        serving.start();
+        ShardClient client = new ShardClient(0, server.getPort(), new ParkingLot(new ParkingLotService()));
+        try {
+            Checks.check(client.initParkingLot(9, 10, 0).isOk(), "the shard is laid out");
+            Checks.check(client.checkIn("Car", "AAA111", "Model", "Red", "2024-01-01", "10:00").isOk(),
+                    "AAA111 checks in");
+            Checks.check(client.driveToExit("AAA111").isOk(), "AAA111 drives to the exit");
+            boolean failed = false;
+            try {
+                client.checkOut("AAA111", "2024-01-01", "12:00", checkoutVehicle -> {
+                    throw new IllegalStateException("the fee log is full");
+                });
+            } catch (IllegalStateException ex) {
+                failed = true;
+            }
+            Checks.check(failed, "the failure of the recorder reaches the gate");
+            ParkingResult[] retried = new ParkingResult[1];
+            Thread retry = new Thread(() -> retried[0] = client.checkOut("AAA111", "2024-01-01", "12:00",
+                    checkoutVehicle -> 0));
+            retry.setDaemon(true);
+            retry.start();
+            retry.join(10_000);
+            Checks.check(retried[0] != null, "the shard does not keep the vehicle locked");
+            Checks.check(retried[0].isOk(), "the vehicle checks out once the recorder works");
+        } finally {
+            client.close();
+            server.close();
+        }
+    }
+
+    private static void journaledCheckoutLeavesAfterRestart() throws Exception {
+        Path dir = Files.createTempDirectory("sharded-test");
+        Path journalFile = dir.resolve("journal");
+        Path stateDir = dir.resolve("state");
+        FeeLogStore feeLog = new FeeLogStore();
+        try (CheckoutJournal journal = CheckoutJournal.open(journalFile, 0, feeLog::append);
+             ShardedParkingService site = ShardedParkingService.launch(2, stateDir, journal, feeLog)) {
+            Checks.check(site.initParkingLot(21, 10).isOk(), "the site is laid out");
+            for (String regnId : new String[] {"AAA111", "BBB222", "CCC333"}) {
+                Checks.check(site.checkIn("Car", regnId, "Model", "Red", "2024-01-01", "10:00").isOk(),
+                        regnId + " checks in");
+            }
+            Checks.check(site.driveToExit("AAA111").isOk(), "AAA111 drives to the exit");
+            Checks.check(site.checkOut("AAA111", "2024-01-01", "12:00").isOk(), "AAA111 checks out");
+            Checks.checkEquals(1, feeLog.getRowCount(), "the checkout is in the fee log");
+            Checks.check(site.driveToExit("BBB222").isOk(), "BBB222 drives to the exit");
+            //the coordinator dies once it has journaled the checkout of BBB222, before the shard removes it
+            journal.append(site.quoteCheckout("BBB222", "2024-01-01", "12:00").getCheckoutVehicle());
+        }
+        FeeLogStore restoredLog = new FeeLogStore();
+        try (CheckoutJournal journal = CheckoutJournal.open(journalFile, 0, restoredLog::append);
+             ShardedParkingService site = ShardedParkingService.launch(2, stateDir, journal, restoredLog)) {
+            Checks.checkEquals(2, restoredLog.getRowCount(), "both checkouts are read back from the journal");
+            Checks.check(site.findVehicle("AAA111") == null, "the checked out vehicle stays gone");
+            Checks.check(site.findVehicle("BBB222") == null, "the journaled vehicle is removed on restart");
+            Checks.check(site.findVehicle("CCC333") != null, "the parked vehicle is restored");
+            Checks.checkEquals(1, site.getOccQty(), "one vehicle is left in the site");
+        }
+        Checks.deleteTree(dir);
+    }
+}
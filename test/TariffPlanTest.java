@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * The TariffPlanTest class checks the fees of a tariff plan against fees worked out by hand: hourly rate bands of
+ * weekdays and weekends, stays wrapping from Sunday into Monday, the cap on the hourly charge, overnight and hit
+ * prices, and the rules a plan file refuses, naming their line.
+ * 2024-01-01 was a Monday, so every stay is set in its week or the next one.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class TariffPlanTest {
+
+    private static final byte CAR = 0;
+    private static final byte BIKE = 1;
+    private static final byte MOTORBIKE = 2;
+    private static final byte TRUCK = 3;
+
+    // Car hours outside the weekday band keep the class price of 4.00, trucks keep 10.00 an hour
+    private static final String RULES = "plan test\n"
+            + "hourly Car weekday 07:00-19:00 6.00\n"
+            + "hourly Car weekend 00:00-24:00 2.50\n"
+            + "hourly bike,MOTORBIKE weekend 00:00-24:00 1.00  # a comma list in any case\n"
+            + "cap Truck 30.00\n"
+            + "overnight Car 12.50\n"
+            + "hit Car 15.00\n"
+            + "hit Bike 1.00\n";
+
+    public static void main(String[] args) throws IOException {
+        TariffPlan plan = TariffPlan.parse(new StringReader(RULES));
+        Checks.checkEquals("test", plan.getName(), "the plan is named");
+        bandsByDayAndHour(plan);
+        staysWrapIntoTheNextWeek(plan);
+        hourlyChargeIsCapped(plan);
+        overnightAndHitPrices(plan);
+        flatPlanKeepsClassPrices();
+        malformedRulesAreRefused();
+        System.out.println("TariffPlanTest passed");
+    }
+
+    private static void bandsByDayAndHour(TariffPlan plan) {
+        //06:00 at 4.00 then 07:00 at 6.00, the started hour counting as a full one
+        checkFee(plan, CAR, "2024-01-01 06:30", "2024-01-01 08:10", 0, 1_000, "a Monday stay into the day band");
+        //18:00 at 6.00 then 19:00 at 4.00
+        checkFee(plan, CAR, "2024-01-01 18:00", "2024-01-01 20:00", 0, 1_000, "a Monday stay out of the day band");
+        checkFee(plan, CAR, "2024-01-06 10:00", "2024-01-06 13:00", 0, 750, "a Saturday stay");
+        //22:00 and 23:00 of Friday at 4.00, 00:00 of Saturday at 2.50
+        checkFee(plan, CAR, "2024-01-05 22:00", "2024-01-06 01:00", 0, 1_050, "a Friday night into Saturday");
+        checkFee(plan, BIKE, "2024-01-06 10:00", "2024-01-06 12:00", 0, 200, "a bike on Saturday");
+        checkFee(plan, MOTORBIKE, "2024-01-01 10:00", "2024-01-01 12:00", 0, 600, "a motorbike on Monday");
+        checkFee(plan, CAR, "2024-01-01 10:00", "2024-01-01 10:01", 0, 600, "one minute is an hour");
+        checkFee(plan, CAR, "2024-01-01 10:00", "2024-01-01 10:00", 0, 0, "no time parked");
+    }
+
+    private static void staysWrapIntoTheNextWeek(TariffPlan plan) {
+        //Sunday 22:00 and 23:00 at 2.50, Monday 00:00 to 06:00 at 4.00, 07:00 and 08:00 at 6.00
+        checkFee(plan, CAR, "2024-01-07 22:00", "2024-01-08 09:00", 0, 4_500, "a Sunday night into Monday");
+        //one full day, then Monday 23:00 and Tuesday 00:00 at 4.00
+        checkFee(plan, CAR, "2024-01-07 23:00", "2024-01-09 01:00", 0, 1_250 + 800,
+                "a full day from Sunday, its hours starting on Monday");
+        checkFee(plan, CAR, "2024-01-14 23:00", "2024-01-15 00:30", 0, 250 + 400,
+                "the last hour of the week then the first one of the next");
+    }
+
+    private static void hourlyChargeIsCapped(TariffPlan plan) {
+        checkFee(plan, TRUCK, "2024-01-01 10:00", "2024-01-01 12:00", 0, 2_000, "a truck under the cap");
+        checkFee(plan, TRUCK, "2024-01-01 10:00", "2024-01-01 13:00", 0, 3_000, "a truck at the cap");
+        checkFee(plan, TRUCK, "2024-01-01 10:00", "2024-01-01 15:00", 0, 3_000, "a truck hitting the cap");
+        //the cap only bounds the hours after the full days, not the overnight or hit prices
+        checkFee(plan, TRUCK, "2024-01-01 10:00", "2024-01-02 14:00", 1, 3_000 + 2_000 + 5_000,
+                "a truck hitting the cap after a full day");
+    }
+
+    private static void overnightAndHitPrices(TariffPlan plan) {
+        //26.5 hours are 27: one full day, then Tuesday 10:00 to 12:00 at 6.00
+        checkFee(plan, CAR, "2024-01-01 10:00", "2024-01-02 12:30", 2, 1_250 + 1_800 + 3_000,
+                "a car with a full day and two hits");
+        checkFee(plan, CAR, "2024-01-01 10:00", "2024-01-03 10:00", 0, 2 * 1_250, "two full days and no hours");
+        checkFee(plan, BIKE, "2024-01-06 10:00", "2024-01-06 11:00", 3, 100 + 300, "a bike with three hits");
+
+        CheckoutVehicle checkoutVehicle = new CheckoutVehicle();
+        checkoutVehicle.setVehicleType("Car");
+        checkoutVehicle.setEntryMinutes(DateCodec.parseEpochMinutes("2024-01-01 10:00"));
+        checkoutVehicle.setExitMinutes(DateCodec.parseEpochMinutes("2024-01-02 12:30"));
+        checkoutVehicle.setHitNums(2);
+        plan.price(checkoutVehicle);
+        Checks.checkEquals(6_050, checkoutVehicle.getParkingFeeCents(), "the priced fee");
+        Checks.checkEquals(3_000, checkoutVehicle.getHitFeeCents(), "the priced hit part");
+        Checks.checkEquals(1_250, checkoutVehicle.getOvernightFeeCents(), "the priced overnight part");
+    }
+
+    private static void flatPlanKeepsClassPrices() throws IOException {
+        TariffPlan flat = TariffPlan.parse(new StringReader("# no rules\n\n"));
+        Checks.checkEquals("flat", flat.getName(), "an empty file is the flat plan");
+        checkFee(flat, CAR, "2024-01-06 10:00", "2024-01-06 13:00", 1, 1_200 + 2_000, "a flat car on Saturday");
+        checkFee(flat, TRUCK, "2024-01-01 10:00", "2024-01-02 15:00", 0, 2_000 + 5_000, "a flat truck has no cap");
+        checkFee(TariffPlan.flat(), BIKE, "2024-01-01 10:00", "2024-01-02 11:00", 2, 500 + 200, "a flat bike");
+    }
+
+    private static void malformedRulesAreRefused() throws IOException {
+        checkRefused("hourly Car weekday 07:30-19:00 6.00", "a band not on whole hours");
+        checkRefused("hourly Car weekday 19:00-07:00 6.00", "a band ending before it starts");
+        checkRefused("hourly Car weekday 07:00-25:00 6.00", "a band past the end of the day");
+        checkRefused("hourly Car someday 07:00-19:00 6.00", "unknown days");
+        checkRefused("hourly Car weekday 07:00 6.00", "a band without an end");
+        checkRefused("cap Van 10.00", "an unknown vehicle type");
+        checkRefused("cap Car", "a missing price");
+        checkRefused("cap Car ten", "a price that is not a number");
+        checkRefused("hit Car 1.005", "a price with three decimals");
+        checkRefused("overnight Car -1.00", "a negative price");
+        checkRefused("discount Car 1.00", "an unknown rule");
+    }
+
+    private static void checkFee(TariffPlan plan, byte typeCode, String entry, String exit, int hitNums,
+                                 long expectedCents, String message) {
+        long entryMinutes = DateCodec.parseEpochMinutes(entry);
+        long exitMinutes = DateCodec.parseEpochMinutes(exit);
+        Checks.checkEquals(expectedCents, plan.feeCents(typeCode, entryMinutes, exitMinutes, hitNums), message);
+    }
+
+    // The rule is the third line of the file, after a comment and a good rule
+    private static void checkRefused(String rule, String message) throws IOException {
+        try {
+            TariffPlan.parse(new StringReader("# refused\nplan refused\n" + rule + "\n"));
+        } catch (IllegalArgumentException ex) {
+            Checks.check(ex.getMessage().startsWith("Tariff line 3: "), message + " names its line: " + ex.getMessage());
+            return;
+        }
+        throw new AssertionError(message + " is accepted");
+    }
+}
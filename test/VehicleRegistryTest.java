@@ -0,0 +1,96 @@
+/**
+ * The VehicleRegistryTest class checks the records and views of a VehicleRegistry: a lookup returns the one view of
+ * a record, a checked out view keeps its data once its record is reused, and changes made through a current view
+ * update the record, the index and the model and colour dictionary.
+ *
+ * @author Han Wu, whw10@student.unimelb.edu.au, 1468664
+ */
+
+public class VehicleRegistryTest {
+
+    public static void main(String[] args) {
+        lookupReturnsTheViewOfTheRecord();
+        staleViewKeepsItsData();
+        viewChangesUpdateTheRecord();
+        System.out.println("VehicleRegistryTest passed");
+    }
+
+    private static void lookupReturnsTheViewOfTheRecord() {
+        VehicleRegistry registry = new VehicleRegistry();
+        Checks.check(registry.add(car("AAA111", "Mazda", "Red", "2024-01-01", "10:00"), vehicle -> { }), "AAA111 checks in");
+        Vehicle view = registry.get("AAA111");
+        Checks.check(view == registry.get("AAA111"), "lookups of a vehicle return the same view");
+        Checks.check(view == registry.get(RegnIdCodec.pack("AAA111")), "a packed lookup returns the same view");
+        Checks.checkEquals("2024-01-01", view.getDateEntry(), "the entry date is read from the record");
+        Checks.check(view.getTimeEntry() == view.getTimeEntry(), "the entry time is formatted once");
+        Checks.check(registry.get("ZZZ999") == null, "an unknown vehicle is not found");
+    }
+
+    private static void staleViewKeepsItsData() {
+        VehicleRegistry registry = new VehicleRegistry();
+        registry.add(car("AAA111", "Mazda", "Red", "2024-01-01", "10:00"), vehicle -> { });
+        Vehicle first = registry.get("AAA111");
+        first.setRow(3);
+        Checks.check(registry.remove(first, vehicle -> { }), "AAA111 checks out");
+        Checks.check(!registry.remove(first, vehicle -> { }), "a vehicle checks out once");
+        Checks.check(!registry.isCurrent(first), "the checked out view is stale");
+
+        registry.add(car("BBB222", "Volvo", "Blue", "2024-02-02", "11:30"), vehicle -> { });
+        Vehicle second = registry.get("BBB222");
+        Checks.check(registry.isCurrent(second), "the new vehicle is current");
+        Checks.check(registry.lockOf(first) == registry.lockOf(second), "the freed record is reused");
+        Checks.checkEquals("AAA111", first.getRegnId(), "the stale view keeps its registration id");
+        Checks.checkEquals("Mazda", first.getModel(), "the stale view keeps its model");
+        Checks.checkEquals("Red", first.getColour(), "the stale view keeps its colour");
+        Checks.checkEquals("2024-01-01", first.getDateEntry(), "the stale view keeps its entry date");
+        Checks.checkEquals(3, first.getRow(), "the stale view keeps its row");
+        Checks.checkEquals("Volvo", second.getModel(), "the reused record holds the new model");
+        Checks.checkEquals(Constant.ROW_INIT_VALUE, second.getRow(), "the reused record holds the new row");
+        Checks.check(registry.get("AAA111") == null, "the checked out vehicle is not found");
+    }
+
+    private static void viewChangesUpdateTheRecord() {
+        VehicleRegistry registry = new VehicleRegistry();
+        registry.add(car("AAA111", "Mazda", "Red", "2024-01-01", "10:00"), vehicle -> { });
+        registry.add(car("BBB222", "Mazda", "Red", "2024-01-01", "10:00"), vehicle -> { });
+        Vehicle view = registry.get("AAA111");
+
+        view.setModel("Volvo");
+        view.setColour("Blue");
+        Checks.checkEquals("Volvo", registry.get("AAA111").getModel(), "the model is changed in the record");
+        Checks.checkEquals("Blue", registry.get("AAA111").getColour(), "the colour is changed in the record");
+        Checks.checkEquals("Mazda", registry.get("BBB222").getModel(), "a shared model is kept for its other user");
+
+        view.setDateEntry("2024-03-04");
+        view.setTimeEntry("08:15");
+        Checks.checkEquals(Date.parseEpochMinutes("2024-03-04", "08:15"), view.getEntryMinutes(),
+                "the entry time is changed in the record");
+        Checks.checkEquals("08:15", view.getTimeEntry(), "the entry time is formatted again once it changed");
+
+        view.setRegnId("CCC333");
+        Checks.check(registry.get("CCC333") == view, "the vehicle is found by its new registration id");
+        Checks.check(registry.get("AAA111") == null, "the old registration id is free");
+        try {
+            view.setRegnId("BBB222");
+            throw new AssertionError("a registration id checked in cannot be taken");
+        } catch (IllegalArgumentException ex) {
+            Checks.check(registry.get("CCC333") == view, "a refused change keeps the registration id");
+        }
+
+        Checks.check(registry.remove(view, vehicle -> { }), "CCC333 checks out");
+        Checks.check(registry.remove(registry.get("BBB222"), vehicle -> { }), "BBB222 checks out");
+        registry.add(car("DDD444", "Kia", "Green", "2024-01-01", "10:00"), vehicle -> { });
+        Checks.checkEquals("Kia", registry.get("DDD444").getModel(), "a dropped model id is reused for a new model");
+        Checks.checkEquals("Volvo", view.getModel(), "the checked out view keeps its model");
+    }
+
+    private static Vehicle car(String regnId, String model, String colour, String dateEntry, String timeEntry) {
+        Vehicle vehicle = new Car();
+        vehicle.setRegnId(regnId);
+        vehicle.setModel(model);
+        vehicle.setColour(colour);
+        vehicle.setDateEntry(dateEntry);
+        vehicle.setTimeEntry(timeEntry);
+        return vehicle;
+    }
+}